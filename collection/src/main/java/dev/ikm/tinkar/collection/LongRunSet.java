@@ -0,0 +1,487 @@
+/*
+ * Copyright © 2015 Integrated Knowledge Management (support@ikm.dev)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dev.ikm.tinkar.collection;
+
+import java.lang.invoke.VarHandle;
+import java.util.Arrays;
+import java.util.function.LongConsumer;
+import java.util.function.LongPredicate;
+
+/**
+ * A set of longs optimized for appends to large sets, such as the citations of a hub concept.
+ * <p>
+ * A set of up to 64 values is a single sorted array, which values are inserted into in
+ * place. A larger set is a tail, a list of sorted runs of decreasing size, and a small unsorted buffer. A value
+ * greater than every value in the set is appended to the tail, a sorted array grown by doubling, so loading values
+ * in ascending order costs amortized O(1) per value. Any other value goes to the buffer. When the buffer fills it is
+ * sorted into a new run, and runs of similar size are merged, so there are at most a logarithmic number of runs and
+ * an out of order add costs amortized O(log n) rather than a copy of the whole set. Values are distinct across the
+ * tail, runs and buffer, and are iterated in ascending order by merging them.
+ * <p>
+ * Writers synchronize on the set. Readers are lock free. Readers of a small set validate what they read against a
+ * version, incremented before and after each write, and only synchronize if a write was concurrent. Readers of a
+ * large set see the runs published by the last merge, and the buffer prefix published by the last append.
+ */
+public final class LongRunSet {
+
+    private static final int MAX_SMALL_SIZE = 64;
+    private static final int MAX_BUFFER_SIZE = 32;
+    private static final int MIN_TAIL_CAPACITY = 16;
+    private static final long[] EMPTY = new long[0];
+
+    /**
+     * The tail, runs and buffer of a large set. Runs are never changed once published. Elements of the tail and
+     * buffer below their size are never changed once published; a full buffer is replaced, with new runs, rather than
+     * reused, since readers may still reference it. A full tail is copied into a larger array, which is published
+     * before the size, so readers read the size before the tail.
+     */
+    private static final class Runs {
+        private final long[][] runs;
+        private final long[] buffer = new long[MAX_BUFFER_SIZE];
+        private volatile int bufferSize;
+        private volatile long[] tail;
+        private volatile int tailSize;
+        /**
+         * The greatest value in the set, only used by writers.
+         */
+        private long max;
+
+        private Runs(long[][] runs, long[] tail, int tailSize, long max) {
+            this.runs = runs;
+            this.tail = tail;
+            this.tailSize = tailSize;
+            this.max = max;
+        }
+
+        private static Runs of(long[] sortedValues) {
+            return new Runs(new long[][]{sortedValues}, EMPTY, 0, sortedValues[sortedValues.length - 1]);
+        }
+    }
+
+    /**
+     * The runs of a large set, or null while the set is small.
+     */
+    private volatile Runs large;
+    /**
+     * The values of a small set, sorted, from 0 until size.
+     */
+    private long[] values;
+    private int size;
+    /**
+     * Odd while a writer changes values, size, or large.
+     */
+    private volatile int version;
+
+    public LongRunSet() {
+        this.values = EMPTY;
+    }
+
+    private LongRunSet(long[] sortedValues) {
+        if (sortedValues.length > MAX_SMALL_SIZE) {
+            this.values = EMPTY;
+            this.large = Runs.of(sortedValues);
+        } else {
+            // A full array, so it is replaced rather than changed by the next insert.
+            this.values = sortedValues;
+            this.size = sortedValues.length;
+        }
+    }
+
+    /**
+     * @param sortedDistinctValues values sorted in ascending order without duplicates. The array is
+     *                             retained by the set, and must not be modified.
+     */
+    public static LongRunSet ofSorted(long[] sortedDistinctValues) {
+        return new LongRunSet(sortedDistinctValues);
+    }
+
+    /**
+     * @return true if the value was added, false if it was already present.
+     */
+    public synchronized boolean add(long value) {
+        Runs current = this.large;
+        if (current != null) {
+            return addToRuns(current, value);
+        }
+        int index = Arrays.binarySearch(values, 0, size, value);
+        if (index >= 0) {
+            return false;
+        }
+        int insertion = -index - 1;
+        if (size == MAX_SMALL_SIZE) {
+            long[] run = inserted(new long[size + 1], insertion, value);
+            beginWrite();
+            this.large = Runs.of(run);
+            this.values = EMPTY;
+            this.size = 0;
+            endWrite();
+        } else if (size == values.length) {
+            long[] grown = inserted(new long[Math.min(MAX_SMALL_SIZE, Math.max(2, size * 2))], insertion, value);
+            beginWrite();
+            this.values = grown;
+            this.size++;
+            endWrite();
+        } else {
+            beginWrite();
+            System.arraycopy(values, insertion, values, insertion + 1, size - insertion);
+            values[insertion] = value;
+            this.size++;
+            endWrite();
+        }
+        return true;
+    }
+
+    /**
+     * @return the values of the small set, with the value inserted, in the destination array
+     */
+    private long[] inserted(long[] destination, int insertion, long value) {
+        System.arraycopy(values, 0, destination, 0, insertion);
+        destination[insertion] = value;
+        System.arraycopy(values, insertion, destination, insertion + 1, size - insertion);
+        return destination;
+    }
+
+    private boolean addToRuns(Runs current, long value) {
+        if (value > current.max) {
+            appendToTail(current, value);
+            return true;
+        }
+        if (contains(current, value)) {
+            return false;
+        }
+        int bufferSize = current.bufferSize;
+        if (bufferSize == MAX_BUFFER_SIZE) {
+            // The tail is shared with the replaced runs, whose readers only read below their own tail size.
+            Runs next = new Runs(addRun(current.runs, Arrays.copyOf(current.buffer, bufferSize)), current.tail,
+                    current.tailSize, current.max);
+            next.buffer[0] = value;
+            next.bufferSize = 1;
+            this.large = next;
+            return true;
+        }
+        current.buffer[bufferSize] = value;
+        current.bufferSize = bufferSize + 1;
+        return true;
+    }
+
+    private static void appendToTail(Runs current, long value) {
+        int tailSize = current.tailSize;
+        long[] tail = current.tail;
+        if (tailSize == tail.length) {
+            tail = Arrays.copyOf(tail, Math.max(MIN_TAIL_CAPACITY, tailSize * 2));
+            tail[tailSize] = value;
+            current.tail = tail;
+        } else {
+            tail[tailSize] = value;
+        }
+        current.tailSize = tailSize + 1;
+        current.max = value;
+    }
+
+    /**
+     * Removes the values matching the predicate.
+     *
+     * @return true if any value was removed.
+     */
+    public synchronized boolean removeIf(LongPredicate predicate) {
+        long[] sortedValues = large == null ? Arrays.copyOf(values, size) : compact();
+        int kept = 0;
+        long[] remaining = new long[sortedValues.length];
+        for (long value : sortedValues) {
+            if (!predicate.test(value)) {
+                remaining[kept++] = value;
+            }
+        }
+        if (kept == sortedValues.length) {
+            return false;
+        }
+        beginWrite();
+        if (kept > MAX_SMALL_SIZE) {
+            this.large = Runs.of(Arrays.copyOf(remaining, kept));
+            this.values = EMPTY;
+            this.size = 0;
+        } else {
+            this.large = null;
+            this.values = kept == 0 ? EMPTY : remaining;
+            this.size = kept;
+        }
+        endWrite();
+        return true;
+    }
+
+    public boolean contains(long value) {
+        int startVersion = this.version;
+        Runs current = this.large;
+        if (current != null) {
+            return contains(current, value);
+        }
+        if ((startVersion & 1) == 0) {
+            long[] smallValues = this.values;
+            boolean found = Arrays.binarySearch(smallValues, 0, Math.min(this.size, smallValues.length), value) >= 0;
+            if (validate(startVersion)) {
+                return found;
+            }
+        }
+        synchronized (this) {
+            current = this.large;
+            return current != null ? contains(current, value) : Arrays.binarySearch(values, 0, size, value) >= 0;
+        }
+    }
+
+    public int size() {
+        int startVersion = this.version;
+        Runs current = this.large;
+        if (current != null) {
+            return size(current);
+        }
+        if ((startVersion & 1) == 0) {
+            int smallSize = this.size;
+            if (validate(startVersion)) {
+                return smallSize;
+            }
+        }
+        synchronized (this) {
+            current = this.large;
+            return current != null ? size(current) : size;
+        }
+    }
+
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    /**
+     * Passes each value to the consumer, in ascending order.
+     */
+    public void forEach(LongConsumer consumer) {
+        forEachInRange(Long.MIN_VALUE, Long.MAX_VALUE, consumer);
+    }
+
+    /**
+     * Passes each value between fromInclusive and toInclusive to the consumer, in ascending order, using a binary
+     * search of each run to find the start of the range.
+     */
+    public void forEachInRange(long fromInclusive, long toInclusive, LongConsumer consumer) {
+        if (fromInclusive > toInclusive) {
+            return;
+        }
+        long from = fromInclusive;
+        int startVersion = this.version;
+        Runs current = this.large;
+        if (current != null) {
+            forEachInRange(current, from, toInclusive, consumer);
+            return;
+        }
+        if ((startVersion & 1) == 0) {
+            long[] smallValues = this.values;
+            int smallSize = Math.min(this.size, smallValues.length);
+            int index = lowerBound(smallValues, smallSize, from);
+            while (true) {
+                long value = index < smallSize ? smallValues[index] : 0;
+                // Each value is validated before it is passed, so only values that were in the set are passed.
+                if (!validate(startVersion)) {
+                    break;
+                }
+                if (index == smallSize || value > toInclusive) {
+                    return;
+                }
+                consumer.accept(value);
+                if (value == toInclusive) {
+                    return;
+                }
+                from = value + 1;
+                index++;
+            }
+        }
+        // Written concurrently: continue, outside the lock, from the values not yet passed.
+        long[] remaining = null;
+        synchronized (this) {
+            current = this.large;
+            if (current == null) {
+                int start = lowerBound(values, size, from);
+                int end = lowerBound(values, size, toInclusive);
+                if (end < size && values[end] == toInclusive) {
+                    end++;
+                }
+                remaining = Arrays.copyOfRange(values, start, end);
+            }
+        }
+        if (current != null) {
+            forEachInRange(current, from, toInclusive, consumer);
+        } else {
+            for (long value : remaining) {
+                consumer.accept(value);
+            }
+        }
+    }
+
+    /**
+     * Merges the tail, runs and sorted buffer of a large set, passing the values in the range in ascending order.
+     * There are few runs, so the next value is found by comparing the current value of each.
+     */
+    private static void forEachInRange(Runs current, long fromInclusive, long toInclusive, LongConsumer consumer) {
+        int tailSize = current.tailSize;
+        long[] tail = current.tail;
+        int bufferSize = current.bufferSize;
+        long[] buffer = Arrays.copyOf(current.buffer, bufferSize);
+        Arrays.sort(buffer);
+
+        long[][] runs = current.runs;
+        long[][] sources = Arrays.copyOf(runs, runs.length + 2);
+        sources[runs.length] = tail;
+        sources[runs.length + 1] = buffer;
+        int[] ends = new int[sources.length];
+        int[] positions = new int[sources.length];
+        for (int i = 0; i < sources.length; i++) {
+            ends[i] = i == runs.length ? tailSize : sources[i].length;
+            positions[i] = lowerBound(sources[i], ends[i], fromInclusive);
+        }
+        while (true) {
+            int next = -1;
+            long nextValue = toInclusive;
+            for (int i = 0; i < sources.length; i++) {
+                if (positions[i] < ends[i]) {
+                    long value = sources[i][positions[i]];
+                    if (value <= nextValue) {
+                        next = i;
+                        nextValue = value;
+                    }
+                }
+            }
+            if (next < 0) {
+                return;
+            }
+            positions[next]++;
+            consumer.accept(nextValue);
+        }
+    }
+
+    /**
+     * Merges the tail, runs and buffer into a single sorted run, which is returned. The returned array
+     * is retained by the set, and must not be modified.
+     */
+    public synchronized long[] toSortedArray() {
+        if (large == null) {
+            return size == 0 ? EMPTY : Arrays.copyOf(values, size);
+        }
+        return compact();
+    }
+
+    /**
+     * Merges the tail, runs and buffer of a large set into a single run.
+     */
+    private long[] compact() {
+        Runs current = this.large;
+        if (current.bufferSize == 0 && current.tailSize == 0 && current.runs.length == 1) {
+            return current.runs[0];
+        }
+        long[] merged = new long[size(current)];
+        int position = 0;
+        for (long[] run : current.runs) {
+            System.arraycopy(run, 0, merged, position, run.length);
+            position += run.length;
+        }
+        System.arraycopy(current.tail, 0, merged, position, current.tailSize);
+        position += current.tailSize;
+        System.arraycopy(current.buffer, 0, merged, position, current.bufferSize);
+        Arrays.sort(merged);
+        this.large = Runs.of(merged);
+        return merged;
+    }
+
+    private void beginWrite() {
+        this.version++;
+        // The changes that follow must not become visible before the odd version.
+        VarHandle.storeStoreFence();
+    }
+
+    private void endWrite() {
+        this.version++;
+    }
+
+    /**
+     * @return true if no write started since the reader read the even start version
+     */
+    private boolean validate(int startVersion) {
+        VarHandle.acquireFence();
+        return this.version == startVersion;
+    }
+
+    private static int size(Runs current) {
+        int size = current.bufferSize + current.tailSize;
+        for (long[] run : current.runs) {
+            size += run.length;
+        }
+        return size;
+    }
+
+    private static boolean contains(Runs current, long value) {
+        int tailSize = current.tailSize;
+        if (Arrays.binarySearch(current.tail, 0, tailSize, value) >= 0) {
+            return true;
+        }
+        for (long[] run : current.runs) {
+            if (Arrays.binarySearch(run, value) >= 0) {
+                return true;
+            }
+        }
+        int bufferSize = current.bufferSize;
+        for (int i = 0; i < bufferSize; i++) {
+            if (current.buffer[i] == value) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return the index of the first of the sorted values not less than the key
+     */
+    private static int lowerBound(long[] sortedValues, int size, long key) {
+        int index = Arrays.binarySearch(sortedValues, 0, size, key);
+        return index < 0 ? -index - 1 : index;
+    }
+
+    /**
+     * Adds the buffer as a new, smallest run, then merges trailing runs while the previous run is no
+     * more than twice the size of the last, so run sizes at least double from newest to oldest.
+     */
+    private static long[][] addRun(long[][] runs, long[] buffer) {
+        Arrays.sort(buffer);
+        int runCount = runs.length;
+        long[][] newRuns = Arrays.copyOf(runs, runCount + 1);
+        newRuns[runCount++] = buffer;
+        while (runCount > 1 && newRuns[runCount - 2].length <= 2 * newRuns[runCount - 1].length) {
+            newRuns[runCount - 2] = mergeRuns(newRuns[runCount - 2], newRuns[runCount - 1]);
+            runCount--;
+        }
+        return runCount == newRuns.length ? newRuns : Arrays.copyOf(newRuns, runCount);
+    }
+
+    private static long[] mergeRuns(long[] run1, long[] run2) {
+        long[] merged = new long[run1.length + run2.length];
+        int i = 0;
+        int j = 0;
+        int k = 0;
+        while (i < run1.length && j < run2.length) {
+            merged[k++] = run1[i] < run2[j] ? run1[i++] : run2[j++];
+        }
+        System.arraycopy(run1, i, merged, k, run1.length - i);
+        k += run1.length - i;
+        System.arraycopy(run2, j, merged, k, run2.length - j);
+        return merged;
+    }
+}
@@ -46,7 +46,7 @@ public int sizeOnDisk() {
     public int memoryInUse() {
         AtomicInteger sizeInBytes = new AtomicInteger();
         sizeInBytes.addAndGet((spineSize * 8) * getSpineCount()); // 8 bytes = pointer to an object
-        forEachSpine((AtomicReferenceArray<byte[][]> spine, int spineIndex) -> {
+        forEachResidentSpine((AtomicReferenceArray<byte[][]> spine, int spineIndex) -> {
             for (int i = 0; i < spine.length(); i++) {
                 byte[][] value = spine.get(i);
                 if (value != null) {
@@ -67,6 +67,12 @@ protected AtomicReferenceArray<byte[][]> readSpine(int spineIndex) {
         return new AtomicReferenceArray<>(spineSize);
     }
 
+    @Override
+    protected void writeBackSpine(int spineIndex, AtomicReferenceArray<byte[][]> spine) {
+        this.byteArrayArrayStore.writeSpineCount(getSpineCount());
+        this.byteArrayArrayStore.put(spineIndex, spine);
+    }
+
     public boolean write() {
         try {
             fileSemaphore.acquireUninterruptibly();
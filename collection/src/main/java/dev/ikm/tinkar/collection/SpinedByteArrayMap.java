@@ -16,12 +16,14 @@
 package dev.ikm.tinkar.collection;
 
 import dev.ikm.tinkar.collection.store.ByteArrayStore;
+import dev.ikm.tinkar.collection.store.PagedByteArrayStore;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.Optional;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.ObjIntConsumer;
 
 public class SpinedByteArrayMap extends SpinedIntObjectMap<byte[]> {
 
@@ -40,10 +42,12 @@ public int sizeOnDisk() {
     public int memoryInUse() {
         AtomicInteger sizeInBytes = new AtomicInteger();
         sizeInBytes.addAndGet(((spineSize * 8) * getSpineCount()));
-        forEachSpine((AtomicReferenceArray<byte[]> spine, int spineIndex) -> {
+        forEachResidentSpine((AtomicReferenceArray<byte[]> spine, int spineIndex) -> {
             for (int i = 0; i < spine.length(); i++) {
                 byte[] value = spine.get(i);
-                sizeInBytes.addAndGet(value.length + 4); // 4 bytes = integer length of the array of array length.
+                if (value != null) {
+                    sizeInBytes.addAndGet(value.length + 4); // 4 bytes = integer length of the array of array length.
+                }
             }
         });
         return sizeInBytes.get();
@@ -58,6 +62,35 @@ protected AtomicReferenceArray<byte[]> readSpine(int spineIndex) {
         return new AtomicReferenceArray<>(spineSize);
     }
 
+    @Override
+    protected byte[] readNonResident(int spineIndex, int indexInSpine) {
+        if (this.byteArrayStore instanceof PagedByteArrayStore pagedStore) {
+            return pagedStore.get(spineIndex, indexInSpine);
+        }
+        return super.readNonResident(spineIndex, indexInSpine);
+    }
+
+    @Override
+    protected int forEachNonResident(int spineIndex, ObjIntConsumer<byte[]> consumer) {
+        if (this.byteArrayStore instanceof PagedByteArrayStore pagedStore) {
+            return pagedStore.forEach(spineIndex, consumer);
+        }
+        return super.forEachNonResident(spineIndex, consumer);
+    }
+
+    @Override
+    public void close() {
+        if (this.byteArrayStore instanceof PagedByteArrayStore pagedStore) {
+            pagedStore.close();
+        }
+    }
+
+    @Override
+    protected void writeBackSpine(int spineIndex, AtomicReferenceArray<byte[]> spine) {
+        this.byteArrayStore.writeSpineCount(getSpineCount());
+        this.byteArrayStore.put(spineIndex, spine);
+    }
+
     public boolean write() {
 
         try {
@@ -40,10 +40,12 @@ public int sizeOnDisk() {
     public int memoryInUse() {
         AtomicInteger sizeInBytes = new AtomicInteger();
         sizeInBytes.addAndGet(((spineSize * 8) * getSpineCount()));
-        forEachSpine((AtomicReferenceArray<long[]> spine, int spineIndex) -> {
+        forEachResidentSpine((AtomicReferenceArray<long[]> spine, int spineIndex) -> {
             for (int i = 0; i < spine.length(); i++) {
                 long[] value = spine.get(i);
-                sizeInBytes.addAndGet(value.length + 4); // 4 bytes = integer length of the array of array length.
+                if (value != null) {
+                    sizeInBytes.addAndGet(value.length + 4); // 4 bytes = integer length of the array of array length.
+                }
             }
         });
         return sizeInBytes.get();
@@ -58,6 +60,12 @@ protected AtomicReferenceArray<long[]> readSpine(int spineIndex) {
         return new AtomicReferenceArray<>(spineSize);
     }
 
+    @Override
+    protected void writeBackSpine(int spineIndex, AtomicReferenceArray<long[]> spine) {
+        this.intLongArrayStore.writeSpineCount(getSpineCount());
+        this.intLongArrayStore.put(spineIndex, spine);
+    }
+
     public boolean write() {
 
         try {
@@ -0,0 +1,116 @@
+/*
+ * Copyright © 2015 Integrated Knowledge Management (support@ikm.dev)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dev.ikm.tinkar.collection;
+
+import dev.ikm.tinkar.collection.store.IntLongArrayStore;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Spined map of int keys to {@link LongRunSet}s, persisted as sorted long arrays through an
+ * {@link IntLongArrayStore}, so the on disk format is the same as {@link SpinedIntLongArrayMap}.
+ */
+public class SpinedIntLongSetMap extends SpinedIntObjectMap<LongRunSet> {
+
+    private static final Logger LOG = LoggerFactory.getLogger(SpinedIntLongSetMap.class);
+    private final IntLongArrayStore intLongArrayStore;
+
+    public SpinedIntLongSetMap(IntLongArrayStore intLongArrayStore) {
+        super(intLongArrayStore.getSpineCount());
+        this.intLongArrayStore = intLongArrayStore;
+    }
+
+    /**
+     * Adds a value to the set for the key, creating the set if necessary.
+     */
+    public void add(int index, long value) {
+        accumulateAndGet(index, null, (longRunSet, ignored) -> {
+            if (longRunSet == null) {
+                longRunSet = new LongRunSet();
+            }
+            longRunSet.add(value);
+            return longRunSet;
+        });
+    }
+
+    public int sizeOnDisk() {
+        return intLongArrayStore.sizeOnDisk();
+    }
+
+    public int memoryInUse() {
+        AtomicInteger sizeInBytes = new AtomicInteger();
+        sizeInBytes.addAndGet(((spineSize * 8) * getSpineCount()));
+        forEachResidentSpine((AtomicReferenceArray<LongRunSet> spine, int spineIndex) -> {
+            for (int i = 0; i < spine.length(); i++) {
+                LongRunSet value = spine.get(i);
+                if (value != null) {
+                    sizeInBytes.addAndGet(value.size() * 8 + 4);
+                }
+            }
+        });
+        return sizeInBytes.get();
+    }
+
+    protected AtomicReferenceArray<LongRunSet> readSpine(int spineIndex) {
+        Optional<AtomicReferenceArray<long[]>> optionalSpine = this.intLongArrayStore.get(spineIndex);
+        AtomicReferenceArray<LongRunSet> spine = new AtomicReferenceArray<>(spineSize);
+        if (optionalSpine.isPresent()) {
+            AtomicReferenceArray<long[]> storedSpine = optionalSpine.get();
+            for (int i = 0; i < storedSpine.length(); i++) {
+                long[] value = storedSpine.get(i);
+                if (value != null) {
+                    spine.set(i, LongRunSet.ofSorted(value));
+                }
+            }
+        }
+        return spine;
+    }
+
+    @Override
+    protected void writeBackSpine(int spineIndex, AtomicReferenceArray<LongRunSet> spine) {
+        this.intLongArrayStore.writeSpineCount(getSpineCount());
+        this.intLongArrayStore.put(spineIndex, toStoredSpine(spine));
+    }
+
+    public boolean write() {
+
+        try {
+            fileSemaphore.acquireUninterruptibly();
+            this.intLongArrayStore.writeSpineCount(getSpineCount());
+            return forEachChangedSpine((AtomicReferenceArray<LongRunSet> spine, int spineIndex) -> {
+                this.intLongArrayStore.put(spineIndex, toStoredSpine(spine));
+            });
+        } finally {
+            fileSemaphore.release();
+        }
+    }
+
+    private static AtomicReferenceArray<long[]> toStoredSpine(AtomicReferenceArray<LongRunSet> spine) {
+        AtomicReferenceArray<long[]> storedSpine = new AtomicReferenceArray<>(spine.length());
+        for (int i = 0; i < spine.length(); i++) {
+            LongRunSet value = spine.get(i);
+            if (value != null && !value.isEmpty()) {
+                storedSpine.set(i, value.toSortedArray());
+            }
+        }
+        return storedSpine;
+    }
+
+}
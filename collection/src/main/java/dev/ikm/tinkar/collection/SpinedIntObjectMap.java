@@ -32,7 +32,10 @@
 import java.util.concurrent.Future;
 import java.util.concurrent.Semaphore;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
 import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 import java.util.function.BinaryOperator;
 import java.util.function.Consumer;
 import java.util.function.Function;
@@ -57,16 +60,35 @@
     // TODO: consider growth strategies instead of just a large array expected to be big enough to hold all the spines...
     private final AtomicReferenceArray<AtomicReferenceArray<E>> spines;
     private final AtomicInteger spineCount = new AtomicInteger();
-    private final boolean[] changedSpineIndexes;
+    // The write state of each spine. Mutators set CHANGED after their store, so a change made while a spine is
+    // written leaves it CHANGED for the next write, and eviction never drops a spine that is CHANGED or WRITING.
+    private static final int CLEAN = 0;
+    private static final int CHANGED = 1;
+    private static final int WRITING = 2;
+    private final AtomicIntegerArray spineStates;
     private final boolean ephemoral;
     private Function<E, String> elementStringConverter;
 
+    // Spine residency: when bounded, spines are evicted with a CLOCK (second chance) policy. Mutators hold the
+    // read lock while they modify a spine, so that eviction (under the write lock) never drops a spine with an
+    // in-flight change. Readers need no lock: an evicted spine has already been written back to the store.
+    private volatile int maxResidentSpines = Integer.MAX_VALUE;
+    private final ReentrantReadWriteLock residencyLock = new ReentrantReadWriteLock();
+    private final AtomicInteger residentSpineCount = new AtomicInteger();
+    private final boolean[] referencedSpineIndexes;
+    private int clockHand = 0;
+    private final LongAdder spineHits = new LongAdder();
+    private final LongAdder spineMisses = new LongAdder();
+    private final LongAdder spineEvictions = new LongAdder();
+    private final LongAdder spineWriteBacks = new LongAdder();
+
     public SpinedIntObjectMap() {
         this.ephemoral = true;
         this.maxSpineCount = DEFAULT_MAX_SPINE_COUNT;
         this.spineSize = DEFAULT_SPINE_SIZE;
         this.spines = new AtomicReferenceArray(this.maxSpineCount);
-        this.changedSpineIndexes = new boolean[this.maxSpineCount * this.spineSize];
+        this.spineStates = new AtomicIntegerArray(this.maxSpineCount);
+        this.referencedSpineIndexes = new boolean[this.maxSpineCount];
         this.spineCount.set(0);
     }
 
@@ -75,7 +97,8 @@ public SpinedIntObjectMap(int spineCount) {
         this.maxSpineCount = DEFAULT_MAX_SPINE_COUNT;
         this.spineSize = DEFAULT_SPINE_SIZE;
         this.spines = new AtomicReferenceArray(this.maxSpineCount);
-        this.changedSpineIndexes = new boolean[this.maxSpineCount * this.spineSize];
+        this.spineStates = new AtomicIntegerArray(this.maxSpineCount);
+        this.referencedSpineIndexes = new boolean[this.maxSpineCount];
         this.spineCount.set(spineCount);
     }
 
@@ -83,6 +106,146 @@ public void close() {
         // nothing to do...
     }
 
+    /**
+     * Bounds the number of spines kept in memory. When more spines are resident, the least recently
+     * referenced spines are evicted, writing changed spines back to the store first. Set before the map
+     * is in use; maps without a backing store cannot evict.
+     *
+     * @param maxResidentSpines the maximum number of resident spines, or Integer.MAX_VALUE for no limit
+     */
+    public void setMaxResidentSpines(int maxResidentSpines) {
+        if (maxResidentSpines < 1) {
+            throw new IllegalArgumentException("maxResidentSpines must be positive: " + maxResidentSpines);
+        }
+        if (ephemoral && maxResidentSpines != Integer.MAX_VALUE) {
+            throw new IllegalStateException("An ephemeral map cannot evict spines");
+        }
+        this.maxResidentSpines = maxResidentSpines;
+        evictIfNeeded();
+    }
+
+    public int getMaxResidentSpines() {
+        return maxResidentSpines;
+    }
+
+    public ResidencyStats residencyStats() {
+        return new ResidencyStats(residentSpineCount.get(), maxResidentSpines, spineHits.sum(),
+                spineMisses.sum(), spineEvictions.sum(), spineWriteBacks.sum());
+    }
+
+    /**
+     * Spine residency counters. A hit is an access to a resident spine; a miss is an access
+     * that had to go to the store.
+     */
+    public record ResidencyStats(int residentSpines, int maxResidentSpines, long hits, long misses,
+                                 long evictions, long writeBacks) {
+        public double hitRate() {
+            long accesses = hits + misses;
+            return accesses == 0 ? 1.0 : (double) hits / accesses;
+        }
+
+        @Override
+        public String toString() {
+            return "resident spines: " + residentSpines +
+                    (maxResidentSpines == Integer.MAX_VALUE ? "" : "/" + maxResidentSpines) +
+                    String.format(", hit rate: %.3f", hitRate()) +
+                    ", misses: " + misses + ", evictions: " + evictions + ", write-backs: " + writeBacks;
+        }
+    }
+
+    private boolean evictionEnabled() {
+        return maxResidentSpines != Integer.MAX_VALUE;
+    }
+
+    private void evictIfNeeded() {
+        if (residentSpineCount.get() <= maxResidentSpines) {
+            return;
+        }
+        // The write lock cannot be acquired while this thread holds the read lock, e.g. from an
+        // accumulator function that modifies this map. The next mutation will evict instead.
+        if (residencyLock.getReadHoldCount() > 0) {
+            return;
+        }
+        residencyLock.writeLock().lock();
+        try {
+            int spineCountNow = spineCount.get();
+            // two sweeps clear every reference bit, so the loop ends even if all spines were referenced.
+            int remainingSteps = 2 * spineCountNow;
+            while (residentSpineCount.get() > maxResidentSpines && remainingSteps-- > 0) {
+                int spineIndex = clockHand;
+                clockHand = (clockHand + 1) % spineCountNow;
+                AtomicReferenceArray<E> spine = this.spines.get(spineIndex);
+                if (spine == null) {
+                    continue;
+                }
+                if (referencedSpineIndexes[spineIndex]) {
+                    referencedSpineIndexes[spineIndex] = false;
+                    continue;
+                }
+                if (spineStates.get(spineIndex) != CLEAN) {
+                    // While changed spines are being written, skip the spine rather than wait with mutators
+                    // blocked. Mutators are excluded by the write lock, so once the semaphore is held the state
+                    // can only be CLEAN or CHANGED.
+                    if (!fileSemaphore.tryAcquire()) {
+                        continue;
+                    }
+                    try {
+                        if (spineStates.get(spineIndex) == CHANGED) {
+                            writeBackSpine(spineIndex, spine);
+                            spineStates.set(spineIndex, CLEAN);
+                            spineWriteBacks.increment();
+                        }
+                    } finally {
+                        fileSemaphore.release();
+                    }
+                }
+                this.spines.set(spineIndex, null);
+                residentSpineCount.decrementAndGet();
+                spineEvictions.increment();
+            }
+        } finally {
+            residencyLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Writes a changed spine to the store before it is evicted. Called while holding the file semaphore.
+     *
+     * @param spineIndex the index of the spine
+     * @param spine the spine to write
+     */
+    protected void writeBackSpine(int spineIndex, AtomicReferenceArray<E> spine) {
+        throw new IllegalStateException("Subclass must implement writeBackSpine");
+    }
+
+    /**
+     * Returns the spine to modify, counting the access. Callers that modify the spine must hold the
+     * residency read lock when eviction is enabled.
+     */
+    private AtomicReferenceArray<E> spineToUpdate(int spineIndex) {
+        if (this.spines.get(spineIndex) != null) {
+            spineHits.increment();
+        } else {
+            spineMisses.increment();
+        }
+        return getSpine(spineIndex);
+    }
+
+    /**
+     * Marks a spine changed. Called after the store, so a write of the spine that started before the store is
+     * followed by another.
+     */
+    private void changed(int spineIndex) {
+        spineStates.set(spineIndex, CHANGED);
+    }
+
+    private void referenced(int spineIndex) {
+        // Only write when the bit is clear, to avoid contended writes on the common path.
+        if (evictionEnabled() && !referencedSpineIndexes[spineIndex]) {
+            referencedSpineIndexes[spineIndex] = true;
+        }
+    }
+
     public void setElementStringConverter(Function<E, String> elementStringConverter) {
         this.elementStringConverter = elementStringConverter;
     }
@@ -94,6 +257,20 @@ public void forEachSpine(ObjIntConsumer<AtomicReferenceArray<E>> consumer) {
         }
     }
 
+    /**
+     * Like {@link #forEachSpine(ObjIntConsumer)}, but only visits spines that are currently resident,
+     * without reading any spine from storage.
+     */
+    public void forEachResidentSpine(ObjIntConsumer<AtomicReferenceArray<E>> consumer) {
+        int spineCountNow = spineCount.get();
+        for (int spineIndex = 0; spineIndex < spineCountNow; spineIndex++) {
+            AtomicReferenceArray<E> spine = this.spines.get(spineIndex);
+            if (spine != null) {
+                consumer.accept(spine, spineIndex);
+            }
+        }
+    }
+
     private AtomicReferenceArray<E> getSpine(int spineIndex) {
         int startSpineCount = spineCount.get();
         if (spineIndex < startSpineCount) {
@@ -104,12 +281,15 @@ private AtomicReferenceArray<E> getSpine(int spineIndex) {
                     spine = this.spines.get(spineIndex);
                     if (spine == null) {
                         spine = readSpine(spineIndex);
-                        this.spines.compareAndSet(spineIndex, null, spine);
+                        if (this.spines.compareAndSet(spineIndex, null, spine)) {
+                            residentSpineCount.incrementAndGet();
+                        }
                     }
                 } finally {
                     newSpineSemaphore.release();
                 }
             }
+            referenced(spineIndex);
             if (spine == null) {
                 AlertStreams.dispatchToRoot(new IllegalStateException("(1) getSpine is returning null for index:" +
                         spineIndex + "..."));
@@ -123,6 +303,7 @@ private AtomicReferenceArray<E> getSpine(int spineIndex) {
                     if (eAtomicReferenceArray == null) {
                         eAtomicReferenceArray = readSpine(spineIndex);
                         spineCount.compareAndSet(startSpineCount, startSpineCount + 1);
+                        residentSpineCount.incrementAndGet();
                     }
                     return eAtomicReferenceArray;
                 });
@@ -136,6 +317,7 @@ private AtomicReferenceArray<E> getSpine(int spineIndex) {
                 if (eAtomicReferenceArray == null) {
                     eAtomicReferenceArray = newSpine(spineIndex);
                     spineCount.compareAndSet(startSpineCount, startSpineCount + 1);
+                    residentSpineCount.incrementAndGet();
                 }
                 return eAtomicReferenceArray;
             });
@@ -156,6 +338,30 @@ protected AtomicReferenceArray<E> readSpine(int spineIndex) {
         throw new IllegalStateException("Subclass must implement readSpine");
     }
 
+    /**
+     * Reads a single element of a spine that is not resident. Subclasses backed by a store that can
+     * serve individual elements override this so that reads do not make the spine resident.
+     *
+     * @param spineIndex the index of a spine that was not resident when the read started
+     * @param indexInSpine the index of the element within the spine
+     * @return the element, or null if not present
+     */
+    protected E readNonResident(int spineIndex, int indexInSpine) {
+        return getSpine(spineIndex).get(indexInSpine);
+    }
+
+    /**
+     * Passes each element of a spine that is not resident to the consumer, without making the spine resident.
+     *
+     * @param spineIndex the index of a spine that was not resident when the iteration started
+     * @param consumer receives each non-null element and its index within the spine
+     * @return the number of elements processed, or -1 if this map cannot stream the spine, in which case
+     * the spine is made resident and iterated in memory.
+     */
+    protected int forEachNonResident(int spineIndex, ObjIntConsumer<E> consumer) {
+        return -1;
+    }
+
     private AtomicReferenceArray<E> newSpine(int spineKey) {
         return makeNewSpine(spineKey);
     }
@@ -166,14 +372,26 @@ public AtomicReferenceArray<E> makeNewSpine(int spineKey) {
         return spine;
     }
 
+    /**
+     * Passes each changed spine to the consumer, which writes it. Callers hold the file semaphore.
+     * <p>
+     * A spine is marked as being written before the consumer reads it, and is marked clean afterwards only if no
+     * mutator changed it in the meantime, so a change made during the write is written by the next call. If the
+     * consumer throws, the spine remains changed.
+     */
     public boolean forEachChangedSpine(ObjIntConsumer<AtomicReferenceArray<E>> consumer) {
         boolean foundChange = false;
         int spineCountNow = spineCount.get();
         for (int spineIndex = 0; spineIndex < spineCountNow; spineIndex++) {
-            if (changedSpineIndexes[spineIndex]) {
+            if (spineStates.compareAndSet(spineIndex, CHANGED, WRITING)) {
                 foundChange = true;
-                consumer.accept(getSpine(spineIndex), spineIndex);
-                changedSpineIndexes[spineIndex] = false;
+                boolean written = false;
+                try {
+                    consumer.accept(getSpine(spineIndex), spineIndex);
+                    written = true;
+                } finally {
+                    spineStates.compareAndSet(spineIndex, WRITING, written ? CLEAN : CHANGED);
+                }
             }
         }
         return foundChange;
@@ -196,8 +414,18 @@ public void printToConsole() {
     }
 
     private int forEachOnSpine(ObjIntConsumer<E> consumer, int spineIndex) {
-        AtomicReferenceArray<E> spine = getSpine(spineIndex);
-        int index = spineIndex * spineSize;
+        final int firstIndex = spineIndex * spineSize;
+        AtomicReferenceArray<E> spine = this.spines.get(spineIndex);
+        if (spine == null) {
+            int streamed = forEachNonResident(spineIndex, (element, indexInSpine) ->
+                    consumer.accept(element, PrimitiveDataService.FIRST_NID + firstIndex + indexInSpine));
+            if (streamed >= 0) {
+                return streamed;
+            }
+            spine = getSpine(spineIndex);
+            evictIfNeeded();
+        }
+        int index = firstIndex;
         int processed = 0;
         for (int indexInSpine = 0; indexInSpine < spineSize; indexInSpine++) {
             E element = spine.get(indexInSpine);
@@ -217,8 +445,22 @@ private int forEachOnSpine(ObjIntConsumer<E> consumer, int spineIndex) {
 
     public final boolean compareAndSet(int index, E expectedValue, E newValue) {
         int spineIndex = toSpineIndex(index);
-        this.changedSpineIndexes[spineIndex] = true;
-        return getSpine(spineIndex).compareAndSet(toIndexInSpine(index), expectedValue, newValue);
+        boolean bounded = evictionEnabled();
+        if (bounded) {
+            residencyLock.readLock().lock();
+        }
+        try {
+            boolean set = spineToUpdate(spineIndex).compareAndSet(toIndexInSpine(index), expectedValue, newValue);
+            if (set) {
+                changed(spineIndex);
+            }
+            return set;
+        } finally {
+            if (bounded) {
+                residencyLock.readLock().unlock();
+                evictIfNeeded();
+            }
+        }
     }
 
     /**
@@ -226,10 +468,7 @@ public final boolean compareAndSet(int index, E expectedValue, E newValue) {
      */
     @Override
     public final boolean put(int index, E element) {
-        int spineIndex = toSpineIndex(index);
-        this.changedSpineIndexes[spineIndex] = true;
-        return getSpine(spineIndex).getAndSet(toIndexInSpine(index), element) == null;
-
+        return getAndSet(index, element) == null;
     }
 
     /**
@@ -238,8 +477,20 @@ public final boolean put(int index, E element) {
     @Override
     public final E getAndSet(int index, E element) {
         int spineIndex = toSpineIndex(index);
-        this.changedSpineIndexes[spineIndex] = true;
-        return getSpine(spineIndex).getAndSet(toIndexInSpine(index), element);
+        boolean bounded = evictionEnabled();
+        if (bounded) {
+            residencyLock.readLock().lock();
+        }
+        try {
+            E previous = spineToUpdate(spineIndex).getAndSet(toIndexInSpine(index), element);
+            changed(spineIndex);
+            return previous;
+        } finally {
+            if (bounded) {
+                residencyLock.readLock().unlock();
+                evictIfNeeded();
+            }
+        }
     }
     private final int toSpineIndex(int index) {
         if (index == 0) {
@@ -265,7 +516,58 @@ private final int toIndexInSpine(int index) {
      */
     @Override
     public final E get(int index) {
-        return getSpine(toSpineIndex(index)).get(toIndexInSpine(index));
+        int spineIndex = toSpineIndex(index);
+        AtomicReferenceArray<E> spine = this.spines.get(spineIndex);
+        if (spine != null) {
+            spineHits.increment();
+            referenced(spineIndex);
+            return spine.get(toIndexInSpine(index));
+        }
+        spineMisses.increment();
+        E element = readNonResident(spineIndex, toIndexInSpine(index));
+        evictIfNeeded();
+        return element;
+    }
+
+    /**
+     * Gets the element at each index, reading in spine order, so that each spine is looked up once for the
+     * batch and the elements of a non-resident spine are read in storage order.
+     *
+     * @param indexes the indexes to get, in any order. Not modified.
+     * @param consumer receives each element, or null if not present, and the position of its index in indexes
+     */
+    public final void getAll(int[] indexes, ObjIntConsumer<E> consumer) {
+        // The location of each index in the upper half, its position in indexes in the lower half.
+        long[] locations = new long[indexes.length];
+        for (int position = 0; position < indexes.length; position++) {
+            long location = (long) toSpineIndex(indexes[position]) * spineSize + toIndexInSpine(indexes[position]);
+            locations[position] = (location << 32) | position;
+        }
+        Arrays.sort(locations);
+        int currentSpineIndex = -1;
+        AtomicReferenceArray<E> spine = null;
+        for (long location : locations) {
+            int indexInMap = (int) (location >>> 32);
+            int spineIndex = indexInMap / spineSize;
+            int indexInSpine = indexInMap % spineSize;
+            if (spineIndex != currentSpineIndex) {
+                currentSpineIndex = spineIndex;
+                spine = this.spines.get(spineIndex);
+                if (spine != null) {
+                    referenced(spineIndex);
+                }
+            }
+            if (spine != null) {
+                spineHits.increment();
+                consumer.accept(spine.get(indexInSpine), (int) location);
+            } else {
+                spineMisses.increment();
+                consumer.accept(readNonResident(spineIndex, indexInSpine), (int) location);
+                // Reading may have made the spine resident, in which case the rest of its elements are read in memory.
+                spine = this.spines.get(spineIndex);
+            }
+        }
+        evictIfNeeded();
     }
 
     /**
@@ -292,13 +594,7 @@ public final int size() {
         int size = 0;
         int currentSpineCount = this.spineCount.get();
         for (int spineIndex = 0; spineIndex < currentSpineCount; spineIndex++) {
-            AtomicReferenceArray<E> spine = getSpine(spineIndex);
-            for (int indexInSpine = 0; indexInSpine < spineSize; indexInSpine++) {
-                E element = spine.get(indexInSpine);
-                if (element != null) {
-                    size++;
-                }
-            }
+            size += forEachOnSpine((element, nid) -> {}, spineIndex);
         }
         return size;
     }
@@ -308,8 +604,15 @@ public final int size() {
      */
     @Override
     public void clear() {
-        for (int i = 0; i < spines.length(); i++) {
-            spines.set(i, null);
+        residencyLock.writeLock().lock();
+        try {
+            for (int i = 0; i < spines.length(); i++) {
+                spines.set(i, null);
+            }
+            Arrays.fill(referencedSpineIndexes, false);
+            residentSpineCount.set(0);
+        } finally {
+            residencyLock.writeLock().unlock();
         }
     }
 
@@ -326,10 +629,21 @@ public final void forEach(ObjIntConsumer<E> consumer) {
     @Override
     public final E accumulateAndGet(int index, E x, BinaryOperator<E> accumulatorFunction) {
         int spineIndex = toSpineIndex(index);
-        this.changedSpineIndexes[spineIndex] = true;
-        return getSpine(toSpineIndex(index))
-                .accumulateAndGet(toIndexInSpine(index), x, accumulatorFunction);
-
+        boolean bounded = evictionEnabled();
+        if (bounded) {
+            residencyLock.readLock().lock();
+        }
+        try {
+            E accumulated = spineToUpdate(spineIndex)
+                    .accumulateAndGet(toIndexInSpine(index), x, accumulatorFunction);
+            changed(spineIndex);
+            return accumulated;
+        } finally {
+            if (bounded) {
+                residencyLock.readLock().unlock();
+                evictIfNeeded();
+            }
+        }
     }
 
     public final void forEachParallel(ObjIntConsumer<E> consumer) throws ExecutionException, InterruptedException {
@@ -396,18 +710,12 @@ private void doParallelWork(ObjIntConsumer<E> consumer, int[][] nidLists) {
                         int nidListIndex = 0;
                         int nid = nidList[nidListIndex];
                         while (nid != Integer.MIN_VALUE) {
-                            int spineIndex = (nid + Integer.MAX_VALUE) / spineSize;
-                            AtomicReferenceArray<E> spine = getSpine(spineIndex);
-                            while (nid != Integer.MIN_VALUE &&
-                                    (nid + Integer.MAX_VALUE) / spineSize == spineIndex) {
-                                int indexInSpine = (nid + Integer.MAX_VALUE) % spineSize;
-                                consumer.accept(spine.get(indexInSpine), nid);
-                                nidListIndex++;
-                                if (nidListIndex < nidList.length) {
-                                    nid = nidList[nidListIndex];
-                                } else {
-                                    nid = Integer.MIN_VALUE;
-                                }
+                            consumer.accept(get(nid), nid);
+                            nidListIndex++;
+                            if (nidListIndex < nidList.length) {
+                                nid = nidList[nidListIndex];
+                            } else {
+                                nid = Integer.MIN_VALUE;
                             }
                         }
                     } finally {
@@ -0,0 +1,50 @@
+/*
+ * Copyright © 2015 Integrated Knowledge Management (support@ikm.dev)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dev.ikm.tinkar.collection.store;
+
+import java.util.function.ObjIntConsumer;
+
+/**
+ * A {@link ByteArrayStore} that can serve individual elements, and stream whole spines, directly from
+ * storage without materializing the spine on the heap. Spined maps backed by a paged store only keep
+ * spines that have been written to resident; reads of other spines are served by the store.
+ */
+public interface PagedByteArrayStore extends ByteArrayStore {
+
+    /**
+     * Reads a single element of a spine.
+     *
+     * @param spineIndex the index of the spine
+     * @param indexInSpine the index of the element within the spine
+     * @return a copy of the element bytes, or null if the spine or element is not present in the store
+     */
+    byte[] get(int spineIndex, int indexInSpine);
+
+    /**
+     * Streams each non-null element of a spine to the consumer, without retaining the spine.
+     *
+     * @param spineIndex the index of the spine
+     * @param consumer receives a copy of each element's bytes, and its index within the spine
+     * @return the number of elements passed to the consumer
+     */
+    int forEach(int spineIndex, ObjIntConsumer<byte[]> consumer);
+
+    /**
+     * Releases the resources held to serve reads, such as mappings of spine files.
+     */
+    default void close() {
+    }
+}
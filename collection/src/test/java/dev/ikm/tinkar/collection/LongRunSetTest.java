@@ -0,0 +1,215 @@
+/*
+ * Copyright © 2015 Integrated Knowledge Management (support@ikm.dev)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dev.ikm.tinkar.collection;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+import java.util.TreeSet;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.LongStream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class LongRunSetTest {
+
+    private static long[] forEach(LongRunSet set) {
+        LongStream.Builder values = LongStream.builder();
+        set.forEach(values::add);
+        return values.build().toArray();
+    }
+
+    private static long[] forEachInRange(LongRunSet set, long fromInclusive, long toInclusive) {
+        LongStream.Builder values = LongStream.builder();
+        set.forEachInRange(fromInclusive, toInclusive, values::add);
+        return values.build().toArray();
+    }
+
+    private static long[] toArray(TreeSet<Long> expected) {
+        return expected.stream().mapToLong(Long::longValue).toArray();
+    }
+
+    /**
+     * Compares the set to the expected values, through every read.
+     */
+    private static void assertSet(TreeSet<Long> expected, LongRunSet set) {
+        assertEquals(expected.size(), set.size());
+        assertEquals(expected.isEmpty(), set.isEmpty());
+        assertArrayEquals(toArray(expected), forEach(set), "forEach must be in ascending order");
+        for (long value : expected) {
+            assertTrue(set.contains(value));
+            assertEquals(expected.contains(value + 1), set.contains(value + 1));
+        }
+        assertArrayEquals(toArray(expected), set.toSortedArray());
+    }
+
+    @Test
+    public void testSmallSet() {
+        LongRunSet set = new LongRunSet();
+        TreeSet<Long> expected = new TreeSet<>();
+        assertSet(expected, set);
+        for (long value : new long[]{5, -3, 9, 0, Long.MIN_VALUE, Long.MAX_VALUE}) {
+            assertTrue(set.add(value));
+            assertFalse(set.add(value));
+            expected.add(value);
+        }
+        assertSet(expected, set);
+        assertFalse(set.contains(1));
+    }
+
+    @Test
+    public void testAppendsInAscendingOrder() {
+        LongRunSet set = new LongRunSet();
+        TreeSet<Long> expected = new TreeSet<>();
+        for (long value = 0; value < 10_000; value += 3) {
+            assertTrue(set.add(value));
+            expected.add(value);
+        }
+        assertSet(expected, set);
+        // A value equal to the greatest is not appended again.
+        assertFalse(set.add(9_999));
+        assertFalse(set.contains(10_000));
+    }
+
+    @Test
+    public void testOutOfOrderAddsMergeRuns() {
+        LongRunSet set = new LongRunSet();
+        TreeSet<Long> expected = new TreeSet<>();
+        // Descending values are never appended, so each fills the buffer and is merged into runs.
+        for (long value = 20_000; value > 0; value -= 2) {
+            assertTrue(set.add(value));
+            expected.add(value);
+        }
+        assertSet(expected, set);
+        for (long value = 20_000; value > 0; value -= 2) {
+            assertFalse(set.add(value));
+        }
+        assertEquals(expected.size(), set.size());
+    }
+
+    @Test
+    public void testRandomMixOfAppendsAndInserts() {
+        Random random = new Random(11);
+        for (int trial = 0; trial < 20; trial++) {
+            LongRunSet set = new LongRunSet();
+            TreeSet<Long> expected = new TreeSet<>();
+            long next = 0;
+            int count = random.nextInt(5_000);
+            for (int i = 0; i < count; i++) {
+                // Mostly appends, as when loading, with values inserted before, between and equal to them.
+                long value = random.nextInt(4) == 0 ? random.nextLong(next + 10) - 5 : (next += 1 + random.nextInt(5));
+                assertEquals(expected.add(value), set.add(value), "Adding " + value);
+            }
+            assertSet(expected, set);
+            long from = random.nextLong(next + 1);
+            long to = from + random.nextLong(next + 1);
+            assertArrayEquals(toArray(new TreeSet<>(expected.subSet(from, true, to, true))),
+                    forEachInRange(set, from, to));
+        }
+    }
+
+    @Test
+    public void testForEachInRange() {
+        LongRunSet set = new LongRunSet();
+        for (long value = 0; value < 1_000; value += 10) {
+            set.add(value);
+        }
+        for (long value = 995; value > 0; value -= 10) {
+            set.add(value);
+        }
+        assertArrayEquals(new long[]{495, 500, 505, 510}, forEachInRange(set, 491, 510));
+        assertArrayEquals(new long[]{0, 5}, forEachInRange(set, Long.MIN_VALUE, 5));
+        assertArrayEquals(new long[]{990, 995}, forEachInRange(set, 990, Long.MAX_VALUE));
+        assertArrayEquals(new long[]{}, forEachInRange(set, 501, 504));
+        assertArrayEquals(new long[]{}, forEachInRange(set, 510, 500));
+    }
+
+    @Test
+    public void testOfSortedThenAdd() {
+        long[] sorted = LongStream.range(0, 200).map(i -> i * 2).toArray();
+        LongRunSet set = LongRunSet.ofSorted(sorted);
+        TreeSet<Long> expected = new TreeSet<>();
+        LongStream.of(sorted).forEach(expected::add);
+        assertSet(expected, set);
+        for (long value : new long[]{401, 403, 1, 3, 0, 402, 399}) {
+            assertEquals(expected.add(value), set.add(value));
+        }
+        assertSet(expected, set);
+    }
+
+    @Test
+    public void testRemoveIf() {
+        LongRunSet set = new LongRunSet();
+        TreeSet<Long> expected = new TreeSet<>();
+        for (long value = 0; value < 500; value++) {
+            set.add(value % 2 == 0 ? value : 1_000 - value);
+            expected.add(value % 2 == 0 ? value : 1_000 - value);
+        }
+        assertFalse(set.removeIf(value -> value < 0));
+        assertTrue(set.removeIf(value -> value % 3 == 0));
+        expected.removeIf(value -> value % 3 == 0);
+        assertSet(expected, set);
+
+        // Few enough values remain for a small set, which must still accept adds.
+        assertTrue(set.removeIf(value -> value > 50));
+        expected.removeIf(value -> value > 50);
+        assertSet(expected, set);
+        assertTrue(set.add(3));
+        expected.add(3L);
+        assertSet(expected, set);
+    }
+
+    @Test
+    public void testConcurrentReadersSeeAscendingValues() throws InterruptedException {
+        LongRunSet set = new LongRunSet();
+        AtomicBoolean writing = new AtomicBoolean(true);
+        Thread writer = new Thread(() -> {
+            Random random = new Random(3);
+            for (long value = 0; value < 200_000; value += 2) {
+                set.add(value);
+                set.add(random.nextLong(value + 1));
+            }
+            writing.set(false);
+        });
+        AtomicReference<String> failure = new AtomicReference<>();
+        Thread reader = new Thread(() -> {
+            while (writing.get() && failure.get() == null) {
+                long[] previous = {Long.MIN_VALUE};
+                set.forEach(value -> {
+                    if (value <= previous[0]) {
+                        failure.compareAndSet(null, value + " after " + previous[0]);
+                    }
+                    previous[0] = value;
+                });
+            }
+        });
+        writer.start();
+        reader.start();
+        writer.join();
+        reader.join();
+        assertNull(failure.get());
+        long[] values = forEach(set);
+        assertEquals(values.length, set.size());
+        for (long value = 0; value < 200_000; value += 2) {
+            assertTrue(set.contains(value));
+        }
+    }
+}
@@ -0,0 +1,141 @@
+/*
+ * Copyright © 2015 Integrated Knowledge Management (support@ikm.dev)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dev.ikm.tinkar.collection;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class SpinedIntObjectMapTest {
+
+    private static final int SPINES = 8;
+    private static final int WRITERS = 4;
+    private static final int INCREMENTS_PER_WRITER = 50_000;
+
+    /**
+     * A map backed by copies of its spines in memory, standing in for spine files.
+     */
+    private static class StoredMap extends SpinedIntObjectMap<Integer> {
+        final Map<Integer, AtomicReferenceArray<Integer>> store;
+
+        StoredMap(Map<Integer, AtomicReferenceArray<Integer>> store, int spineCount) {
+            super(spineCount);
+            this.store = store;
+        }
+
+        @Override
+        protected AtomicReferenceArray<Integer> readSpine(int spineIndex) {
+            AtomicReferenceArray<Integer> stored = store.get(spineIndex);
+            return stored == null ? new AtomicReferenceArray<>(spineSize) : copy(stored);
+        }
+
+        @Override
+        protected void writeBackSpine(int spineIndex, AtomicReferenceArray<Integer> spine) {
+            store.put(spineIndex, copy(spine));
+        }
+
+        boolean write() {
+            fileSemaphore.acquireUninterruptibly();
+            try {
+                return forEachChangedSpine((spine, spineIndex) -> {
+                    store.put(spineIndex, copy(spine));
+                    // Widens the window in which a change can land after the spine was copied.
+                    Thread.yield();
+                });
+            } finally {
+                fileSemaphore.release();
+            }
+        }
+
+        private static AtomicReferenceArray<Integer> copy(AtomicReferenceArray<Integer> spine) {
+            AtomicReferenceArray<Integer> copy = new AtomicReferenceArray<>(spine.length());
+            for (int i = 0; i < spine.length(); i++) {
+                copy.set(i, spine.get(i));
+            }
+            return copy;
+        }
+    }
+
+    private static int nid(int index) {
+        return Integer.MIN_VALUE + 1 + index;
+    }
+
+    @Test
+    public void testChangesDuringWriteAreNotLost() throws InterruptedException {
+        assertWritesKeepConcurrentChanges(Integer.MAX_VALUE);
+    }
+
+    @Test
+    public void testChangesDuringWriteAreNotLostWithEviction() throws InterruptedException {
+        assertWritesKeepConcurrentChanges(2);
+    }
+
+    /**
+     * Accumulates into the map from several threads while another repeatedly writes the changed spines, as a
+     * checkpoint does. Once all changes are written, the stored spines must hold every change.
+     */
+    private void assertWritesKeepConcurrentChanges(int maxResidentSpines) throws InterruptedException {
+        Map<Integer, AtomicReferenceArray<Integer>> store = new ConcurrentHashMap<>();
+        StoredMap map = new StoredMap(store, 0);
+        int elementCount = SPINES * map.spineSize;
+        // Create the spines before bounding residency, so every spine exists in the store or in memory.
+        for (int i = 0; i < elementCount; i += map.spineSize) {
+            map.put(nid(i), 0);
+        }
+        map.setMaxResidentSpines(maxResidentSpines);
+
+        AtomicBoolean writing = new AtomicBoolean(true);
+        Thread writer = new Thread(() -> {
+            while (writing.get()) {
+                map.write();
+                Thread.yield();
+            }
+        });
+        writer.start();
+        Thread[] mutators = new Thread[WRITERS];
+        for (int t = 0; t < WRITERS; t++) {
+            mutators[t] = new Thread(() -> {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                for (int i = 0; i < INCREMENTS_PER_WRITER; i++) {
+                    map.accumulateAndGet(nid(random.nextInt(elementCount)), 1,
+                            (current, increment) -> current == null ? increment : current + increment);
+                }
+            });
+            mutators[t].start();
+        }
+        for (Thread mutator : mutators) {
+            mutator.join();
+        }
+        writing.set(false);
+        writer.join();
+        map.write();
+
+        long[] inMemory = {0};
+        map.forEach((count, nid) -> inMemory[0] += count);
+        assertEquals((long) WRITERS * INCREMENTS_PER_WRITER, inMemory[0], "Changes lost in memory");
+
+        StoredMap reopened = new StoredMap(store, map.getSpineCount());
+        long[] stored = {0};
+        reopened.forEach((count, nid) -> stored[0] += count);
+        assertEquals((long) WRITERS * INCREMENTS_PER_WRITER, stored[0], "Changes lost from the store");
+    }
+}
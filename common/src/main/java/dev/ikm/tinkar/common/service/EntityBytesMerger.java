@@ -0,0 +1,291 @@
+/*
+ * Copyright © 2015 Integrated Knowledge Management (support@ikm.dev)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dev.ikm.tinkar.common.service;
+
+import org.eclipse.collections.api.factory.Sets;
+import org.eclipse.collections.api.set.MutableSet;
+import org.eclipse.collections.api.set.primitive.MutableIntSet;
+import org.eclipse.collections.impl.factory.primitive.IntSets;
+
+import java.util.Arrays;
+import java.util.UUID;
+import java.util.function.IntPredicate;
+
+import static dev.ikm.tinkar.common.service.PrimitiveDataService.STAMP_DATA_TYPE;
+
+/**
+ * Merges the serialized bytes of two copies of an entity, for {@link PrimitiveDataService#merge(byte[], byte[])}.
+ * <p>
+ * The version arrays of both inputs are addressed by offset into the input arrays: versions are de-duplicated
+ * by stamp nid, sorted by offset, and copied to an exactly sized result. When two distinct chronology records
+ * remain together with other versions (UUIDs were added), they are combined into one record, which is the only
+ * array the merge builds rather than copies.
+ */
+final class EntityBytesMerger {
+
+    private EntityBytesMerger() {
+    }
+
+    static byte[] merge(byte[] oldBytes, byte[] newBytes) {
+        return merge(oldBytes, newBytes, stampNid -> PrimitiveData.get().isCanceledStampNid(stampNid));
+    }
+
+    /**
+     * @param oldBytes the existing entity bytes
+     * @param newBytes the entity bytes to merge, whose versions take precedence for versions with the same stamp
+     * @param canceledStamp tests if a stamp nid is canceled. Only consulted when the result has more than two arrays.
+     * @return the merged entity bytes
+     */
+    static byte[] merge(byte[] oldBytes, byte[] newBytes, IntPredicate canceledStamp) {
+        byte entityFormat = newBytes[8];
+        int capacity = readInt(newBytes, 0) + readInt(oldBytes, 0);
+        // start and length of each array, excluding its size prefix, and the source it is in.
+        // One more for a combined chronology record.
+        int[] starts = new int[capacity + 1];
+        int[] lengths = new int[capacity + 1];
+        byte[][] sources = new byte[capacity + 1][];
+        MutableIntSet stampsInSet = IntSets.mutable.empty();
+        int count = addArrays(newBytes, entityFormat, starts, lengths, sources, 0, stampsInSet);
+        count = addArrays(oldBytes, entityFormat, starts, lengths, sources, count, stampsInSet);
+
+        int[] order = sortedDistinct(starts, lengths, sources, count);
+        int orderSize = order.length;
+
+        if (orderSize > 2) {
+            int chronologyCount = 0;
+            int kept = 0;
+            for (int i = 0; i < orderSize; i++) {
+                int array = order[i];
+                byte[] source = sources[array];
+                int start = starts[array];
+                switch (source[start]) {
+                    // CONCEPT_CHRONOLOGY, PATTERN_CHRONOLOGY, SEMANTIC_CHRONOLOGY, STAMP
+                    case 1, 2, 3, STAMP_DATA_TYPE -> chronologyCount++;
+                    // CONCEPT_VERSION, PATTERN_VERSION, SEMANTIC_VERSION, STAMP_VERSION
+                    case 4, 5, 6, 25 -> {
+                        if (canceledStamp.test(readInt(source, start + 1))) {
+                            // Garbage collection for canceled versions...
+                            continue;
+                        }
+                    }
+                    default -> {
+                        // Leave all versions. Need to retain canceled version if component is a stamp.
+                    }
+                }
+                order[kept++] = array;
+            }
+            orderSize = kept;
+            if (chronologyCount > 1) {
+                // UUIDs were added, the chronology records must be combined.
+                orderSize = combineChronologies(starts, lengths, sources, count, order, orderSize);
+            }
+        }
+
+        int resultSize = Integer.BYTES + 1 + Integer.BYTES;
+        for (int i = 0; i < orderSize; i++) {
+            resultSize += Integer.BYTES + lengths[order[i]];
+        }
+        byte[] result = new byte[resultSize];
+        int position = writeInt(result, 0, orderSize);
+        for (int i = 0; i < orderSize; i++) {
+            int array = order[i];
+            int length = lengths[array];
+            if (i == 0) {
+                // Add 4 to have room for the number of versions.
+                // Add 1 for the entity format token
+                position = writeInt(result, position, length + 5);
+                result[position++] = entityFormat;
+                System.arraycopy(sources[array], starts[array], result, position, length);
+                position = writeInt(result, position + length, orderSize - 1);
+            } else {
+                position = writeInt(result, position, length);
+                System.arraycopy(sources[array], starts[array], result, position, length);
+                position += length;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Records the offsets of the arrays in one input. Versions with a stamp already recorded are skipped,
+     * as a newer version exists (inputs are added newest first). There should be no concurrent editing on
+     * versions with the same stamp.
+     *
+     * @return the updated count of recorded arrays
+     */
+    private static int addArrays(byte[] bytes, byte entityFormat, int[] starts, int[] lengths, byte[][] sources,
+                                 int count, MutableIntSet stampsInSet) {
+        boolean stampDataType = bytes[9] == STAMP_DATA_TYPE;
+        int arrayCount = readInt(bytes, 0);
+        int position = Integer.BYTES;
+        for (int i = 0; i < arrayCount; i++) {
+            int arraySize = readInt(bytes, position);
+            position += Integer.BYTES;
+            if (i == 0) {
+                byte localEntityFormat = bytes[position];
+                if (localEntityFormat != entityFormat) {
+                    throw new IllegalStateException("All entities should be the same format. Found: " + entityFormat + " != " + localEntityFormat);
+                }
+                // The first array is the chronicle, followed by the number of versions,
+                // which is rewritten after merging.
+                int length = arraySize - 5;
+                starts[count] = position + 1;
+                lengths[count] = length;
+                sources[count++] = bytes;
+                int versionCount = readInt(bytes, position + 1 + length);
+                if (versionCount != arrayCount - 1) {
+                    throw new IllegalStateException("Malformed data. versionCount: " +
+                            versionCount + " arrayCount: " + arrayCount);
+                }
+            } else if (stampDataType || stampsInSet.add(readInt(bytes, position + 1))) {
+                starts[count] = position;
+                lengths[count] = arraySize;
+                sources[count++] = bytes;
+            }
+            position += arraySize;
+        }
+        return count;
+    }
+
+    /**
+     * Sorts the recorded arrays by their bytes (signed, shorter first when one is a prefix of the other),
+     * dropping arrays whose bytes equal another's. Insertion sort, since each input is already in order
+     * and version counts are small.
+     *
+     * @return indexes of the distinct arrays, in sorted order
+     */
+    private static int[] sortedDistinct(int[] starts, int[] lengths, byte[][] sources, int count) {
+        int[] order = new int[count];
+        int size = 0;
+        for (int array = 0; array < count; array++) {
+            int insertAt = size;
+            int comparison = 1;
+            while (insertAt > 0) {
+                comparison = compare(starts, lengths, sources, order[insertAt - 1], array);
+                if (comparison <= 0) {
+                    break;
+                }
+                insertAt--;
+            }
+            if (insertAt > 0 && comparison == 0) {
+                continue;
+            }
+            System.arraycopy(order, insertAt, order, insertAt + 1, size - insertAt);
+            order[insertAt] = array;
+            size++;
+        }
+        return size == count ? order : Arrays.copyOf(order, size);
+    }
+
+    private static int compare(int[] starts, int[] lengths, byte[][] sources, int array1, int array2) {
+        return Arrays.compare(sources[array1], starts[array1], starts[array1] + lengths[array1],
+                sources[array2], starts[array2], starts[array2] + lengths[array2]);
+    }
+
+    private static int readInt(byte[] bytes, int position) {
+        return ((bytes[position] & 0xFF) << 24) |
+                ((bytes[position + 1] & 0xFF) << 16) |
+                ((bytes[position + 2] & 0xFF) << 8) |
+                ((bytes[position + 3] & 0xFF) << 0);
+    }
+
+    private static int writeInt(byte[] bytes, int position, int value) {
+        bytes[position] = (byte) (value >>> 24);
+        bytes[position + 1] = (byte) (value >>> 16);
+        bytes[position + 2] = (byte) (value >>> 8);
+        bytes[position + 3] = (byte) value;
+        return position + Integer.BYTES;
+    }
+
+    /**
+     * Replaces the chronology records in the order with one record holding the UUIDs of all of them, in the
+     * iteration order of a set they are added to in sorted record order, and the remaining bytes of the first.
+     * The combined record is first, followed by the versions in their sorted order.
+     *
+     * @param combined the index to record the combined chronology record at
+     * @return the updated size of the order
+     */
+    private static int combineChronologies(int[] starts, int[] lengths, byte[][] sources, int combined,
+                                           int[] order, int orderSize) {
+        MutableSet<UUID> uuids = Sets.mutable.empty();
+        int first = -1;
+        int kept = 0;
+        for (int i = 0; i < orderSize; i++) {
+            int array = order[i];
+            byte[] source = sources[array];
+            int start = starts[array];
+            if (!isChronology(source[start])) {
+                order[kept++] = array;
+                continue;
+            }
+            if (first < 0) {
+                first = array;
+            }
+            // After the entity type token and the entity nid.
+            int position = start + 1 + Integer.BYTES;
+            uuids.add(new UUID(readLong(source, position), readLong(source, position + Long.BYTES)));
+            int additionalUuidLongs = source[position + 2 * Long.BYTES];
+            position += 2 * Long.BYTES + 1;
+            for (int uuid = 0; uuid < additionalUuidLongs / 2; uuid++) {
+                uuids.add(new UUID(readLong(source, position), readLong(source, position + Long.BYTES)));
+                position += 2 * Long.BYTES;
+            }
+        }
+
+        byte[] source = sources[first];
+        int start = starts[first];
+        int uuidsStart = start + 1 + Integer.BYTES;
+        int restStart = uuidsStart + 2 * Long.BYTES + 1 + source[uuidsStart + 2 * Long.BYTES] * Long.BYTES;
+        int restLength = start + lengths[first] - restStart;
+        byte[] chronology = new byte[1 + Integer.BYTES + uuids.size() * 2 * Long.BYTES + 1 + restLength];
+        // The entity type token and the entity nid.
+        System.arraycopy(source, start, chronology, 0, 1 + Integer.BYTES);
+        int position = 1 + Integer.BYTES;
+        boolean firstUuid = true;
+        for (UUID uuid : uuids) {
+            position = writeLong(chronology, position, uuid.getMostSignificantBits());
+            position = writeLong(chronology, position, uuid.getLeastSignificantBits());
+            if (firstUuid) {
+                chronology[position++] = (byte) (uuids.size() * 2 - 2);
+                firstUuid = false;
+            }
+        }
+        System.arraycopy(source, restStart, chronology, position, restLength);
+
+        starts[combined] = 0;
+        lengths[combined] = chronology.length;
+        sources[combined] = chronology;
+        System.arraycopy(order, 0, order, 1, kept);
+        order[0] = combined;
+        return kept + 1;
+    }
+
+    private static boolean isChronology(byte token) {
+        // CONCEPT_CHRONOLOGY, PATTERN_CHRONOLOGY, SEMANTIC_CHRONOLOGY, STAMP
+        return switch (token) {
+            case 1, 2, 3, STAMP_DATA_TYPE -> true;
+            default -> false;
+        };
+    }
+
+    private static long readLong(byte[] bytes, int position) {
+        return ((long) readInt(bytes, position) << 32) | (readInt(bytes, position + Integer.BYTES) & 0xFFFFFFFFL);
+    }
+
+    private static int writeLong(byte[] bytes, int position, long value) {
+        return writeInt(bytes, writeInt(bytes, position, (int) (value >>> 32)), (int) value);
+    }
+}
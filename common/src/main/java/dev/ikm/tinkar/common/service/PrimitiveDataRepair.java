@@ -15,6 +15,8 @@
  */
 package dev.ikm.tinkar.common.service;
 
+import org.eclipse.collections.api.IntIterable;
+
 /**
  * Methods to handle data repair tasks intended for fixing issues related to
  * legacy imports, or data received from 3rd parties that might have to be repaired
@@ -30,6 +32,16 @@ public interface PrimitiveDataRepair {
      */
     void erase(int nid);
 
+    /**
+     * Erase all references to components associated with each of these native
+     * identifiers, <b>bypassing the change set journaling process</b>. Implementations
+     * may share work across the erasures, so prefer this to repeated calls to {@link #erase(int)}.
+     * @param nids native identifiers for the components to erase.
+     */
+    default void eraseAll(IntIterable nids) {
+        nids.forEach(this::erase);
+    }
+
     /**
      * Bypasses the normal merge process of merging versions.
      * @param nid identifier to associate these bytes to with.
@@ -17,29 +17,17 @@
 
 import dev.ikm.tinkar.common.id.EntityKey;
 import dev.ikm.tinkar.common.id.PublicId;
-import dev.ikm.tinkar.common.sets.ConcurrentHashSet;
-import dev.ikm.tinkar.common.util.uuid.UuidUtil;
-import io.activej.bytebuf.ByteBuf;
-import io.activej.bytebuf.ByteBufPool;
+import dev.ikm.tinkar.common.sets.ConcurrentNidSet;
 import org.eclipse.collections.api.block.procedure.primitive.IntProcedure;
 import org.eclipse.collections.api.factory.Lists;
-import org.eclipse.collections.api.factory.Sets;
 import org.eclipse.collections.api.list.ImmutableList;
 import org.eclipse.collections.api.list.ListIterable;
-import org.eclipse.collections.api.list.MutableList;
-import org.eclipse.collections.api.list.primitive.ByteList;
 import org.eclipse.collections.api.list.primitive.ImmutableIntList;
 import org.eclipse.collections.api.list.primitive.MutableIntList;
-import org.eclipse.collections.api.list.primitive.MutableLongList;
-import org.eclipse.collections.api.set.MutableSet;
 import org.eclipse.collections.api.set.primitive.MutableLongSet;
-import org.eclipse.collections.impl.factory.primitive.ByteLists;
 import org.eclipse.collections.impl.factory.primitive.IntLists;
-import org.eclipse.collections.impl.factory.primitive.LongLists;
 import org.eclipse.collections.impl.factory.primitive.LongSets;
 
-import java.io.IOException;
-import java.io.UncheckedIOException;
 import java.util.Arrays;
 import java.util.Optional;
 import java.util.UUID;
@@ -52,7 +40,11 @@ public interface PrimitiveDataService {
     int FIRST_NID = Integer.MIN_VALUE + 1;
     byte STAMP_DATA_TYPE = 7;
 
-    ConcurrentHashSet<Integer> canceledStampNids = new ConcurrentHashSet<>();
+    /**
+     * The nids of canceled stamps, consulted for every version decoded or merged, so held as a bitset over the
+     * nid space rather than a set of boxed nids. Data services that persist it restore it when opened.
+     */
+    ConcurrentNidSet canceledStampNids = new ConcurrentNidSet();
 
     static int nidForUuids(ConcurrentMap<UUID, Integer> uuidNidMap, NidGenerator nidGenerator, ImmutableList<UUID> uuidList) {
         switch (uuidList.size()) {
@@ -144,188 +136,24 @@ static byte[] merge(byte[] oldBytes, byte[] newBytes) {
         if (Arrays.equals(oldBytes, newBytes)) {
             return oldBytes;
         }
-        try {
-            MutableSet<ByteList> byteArraySet = Sets.mutable.empty();
-            MutableIntList stampList = IntLists.mutable.withInitialCapacity(16);
-            byte entityFormat = newBytes[8];
-            addToSet(newBytes, byteArraySet, stampList, entityFormat);
-            addToSet(oldBytes, byteArraySet, stampList, entityFormat);
-            MutableList<ByteList> byteArrayList = byteArraySet.toList();
-
-            byteArrayList.sort((o1, o2) -> {
-                int minSize = Math.min(o1.size(), o2.size());
-                for (int i = 0; i < minSize; i++) {
-                    if (o1.get(i) != o2.get(i)) {
-                        return Integer.compare(o1.get(i), o2.get(i));
-                    }
-                }
-                return Integer.compare(o1.size(), o2.size());
-            });
-            // Remove canceled versions here
-            if (byteArrayList.size() > 2) {
-                MutableList<ByteList> chronologyByteLists = Lists.mutable.empty();
-                MutableIntList indexesToRemove = IntLists.mutable.empty();
-                for (int i = 0; i < byteArrayList.size(); i++) {
-                    ByteList versionBytes = byteArrayList.get(i);
-                    byte versionToken = versionBytes.get(0);
-                    switch (versionToken) {
-                        /*
-                            CONCEPT_CHRONOLOGY((byte) 1, ConceptChronology.class),
-                            PATTERN_CHRONOLOGY((byte) 2, PatternChronology.class),
-                            SEMANTIC_CHRONOLOGY((byte) 3, SemanticChronology.class),
-                            STAMP(STAMP_DATA_TYPE, Stamp.class)
-                        */
-                        case 1, 2, 3, STAMP_DATA_TYPE-> chronologyByteLists.add(versionBytes);
-
-                        /*
-                            CONCEPT_VERSION((byte) 4, ConceptVersion.class),
-                            PATTERN_VERSION((byte) 5, PatternVersion.class),
-                            SEMANTIC_VERSION((byte) 6, SemanticVersion.class),
-                            STAMP_VERSION((byte) 25, Stamp.class)
-                         */
-                        case 4, 5, 6, 25 -> {
-                            int stampNid = ((versionBytes.get(1) & 0xFF) << 24) |
-                                    ((versionBytes.get(2) & 0xFF) << 16) |
-                                    ((versionBytes.get(3) & 0xFF) << 8) |
-                                    ((versionBytes.get(4) & 0xFF) << 0);
-                            if (PrimitiveData.get().isCanceledStampNid(stampNid)) {
-                                // Garbage collection for canceled versions...
-                                indexesToRemove.add(i);
-                            }
-                        }
-                        default -> {
-                            // Leave all versions. Need to retain canceled version if component is a stamp.
-                        }
-                    }
-                }
-                indexesToRemove.reverseThis().forEach(index -> byteArrayList.remove(index));
-
-                // UUIDs were added...
-                if (chronologyByteLists.size() > 1) {
-                    // need to merge into one record for the chronology...
-                    MutableSet<UUID> uuids = Sets.mutable.empty();
-                    for (ByteList chronologyByteList : chronologyByteLists) {
-                        MutableLongList longList = LongLists.mutable.empty();
-                        ByteBuf chronologyBytes = ByteBuf.wrapForReading(chronologyByteList.toArray());
-                        chronologyBytes.readByte(); // EntityType token
-                        chronologyBytes.readInt(); // Entity nid
-                        longList.add(chronologyBytes.readLong()); // Entity most significant bits
-                        longList.add(chronologyBytes.readLong()); // Entity least significant bits
-                        int additionalUuidLongs = chronologyBytes.readByte(); // Additional UUID longs...
-                        for (int i = 0; i < additionalUuidLongs; i++) {
-                            longList.add(chronologyBytes.readLong());
-                        }
-                        uuids.addAll(UuidUtil.toList(longList.toArray()).castToList());
-                    }
-                    ImmutableList<UUID> uuidList = uuids.toImmutableList();
-                    ByteBuf chronologyBytes = ByteBuf.wrapForReading(chronologyByteLists.get(0).toArray());
-                    ByteBuf writeBuf = ByteBufPool.allocate(16 * uuidList.size() + chronologyBytes.array().length);
-                    writeBuf.writeByte(chronologyBytes.readByte()); // EntityType token
-                    writeBuf.writeInt(chronologyBytes.readInt()); // Entity nid
-                    chronologyBytes.readLong(); // Discard msb
-                    chronologyBytes.readLong(); // Discard lsb
-                    int discardAdditionalUuidLongs = chronologyBytes.readByte();
-                    for (int i = 0; i < discardAdditionalUuidLongs; i++) {
-                        chronologyBytes.readLong();
-                    }
-
-                    // write the new UUIDs.
-                    writeBuf.writeLong(uuidList.get(0).getMostSignificantBits());
-                    writeBuf.writeLong(uuidList.get(0).getLeastSignificantBits());
-                    int additionalUuidLongs = uuidList.size() * 2 - 2;
-                    writeBuf.writeByte((byte) additionalUuidLongs);
-                    for (int uuidIndex = 1; uuidIndex < uuidList.size(); uuidIndex++) {
-                        writeBuf.writeLong(uuidList.get(uuidIndex).getMostSignificantBits());
-                        writeBuf.writeLong(uuidList.get(uuidIndex).getLeastSignificantBits());
-                    }
-                    while (chronologyBytes.canRead()) {
-                        writeBuf.writeByte(chronologyBytes.readByte());
-                    }
-                    byteArrayList.removeAll(chronologyByteLists);
-                    byteArrayList.add(0, ByteLists.immutable.of(writeBuf.asArray()));
-                }
-            }
-
-            ByteBuf byteBuf = ByteBufPool.allocate(oldBytes.length + newBytes.length);
-            byteBuf.writeInt(byteArrayList.size());
-            boolean first = true;
-            for (ByteList byteArray : byteArrayList) {
-                if (first) {
-                    // Add 4 to have room for the number of versions.
-                    // Add 1 for the entity format token
-                    byteBuf.writeInt(byteArray.size() + 5);
-                    byteBuf.writeByte(entityFormat);
-                    byteArray.forEach(b -> {
-                        byteBuf.put(b);
-                    });
-                    // write the number of versions...
-                    byteBuf.writeInt(byteArrayList.size() - 1);
-                    first = false;
-                } else {
-                    byteBuf.writeInt(byteArray.size());
-                    byteArray.forEach(b -> {
-                        byteBuf.put(b);
-                    });
-                }
-            }
-            return byteBuf.asArray();
-        } catch (IOException e) {
-            throw new UncheckedIOException(e);
-        }
+        return EntityBytesMerger.merge(oldBytes, newBytes);
     }
 
     /**
-     * @param bytes
-     * @param byteArraySet
-     * @param stampsInSet  represents the stamps already added to the set. If two versions with the same stamp are being merged,
-     *                     the newer version must be the merged version, as it represents a newer edit. There is an assumption that
-     *                     the edits of a single version under a single stamp value are sequential, not concurrent.
-     * @throws IOException
+     * Merges as {@link #merge(byte[], byte[])} without removing canceled versions, for use when
+     * canceled stamps cannot be looked up, such as while a data store replays its log on open.
      */
-    private static void addToSet(byte[] bytes, MutableSet<ByteList> byteArraySet, MutableIntList stampsInSet,
-                                 byte entityFormat) throws IOException {
-        ByteBuf readBuf = ByteBuf.wrapForReading(bytes);
-        boolean stampDataType = bytes[9] == STAMP_DATA_TYPE;
-        int arrayCount = readBuf.readInt();
-        for (int i = 0; i < arrayCount; i++) {
-            int arraySize = readBuf.readInt();
-            if (i == 0) {
-                byte localEntityFormat = readBuf.readByte();
-                if (localEntityFormat != entityFormat) {
-                    throw new IllegalStateException("All entities should be the same format. Found: " + entityFormat + " != " + localEntityFormat);
-                }
-                // The first array is the chronicle, and has a field for the number of versions...
-                // Add one for the entityFormat token.
-                byte[] newArray = new byte[arraySize - 5];
-                readBuf.read(newArray);
-                byteArraySet.add(ByteLists.immutable.of(newArray));
-                int versionCount = readBuf.readInt();
-                if (versionCount != arrayCount - 1) {
-                    throw new IllegalStateException("Malformed data. versionCount: " +
-                            versionCount + " arrayCount: " + arrayCount);
-                }
-                // Version count is not included as the version count may change as a result of merge.
-                // It must be added back in after sorting unique versions.
-            } else {
-                byte[] newArray = new byte[arraySize];
-                readBuf.read(newArray);
-                if (stampDataType) {
-                    byteArraySet.add(ByteLists.immutable.of(newArray));
-                } else {
-                    int stampNid = ((newArray[1] & 0xFF) << 24) |
-                            ((newArray[2] & 0xFF) << 16) |
-                            ((newArray[3] & 0xFF) << 8) |
-                            ((newArray[4] & 0xFF) << 0);
-                    if (stampsInSet.contains(stampNid)) {
-                        // Don't add, a newer version already exists (assuming addToSet is called in order of newest to oldest bytearray)
-                        // There should be no concurrent editing on versions with the same stamp.
-                    } else {
-                        byteArraySet.add(ByteLists.immutable.of(newArray));
-                        stampsInSet.add(stampNid);
-                    }
-                }
-            }
+    static byte[] mergeRetainingCanceled(byte[] oldBytes, byte[] newBytes) {
+        if (oldBytes == null) {
+            return newBytes;
+        }
+        if (newBytes == null) {
+            return oldBytes;
         }
+        if (Arrays.equals(oldBytes, newBytes)) {
+            return oldBytes;
+        }
+        return EntityBytesMerger.merge(oldBytes, newBytes, stampNid -> false);
     }
 
     default boolean isCanceledStampNid(int stampNid) {
@@ -342,6 +170,19 @@ static long[] mergeCitations(long[] citation1, long[] citation2) {
         if (Arrays.equals(citation1, citation2)) {
             return citation1;
         }
+        if (citation2.length == 1) {
+            // Common case of adding a single citation to a sorted array: insert without rebuilding a set.
+            int insertionPoint = Arrays.binarySearch(citation1, citation2[0]);
+            if (insertionPoint >= 0) {
+                return citation1;
+            }
+            insertionPoint = -insertionPoint - 1;
+            long[] merged = new long[citation1.length + 1];
+            System.arraycopy(citation1, 0, merged, 0, insertionPoint);
+            merged[insertionPoint] = citation2[0];
+            System.arraycopy(citation1, insertionPoint, merged, insertionPoint + 1, citation1.length - insertionPoint);
+            return merged;
+        }
         MutableLongSet citationSet = LongSets.mutable.of(citation1);
         citationSet.addAll(citation2);
         return citationSet.toSortedArray();
@@ -359,6 +200,24 @@ default int nidForPublicId(PublicId publicId) {
 
     int nidForUuids(ImmutableList<UUID> uuidList);
 
+    /**
+     * Resolves a batch of single UUID public ids, as {@link #nidForUuids(UUID...)} would for each UUID, assigning
+     * nids to UUIDs not yet known. Data services with a primitive UUID index resolve the batch without creating a
+     * {@link UUID} for each.
+     *
+     * @param msbLsbPairs the most and then least significant bits of each UUID
+     * @param outNids receives the nid of each UUID, at the index of its pair
+     */
+    default void nidsForUuids(long[] msbLsbPairs, int[] outNids) {
+        int count = msbLsbPairs.length / 2;
+        if (outNids.length < count) {
+            throw new IllegalArgumentException("outNids length " + outNids.length + " is less than UUID count " + count);
+        }
+        for (int i = 0; i < count; i++) {
+            outNids[i] = nidForUuids(new UUID(msbLsbPairs[2 * i], msbLsbPairs[2 * i + 1]));
+        }
+    }
+
     boolean hasUuid(UUID uuid);
 
     boolean hasPublicId(PublicId publicId);
@@ -374,6 +233,21 @@ default int nidForPublicId(PublicId publicId) {
 
     byte[] getBytes(int nid);
 
+    /**
+     * Gets the bytes of a batch of nids. Providers override this to read the batch in storage order, or to
+     * pipeline remote requests, rather than making a separate read for each nid.
+     *
+     * @param nids the nids to get, in any order
+     * @return the bytes of each nid, at the same position as the nid, or null if the nid has no bytes
+     */
+    default byte[][] getBytes(int[] nids) {
+        byte[][] bytes = new byte[nids.length][];
+        for (int i = 0; i < nids.length; i++) {
+            bytes[i] = getBytes(nids[i]);
+        }
+        return bytes;
+    }
+
     /**
      * If the specified nid (native identifier -- an int) is not already associated
      * with a value or is associated with null, associates it with the given non-null value.
@@ -421,6 +295,22 @@ default byte[] merge(int nid, int patternNid, int referencedComponentNid, byte[]
      */
     byte[] merge(int nid, int patternNid, int referencedComponentNid, byte[] value, Object sourceObject, DataActivity activity);
 
+    /**
+     * Begins a bulk ingest. Until {@link #endBulkIngest()}, a provider may defer maintenance of its citation,
+     * pattern membership and search indexes, and of its durability logs, so that merges only store bytes.
+     * Semantics merged during a bulk ingest may not be found by component or pattern until the ingest ends,
+     * and the merges may not be durable until then.
+     */
+    default void beginBulkIngest() {
+    }
+
+    /**
+     * Ends a bulk ingest, bringing deferred indexes up to date with the entities merged since
+     * {@link #beginBulkIngest()}, and making the merges durable.
+     */
+    default void endBulkIngest() {
+    }
+
     PrimitiveDataSearchResult[] search(String query, int maxResultSize) throws Exception;
 
     CompletableFuture<Void> recreateLuceneIndex() throws Exception;
@@ -465,6 +355,14 @@ default void addCanceledStampNid(int stampNid) {
         canceledStampNids.add(stampNid);
     }
 
+    /**
+     * @return the fields of every stamp in the store, maintained as stamps are merged, or null if this data
+     * service does not maintain a stamp table, in which case stamps must be read from their entities.
+     */
+    default StampTable stampTable() {
+        return null;
+    }
+
     /**
      * @return user-friendly name for this data service
      */
@@ -27,5 +27,38 @@ public enum ServiceKeys {
     /**
      * Unique to each cache period. It is reset each time CachingService.reset() is called.
      */
-    CACHE_PERIOD_UUID
+    CACHE_PERIOD_UUID,
+    /**
+     * Maximum number of spines (Integer) each spined array map of a data store keeps in memory.
+     * When absent, spines that have been loaded stay resident.
+     */
+    MAX_RESIDENT_SPINES,
+    /**
+     * If (Boolean) a data store logs changes to a write ahead log, so they survive a crash before the next save.
+     * Defaults to true.
+     */
+    WRITE_AHEAD_LOG,
+    /**
+     * Seconds (Integer) between background checkpoints of a data store with a write ahead log. Zero or less
+     * disables background checkpoints.
+     */
+    CHECKPOINT_INTERVAL_SECONDS,
+    /**
+     * If (Boolean) a data store compresses entity spines as they are written. Spines in either format are
+     * readable regardless. Defaults to false.
+     */
+    COMPRESS_SPINES,
+    /**
+     * Maximum total size, in bytes (Long), of the serialized entities held by the entity cache.
+     * Defaults to 64 MB. Read when the cache is created, which is on first use after each cache reset.
+     */
+    ENTITY_CACHE_MAX_BYTES,
+    /**
+     * Maximum number (Integer) of stamps held by the stamp cache. Defaults to 1024.
+     */
+    STAMP_CACHE_MAX_SIZE,
+    /**
+     * Maximum number (Integer) of descriptions held by the text cache. Defaults to 1024.
+     */
+    TEXT_CACHE_MAX_SIZE
 }
@@ -0,0 +1,285 @@
+/*
+ * Copyright © 2015 Integrated Knowledge Management (support@ikm.dev)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dev.ikm.tinkar.common.service;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+
+/**
+ * The state, time, author, module, and path of every stamp in a data store, held as primitive columns.
+ * <p>
+ * Stamps are few relative to the components they version, so the whole table stays resident. Stamp nids are
+ * mapped to a dense row by an open addressing index, and the fields of each row are held in parallel arrays, so
+ * reading a field of a stamp is a probe and an array read, without decoding a stamp entity.
+ * <p>
+ * Reads are lock free. Writes are serialized, and never change a row that readers can see: a changed stamp is
+ * written to a new row, and the index entry is then pointed at it, so the fields of one row are either all the old
+ * or all the new fields of a stamp. Each field getter finds the row again, so a reader needing several fields of a
+ * stamp that may be replaced concurrently should read them together with {@link #fields(int)}. Rows replaced or
+ * removed are reclaimed when the table grows.
+ * <p>
+ * Lookups of a stamp not in the table return {@link #ABSENT_NID} for nid fields, and {@link #ABSENT_TIME} for
+ * the time.
+ */
+public final class StampTable {
+    public static final int ABSENT_NID = 0;
+    public static final long ABSENT_TIME = Long.MIN_VALUE;
+
+    private static final VarHandle INTS = MethodHandles.arrayElementVarHandle(int[].class);
+    private static final int EMPTY_KEY = 0;
+    private static final int REMOVED_ROW = -1;
+    private static final int INITIAL_ROWS = 1024;
+    private static final int FORMAT_VERSION = 1;
+
+    /**
+     * An index and rows. A writer replaces the whole table when it runs out of rows or index slots.
+     */
+    private static final class Table {
+        final int[] keys;
+        final int[] rowForKey;
+        final int mask;
+        final int[] stateNids;
+        final long[] times;
+        final int[] authorNids;
+        final int[] moduleNids;
+        final int[] pathNids;
+        // Written only while holding the StampTable lock.
+        int rowCount;
+        int keyCount;
+        int liveCount;
+
+        Table(int rowCapacity) {
+            int slotCount = Integer.highestOneBit(Math.max(rowCapacity, 8) * 2 - 1) << 1;
+            this.keys = new int[slotCount];
+            this.rowForKey = new int[slotCount];
+            this.mask = slotCount - 1;
+            this.stateNids = new int[rowCapacity];
+            this.times = new long[rowCapacity];
+            this.authorNids = new int[rowCapacity];
+            this.moduleNids = new int[rowCapacity];
+            this.pathNids = new int[rowCapacity];
+        }
+
+        /**
+         * @return the slot holding the nid, or the empty slot where it would be added
+         */
+        int slot(int stampNid) {
+            int slot = mix(stampNid) & mask;
+            while (true) {
+                int key = (int) INTS.getAcquire(keys, slot);
+                if (key == stampNid || key == EMPTY_KEY) {
+                    return slot;
+                }
+                slot = (slot + 1) & mask;
+            }
+        }
+
+        /**
+         * @return the row of the stamp, or a negative value if the stamp is not in the table
+         */
+        int row(int stampNid) {
+            int slot = slot(stampNid);
+            if ((int) INTS.getAcquire(keys, slot) == EMPTY_KEY) {
+                return REMOVED_ROW;
+            }
+            return (int) INTS.getAcquire(rowForKey, slot);
+        }
+    }
+
+    /**
+     * The fields of one stamp, all read from the same row.
+     */
+    public record Fields(int stateNid, long time, int authorNid, int moduleNid, int pathNid) {
+    }
+
+    private volatile Table table = new Table(INITIAL_ROWS);
+
+    /**
+     * Adds the stamp, or replaces its fields if already present.
+     */
+    public synchronized void put(int stampNid, int stateNid, long time, int authorNid, int moduleNid, int pathNid) {
+        if (stampNid == EMPTY_KEY) {
+            throw new IllegalArgumentException("Stamp nid cannot be " + EMPTY_KEY);
+        }
+        Table t = this.table;
+        int slot = t.slot(stampNid);
+        boolean newKey = t.keys[slot] == EMPTY_KEY;
+        int currentRow = newKey ? REMOVED_ROW : t.rowForKey[slot];
+        if (currentRow >= 0 && t.stateNids[currentRow] == stateNid && t.times[currentRow] == time
+                && t.authorNids[currentRow] == authorNid && t.moduleNids[currentRow] == moduleNid
+                && t.pathNids[currentRow] == pathNid) {
+            return;
+        }
+        if (t.rowCount == t.times.length || (newKey && (t.keyCount + 1) * 2 > t.keys.length)) {
+            t = grow(t, t.liveCount + 1);
+            this.table = t;
+            slot = t.slot(stampNid);
+            newKey = t.keys[slot] == EMPTY_KEY;
+            currentRow = newKey ? REMOVED_ROW : t.rowForKey[slot];
+        }
+        int row = t.rowCount++;
+        t.stateNids[row] = stateNid;
+        t.times[row] = time;
+        t.authorNids[row] = authorNid;
+        t.moduleNids[row] = moduleNid;
+        t.pathNids[row] = pathNid;
+        // Release the row, then the key, so a reader that finds the key also sees the row and its fields.
+        INTS.setRelease(t.rowForKey, slot, row);
+        if (newKey) {
+            t.keyCount++;
+            INTS.setRelease(t.keys, slot, stampNid);
+        }
+        if (currentRow < 0) {
+            t.liveCount++;
+        }
+    }
+
+    /**
+     * Removes the stamp, if present.
+     */
+    public synchronized void remove(int stampNid) {
+        Table t = this.table;
+        int slot = t.slot(stampNid);
+        if (t.keys[slot] != EMPTY_KEY && t.rowForKey[slot] >= 0) {
+            INTS.setRelease(t.rowForKey, slot, REMOVED_ROW);
+            t.liveCount--;
+        }
+    }
+
+    public boolean contains(int stampNid) {
+        return table.row(stampNid) >= 0;
+    }
+
+    /**
+     * @return the fields of the stamp, read from one row, so all from the same put, or null if the stamp is not in
+     * the table
+     */
+    public Fields fields(int stampNid) {
+        Table t = this.table;
+        int row = t.row(stampNid);
+        if (row < 0) {
+            return null;
+        }
+        return new Fields(t.stateNids[row], t.times[row], t.authorNids[row], t.moduleNids[row], t.pathNids[row]);
+    }
+
+    public int stateNid(int stampNid) {
+        Table t = this.table;
+        int row = t.row(stampNid);
+        return row < 0 ? ABSENT_NID : t.stateNids[row];
+    }
+
+    public long time(int stampNid) {
+        Table t = this.table;
+        int row = t.row(stampNid);
+        return row < 0 ? ABSENT_TIME : t.times[row];
+    }
+
+    public int authorNid(int stampNid) {
+        Table t = this.table;
+        int row = t.row(stampNid);
+        return row < 0 ? ABSENT_NID : t.authorNids[row];
+    }
+
+    public int moduleNid(int stampNid) {
+        Table t = this.table;
+        int row = t.row(stampNid);
+        return row < 0 ? ABSENT_NID : t.moduleNids[row];
+    }
+
+    public int pathNid(int stampNid) {
+        Table t = this.table;
+        int row = t.row(stampNid);
+        return row < 0 ? ABSENT_NID : t.pathNids[row];
+    }
+
+    /**
+     * @return the number of stamps in the table
+     */
+    public synchronized int size() {
+        return table.liveCount;
+    }
+
+    /**
+     * Writes the stamps in the table. Concurrent puts wait until the write completes.
+     */
+    public synchronized void write(DataOutput out) throws IOException {
+        Table t = this.table;
+        out.writeInt(FORMAT_VERSION);
+        out.writeInt(t.liveCount);
+        for (int slot = 0; slot < t.keys.length; slot++) {
+            int row = t.rowForKey[slot];
+            if (t.keys[slot] != EMPTY_KEY && row >= 0) {
+                out.writeInt(t.keys[slot]);
+                out.writeInt(t.stateNids[row]);
+                out.writeLong(t.times[row]);
+                out.writeInt(t.authorNids[row]);
+                out.writeInt(t.moduleNids[row]);
+                out.writeInt(t.pathNids[row]);
+            }
+        }
+    }
+
+    /**
+     * Reads a table written by {@link #write(DataOutput)}.
+     */
+    public static StampTable read(DataInput in) throws IOException {
+        int formatVersion = in.readInt();
+        if (formatVersion != FORMAT_VERSION) {
+            throw new IOException("Unsupported stamp table format: " + formatVersion);
+        }
+        int count = in.readInt();
+        StampTable stampTable = new StampTable();
+        stampTable.table = new Table(Math.max(INITIAL_ROWS, count + count / 2));
+        for (int i = 0; i < count; i++) {
+            stampTable.put(in.readInt(), in.readInt(), in.readLong(), in.readInt(), in.readInt(), in.readInt());
+        }
+        return stampTable;
+    }
+
+    /**
+     * @return a new table holding the live rows of the table, with room for at least the required number of rows
+     */
+    private static Table grow(Table t, int requiredRows) {
+        Table grown = new Table(Math.max(INITIAL_ROWS, requiredRows * 2));
+        for (int slot = 0; slot < t.keys.length; slot++) {
+            int row = t.rowForKey[slot];
+            if (t.keys[slot] != EMPTY_KEY && row >= 0) {
+                int newRow = grown.rowCount++;
+                grown.stateNids[newRow] = t.stateNids[row];
+                grown.times[newRow] = t.times[row];
+                grown.authorNids[newRow] = t.authorNids[row];
+                grown.moduleNids[newRow] = t.moduleNids[row];
+                grown.pathNids[newRow] = t.pathNids[row];
+                int newSlot = grown.slot(t.keys[slot]);
+                grown.keys[newSlot] = t.keys[slot];
+                grown.rowForKey[newSlot] = newRow;
+                grown.keyCount++;
+                grown.liveCount++;
+            }
+        }
+        // Published through the volatile table field, which orders the writes above before any read of the new table.
+        return grown;
+    }
+
+    private static int mix(int nid) {
+        int h = nid * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+}
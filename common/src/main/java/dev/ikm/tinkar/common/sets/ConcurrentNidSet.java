@@ -0,0 +1,229 @@
+/*
+ * Copyright © 2015 Integrated Knowledge Management (support@ikm.dev)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dev.ikm.tinkar.common.sets;
+
+import org.eclipse.collections.api.block.procedure.primitive.IntProcedure;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A concurrent set of nids, stored as a paged bitset over the nid space.
+ * <p>
+ * Nids are allocated sequentially from {@code Integer.MIN_VALUE + 1}, so the members of a set cluster in a
+ * few regions of the 32 bit nid space. Pages of 4096 bits are allocated on first use, through a two level
+ * directory, so empty regions cost nothing and dense regions cost one bit per nid instead of a boxed
+ * Integer in a hash set.
+ * <p>
+ * Adds and removes are lock free (an atomic OR or AND on one word). Iteration reads the words in place, in
+ * ascending nid order, and is weakly consistent: concurrent changes may or may not be seen.
+ */
+public final class ConcurrentNidSet {
+
+    private static final VarHandle WORDS = MethodHandles.arrayElementVarHandle(long[].class);
+    private static final int PAGE_SHIFT = 12;
+    private static final int PAGE_WORDS = (1 << PAGE_SHIFT) / Long.SIZE;
+    private static final int BLOCK_SHIFT = 12;
+    private static final int BLOCK_PAGES = 1 << BLOCK_SHIFT;
+    private static final int BLOCK_COUNT = 1 << (Integer.SIZE - PAGE_SHIFT - BLOCK_SHIFT);
+    private static final int FORMAT_VERSION = 1;
+
+    private final AtomicReferenceArray<AtomicReferenceArray<long[]>> blocks = new AtomicReferenceArray<>(BLOCK_COUNT);
+    private final LongAdder size = new LongAdder();
+
+    /**
+     * @return the unsigned position of the nid in the nid space, so that nid order is position order.
+     */
+    private static int position(int nid) {
+        return nid ^ Integer.MIN_VALUE;
+    }
+
+    private static int nid(int position) {
+        return position ^ Integer.MIN_VALUE;
+    }
+
+    /**
+     * @return true if the nid was added, false if already present.
+     */
+    public boolean add(int nid) {
+        int position = position(nid);
+        long[] page = page(position >>> PAGE_SHIFT, true);
+        long mask = 1L << position;
+        long previous = (long) WORDS.getAndBitwiseOr(page, wordIndex(position), mask);
+        if ((previous & mask) == 0) {
+            size.increment();
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * @return true if the nid was removed, false if not present.
+     */
+    public boolean remove(int nid) {
+        int position = position(nid);
+        long[] page = page(position >>> PAGE_SHIFT, false);
+        if (page == null) {
+            return false;
+        }
+        long mask = 1L << position;
+        long previous = (long) WORDS.getAndBitwiseAnd(page, wordIndex(position), ~mask);
+        if ((previous & mask) != 0) {
+            size.decrement();
+            return true;
+        }
+        return false;
+    }
+
+    public boolean contains(int nid) {
+        int position = position(nid);
+        long[] page = page(position >>> PAGE_SHIFT, false);
+        return page != null && ((long) WORDS.getAcquire(page, wordIndex(position)) & (1L << position)) != 0;
+    }
+
+    public int size() {
+        return (int) size.sum();
+    }
+
+    public boolean isEmpty() {
+        return size.sum() == 0;
+    }
+
+    public boolean notEmpty() {
+        return !isEmpty();
+    }
+
+    /**
+     * Passes each nid in the set to the procedure, in ascending nid order.
+     */
+    public void forEach(IntProcedure procedure) {
+        for (int blockIndex = 0; blockIndex < BLOCK_COUNT; blockIndex++) {
+            AtomicReferenceArray<long[]> block = blocks.get(blockIndex);
+            if (block == null) {
+                continue;
+            }
+            for (int pageInBlock = 0; pageInBlock < BLOCK_PAGES; pageInBlock++) {
+                long[] page = block.get(pageInBlock);
+                if (page == null) {
+                    continue;
+                }
+                int pagePosition = ((blockIndex << BLOCK_SHIFT) | pageInBlock) << PAGE_SHIFT;
+                for (int wordIndex = 0; wordIndex < PAGE_WORDS; wordIndex++) {
+                    long word = (long) WORDS.getAcquire(page, wordIndex);
+                    while (word != 0) {
+                        procedure.value(nid(pagePosition + (wordIndex << 6) + Long.numberOfTrailingZeros(word)));
+                        word &= word - 1;
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * @return the nids in the set, in ascending order.
+     */
+    public int[] toArray() {
+        int[][] nids = {new int[size()]};
+        int[] count = {0};
+        forEach(nid -> {
+            if (count[0] == nids[0].length) {
+                nids[0] = Arrays.copyOf(nids[0], Math.max(16, count[0] * 2));
+            }
+            nids[0][count[0]++] = nid;
+        });
+        return count[0] == nids[0].length ? nids[0] : Arrays.copyOf(nids[0], count[0]);
+    }
+
+    public void clear() {
+        for (int blockIndex = 0; blockIndex < BLOCK_COUNT; blockIndex++) {
+            blocks.set(blockIndex, null);
+        }
+        size.reset();
+    }
+
+    /**
+     * Writes the non-empty pages of the set. Changes made while writing may or may not be included.
+     */
+    public void write(DataOutput out) throws IOException {
+        out.writeInt(FORMAT_VERSION);
+        for (int blockIndex = 0; blockIndex < BLOCK_COUNT; blockIndex++) {
+            AtomicReferenceArray<long[]> block = blocks.get(blockIndex);
+            if (block == null) {
+                continue;
+            }
+            for (int pageInBlock = 0; pageInBlock < BLOCK_PAGES; pageInBlock++) {
+                long[] page = block.get(pageInBlock);
+                if (page == null) {
+                    continue;
+                }
+                out.writeInt((blockIndex << BLOCK_SHIFT) | pageInBlock);
+                for (int wordIndex = 0; wordIndex < PAGE_WORDS; wordIndex++) {
+                    out.writeLong((long) WORDS.getAcquire(page, wordIndex));
+                }
+            }
+        }
+        // Page indexes are less than 2^20, so -1 marks the end.
+        out.writeInt(-1);
+    }
+
+    /**
+     * Reads a set written by {@link #write(DataOutput)}.
+     */
+    public static ConcurrentNidSet read(DataInput in) throws IOException {
+        int formatVersion = in.readInt();
+        if (formatVersion != FORMAT_VERSION) {
+            throw new IOException("Unsupported nid set format: " + formatVersion);
+        }
+        ConcurrentNidSet nidSet = new ConcurrentNidSet();
+        for (int pageIndex = in.readInt(); pageIndex != -1; pageIndex = in.readInt()) {
+            long[] page = nidSet.page(pageIndex, true);
+            for (int wordIndex = 0; wordIndex < PAGE_WORDS; wordIndex++) {
+                page[wordIndex] = in.readLong();
+                nidSet.size.add(Long.bitCount(page[wordIndex]));
+            }
+        }
+        return nidSet;
+    }
+
+    private static int wordIndex(int position) {
+        return (position >>> 6) & (PAGE_WORDS - 1);
+    }
+
+    private long[] page(int pageIndex, boolean create) {
+        int blockIndex = pageIndex >>> BLOCK_SHIFT;
+        AtomicReferenceArray<long[]> block = blocks.get(blockIndex);
+        if (block == null) {
+            if (!create) {
+                return null;
+            }
+            blocks.compareAndSet(blockIndex, null, new AtomicReferenceArray<>(BLOCK_PAGES));
+            block = blocks.get(blockIndex);
+        }
+        int pageInBlock = pageIndex & (BLOCK_PAGES - 1);
+        long[] page = block.get(pageInBlock);
+        if (page == null && create) {
+            block.compareAndSet(pageInBlock, null, new long[PAGE_WORDS]);
+            page = block.get(pageInBlock);
+        }
+        return page;
+    }
+}
@@ -20,9 +20,16 @@
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
 import static dev.ikm.tinkar.common.service.PrimitiveDataService.STAMP_DATA_TYPE;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 public class PrimitiveDataServiceTest {
 
@@ -52,4 +59,85 @@ public void testStampDataTypeFail() {
         assertNotEquals(STAMP_DATA_TYPE, actual_stamp_data_type);
     }
 
+    private static final byte[] CHRONOLOGY = {1, 0, 0, 0, 1, 0, 0, 0, 0, 0, 0, 0, 1, 0, 0, 0, 0, 0, 0, 0, 2, 0};
+
+    @Test
+    public void testMergeKeepsNewerVersionForSameStamp() throws IOException {
+        byte[] oldBytes = entityBytes(CHRONOLOGY, version(10, 1));
+        byte[] newBytes = entityBytes(CHRONOLOGY, version(10, 2));
+        assertArrayEquals(newBytes, PrimitiveDataService.merge(oldBytes, newBytes));
+    }
+
+    @Test
+    public void testMergeSortsVersionsAndRemovesCanceled() throws IOException {
+        byte[] oldBytes = entityBytes(CHRONOLOGY, version(30, 3), version(20, 2));
+        byte[] newBytes = entityBytes(CHRONOLOGY, version(10, 1), version(20, 2));
+        byte[] merged = EntityBytesMerger.merge(oldBytes, newBytes, stampNid -> stampNid == 30);
+        assertArrayEquals(entityBytes(CHRONOLOGY, version(10, 1), version(20, 2)), merged);
+        assertArrayEquals(merged, EntityBytesMerger.merge(merged, newBytes, stampNid -> stampNid == 30));
+    }
+
+    @Test
+    public void testMergeKeepsDuplicateVersionsOfStamps() throws IOException {
+        byte[] stampChronology = CHRONOLOGY.clone();
+        stampChronology[0] = STAMP_DATA_TYPE;
+        byte[] stampVersion = {25, 0, 0, 0, 5, 9};
+        byte[] oldBytes = entityBytes(stampChronology, stampVersion);
+        byte[] newBytes = entityBytes(stampChronology, stampVersion, new byte[]{25, 0, 0, 0, 5, 8});
+        assertArrayEquals(entityBytes(stampChronology, new byte[]{25, 0, 0, 0, 5, 8}, stampVersion),
+                EntityBytesMerger.merge(oldBytes, newBytes, stampNid -> false));
+    }
+
+    @Test
+    public void testMergeCombinesChronologiesWithAddedUuids() throws IOException {
+        // The same concept, nid 1, given UUID (1, 2) by one copy and UUID (3, 4) by the other.
+        byte[] otherChronology = {1, 0, 0, 0, 1, 0, 0, 0, 0, 0, 0, 0, 3, 0, 0, 0, 0, 0, 0, 0, 4, 0};
+        byte[] oldBytes = entityBytes(CHRONOLOGY, version(20, 2));
+        byte[] newBytes = entityBytes(otherChronology, version(10, 1));
+        byte[] merged = EntityBytesMerger.merge(oldBytes, newBytes, stampNid -> false);
+
+        // The order of the UUIDs is the order of the set they are combined in.
+        byte[] uuid12 = Arrays.copyOfRange(CHRONOLOGY, 5, 21);
+        byte[] uuid34 = Arrays.copyOfRange(otherChronology, 5, 21);
+        byte[] combined12 = combinedChronology(uuid12, uuid34);
+        byte[] combined34 = combinedChronology(uuid34, uuid12);
+        byte[] expected12 = entityBytes(combined12, version(10, 1), version(20, 2));
+        byte[] expected34 = entityBytes(combined34, version(10, 1), version(20, 2));
+        assertTrue(Arrays.equals(expected12, merged) || Arrays.equals(expected34, merged),
+                "Merged chronology should hold both UUIDs: " + Arrays.toString(merged));
+
+        // Merging again with either input adds nothing.
+        byte[] combined = Arrays.equals(expected12, merged) ? combined12 : combined34;
+        assertArrayEquals(merged, EntityBytesMerger.merge(merged, entityBytes(combined, version(10, 1)),
+                stampNid -> false));
+    }
+
+    private static byte[] combinedChronology(byte[] firstUuid, byte[] secondUuid) {
+        byte[] chronology = new byte[1 + 4 + 16 + 1 + 16];
+        System.arraycopy(CHRONOLOGY, 0, chronology, 0, 5);
+        System.arraycopy(firstUuid, 0, chronology, 5, 16);
+        chronology[21] = 2; // Additional UUID longs
+        System.arraycopy(secondUuid, 0, chronology, 22, 16);
+        return chronology;
+    }
+
+    private static byte[] version(int stampNid, int field) {
+        return new byte[]{4, (byte) (stampNid >>> 24), (byte) (stampNid >>> 16), (byte) (stampNid >>> 8), (byte) stampNid,
+                (byte) field};
+    }
+
+    private static byte[] entityBytes(byte[] chronology, byte[]... versions) throws IOException {
+        ByteArrayOutputStream byteStream = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(byteStream);
+        out.writeInt(versions.length + 1);
+        out.writeInt(chronology.length + 5);
+        out.writeByte(1); // entity format
+        out.write(chronology);
+        out.writeInt(versions.length);
+        for (byte[] version : versions) {
+            out.writeInt(version.length);
+            out.write(version);
+        }
+        return byteStream.toByteArray();
+    }
 }
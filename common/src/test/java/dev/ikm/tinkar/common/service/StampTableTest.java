@@ -0,0 +1,230 @@
+/*
+ * Copyright © 2015 Integrated Knowledge Management (support@ikm.dev)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dev.ikm.tinkar.common.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class StampTableTest {
+
+    /**
+     * Nids are negative, counting up from {@link Integer#MIN_VALUE}.
+     */
+    private static int stampNid(int i) {
+        return Integer.MIN_VALUE + 1 + i;
+    }
+
+    private static void putStamp(StampTable table, int i, int revision) {
+        table.put(stampNid(i), -1000 - revision, 1_000_000L * i + revision, -2000 - i, -3000 - revision, -4000 - i);
+    }
+
+    private static void assertStamp(StampTable table, int i, int revision) {
+        int stampNid = stampNid(i);
+        assertTrue(table.contains(stampNid));
+        assertEquals(-1000 - revision, table.stateNid(stampNid));
+        assertEquals(1_000_000L * i + revision, table.time(stampNid));
+        assertEquals(-2000 - i, table.authorNid(stampNid));
+        assertEquals(-3000 - revision, table.moduleNid(stampNid));
+        assertEquals(-4000 - i, table.pathNid(stampNid));
+        assertEquals(new StampTable.Fields(-1000 - revision, 1_000_000L * i + revision, -2000 - i, -3000 - revision,
+                -4000 - i), table.fields(stampNid));
+    }
+
+    private static void assertAbsent(StampTable table, int stampNid) {
+        assertFalse(table.contains(stampNid));
+        assertEquals(StampTable.ABSENT_NID, table.stateNid(stampNid));
+        assertEquals(StampTable.ABSENT_TIME, table.time(stampNid));
+        assertEquals(StampTable.ABSENT_NID, table.authorNid(stampNid));
+        assertEquals(StampTable.ABSENT_NID, table.moduleNid(stampNid));
+        assertEquals(StampTable.ABSENT_NID, table.pathNid(stampNid));
+        assertNull(table.fields(stampNid));
+    }
+
+    @Test
+    public void testPutAndReadNegativeNids() {
+        StampTable table = new StampTable();
+        putStamp(table, 0, 0);
+        table.put(-1, -5, Long.MAX_VALUE, -6, -7, -8);
+        assertEquals(2, table.size());
+        assertStamp(table, 0, 0);
+        assertEquals(-5, table.stateNid(-1));
+        assertEquals(Long.MAX_VALUE, table.time(-1));
+        assertEquals(-8, table.pathNid(-1));
+        assertAbsent(table, -2);
+        assertAbsent(table, stampNid(1));
+    }
+
+    @Test
+    public void testPutZeroNidFails() {
+        StampTable table = new StampTable();
+        assertThrows(IllegalArgumentException.class, () -> table.put(0, -1, 1L, -1, -1, -1));
+    }
+
+    @Test
+    public void testReplaceKeepsSize() {
+        StampTable table = new StampTable();
+        putStamp(table, 7, 0);
+        putStamp(table, 7, 0);
+        putStamp(table, 7, 1);
+        assertEquals(1, table.size());
+        assertStamp(table, 7, 1);
+    }
+
+    @Test
+    public void testRemove() {
+        StampTable table = new StampTable();
+        putStamp(table, 1, 0);
+        putStamp(table, 2, 0);
+        table.remove(stampNid(1));
+        table.remove(stampNid(1));
+        table.remove(stampNid(99));
+        assertEquals(1, table.size());
+        assertAbsent(table, stampNid(1));
+        assertStamp(table, 2, 0);
+
+        putStamp(table, 1, 3);
+        assertEquals(2, table.size());
+        assertStamp(table, 1, 3);
+    }
+
+    @Test
+    public void testGrowAndReclaim() {
+        StampTable table = new StampTable();
+        int count = 5_000;
+        for (int i = 0; i < count; i++) {
+            putStamp(table, i, 0);
+        }
+        assertEquals(count, table.size());
+        // Each replacement takes a new row; replaced rows must be reclaimed as the table grows.
+        for (int revision = 1; revision <= 10; revision++) {
+            for (int i = 0; i < count; i++) {
+                putStamp(table, i, revision);
+            }
+        }
+        assertEquals(count, table.size());
+        for (int i = 0; i < count; i += 2) {
+            table.remove(stampNid(i));
+        }
+        for (int i = count; i < count * 2; i++) {
+            putStamp(table, i, 0);
+        }
+        assertEquals(count / 2 + count, table.size());
+        for (int i = 0; i < count; i++) {
+            if (i % 2 == 0) {
+                assertAbsent(table, stampNid(i));
+            } else {
+                assertStamp(table, i, 10);
+            }
+        }
+        for (int i = count; i < count * 2; i++) {
+            assertStamp(table, i, 0);
+        }
+    }
+
+    @Test
+    public void testFieldsAreNotTornByConcurrentReplace() throws InterruptedException {
+        StampTable table = new StampTable();
+        int count = 64;
+        for (int i = 0; i < count; i++) {
+            putStamp(table, i, 0);
+        }
+        // Replacements also grow the table, so readers see both replaced rows and new tables.
+        AtomicBoolean writing = new AtomicBoolean(true);
+        Thread writer = new Thread(() -> {
+            for (int revision = 1; revision <= 2_000; revision++) {
+                for (int i = 0; i < count; i++) {
+                    putStamp(table, i, revision);
+                }
+            }
+            writing.set(false);
+        });
+        AtomicReference<String> torn = new AtomicReference<>();
+        Thread[] readers = new Thread[4];
+        for (int t = 0; t < readers.length; t++) {
+            readers[t] = new Thread(() -> {
+                while (writing.get() && torn.get() == null) {
+                    for (int i = 0; i < count; i++) {
+                        StampTable.Fields fields = table.fields(stampNid(i));
+                        int revision = -1000 - fields.stateNid();
+                        if (fields.time() != 1_000_000L * i + revision || fields.moduleNid() != -3000 - revision
+                                || fields.authorNid() != -2000 - i || fields.pathNid() != -4000 - i) {
+                            torn.compareAndSet(null, fields.toString());
+                        }
+                    }
+                }
+            });
+            readers[t].start();
+        }
+        writer.start();
+        writer.join();
+        for (Thread reader : readers) {
+            reader.join();
+        }
+        assertNull(torn.get(), "Fields mixed from different puts");
+        for (int i = 0; i < count; i++) {
+            assertStamp(table, i, 2_000);
+        }
+    }
+
+    @Test
+    public void testWriteReadRoundTrip() throws IOException {
+        StampTable table = new StampTable();
+        int count = 3_000;
+        for (int i = 0; i < count; i++) {
+            putStamp(table, i, i % 3);
+        }
+        table.remove(stampNid(5));
+        putStamp(table, 6, 4);
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        table.write(new DataOutputStream(bytes));
+        StampTable read = StampTable.read(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+
+        assertEquals(count - 1, read.size());
+        assertAbsent(read, stampNid(5));
+        assertStamp(read, 6, 4);
+        for (int i = 0; i < count; i++) {
+            if (i != 5 && i != 6) {
+                assertStamp(read, i, i % 3);
+            }
+        }
+        putStamp(read, count, 0);
+        assertStamp(read, count, 0);
+    }
+
+    @Test
+    public void testReadUnsupportedFormatFails() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(Integer.MAX_VALUE);
+        out.writeInt(0);
+        assertThrows(IOException.class,
+                () -> StampTable.read(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray()))));
+    }
+}
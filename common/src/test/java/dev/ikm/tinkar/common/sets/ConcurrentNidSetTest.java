@@ -0,0 +1,179 @@
+/*
+ * Copyright © 2015 Integrated Knowledge Management (support@ikm.dev)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dev.ikm.tinkar.common.sets;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class ConcurrentNidSetTest {
+
+    private static final int[] EDGE_NIDS = {Integer.MIN_VALUE, Integer.MIN_VALUE + 1, -4097, -4096, -1, 0, 1,
+            4095, Integer.MAX_VALUE};
+
+    @Test
+    public void testAddContainsNegativeNids() {
+        ConcurrentNidSet nidSet = new ConcurrentNidSet();
+        assertTrue(nidSet.isEmpty());
+        for (int nid : EDGE_NIDS) {
+            assertFalse(nidSet.contains(nid));
+            assertTrue(nidSet.add(nid));
+            assertFalse(nidSet.add(nid));
+            assertTrue(nidSet.contains(nid));
+        }
+        assertEquals(EDGE_NIDS.length, nidSet.size());
+        assertTrue(nidSet.notEmpty());
+        assertFalse(nidSet.contains(-2));
+        assertFalse(nidSet.contains(Integer.MIN_VALUE + 2));
+        assertArrayEquals(EDGE_NIDS, nidSet.toArray());
+    }
+
+    @Test
+    public void testRemove() {
+        ConcurrentNidSet nidSet = new ConcurrentNidSet();
+        for (int nid : EDGE_NIDS) {
+            nidSet.add(nid);
+        }
+        assertTrue(nidSet.remove(-1));
+        assertFalse(nidSet.remove(-1));
+        assertTrue(nidSet.remove(Integer.MIN_VALUE));
+        // A nid on a page that was never allocated.
+        assertFalse(nidSet.remove(1_000_000));
+        assertFalse(nidSet.contains(-1));
+        assertFalse(nidSet.contains(Integer.MIN_VALUE));
+        assertEquals(EDGE_NIDS.length - 2, nidSet.size());
+        assertArrayEquals(new int[]{Integer.MIN_VALUE + 1, -4097, -4096, 0, 1, 4095, Integer.MAX_VALUE},
+                nidSet.toArray());
+
+        assertTrue(nidSet.add(-1));
+        assertTrue(nidSet.contains(-1));
+    }
+
+    @Test
+    public void testGrowAcrossPagesInOrder() {
+        ConcurrentNidSet nidSet = new ConcurrentNidSet();
+        // Sequential nids fill pages, and the stride spreads them over many pages and directory blocks.
+        int[] sequential = IntStream.range(0, 20_000).map(i -> Integer.MIN_VALUE + 1 + i).toArray();
+        int[] spread = IntStream.range(0, 20_000).map(i -> Integer.MIN_VALUE + 100_000 + i * 200_003).toArray();
+        for (int i = spread.length - 1; i >= 0; i--) {
+            nidSet.add(spread[i]);
+        }
+        for (int nid : sequential) {
+            nidSet.add(nid);
+        }
+        int[] expected = IntStream.concat(Arrays.stream(sequential), Arrays.stream(spread))
+                .sorted().distinct().toArray();
+        assertEquals(expected.length, nidSet.size());
+        assertArrayEquals(expected, nidSet.toArray());
+
+        List<Integer> visited = new ArrayList<>();
+        nidSet.forEach(visited::add);
+        assertEquals(expected.length, visited.size());
+        for (int i = 0; i < expected.length; i++) {
+            assertEquals(expected[i], (int) visited.get(i));
+        }
+    }
+
+    @Test
+    public void testClearReclaimsPages() {
+        ConcurrentNidSet nidSet = new ConcurrentNidSet();
+        for (int i = 0; i < 10_000; i++) {
+            nidSet.add(Integer.MIN_VALUE + 1 + i * 7);
+        }
+        nidSet.clear();
+        assertTrue(nidSet.isEmpty());
+        assertFalse(nidSet.contains(Integer.MIN_VALUE + 1));
+        assertEquals(0, nidSet.toArray().length);
+
+        assertTrue(nidSet.add(Integer.MIN_VALUE + 1));
+        assertEquals(1, nidSet.size());
+        assertArrayEquals(new int[]{Integer.MIN_VALUE + 1}, nidSet.toArray());
+    }
+
+    @Test
+    public void testConcurrentAddsAndRemoves() {
+        ConcurrentNidSet nidSet = new ConcurrentNidSet();
+        int count = 200_000;
+        AtomicInteger added = new AtomicInteger();
+        // Every nid is added by two tasks, and only one of them may see it as new.
+        IntStream.range(0, count * 2).parallel().forEach(i -> {
+            if (nidSet.add(Integer.MIN_VALUE + 1 + (i % count))) {
+                added.incrementAndGet();
+            }
+        });
+        assertEquals(count, added.get());
+        assertEquals(count, nidSet.size());
+        IntStream.range(0, count).parallel().forEach(i -> {
+            if (i % 2 == 0) {
+                nidSet.remove(Integer.MIN_VALUE + 1 + i);
+            }
+        });
+        assertEquals(count / 2, nidSet.size());
+        for (int i = 0; i < count; i++) {
+            assertEquals(i % 2 != 0, nidSet.contains(Integer.MIN_VALUE + 1 + i));
+        }
+    }
+
+    @Test
+    public void testWriteReadRoundTrip() throws IOException {
+        ConcurrentNidSet nidSet = new ConcurrentNidSet();
+        for (int nid : EDGE_NIDS) {
+            nidSet.add(nid);
+        }
+        for (int i = 0; i < 5_000; i++) {
+            nidSet.add(Integer.MIN_VALUE + 10_000 + i * 3);
+        }
+        // A page that is allocated but empty must also read back as empty.
+        nidSet.add(-100_000);
+        nidSet.remove(-100_000);
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        nidSet.write(new DataOutputStream(bytes));
+        ConcurrentNidSet read = ConcurrentNidSet.read(
+                new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+
+        assertEquals(nidSet.size(), read.size());
+        assertArrayEquals(nidSet.toArray(), read.toArray());
+        assertFalse(read.contains(-100_000));
+        assertTrue(read.add(-100_000));
+        assertEquals(nidSet.size() + 1, read.size());
+    }
+
+    @Test
+    public void testReadUnsupportedFormatFails() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(Integer.MAX_VALUE);
+        out.writeInt(-1);
+        assertThrows(IOException.class,
+                () -> ConcurrentNidSet.read(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray()))));
+    }
+}
@@ -299,6 +299,21 @@ default String getDescriptionTextOrNid(int componentNid) {
         return Integer.toString(componentNid);
     }
 
+    /**
+     * Retrieves the description text, or the nid if no description is available, for each of the given
+     * components, as by {@link #getDescriptionTextOrNid(int)}.
+     *
+     * @param componentNids the NIDs of the components for which the descriptions are requested
+     * @return the description text or nid of each component, in the order of the given NIDs
+     */
+    default String[] getDescriptionTextsOrNids(int[] componentNids) {
+        String[] texts = new String[componentNids.length];
+        for (int i = 0; i < componentNids.length; i++) {
+            texts[i] = getDescriptionTextOrNid(componentNids[i]);
+        }
+        return texts;
+    }
+
     /**
      * @param componentNid
      * @return Return the latestDescription according to the type and dialect preferences of this {@code LanguageCoordinate}.
@@ -60,6 +60,11 @@ default Optional<String> getDescriptionText(int componentNid) {
         return languageCalculator().getDescriptionText(componentNid);
     }
 
+    @Override
+    default String[] getDescriptionTextsOrNids(int[] componentNids) {
+        return languageCalculator().getDescriptionTextsOrNids(componentNids);
+    }
+
     @Override
     default Optional<String> getUserText() {
         return languageCalculator().getUserText();
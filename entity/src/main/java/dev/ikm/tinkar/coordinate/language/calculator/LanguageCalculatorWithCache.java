@@ -22,6 +22,8 @@
 import dev.ikm.tinkar.common.id.IntIdList;
 import dev.ikm.tinkar.common.service.CachingService;
 import dev.ikm.tinkar.common.service.PrimitiveData;
+import dev.ikm.tinkar.common.service.TinkExecutor;
+import dev.ikm.tinkar.common.util.broadcast.Subscriber;
 import dev.ikm.tinkar.coordinate.language.LanguageCoordinate;
 import dev.ikm.tinkar.coordinate.language.LanguageCoordinateRecord;
 import dev.ikm.tinkar.coordinate.stamp.StampCoordinateRecord;
@@ -30,6 +32,8 @@
 import dev.ikm.tinkar.coordinate.stamp.calculator.StampCalculatorWithCache;
 import dev.ikm.tinkar.entity.CacheInvalidationSubscriber;
 import dev.ikm.tinkar.entity.Entity;
+import dev.ikm.tinkar.entity.EntityBytesView;
+import dev.ikm.tinkar.entity.EntityChange;
 import dev.ikm.tinkar.entity.EntityService;
 import dev.ikm.tinkar.entity.EntityVersion;
 import dev.ikm.tinkar.entity.Field;
@@ -38,7 +42,6 @@
 import dev.ikm.tinkar.entity.SemanticEntity;
 import dev.ikm.tinkar.entity.SemanticEntityVersion;
 import dev.ikm.tinkar.entity.SemanticVersionRecord;
-import dev.ikm.tinkar.terms.EntityFacade;
 import dev.ikm.tinkar.terms.TinkarTerm;
 import org.eclipse.collections.api.factory.Lists;
 import org.eclipse.collections.api.list.ImmutableList;
@@ -47,6 +50,8 @@
 import org.slf4j.LoggerFactory;
 
 import java.util.Optional;
+import java.util.concurrent.ExecutionException;
+import java.util.stream.IntStream;
 import java.util.OptionalInt;
 
 public class LanguageCalculatorWithCache implements LanguageCalculator {
@@ -70,13 +75,59 @@ public class LanguageCalculatorWithCache implements LanguageCalculator {
     private final Cache<Integer, ImmutableList<SemanticEntity>> descriptionsForComponentCache =
             Caffeine.newBuilder().maximumSize(1024).build();
 
+    /**
+     * Description text or nid of components, as sorted by, for example, the natural order vertex sort. Larger than
+     * the description cache, so the children of large concepts stay cached, and invalidated when the descriptions
+     * of a component change, not only the component.
+     */
+    private final Cache<Integer, String> descriptionTextOrNidCache =
+            Caffeine.newBuilder().maximumSize(102_400).build();
+    /**
+     * Components with fewer than this many uncached descriptions are resolved on the calling thread.
+     */
+    private static final int PARALLEL_RESOLVE_THRESHOLD = 256;
+
     private final CacheInvalidationSubscriber cacheInvalidationSubscriber = new CacheInvalidationSubscriber();
+    // Held here, as the entity provider holds its subscribers by weak reference.
+    private final Subscriber<EntityChange> descriptionChangeSubscriber = this::invalidateDescriptionTextOrNid;
 
     public LanguageCalculatorWithCache(StampCoordinateRecord stampFilter, ImmutableList<LanguageCoordinateRecord> languageCoordinateList) {
         this.stampCalculator = StampCalculatorWithCache.getCalculator(stampFilter);
         this.languageCoordinateList = languageCoordinateList;
         this.cacheInvalidationSubscriber.addCaches(preferredCache, fqnCache, descriptionCache, definitionCache, descriptionsForComponentCache);
         Entity.provider().addSubscriberWithWeakReference(this.cacheInvalidationSubscriber);
+        Entity.provider().addChangeSubscriberWithWeakReference(this.descriptionChangeSubscriber);
+    }
+
+    /**
+     * Invalidates the component, and, if a semantic changed, the components it describes: the referenced component
+     * of a description, and of the description an acceptability semantic refers to. The text caches those are
+     * computed from are invalidated with them, as they are only otherwise invalidated by component.
+     * <p>
+     * The change, and the referenced component of a semantic, are classified once for every calculator.
+     */
+    private void invalidateDescriptionTextOrNid(EntityChange change) {
+        if (change.isAll()) {
+            descriptionTextOrNidCache.invalidateAll();
+            return;
+        }
+        descriptionTextOrNidCache.invalidate(change.nid());
+        if (!change.isSemantic()) {
+            return;
+        }
+        invalidateDescribed(change.referencedComponentNid());
+        EntityBytesView referencedComponent = change.referencedComponentView();
+        if (referencedComponent != null && referencedComponent.isSemantic()) {
+            invalidateDescribed(referencedComponent.referencedComponentNid());
+        }
+    }
+
+    private void invalidateDescribed(int describedNid) {
+        descriptionCache.invalidate(describedNid);
+        preferredCache.invalidate(describedNid);
+        fqnCache.invalidate(describedNid);
+        descriptionsForComponentCache.invalidate(describedNid);
+        descriptionTextOrNidCache.invalidate(describedNid);
     }
 
     /**
@@ -174,11 +225,8 @@ public ImmutableList<SemanticEntityVersion> getDescriptionsForComponentOfType(in
                                 Latest<SemanticEntityVersion> latestDescriptionVersion =
                                         stampCalculator.latest(descriptionSemantic);
                                 latestDescriptionVersion.ifPresent(descriptionVersion -> {
-                                    Object fieldValue = descriptionVersion.fieldValues().get(optionalTypeIndex.getAsInt());
-                                    if (fieldValue instanceof EntityFacade entityFacade) {
-                                        if (entityFacade.nid() == descriptionTypeNid) {
-                                            descriptionList.add(descriptionVersion);
-                                        }
+                                    if (descriptionVersion.nidFieldOrZero(optionalTypeIndex.getAsInt()) == descriptionTypeNid) {
+                                        descriptionList.add(descriptionVersion);
                                     }
                                 });
 
@@ -232,19 +280,20 @@ private Latest<SemanticEntityVersion> getSpecifiedDescription(ImmutableList<Sema
                     for (SemanticEntityVersion descriptionVersion : latestDescription.versionList()) {
                         PatternEntityVersion patternEntityVersion = stampCalculator.latestPatternEntityVersion(descriptionVersion.pattern()).get();
                         int languageIndex = patternEntityVersion.indexForMeaning(TinkarTerm.LANGUAGE_CONCEPT_NID_FOR_DESCRIPTION);
-                        Object languageObject = descriptionVersion.fieldValues().get(languageIndex);
+                        int languageNid = descriptionVersion.nidFieldOrZero(languageIndex);
                         int descriptionTypeIndex = patternEntityVersion.indexForMeaning(TinkarTerm.DESCRIPTION_TYPE);
-                        Object descriptionTypeObject = descriptionVersion.fieldValues().get(descriptionTypeIndex);
-                        if (languageObject instanceof EntityFacade languageFacade &&
-                                descriptionTypeObject instanceof EntityFacade descriptionTypeFacade) {
-                            if ((languageFacade.nid() == languageCoordinate.languageConceptNid() ||
+                        int descriptionTypeNid = descriptionVersion.nidFieldOrZero(descriptionTypeIndex);
+                        if (languageNid != 0 && descriptionTypeNid != 0) {
+                            if ((languageNid == languageCoordinate.languageConceptNid() ||
                                     languageCoordinate.languageConceptNid() == TinkarTerm.LANGUAGE.nid()) // any language
-                                    && descriptionTypeFacade.nid() == descTypeNid) {
+                                    && descriptionTypeNid == descTypeNid) {
                                 descriptionsForLanguageOfType.add(descriptionVersion);
                             }
                         } else {
-                            throw new IllegalStateException("Language object not instanceof EntityFacade: " + languageObject +
-                                    " or Description type object not instance of EntityFacade: " + descriptionTypeObject);
+                            throw new IllegalStateException("Language object not instanceof EntityFacade: " +
+                                    descriptionVersion.fieldValues().get(languageIndex) +
+                                    " or Description type object not instance of EntityFacade: " +
+                                    descriptionVersion.fieldValues().get(descriptionTypeIndex));
                         }
                     }
                 }
@@ -272,10 +321,8 @@ private Latest<SemanticEntityVersion> getSpecifiedDescription(ImmutableList<Sema
                             for (SemanticEntityVersion description : descriptionsForLanguageOfType) {
                                 stampCalculator.forEachSemanticVersionForComponentOfPattern(description.nid(), dialectPatternNid,
                                         (semanticEntityVersion, entityVersion, patternVersion) -> {
-                                            if (semanticEntityVersion.fieldValues().get(acceptabilityIndex) instanceof EntityFacade accceptabilityFacade) {
-                                                if (accceptabilityFacade.nid() == TinkarTerm.PREFERRED.nid()) {
-                                                    preferredForDialect.addLatest(description);
-                                                }
+                                            if (semanticEntityVersion.nidFieldOrZero(acceptabilityIndex) == TinkarTerm.PREFERRED.nid()) {
+                                                preferredForDialect.addLatest(description);
                                             }
                                         });
                             }
@@ -336,6 +383,43 @@ public Optional<String> getDescriptionText(int componentNid) {
         }));
     }
 
+    @Override
+    public String[] getDescriptionTextsOrNids(int[] componentNids) {
+        String[] texts = new String[componentNids.length];
+        int[] uncachedIndexes = new int[componentNids.length];
+        int uncachedCount = 0;
+        for (int i = 0; i < componentNids.length; i++) {
+            texts[i] = descriptionTextOrNidCache.getIfPresent(componentNids[i]);
+            if (texts[i] == null) {
+                uncachedIndexes[uncachedCount++] = i;
+            }
+        }
+        if (uncachedCount < PARALLEL_RESOLVE_THRESHOLD) {
+            for (int i = 0; i < uncachedCount; i++) {
+                texts[uncachedIndexes[i]] = descriptionTextOrNid(componentNids[uncachedIndexes[i]]);
+            }
+        } else {
+            int count = uncachedCount;
+            try {
+                TinkExecutor.forkJoinThreadPool().submit(() -> IntStream.range(0, count).parallel().forEach(i ->
+                        texts[uncachedIndexes[i]] = descriptionTextOrNid(componentNids[uncachedIndexes[i]]))).get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while resolving descriptions", e);
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof RuntimeException runtimeException) {
+                    throw runtimeException;
+                }
+                throw new IllegalStateException(e.getCause());
+            }
+        }
+        return texts;
+    }
+
+    private String descriptionTextOrNid(int componentNid) {
+        return descriptionTextOrNidCache.get(componentNid, this::getDescriptionTextOrNid);
+    }
+
     @Override
     public Optional<String> getRegularDescriptionText(int entityNid) {
         return Optional.ofNullable(preferredCache.get(entityNid, nid -> {
@@ -59,7 +59,7 @@ default IntIdSet descendentsOf(ConceptFacade concept) {
     IntIdSet descendentsOf(int conceptNid);
 
     default IntIdSet ancestorsOf(ConceptFacade concept) {
-        return descendentsOf(concept.nid());
+        return ancestorsOf(concept.nid());
     }
 
     IntIdSet ancestorsOf(int conceptNid);
@@ -70,6 +70,20 @@ default IntIdSet kindOf(ConceptFacade concept) {
 
     IntIdSet kindOf(int conceptNid);
 
+    /**
+     * @return true if the ancestor is reachable from the descendent through its parents
+     */
+    default boolean isDescendentOf(int descendentNid, int ancestorNid) {
+        return ancestorsOf(descendentNid).contains(ancestorNid);
+    }
+
+    /**
+     * @return true if the concept is the kind, or is a descendent of it
+     */
+    default boolean isKindOf(int conceptNid, int kindNid) {
+        return conceptNid == kindNid || isDescendentOf(conceptNid, kindNid);
+    }
+
     default ImmutableList<Edge> parentEdges(ConceptFacade concept) {
         return childEdges(concept.nid());
     }
@@ -110,6 +110,11 @@ default IntIdSet kindOf(int conceptNid) {
         return navigationCalculator().kindOf(conceptNid);
     }
 
+    @Override
+    default boolean isDescendentOf(int descendentNid, int ancestorNid) {
+        return navigationCalculator().isDescendentOf(descendentNid, ancestorNid);
+    }
+
     @Override
     default ImmutableList<Edge> sortedParentEdges(int conceptNid) {
         return navigationCalculator().sortedParentEdges(conceptNid);
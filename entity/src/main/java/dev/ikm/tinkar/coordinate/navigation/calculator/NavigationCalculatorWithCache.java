@@ -22,6 +22,9 @@
 import dev.ikm.tinkar.common.id.IntIds;
 import dev.ikm.tinkar.common.service.CachingService;
 import dev.ikm.tinkar.common.service.PrimitiveData;
+import dev.ikm.tinkar.common.service.TinkExecutor;
+import dev.ikm.tinkar.common.util.broadcast.Subscriber;
+import dev.ikm.tinkar.common.util.time.Stopwatch;
 import dev.ikm.tinkar.coordinate.language.LanguageCoordinateRecord;
 import dev.ikm.tinkar.coordinate.language.calculator.LanguageCalculator;
 import dev.ikm.tinkar.coordinate.language.calculator.LanguageCalculatorWithCache;
@@ -32,6 +35,8 @@
 import dev.ikm.tinkar.coordinate.stamp.calculator.StampCalculator;
 import dev.ikm.tinkar.coordinate.stamp.calculator.StampCalculatorWithCache;
 import dev.ikm.tinkar.coordinate.view.VertexSortNaturalOrder;
+import dev.ikm.tinkar.entity.Entity;
+import dev.ikm.tinkar.entity.EntityChange;
 import dev.ikm.tinkar.entity.EntityHandle;
 import dev.ikm.tinkar.entity.PatternEntityVersion;
 import dev.ikm.tinkar.entity.SemanticEntityVersion;
@@ -39,22 +44,34 @@
 import dev.ikm.tinkar.terms.TinkarTerm;
 import org.eclipse.collections.api.factory.Lists;
 import org.eclipse.collections.api.list.ImmutableList;
+import org.eclipse.collections.api.list.MutableList;
 import org.eclipse.collections.api.list.primitive.MutableIntList;
+import org.eclipse.collections.api.map.primitive.MutableIntLongMap;
 import org.eclipse.collections.api.map.primitive.MutableIntObjectMap;
 import org.eclipse.collections.api.set.primitive.MutableIntSet;
 import org.eclipse.collections.impl.factory.primitive.IntLists;
 import org.eclipse.collections.impl.factory.primitive.IntObjectMaps;
 import org.eclipse.collections.impl.factory.primitive.IntSets;
+import org.eclipse.collections.impl.map.mutable.primitive.IntLongHashMap;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.Arrays;
 import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 
 /**
+ * Descendants, ancestors, and kind of queries are answered from a {@link TaxonomyClosure} of the whole taxonomy,
+ * built in the background on first use, and rebuilt after navigation semantics or concepts change. Until it is built,
+ * and for concepts added since, they are answered by a {@link TaxonomyTraversal} of the taxonomy.
+ * <p>
+ * Parents, children, and edges are read from a {@link TaxonomyAdjacencyCache}, whose rows are invalidated as
+ * navigation semantics and concepts change.
+ * <p>
  * TODO: Filter vertex concepts by status values.
  * TODO: Sort based on patterns in addition to natural order
- *  TODO: add cache of descendents, ancestors, and similar.
  */
 public class NavigationCalculatorWithCache implements NavigationCalculator {
     /**
@@ -68,6 +85,30 @@ public class NavigationCalculatorWithCache implements NavigationCalculator {
     private final StampCalculatorWithCache vertexStampCalculator;
     private final LanguageCalculatorWithCache languageCalculator;
     private final NavigationCoordinateRecord navigationCoordinate;
+    /**
+     * The navigation pattern nids, indexed as in the pattern bitsets of the adjacency cache.
+     */
+    private final int[] navigationPatternNids;
+    /**
+     * Null if there are more navigation patterns than the adjacency cache can index.
+     */
+    private final TaxonomyAdjacencyCache adjacencyCache;
+    /**
+     * Delay before building the closure after it is first needed, or after a change, so a burst of changes to
+     * navigation semantics or concepts results in one build.
+     */
+    private static final long CLOSURE_BUILD_DELAY_MS = 2_000;
+    /**
+     * The current closure, or null if not built, or invalidated by a change to the taxonomy.
+     */
+    private volatile TaxonomyClosure taxonomyClosure;
+    /**
+     * Incremented on each invalidation, so a closure built from the taxonomy before a change is not published.
+     */
+    private int closureGeneration;
+    private final AtomicBoolean closureBuildScheduled = new AtomicBoolean();
+    // Held here, as the entity provider holds its subscribers by weak reference.
+    private final Subscriber<EntityChange> taxonomyChangeSubscriber = this::taxonomyChanged;
 
     public NavigationCalculatorWithCache(StampCoordinateRecord stampFilter,
                                          ImmutableList<LanguageCoordinateRecord> languageCoordinateList,
@@ -76,6 +117,14 @@ public NavigationCalculatorWithCache(StampCoordinateRecord stampFilter,
         this.languageCalculator = LanguageCalculatorWithCache.getCalculator(stampFilter, languageCoordinateList);
         this.navigationCoordinate = navigationCoordinate;
         this.vertexStampCalculator = StampCalculatorWithCache.getCalculator(stampFilter.withAllowedStates(navigationCoordinate.vertexStates()));
+        this.navigationPatternNids = navigationCoordinate.navigationPatternNids().toArray();
+        if (navigationPatternNids.length <= TaxonomyAdjacencyCache.MAX_PATTERNS) {
+            this.adjacencyCache = new TaxonomyAdjacencyCache(this::buildAdjacencyRow, this::navigationNeighbors);
+        } else {
+            LOG.warn("{} navigation patterns, parents and children will not be cached", navigationPatternNids.length);
+            this.adjacencyCache = null;
+        }
+        Entity.provider().addChangeSubscriberWithWeakReference(this.taxonomyChangeSubscriber);
     }
 
     /**
@@ -101,24 +150,6 @@ public LanguageCalculator languageCalculator() {
         return languageCalculator;
     }
 
-    private void addDescendents(int conceptNid, MutableIntSet nidSet) {
-        if (!nidSet.contains(conceptNid)) {
-            childrenOf(conceptNid).forEach(childNid -> {
-                addDescendents(childNid, nidSet);
-                nidSet.add(childNid);
-            });
-        }
-    }
-
-    private void addAncestors(int conceptNid, MutableIntSet nidSet) {
-        if (!nidSet.contains(conceptNid)) {
-            parentsOf(conceptNid).forEach(parentNid -> {
-                addAncestors(parentNid, nidSet);
-                nidSet.add(parentNid);
-            });
-        }
-    }
-
     @Override
     public StampCalculatorWithCache vertexStampCalculator() {
         return this.vertexStampCalculator;
@@ -141,25 +172,133 @@ public IntIdList sortedParentsOf(int conceptNid) {
 
     @Override
     public IntIdList unsortedParentsOf(int conceptNid) {
+        if (adjacencyCache != null) {
+            return IntIds.list.of(adjacencyCache.row(conceptNid).targets(false, -1L));
+        }
         return getIntIdListForMeaning(conceptNid, TinkarTerm.RELATIONSHIP_ORIGIN);
     }
 
+    /**
+     * @return the closure, if built and current, otherwise null, after scheduling a build.
+     */
+    private TaxonomyClosure closure() {
+        TaxonomyClosure closure = this.taxonomyClosure;
+        if (closure == null && closureBuildScheduled.compareAndSet(false, true)) {
+            TinkExecutor.scheduled().schedule(() -> TinkExecutor.threadPool().execute(this::buildClosure),
+                    CLOSURE_BUILD_DELAY_MS, TimeUnit.MILLISECONDS);
+        }
+        return closure;
+    }
+
+    private void buildClosure() {
+        try {
+            int generation;
+            synchronized (this) {
+                generation = closureGeneration;
+            }
+            Stopwatch stopwatch = new Stopwatch();
+            MutableIntList conceptNids = IntLists.mutable.empty().asSynchronized();
+            PrimitiveData.get().forEachConceptNid(conceptNids::add);
+            TaxonomyClosure closure = TaxonomyClosure.build(conceptNids.toArray(),
+                    conceptNid -> closureEdges(conceptNid, true),
+                    conceptNid -> closureEdges(conceptNid, false));
+            stopwatch.end();
+            synchronized (this) {
+                if (generation != closureGeneration) {
+                    LOG.info("Taxonomy changed while building closure, discarding it");
+                    return;
+                }
+                this.taxonomyClosure = closure;
+            }
+            LOG.info("Built taxonomy closure of {} concepts in {}", closure.size(), stopwatch.durationString());
+        } catch (RuntimeException e) {
+            LOG.error("Unable to build taxonomy closure", e);
+        } finally {
+            closureBuildScheduled.set(false);
+        }
+    }
+
+    /**
+     * The children or parents of a concept for the closure build, which reads every concept once, so uses a cached
+     * row if there is one, but does not cache rows, which would evict those in use.
+     */
+    private int[] closureEdges(int conceptNid, boolean children) {
+        TaxonomyAdjacencyCache.Row row = adjacencyCache == null ? null : adjacencyCache.rowIfPresent(conceptNid);
+        if (row != null) {
+            return row.targets(children, -1L);
+        }
+        return getIntIdListForMeaning(conceptNid,
+                children ? TinkarTerm.RELATIONSHIP_DESTINATION : TinkarTerm.RELATIONSHIP_ORIGIN).toArray();
+    }
+
+    /**
+     * Called on the thread putting each change, so classifies the change from what the change carries, without
+     * reading the changed entity.
+     */
+    private void taxonomyChanged(EntityChange change) {
+        if (change.isAll() || navigationCoordinate.navigationPatternNids().contains(change.nid())) {
+            if (adjacencyCache != null) {
+                adjacencyCache.invalidateAll();
+            }
+            invalidateClosure();
+            return;
+        }
+        if (change.isSemantic() && navigationCoordinate.navigationPatternNids().contains(change.patternNid())) {
+            if (adjacencyCache != null) {
+                adjacencyCache.invalidateRow(change.referencedComponentNid());
+            }
+            invalidateClosure();
+        } else if (change.isConcept() &&
+                navigationCoordinate.vertexStates() != StateSet.ACTIVE_INACTIVE_AND_WITHDRAWN) {
+            // Parents and children are filtered by the vertex versions of this concept, so a retired concept
+            // leaves the rows of its neighbors, and the closure.
+            if (adjacencyCache != null) {
+                adjacencyCache.invalidateNeighbors(change.nid());
+            }
+            invalidateClosure();
+        }
+    }
+
+    private void invalidateClosure() {
+        synchronized (this) {
+            closureGeneration++;
+            this.taxonomyClosure = null;
+        }
+    }
+
+    @Override
+    public boolean isDescendentOf(int descendentNid, int ancestorNid) {
+        TaxonomyClosure closure = closure();
+        if (closure != null && closure.contains(descendentNid)) {
+            return descendentNid != ancestorNid && closure.isKindOf(descendentNid, ancestorNid);
+        }
+        return ancestorsOf(descendentNid).contains(ancestorNid);
+    }
+
     @Override
     public IntIdSet descendentsOf(int conceptNid) {
-        MutableIntSet nidSet = IntSets.mutable.empty();
-        addDescendents(conceptNid, nidSet);
-        return IntIds.set.of(nidSet.toArray());
+        TaxonomyClosure closure = closure();
+        if (closure != null && closure.contains(conceptNid)) {
+            return IntIds.set.of(closure.descendantsOf(conceptNid, false));
+        }
+        return TaxonomyTraversal.descendents(this).reachable(conceptNid);
     }
 
     @Override
     public IntIdSet ancestorsOf(int conceptNid) {
-        MutableIntSet nidSet = IntSets.mutable.empty();
-        addAncestors(conceptNid, nidSet);
-        return IntIds.set.of(nidSet.toArray());
+        TaxonomyClosure closure = closure();
+        if (closure != null && closure.contains(conceptNid)) {
+            return IntIds.set.of(closure.ancestorsOf(conceptNid));
+        }
+        return TaxonomyTraversal.ancestors(this).reachable(conceptNid);
     }
 
     @Override
     public IntIdSet kindOf(int conceptNid) {
+        TaxonomyClosure closure = closure();
+        if (closure != null && closure.contains(conceptNid)) {
+            return IntIds.set.of(closure.descendantsOf(conceptNid, true));
+        }
         MutableIntSet kindOfSet = IntSets.mutable.of(conceptNid);
         kindOfSet.addAll(descendentsOf(conceptNid).toArray());
         return IntIds.set.of(kindOfSet.toArray());
@@ -192,14 +331,23 @@ public IntIdList sortedChildrenOf(int conceptNid) {
 
     @Override
     public IntIdList unsortedChildrenOf(int conceptNid) {
+        if (adjacencyCache != null) {
+            return IntIds.list.of(adjacencyCache.row(conceptNid).targets(true, -1L));
+        }
         return getIntIdListForMeaning(conceptNid, TinkarTerm.RELATIONSHIP_DESTINATION);
     }
     @Override
     public IntIdList unsortedUnversionedChildrenOf(int conceptNid) {
+        if (adjacencyCache != null) {
+            return IntIds.list.of(adjacencyCache.row(conceptNid).unversionedTargets(true));
+        }
         return getIntIdListForMeaningUnversioned(conceptNid, TinkarTerm.RELATIONSHIP_DESTINATION);
     }
     @Override
     public IntIdList unsortedUnversionedParentsOf(int conceptNid) {
+        if (adjacencyCache != null) {
+            return IntIds.list.of(adjacencyCache.row(conceptNid).unversionedTargets(false));
+        }
         return getIntIdListForMeaningUnversioned(conceptNid, TinkarTerm.RELATIONSHIP_ORIGIN);
     }
 
@@ -216,10 +364,63 @@ public NavigationCoordinateRecord navigationCoordinate() {
 
     @Override
     public IntIdList unsortedParentsOf(int conceptNid, int patternNid) {
+        int patternIndex = patternIndex(patternNid);
+        if (adjacencyCache != null && patternIndex >= 0) {
+            return IntIds.list.of(adjacencyCache.row(conceptNid).targets(false, 1L << patternIndex));
+        }
         return getIntIdListForMeaningFromPattern(conceptNid, TinkarTerm.RELATIONSHIP_ORIGIN, patternNid);
     }
 
+    private int patternIndex(int patternNid) {
+        for (int i = 0; i < navigationPatternNids.length; i++) {
+            if (navigationPatternNids[i] == patternNid) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private TaxonomyAdjacencyCache.Row buildAdjacencyRow(int conceptNid) {
+        MutableIntLongMap parentPatternBits = new IntLongHashMap();
+        MutableIntLongMap childPatternBits = new IntLongHashMap();
+        for (int i = 0; i < navigationPatternNids.length; i++) {
+            addPatternBit(conceptNid, TinkarTerm.RELATIONSHIP_ORIGIN, i, parentPatternBits);
+            addPatternBit(conceptNid, TinkarTerm.RELATIONSHIP_DESTINATION, i, childPatternBits);
+        }
+        if (navigationCoordinate.vertexStates() == StateSet.ACTIVE_INACTIVE_AND_WITHDRAWN) {
+            return TaxonomyAdjacencyCache.Row.of(parentPatternBits, childPatternBits, nid -> true);
+        }
+        return TaxonomyAdjacencyCache.Row.of(parentPatternBits, childPatternBits,
+                nid -> vertexStampCalculator.latest(nid).isPresent());
+    }
+
+    /**
+     * The parents and children of a concept from its navigation semantics, whatever their vertex versions.
+     */
+    private int[] navigationNeighbors(int conceptNid) {
+        MutableIntSet neighborNids = IntSets.mutable.empty();
+        for (int navigationPatternNid : navigationPatternNids) {
+            intIdListForMeaningFromPattern(conceptNid, TinkarTerm.RELATIONSHIP_ORIGIN, navigationPatternNid,
+                    neighborNids, navigationCoordinate.vertexStates(), false);
+            intIdListForMeaningFromPattern(conceptNid, TinkarTerm.RELATIONSHIP_DESTINATION, navigationPatternNid,
+                    neighborNids, navigationCoordinate.vertexStates(), false);
+        }
+        return neighborNids.toArray();
+    }
+
+    private void addPatternBit(int conceptNid, EntityProxy.Concept relationshipDirection, int patternIndex,
+                               MutableIntLongMap patternBits) {
+        MutableIntSet nids = IntSets.mutable.empty();
+        intIdListForMeaningFromPattern(conceptNid, relationshipDirection, navigationPatternNids[patternIndex], nids,
+                navigationCoordinate.vertexStates(), false);
+        long patternBit = 1L << patternIndex;
+        nids.forEach(nid -> patternBits.updateValue(nid, 0L, bits -> bits | patternBit));
+    }
+
     private ImmutableList<Edge> getEdges(int conceptNid, EntityProxy.Concept relationshipDirection) {
+        if (adjacencyCache != null) {
+            return getCachedEdges(conceptNid, relationshipDirection == TinkarTerm.RELATIONSHIP_DESTINATION);
+        }
         MutableIntObjectMap<MutableEdge> edges = IntObjectMaps.mutable.empty();
         for (int patternNid : navigationCoordinate.navigationPatternNids().toArray()) {
             stampCalculator.latestPatternEntityVersion(patternNid).ifPresent(patternEntityVersion -> {
@@ -236,6 +437,35 @@ private ImmutableList<Edge> getEdges(int conceptNid, EntityProxy.Concept relatio
         return Lists.immutable.ofAll(edges.stream().map(mutableEdge -> mutableEdge.toEdge()).toList());
     }
 
+    private ImmutableList<Edge> getCachedEdges(int conceptNid, boolean children) {
+        int[] typeNids = new int[navigationPatternNids.length];
+        for (int i = 0; i < navigationPatternNids.length; i++) {
+            int patternIndex = i;
+            stampCalculator.latestPatternEntityVersion(navigationPatternNids[i]).ifPresent(patternEntityVersion ->
+                    typeNids[patternIndex] = patternEntityVersion.semanticMeaningNid());
+        }
+        MutableIntList destinationNids = IntLists.mutable.empty();
+        MutableList<IntIdSet> edgeTypes = Lists.mutable.empty();
+        adjacencyCache.row(conceptNid).forEachEdge(children, (destinationNid, patternBits) -> {
+            int[] edgeTypeNids = new int[Long.bitCount(patternBits)];
+            int count = 0;
+            for (long remaining = patternBits; remaining != 0; remaining &= remaining - 1) {
+                int typeNid = typeNids[Long.numberOfTrailingZeros(remaining)];
+                if (typeNid != 0) {
+                    edgeTypeNids[count++] = typeNid;
+                }
+            }
+            destinationNids.add(destinationNid);
+            edgeTypes.add(IntIds.set.of(Arrays.copyOf(edgeTypeNids, count)));
+        });
+        String[] comparisonStrings = languageCalculator.getDescriptionTextsOrNids(destinationNids.toArray());
+        MutableList<Edge> edges = Lists.mutable.ofInitialCapacity(comparisonStrings.length);
+        for (int i = 0; i < comparisonStrings.length; i++) {
+            edges.add(new EdgeRecord(edgeTypes.get(i), destinationNids.get(i), comparisonStrings[i]));
+        }
+        return edges.toImmutable();
+    }
+
     private IntIdList getIntIdListForMeaningFromPattern(int referencedComponentNid, EntityProxy.Concept fieldMeaning, int patternNid) {
         MutableIntSet nidsInList = IntSets.mutable.empty();
         intIdListForMeaningFromPattern(referencedComponentNid, fieldMeaning, patternNid, nidsInList, navigationCoordinate.vertexStates(), true);
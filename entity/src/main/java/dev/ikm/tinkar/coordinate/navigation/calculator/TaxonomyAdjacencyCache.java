@@ -0,0 +1,202 @@
+/*
+ * Copyright © 2015 Integrated Knowledge Management (support@ikm.dev)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dev.ikm.tinkar.coordinate.navigation.calculator;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.eclipse.collections.api.map.primitive.MutableIntLongMap;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.IntFunction;
+import java.util.function.IntPredicate;
+
+/**
+ * The parents and children of concepts under one navigation coordinate, so repeated navigation of a taxonomy does
+ * not re-read navigation semantics, or the vertex versions of each parent and child.
+ * <p>
+ * Each concept has a {@link Row}: the sorted nids of its parents followed by those of its children, in compressed
+ * sparse row form, with a bitset of the navigation patterns that link to each, and a bitset of those with a vertex
+ * version allowed by the coordinate. Rows are invalidated individually: a change to the navigation semantic of a
+ * concept invalidates the row of the concept, and a change to a concept invalidates the rows of its parents and
+ * children, which are filtered by its vertex versions. The parents and children of a concept whose row is not
+ * cached are found from its navigation semantics.
+ */
+final class TaxonomyAdjacencyCache {
+    /**
+     * Navigation patterns are identified by their index in the coordinate's pattern nids, in a long bitset.
+     */
+    static final int MAX_PATTERNS = Long.SIZE;
+    private static final int MAX_ROWS = 102_400;
+
+    /**
+     * The parents and children of one concept.
+     */
+    static final class Row {
+        private static final long[] NONE = new long[0];
+        /**
+         * Parents from 0 until childStart, then children until the end, each sorted by nid.
+         */
+        private final int[] targets;
+        private final int childStart;
+        /**
+         * Bitset of the navigation pattern indexes linking to each target, by target index.
+         */
+        private final long[] patternBits;
+        /**
+         * Bitset of the targets with an allowed vertex version, by target index.
+         */
+        private final long[] allowed;
+
+        private Row(int[] targets, int childStart, long[] patternBits, long[] allowed) {
+            this.targets = targets;
+            this.childStart = childStart;
+            this.patternBits = patternBits;
+            this.allowed = allowed;
+        }
+
+        /**
+         * @param parentPatternBits the bitset of navigation pattern indexes linking to each parent nid
+         * @param childPatternBits  the bitset of navigation pattern indexes linking to each child nid
+         * @param vertexAllowed     whether a parent or child has an allowed vertex version
+         */
+        static Row of(MutableIntLongMap parentPatternBits, MutableIntLongMap childPatternBits, IntPredicate vertexAllowed) {
+            int[] parents = parentPatternBits.keySet().toSortedArray();
+            int[] children = childPatternBits.keySet().toSortedArray();
+            int[] targets = Arrays.copyOf(parents, parents.length + children.length);
+            System.arraycopy(children, 0, targets, parents.length, children.length);
+            long[] patternBits = new long[targets.length];
+            long[] allowed = targets.length == 0 ? NONE : new long[((targets.length - 1) >>> 6) + 1];
+            for (int i = 0; i < targets.length; i++) {
+                patternBits[i] = i < parents.length ? parentPatternBits.get(targets[i]) : childPatternBits.get(targets[i]);
+                if (vertexAllowed.test(targets[i])) {
+                    allowed[i >>> 6] |= 1L << i;
+                }
+            }
+            return new Row(targets, parents.length, patternBits, allowed);
+        }
+
+        /**
+         * @return the parents or children with an allowed vertex version, linked by a pattern in the mask
+         */
+        int[] targets(boolean children, long patternMask) {
+            int start = children ? childStart : 0;
+            int end = children ? targets.length : childStart;
+            int[] result = new int[end - start];
+            int count = 0;
+            for (int i = start; i < end; i++) {
+                if ((allowed[i >>> 6] & (1L << i)) != 0 && (patternBits[i] & patternMask) != 0) {
+                    result[count++] = targets[i];
+                }
+            }
+            return count == result.length ? result : Arrays.copyOf(result, count);
+        }
+
+        /**
+         * @return all parents or children, whatever their vertex versions
+         */
+        int[] unversionedTargets(boolean children) {
+            return children ? Arrays.copyOfRange(targets, childStart, targets.length) :
+                    Arrays.copyOfRange(targets, 0, childStart);
+        }
+
+        /**
+         * Passes each parent or child with an allowed vertex version, and the bitset of the patterns linking to it,
+         * to the consumer.
+         */
+        void forEachEdge(boolean children, EdgeConsumer consumer) {
+            int start = children ? childStart : 0;
+            int end = children ? targets.length : childStart;
+            for (int i = start; i < end; i++) {
+                if ((allowed[i >>> 6] & (1L << i)) != 0) {
+                    consumer.accept(targets[i], patternBits[i]);
+                }
+            }
+        }
+
+        int[] allTargets() {
+            return targets;
+        }
+    }
+
+    @FunctionalInterface
+    interface EdgeConsumer {
+        void accept(int targetNid, long patternBits);
+    }
+
+    private final Cache<Integer, Row> rows = Caffeine.newBuilder().maximumSize(MAX_ROWS).build();
+    /**
+     * Incremented when all rows are invalidated, so a row built while they are is not kept.
+     */
+    private final AtomicLong generation = new AtomicLong();
+    private final IntFunction<Row> rowBuilder;
+    private final IntFunction<int[]> neighborFinder;
+
+    /**
+     * @param rowBuilder     builds the row of a concept
+     * @param neighborFinder finds the parents and children of a concept, whatever their vertex versions, without
+     *                       building its row
+     */
+    TaxonomyAdjacencyCache(IntFunction<Row> rowBuilder, IntFunction<int[]> neighborFinder) {
+        this.rowBuilder = rowBuilder;
+        this.neighborFinder = neighborFinder;
+    }
+
+    Row row(int conceptNid) {
+        Row row = rows.getIfPresent(conceptNid);
+        if (row != null) {
+            return row;
+        }
+        long startGeneration = generation.get();
+        row = rows.get(conceptNid, rowBuilder::apply);
+        if (generation.get() != startGeneration) {
+            rows.invalidate(conceptNid);
+        }
+        return row;
+    }
+
+    /**
+     * @return the row of the concept if cached, otherwise null, without building or caching it
+     */
+    Row rowIfPresent(int conceptNid) {
+        return rows.getIfPresent(conceptNid);
+    }
+
+    /**
+     * Invalidates the row of a concept whose navigation semantics changed.
+     */
+    void invalidateRow(int conceptNid) {
+        rows.invalidate(conceptNid);
+    }
+
+    /**
+     * Invalidates the rows of the parents and children of a concept whose versions changed.
+     */
+    void invalidateNeighbors(int conceptNid) {
+        // The rows of neighbors may be cached when this row is not. Building this row to find them would evict
+        // rows in use, and test the vertex versions of each neighbor, so they are read from the semantics instead.
+        Row row = rows.getIfPresent(conceptNid);
+        int[] neighborNids = row != null ? row.allTargets() : neighborFinder.apply(conceptNid);
+        for (int neighborNid : neighborNids) {
+            rows.invalidate(neighborNid);
+        }
+    }
+
+    void invalidateAll() {
+        generation.incrementAndGet();
+        rows.invalidateAll();
+    }
+}
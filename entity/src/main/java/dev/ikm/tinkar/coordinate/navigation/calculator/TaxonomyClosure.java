@@ -0,0 +1,328 @@
+/*
+ * Copyright © 2015 Integrated Knowledge Management (support@ikm.dev)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dev.ikm.tinkar.coordinate.navigation.calculator;
+
+import org.eclipse.collections.api.map.primitive.MutableIntIntMap;
+import org.eclipse.collections.impl.map.mutable.primitive.IntIntHashMap;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Arrays;
+import java.util.function.IntFunction;
+import java.util.stream.IntStream;
+
+/**
+ * The transitive closure of a taxonomy, in the descendant and the ancestor direction, as interval labels.
+ * <p>
+ * For each direction, the concepts are numbered in the post order of a depth first spanning forest, so the
+ * concepts of a spanning subtree are numbered in one interval ending at its root. Each concept is labeled with the
+ * merged intervals of itself and everything reachable from it. In a tree that is one interval; in a taxonomy with
+ * multiple parents a few more. Concepts on a cycle reach each other, so share one label. Testing reachability is a
+ * binary search of the intervals of one concept, and the reachable set is read from the intervals, without walking
+ * the taxonomy.
+ * <p>
+ * The closure is immutable. Concepts not in the taxonomy when it was built are not {@link #contains(int) contained},
+ * and must be answered by walking the taxonomy.
+ */
+final class TaxonomyClosure {
+    private static final Logger LOG = LoggerFactory.getLogger(TaxonomyClosure.class);
+
+    /**
+     * Reachability in one direction: from each concept to its descendants, or to its ancestors.
+     */
+    private static final class Labels {
+        /**
+         * Post order number of each concept, by index in the concept nids.
+         */
+        final int[] postOrder;
+        /**
+         * Nid of each concept, by post order number.
+         */
+        final int[] nidForPostOrder;
+        /**
+         * Sorted, disjoint, inclusive [start, end] pairs of post order numbers reachable from each concept, by
+         * index in the concept nids, including the concept itself.
+         */
+        final int[][] intervals;
+
+        Labels(int[] postOrder, int[] nidForPostOrder, int[][] intervals) {
+            this.postOrder = postOrder;
+            this.nidForPostOrder = nidForPostOrder;
+            this.intervals = intervals;
+        }
+
+        boolean reaches(int fromIndex, int toIndex) {
+            int[] reachable = intervals[fromIndex];
+            int target = postOrder[toIndex];
+            int low = 0;
+            int high = reachable.length / 2 - 1;
+            while (low <= high) {
+                int middle = (low + high) >>> 1;
+                if (reachable[2 * middle + 1] < target) {
+                    low = middle + 1;
+                } else if (reachable[2 * middle] > target) {
+                    high = middle - 1;
+                } else {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        int[] reachable(int fromIndex, boolean includeSelf) {
+            int[] reachable = intervals[fromIndex];
+            int count = 0;
+            for (int i = 0; i < reachable.length; i += 2) {
+                count += reachable[i + 1] - reachable[i] + 1;
+            }
+            int self = postOrder[fromIndex];
+            int[] nids = new int[includeSelf ? count : count - 1];
+            int next = 0;
+            for (int i = 0; i < reachable.length; i += 2) {
+                for (int ordinal = reachable[i]; ordinal <= reachable[i + 1]; ordinal++) {
+                    if (includeSelf || ordinal != self) {
+                        nids[next++] = nidForPostOrder[ordinal];
+                    }
+                }
+            }
+            return nids;
+        }
+    }
+
+    private final MutableIntIntMap indexForNid;
+    private final Labels descendants;
+    private final Labels ancestors;
+
+    private TaxonomyClosure(MutableIntIntMap indexForNid, Labels descendants, Labels ancestors) {
+        this.indexForNid = indexForNid;
+        this.descendants = descendants;
+        this.ancestors = ancestors;
+    }
+
+    /**
+     * Builds the closure of the concepts, reading the children and the parents of each concept in parallel.
+     * Children and parents that are not among the concepts are ignored.
+     */
+    static TaxonomyClosure build(int[] conceptNids, IntFunction<int[]> childrenOf, IntFunction<int[]> parentsOf) {
+        MutableIntIntMap indexForNid = new IntIntHashMap(conceptNids.length);
+        for (int i = 0; i < conceptNids.length; i++) {
+            indexForNid.put(conceptNids[i], i);
+        }
+        int[][] children = adjacency(conceptNids, indexForNid, childrenOf);
+        int[][] parents = adjacency(conceptNids, indexForNid, parentsOf);
+        Labels descendants = label(conceptNids, children, parents);
+        Labels ancestors = label(conceptNids, parents, children);
+        return new TaxonomyClosure(indexForNid, descendants, ancestors);
+    }
+
+    /**
+     * @return the index of each adjacent concept, for each concept, by index
+     */
+    private static int[][] adjacency(int[] conceptNids, MutableIntIntMap indexForNid, IntFunction<int[]> edges) {
+        int[][] adjacent = new int[conceptNids.length][];
+        IntStream.range(0, conceptNids.length).parallel().forEach(i -> {
+            int[] nids = edges.apply(conceptNids[i]);
+            int[] indexes = new int[nids.length];
+            int count = 0;
+            for (int nid : nids) {
+                int index = indexForNid.getIfAbsent(nid, -1);
+                if (index >= 0) {
+                    indexes[count++] = index;
+                }
+            }
+            adjacent[i] = count == indexes.length ? indexes : Arrays.copyOf(indexes, count);
+        });
+        return adjacent;
+    }
+
+    /**
+     * Numbers the concepts in the post order of a depth first forest over the edges, starting from the concepts
+     * without incoming edges, then labels each concept with the intervals of what it reaches.
+     * <p>
+     * Concepts on a cycle reach each other, so the strongly connected components are found during the same search,
+     * by Tarjan's algorithm, and every concept of a component is labeled with the intervals of the component.
+     */
+    private static Labels label(int[] conceptNids, int[][] edges, int[][] incoming) {
+        int count = conceptNids.length;
+        int[] postOrder = new int[count];
+        int[] firstInSubtree = new int[count];
+        int[] nidForPostOrder = new int[count];
+        boolean[] visited = new boolean[count];
+        int[] stack = new int[count];
+        int[] nextEdge = new int[count];
+        int nextPostOrder = 0;
+        // Tarjan's search order and low link of each concept, and the stack of concepts not yet in a component.
+        int[] searchOrder = new int[count];
+        int[] lowLink = new int[count];
+        boolean[] onComponentStack = new boolean[count];
+        int[] componentStack = new int[count];
+        int componentStackSize = 0;
+        int nextSearchOrder = 0;
+        // Concept indexes grouped by component, with components in the order found, which is reverse topological.
+        int[] componentMembers = new int[count];
+        int[] componentEnds = new int[count];
+        int componentCount = 0;
+        int[] componentOf = new int[count];
+        int conceptsOnCycles = 0;
+        // Roots first, so subtrees are as large as possible. A second pass picks up concepts only on cycles.
+        for (int pass = 0; pass < 2; pass++) {
+            for (int root = 0; root < count; root++) {
+                if (visited[root] || (pass == 0 && incoming[root].length > 0)) {
+                    continue;
+                }
+                int depth = 0;
+                stack[depth++] = root;
+                visited[root] = true;
+                firstInSubtree[root] = nextPostOrder;
+                searchOrder[root] = lowLink[root] = nextSearchOrder++;
+                componentStack[componentStackSize++] = root;
+                onComponentStack[root] = true;
+                while (depth > 0) {
+                    int current = stack[depth - 1];
+                    if (nextEdge[current] < edges[current].length) {
+                        int next = edges[current][nextEdge[current]++];
+                        if (!visited[next]) {
+                            visited[next] = true;
+                            firstInSubtree[next] = nextPostOrder;
+                            searchOrder[next] = lowLink[next] = nextSearchOrder++;
+                            componentStack[componentStackSize++] = next;
+                            onComponentStack[next] = true;
+                            stack[depth++] = next;
+                        } else if (onComponentStack[next]) {
+                            lowLink[current] = Math.min(lowLink[current], searchOrder[next]);
+                        }
+                    } else {
+                        depth--;
+                        postOrder[current] = nextPostOrder;
+                        nidForPostOrder[nextPostOrder] = conceptNids[current];
+                        nextPostOrder++;
+                        if (depth > 0) {
+                            int parent = stack[depth - 1];
+                            lowLink[parent] = Math.min(lowLink[parent], lowLink[current]);
+                        }
+                        if (lowLink[current] == searchOrder[current]) {
+                            int componentStart = componentCount == 0 ? 0 : componentEnds[componentCount - 1];
+                            int member;
+                            int memberEnd = componentStart;
+                            do {
+                                member = componentStack[--componentStackSize];
+                                onComponentStack[member] = false;
+                                componentOf[member] = componentCount;
+                                componentMembers[memberEnd++] = member;
+                            } while (member != current);
+                            if (memberEnd - componentStart > 1) {
+                                conceptsOnCycles += memberEnd - componentStart;
+                            }
+                            componentEnds[componentCount++] = memberEnd;
+                        }
+                    }
+                }
+            }
+        }
+        // A component reaches the spanning subtrees of its members, and the components its edges lead to, which
+        // were found, and labeled, before it.
+        int[][] componentIntervals = new int[componentCount][];
+        int[][] intervals = new int[count][];
+        int[] merged = new int[16];
+        for (int component = 0; component < componentCount; component++) {
+            int componentStart = component == 0 ? 0 : componentEnds[component - 1];
+            int pairs = 0;
+            for (int memberIndex = componentStart; memberIndex < componentEnds[component]; memberIndex++) {
+                int member = componentMembers[memberIndex];
+                merged = ensureCapacity(merged, (pairs + 1) * 2);
+                merged[pairs * 2] = firstInSubtree[member];
+                merged[pairs * 2 + 1] = postOrder[member];
+                pairs++;
+                for (int next : edges[member]) {
+                    if (componentOf[next] == component) {
+                        continue;
+                    }
+                    int[] reachable = componentIntervals[componentOf[next]];
+                    merged = ensureCapacity(merged, (pairs * 2) + reachable.length);
+                    System.arraycopy(reachable, 0, merged, pairs * 2, reachable.length);
+                    pairs += reachable.length / 2;
+                }
+            }
+            componentIntervals[component] = mergeIntervals(merged, pairs);
+            for (int memberIndex = componentStart; memberIndex < componentEnds[component]; memberIndex++) {
+                intervals[componentMembers[memberIndex]] = componentIntervals[component];
+            }
+        }
+        if (conceptsOnCycles > 0) {
+            LOG.warn("Taxonomy has {} concepts on cycles", conceptsOnCycles);
+        }
+        return new Labels(postOrder, nidForPostOrder, intervals);
+    }
+
+    private static int[] ensureCapacity(int[] array, int capacity) {
+        return array.length >= capacity ? array : Arrays.copyOf(array, Math.max(capacity, array.length * 2));
+    }
+
+    /**
+     * @return the pairs sorted by start, with overlapping and adjacent intervals merged
+     */
+    private static int[] mergeIntervals(int[] pairs, int pairCount) {
+        if (pairCount == 1) {
+            return new int[]{pairs[0], pairs[1]};
+        }
+        long[] sorted = new long[pairCount];
+        for (int i = 0; i < pairCount; i++) {
+            sorted[i] = ((long) pairs[2 * i] << 32) | (pairs[2 * i + 1] & 0xFFFFFFFFL);
+        }
+        Arrays.sort(sorted);
+        int[] result = new int[pairCount * 2];
+        int resultCount = 0;
+        for (long interval : sorted) {
+            int start = (int) (interval >>> 32);
+            int end = (int) interval;
+            if (resultCount > 0 && start <= result[resultCount - 1] + 1) {
+                result[resultCount - 1] = Math.max(result[resultCount - 1], end);
+            } else {
+                result[resultCount++] = start;
+                result[resultCount++] = end;
+            }
+        }
+        return resultCount == result.length ? result : Arrays.copyOf(result, resultCount);
+    }
+
+    boolean contains(int conceptNid) {
+        return indexForNid.containsKey(conceptNid);
+    }
+
+    int size() {
+        return indexForNid.size();
+    }
+
+    /**
+     * @return true if the descendant is the ancestor, or is reachable from it through children
+     */
+    boolean isKindOf(int descendantNid, int ancestorNid) {
+        int descendantIndex = indexForNid.getIfAbsent(descendantNid, -1);
+        int ancestorIndex = indexForNid.getIfAbsent(ancestorNid, -1);
+        if (descendantIndex < 0 || ancestorIndex < 0) {
+            return false;
+        }
+        return descendants.reaches(ancestorIndex, descendantIndex);
+    }
+
+    int[] descendantsOf(int conceptNid, boolean includeSelf) {
+        return descendants.reachable(indexForNid.get(conceptNid), includeSelf);
+    }
+
+    int[] ancestorsOf(int conceptNid) {
+        return ancestors.reachable(indexForNid.get(conceptNid), false);
+    }
+}
@@ -0,0 +1,201 @@
+/*
+ * Copyright © 2015 Integrated Knowledge Management (support@ikm.dev)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dev.ikm.tinkar.coordinate.navigation.calculator;
+
+import dev.ikm.tinkar.common.id.IntIdSet;
+import dev.ikm.tinkar.common.id.IntIds;
+import dev.ikm.tinkar.common.service.TinkExecutor;
+import dev.ikm.tinkar.common.sets.ConcurrentNidSet;
+
+import java.util.Arrays;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntFunction;
+import java.util.function.Supplier;
+import java.util.stream.IntStream;
+
+/**
+ * An iterative, breadth first traversal of a taxonomy from a concept, through the children or the parents of
+ * each concept.
+ * <p>
+ * Each concept is visited once, at its shortest depth from the start, however many paths lead to it, so the
+ * diamonds of a taxonomy with multiple parents are not expanded repeatedly. Each level of the traversal is
+ * expanded in parallel on the fork join pool when it is wide enough, and the concepts visited are recorded in a
+ * {@link ConcurrentNidSet}. The traversal does not recurse, so the depth of the taxonomy is not limited by the
+ * stack.
+ * <pre>{@code
+ * IntIdSet descendents = TaxonomyTraversal.descendents(navigationCalculator).reachable(conceptNid);
+ *
+ * TaxonomyTraversal.ancestors(navigationCalculator).withMaxDepth(2)
+ *         .traverse(conceptNid, (nid, depth) -> { ...; return true; });
+ * }</pre>
+ */
+public final class TaxonomyTraversal {
+    /**
+     * Levels narrower than this are expanded on the calling thread.
+     */
+    private static final int PARALLEL_THRESHOLD = 64;
+
+    /**
+     * Receives each concept reached. When the traversal is parallel, visits of the concepts of one level may be
+     * concurrent, but all concepts of a level are visited before any of the next.
+     */
+    @FunctionalInterface
+    public interface Visitor {
+        /**
+         * @param nid   the concept reached
+         * @param depth the number of edges from the start to the concept, at least one
+         * @return true to continue the traversal through the concept, false to not traverse beyond it
+         */
+        boolean visit(int nid, int depth);
+    }
+
+    private final IntFunction<int[]> edges;
+    private final int maxDepth;
+    private final boolean parallel;
+    private final Supplier<ForkJoinPool> pool;
+
+    private TaxonomyTraversal(IntFunction<int[]> edges, int maxDepth, boolean parallel, Supplier<ForkJoinPool> pool) {
+        this.edges = edges;
+        this.maxDepth = maxDepth;
+        this.parallel = parallel;
+        this.pool = pool;
+    }
+
+    /**
+     * @return a traversal through the unsorted children of each concept
+     */
+    public static TaxonomyTraversal descendents(NavigationCalculator navigationCalculator) {
+        return of(conceptNid -> navigationCalculator.unsortedChildrenOf(conceptNid).toArray());
+    }
+
+    /**
+     * @return a traversal through the unsorted parents of each concept
+     */
+    public static TaxonomyTraversal ancestors(NavigationCalculator navigationCalculator) {
+        return of(conceptNid -> navigationCalculator.unsortedParentsOf(conceptNid).toArray());
+    }
+
+    /**
+     * @param edges the nids adjacent to a concept nid. Must be safe to call concurrently.
+     */
+    public static TaxonomyTraversal of(IntFunction<int[]> edges) {
+        return new TaxonomyTraversal(edges, Integer.MAX_VALUE, true, TinkExecutor::forkJoinThreadPool);
+    }
+
+    /**
+     * @return a traversal that does not go further than the depth from the start
+     */
+    public TaxonomyTraversal withMaxDepth(int maxDepth) {
+        if (maxDepth < 0) {
+            throw new IllegalArgumentException("maxDepth cannot be negative: " + maxDepth);
+        }
+        return new TaxonomyTraversal(edges, maxDepth, parallel, pool);
+    }
+
+    /**
+     * @return a traversal that expands every level on the calling thread, and visits concepts in order
+     */
+    public TaxonomyTraversal sequential() {
+        return new TaxonomyTraversal(edges, maxDepth, false, pool);
+    }
+
+    /**
+     * @return a traversal that expands wide levels on the pool, rather than the fork join pool of the executor
+     */
+    TaxonomyTraversal withPool(ForkJoinPool pool) {
+        return new TaxonomyTraversal(edges, maxDepth, parallel, () -> pool);
+    }
+
+    /**
+     * Visits each concept reachable from the start. The start itself is not visited, unless it is reachable from
+     * itself through a cycle.
+     */
+    public void traverse(int startNid, Visitor visitor) {
+        ConcurrentNidSet visited = new ConcurrentNidSet();
+        int[] level = {startNid};
+        for (int depth = 1; depth <= maxDepth && level.length > 0; depth++) {
+            level = expand(level, depth, visited, visitor);
+        }
+    }
+
+    /**
+     * @return the concepts reachable from the start, not including the start unless it is on a cycle
+     */
+    public IntIdSet reachable(int startNid) {
+        ConcurrentNidSet visited = new ConcurrentNidSet();
+        int[] level = {startNid};
+        for (int depth = 1; depth <= maxDepth && level.length > 0; depth++) {
+            level = expand(level, depth, visited, (nid, nidDepth) -> true);
+        }
+        return IntIds.set.ofAlreadySorted(visited.toArray());
+    }
+
+    /**
+     * @return the concepts first reached at this depth, that the visitor chose to continue through
+     */
+    private int[] expand(int[] level, int depth, ConcurrentNidSet visited, Visitor visitor) {
+        if (!parallel || level.length < PARALLEL_THRESHOLD) {
+            int[] next = new int[Math.max(16, level.length)];
+            int count = 0;
+            for (int nid : level) {
+                for (int adjacentNid : edges.apply(nid)) {
+                    if (visited.add(adjacentNid) && visitor.visit(adjacentNid, depth)) {
+                        if (count == next.length) {
+                            next = Arrays.copyOf(next, count * 2);
+                        }
+                        next[count++] = adjacentNid;
+                    }
+                }
+            }
+            return Arrays.copyOf(next, count);
+        }
+        int[][] adjacent = new int[level.length][];
+        AtomicInteger nextCount = new AtomicInteger();
+        try {
+            pool.get().submit(() ->
+                    IntStream.range(0, level.length).parallel().forEach(i -> {
+                        int[] adjacentNids = edges.apply(level[i]);
+                        // The edges may be the backing array of an id list, so are not compacted in place.
+                        int[] reached = new int[adjacentNids.length];
+                        int count = 0;
+                        for (int adjacentNid : adjacentNids) {
+                            if (visited.add(adjacentNid) && visitor.visit(adjacentNid, depth)) {
+                                reached[count++] = adjacentNid;
+                            }
+                        }
+                        adjacent[i] = count == reached.length ? reached : Arrays.copyOf(reached, count);
+                        nextCount.addAndGet(count);
+                    })).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Taxonomy traversal interrupted", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            throw new IllegalStateException(e.getCause());
+        }
+        int[] next = new int[nextCount.get()];
+        int offset = 0;
+        for (int[] adjacentNids : adjacent) {
+            System.arraycopy(adjacentNids, 0, next, offset, adjacentNids.length);
+            offset += adjacentNids.length;
+        }
+        return next;
+    }
+}
@@ -57,6 +57,8 @@
 import dev.ikm.tinkar.common.id.IntIdSet;
 import dev.ikm.tinkar.common.service.CachingService;
 import dev.ikm.tinkar.common.service.PrimitiveData;
+import dev.ikm.tinkar.common.service.StampTable;
+import dev.ikm.tinkar.common.util.broadcast.Subscriber;
 import dev.ikm.tinkar.common.util.functional.TriConsumer;
 import dev.ikm.tinkar.common.util.ints2long.IntsInLong;
 import dev.ikm.tinkar.coordinate.PathService;
@@ -122,14 +124,27 @@ public class StampCalculatorWithCache implements StampCalculator {
     private final StampCoordinateRecord filter;
     private final StateSet allowedStates;
     private final ConcurrentHashMap<Integer, ImmutableSet<StampBranchRecord>> branchMap = new ConcurrentHashMap<>();
-    private final ConcurrentHashMap<Integer, Boolean> stampOnRoute = new ConcurrentHashMap<>();
-    private final ConcurrentHashMap<Integer, Boolean> stampIsAllowedState = new ConcurrentHashMap<>();
+    /**
+     * Route, segment, allowed state, and time of each committed stamp tested by this calculator.
+     */
+    private final StampRouteCache stampRoutes = new StampRouteCache();
+    // Held here, as the entity provider holds its subscribers by weak reference.
+    private final Subscriber<Integer> stampRouteInvalidationSubscriber = nid -> {
+        if (nid == Integer.MIN_VALUE) {
+            stampRoutes.clear();
+        }
+    };
     /**
      * Mapping from pathNid to each segment for that pathNid. There is one entry
      * for each path reachable antecedent to the destination position of the
      * computer.
      */
     private final ConcurrentHashMap<Integer, Segment> pathNidSegmentMap = new ConcurrentHashMap<>();
+    /**
+     * Whether the segment with the first sequence precedes the segment with the second, as by the preceding
+     * segments of the first.
+     */
+    private final boolean[][] segmentPrecedes;
     private final Cache<Integer, Latest<PatternEntityVersion>> patternVersionCache = Caffeine.newBuilder().maximumSize(512).build();
     private final Cache<Long, OptionalInt> indexForMeaningCache = Caffeine.newBuilder().maximumSize(1024).build();
     private final Cache<Long, OptionalInt> indexForPurposeCache = Caffeine.newBuilder().maximumSize(1024).build();
@@ -150,11 +165,76 @@ private StampCalculatorWithCache(StampCoordinateRecord filter) {
         //For the internal callback to populate the cache
         this.filter = filter;
         setupPathNidSegmentMap(filter.stampPosition().toStampPositionImmutable());
+        this.segmentPrecedes = segmentPrecedes();
         this.allowedStates = filter.allowedStates();
         this.cacheInvalidationSubscriber.addCaches(patternVersionCache, latestCache);
         Entity.provider().addSubscriberWithWeakReference(this.cacheInvalidationSubscriber);
         this.cacheInvalidationIfPatternSubscriber.addCaches(indexForMeaningCache, indexForPurposeCache);
         Entity.provider().addSubscriberWithWeakReference(this.cacheInvalidationIfPatternSubscriber);
+        Entity.provider().addSubscriberWithWeakReference(this.stampRouteInvalidationSubscriber);
+    }
+
+    private boolean[][] segmentPrecedes() {
+        int segmentCount = 0;
+        for (Segment segment : pathNidSegmentMap.values()) {
+            segmentCount = Math.max(segmentCount, segment.segmentSequence + 1);
+        }
+        boolean[][] precedes = new boolean[segmentCount][segmentCount];
+        for (Segment segment : pathNidSegmentMap.values()) {
+            for (int precedingSequence : segment.precedingSegments) {
+                precedes[segment.segmentSequence][precedingSequence] = true;
+            }
+        }
+        return precedes;
+    }
+
+    /**
+     * @return the route code of the stamp, from the route cache, or resolved from the stamp fields and added to
+     * the cache if the stamp is committed. Zero if the stamp does not exist.
+     */
+    private int routeCode(int stampNid) {
+        int code = stampRoutes.code(stampNid);
+        if (code != 0) {
+            return code;
+        }
+        int pathNid;
+        int moduleNid;
+        int stateNid;
+        long time;
+        StampTable stampTable = stampTable();
+        // Read as one row, so the fields are not mixed from before and after a concurrent replace of the stamp.
+        StampTable.Fields fields = stampTable == null ? null : stampTable.fields(stampNid);
+        if (fields != null) {
+            pathNid = fields.pathNid();
+            moduleNid = fields.moduleNid();
+            stateNid = fields.stateNid();
+            time = fields.time();
+        } else {
+            StampEntity stamp = Entity.getStamp(stampNid);
+            if (stamp == null) {
+                return 0;
+            }
+            pathNid = stamp.pathNid();
+            moduleNid = stamp.moduleNid();
+            stateNid = stamp.stateNid();
+            time = stamp.time();
+        }
+        Segment segment = this.pathNidSegmentMap.get(pathNid);
+        boolean onRoute = segment != null && segment.containsPosition(pathNid, moduleNid, time);
+        code = StampRouteCache.code(onRoute, onRoute ? segment.segmentSequence : 0,
+                this.allowedStates.contains(State.fromConceptNid(stateNid)));
+        if (time != Long.MAX_VALUE) {
+            stampRoutes.put(stampNid, code, time);
+        }
+        return code;
+    }
+
+    /**
+     * @return the time of a stamp with a route code
+     */
+    private long routeTime(int stampNid) {
+        long time = stampRoutes.time(stampNid);
+        return time != StampRouteCache.ABSENT_TIME ? time : time(stampNid);
     }
 
     /**
@@ -188,26 +268,71 @@ public static RelativePosition getRelativePosition(int stampNid1, int stampNid2)
         if (stampNid1 == stampNid2) {
             return RelativePosition.EQUAL;
         }
+        StampTable stampTable = stampTable();
+        if (stampTable != null) {
+            StampTable.Fields fields1 = stampTable.fields(stampNid1);
+            StampTable.Fields fields2 = stampTable.fields(stampNid2);
+            if (fields1 != null && fields2 != null) {
+                return relativePositionOnPaths(stampNid1, fields1.pathNid(), fields1.time(),
+                        stampNid2, fields2.pathNid(), fields2.time());
+            }
+        }
         StampEntity stamp1 = Entity.getStamp(stampNid1);
         StampEntity stamp2 = Entity.getStamp(stampNid2);
+        return relativePositionOnPaths(stampNid1, stamp1.pathNid(), stamp1.time(),
+                stampNid2, stamp2.pathNid(), stamp2.time());
+    }
 
-        if (stamp1.pathNid() == stamp2.pathNid()) {
-            if (stamp1.time() < stamp2.time()) {
+    private static RelativePosition relativePositionOnPaths(int stampNid1, int pathNid1, long time1,
+                                                            int stampNid2, int pathNid2, long time2) {
+        if (pathNid1 == pathNid2) {
+            if (time1 < time2) {
                 return RelativePosition.BEFORE;
             }
 
-            if (stamp1.time() > stamp2.time()) {
+            if (time1 > time2) {
                 return RelativePosition.AFTER;
             }
 
             return RelativePosition.EQUAL;
         }
 
-        if (traverseOrigins(stampNid1, getStampPath(stamp2.pathNid())) == RelativePosition.BEFORE) {
+        if (traverseOrigins(stampNid1, getStampPath(pathNid2)) == RelativePosition.BEFORE) {
             return RelativePosition.BEFORE;
         }
 
-        return traverseOrigins(stampNid2, getStampPath(stamp1.pathNid()));
+        return traverseOrigins(stampNid2, getStampPath(pathNid1));
+    }
+
+    /**
+     * @return the stamp table of the data store, or null if it does not maintain one
+     */
+    private static StampTable stampTable() {
+        return PrimitiveData.get().stampTable();
+    }
+
+    private static int pathNid(int stampNid) {
+        StampTable stampTable = stampTable();
+        if (stampTable != null && stampTable.contains(stampNid)) {
+            return stampTable.pathNid(stampNid);
+        }
+        return Entity.getStamp(stampNid).pathNid();
+    }
+
+    private static long time(int stampNid) {
+        StampTable stampTable = stampTable();
+        if (stampTable != null && stampTable.contains(stampNid)) {
+            return stampTable.time(stampNid);
+        }
+        return Entity.getStamp(stampNid).time();
+    }
+
+    private static int stateNid(int stampNid) {
+        StampTable stampTable = stampTable();
+        if (stampTable != null && stampTable.contains(stampNid)) {
+            return stampTable.stateNid(stampNid);
+        }
+        return Entity.getStamp(stampNid).stateNid();
     }
 
     private static RelativePosition traverseOrigins(int pathNid, StampPath stampPath) {
@@ -289,6 +414,10 @@ public Stream<Latest<SemanticEntityVersion>> streamLatestVersionForPattern(int p
 
     @Override
     public <V extends EntityVersion> Latest<V> latest(int nid) {
+        Latest<V> cachedLatest = (Latest<V>) latestCache.getIfPresent(nid);
+        if (cachedLatest != null) {
+            return cachedLatest;
+        }
         EntityHandle entityHandle = EntityHandle.get(nid);
         if (entityHandle.isPresent()) {
             return (Latest<V>) latestCache.get(nid, latestNid ->
@@ -330,8 +459,7 @@ public <V extends EntityVersion> Latest<V> latest(Entity<V> chronicle) {
         final MutableList<EntityVersion> latestVersionList = Lists.mutable.ofInitialCapacity(Math.min(versions.size(), 4));
 
         for (V newVersionToTest : versions) {
-            StampEntity stamp = newVersionToTest.stamp();
-            if (stamp != null && stamp.time() > Long.MIN_VALUE && onRoute(stamp)) {
+            if (versionOnRoute(newVersionToTest.stampNid())) {
                 if (latestVersionList.isEmpty()) {
                     latestVersionList.add(newVersionToTest);
                 } else {
@@ -340,7 +468,7 @@ public <V extends EntityVersion> Latest<V> latest(Entity<V> chronicle) {
             }
         }
 
-        latestVersionList.removeIf(version -> !allowedStates.contains(version.state()));
+        latestVersionList.removeIf(version -> !isAllowedState(version.stampNid()));
 
         if (latestVersionList.isEmpty()) {
             return new Latest<>();
@@ -389,8 +517,9 @@ public void forEachSemanticVersionOfPatternParallel(int patternNid, BiConsumer<S
         latestPatternVersion.ifPresent(patternEntityVersion -> {
             int[] semanticNidsOfPattern = PrimitiveData.get().semanticNidsOfPattern(patternNid);
             PrimitiveData.get().forEachParallel(IntLists.immutable.of(semanticNidsOfPattern), (byte[] bytes, int nid) -> {
-                if (bytes != null) {
-                    Entity<EntityVersion> semanticRecord = EntityFactory.make(bytes);
+                EntityBytesView view = EntityBytesView.of(bytes);
+                if (view != null && anyVersionOnRoute(view)) {
+                    Entity<EntityVersion> semanticRecord = view.entity();
                     // latest() when providing an entity does not use the cache.
                     Latest<EntityVersion> latestSemanticVersion = latest(semanticRecord);
                     latestSemanticVersion.ifPresent(semanticVersion -> procedure.accept((SemanticEntityVersion) semanticVersion, patternEntityVersion));
@@ -406,8 +535,9 @@ public void forEachSemanticVersionInSetOfPatternParallel(ImmutableIntSet semanti
         Latest<PatternEntityVersion> latestPatternVersion = this.latest(patternNid);
         latestPatternVersion.ifPresent(patternEntityVersion -> {
             PrimitiveData.get().forEachParallel(semanticNidSet.toSortedList().toImmutable(), (byte[] bytes, int nid) -> {
-                if (bytes != null) {
-                    Entity<EntityVersion> semanticRecord = EntityFactory.make(bytes);
+                EntityBytesView view = EntityBytesView.of(bytes);
+                if (view != null && anyVersionOnRoute(view)) {
+                    Entity<EntityVersion> semanticRecord = view.entity();
                     // latest() when providing an entity does not use the cache.
                     Latest<EntityVersion> latestSemanticVersion = latest(semanticRecord);
                     latestSemanticVersion.ifPresent(semanticVersion -> procedure.accept((SemanticEntityVersion) semanticVersion, patternEntityVersion));
@@ -545,11 +675,7 @@ public <T> Latest<Field<T>> getFieldForSemantic(int componentNid, int criterionN
      * @return true, if successful
      */
     public boolean onRoute(int stampNid) {
-        if (stampOnRoute.containsKey(stampNid)) {
-            return stampOnRoute.get(stampNid);
-        }
-        StampEntity stamp = Entity.getStamp(stampNid);
-        return onRoute(stamp);
+        return (routeCode(stampNid) & StampRouteCache.ON_ROUTE) != 0;
     }
 
     /**
@@ -561,26 +687,44 @@ public boolean onRoute(int stampNid) {
      */
     public RelativePosition fastRelativePosition(int stampNid1,
                                                  int stampNid2) {
-        StampEntity stamp1 = Entity.getStamp(stampNid1);
-        StampEntity stamp2 = Entity.getStamp(stampNid2);
-
-        return getRelativePosition(stamp1, stamp2);
+        int code1 = routeCode(stampNid1);
+        int code2 = routeCode(stampNid2);
+        if ((code1 & code2 & StampRouteCache.ON_ROUTE) == 0) {
+            return RelativePosition.UNREACHABLE;
+        }
+        int segment1 = StampRouteCache.segmentSequence(code1);
+        int segment2 = StampRouteCache.segmentSequence(code2);
+        if (segment1 == segment2) {
+            // One segment per path, so both are on the same path.
+            long time1 = routeTime(stampNid1);
+            long time2 = routeTime(stampNid2);
+            if (time1 < time2) {
+                return RelativePosition.BEFORE;
+            }
+            if (time1 > time2) {
+                return RelativePosition.AFTER;
+            }
+            return RelativePosition.EQUAL;
+        }
+        if (segmentPrecedes[segment1][segment2]) {
+            return RelativePosition.BEFORE;
+        }
+        if (segmentPrecedes[segment2][segment1]) {
+            return RelativePosition.AFTER;
+        }
+        return RelativePosition.CONTRADICTION;
     }
 
     public boolean onRoute(StampEntity stamp) {
-        if (stampOnRoute.containsKey(stamp.nid())) {
-            return stampOnRoute.get(stamp.nid());
-        }
-        final Segment seg = this.pathNidSegmentMap.get(stamp.pathNid());
-        boolean returnValue = false;
-        if (seg != null) {
-            returnValue = seg.containsPosition(
-                    stamp.pathNid(),
-                    stamp.moduleNid(),
-                    stamp.time());
-        }
-        stampOnRoute.put(stamp.pathNid(), returnValue);
-        return returnValue;
+        return onRoute(stamp.nid());
+    }
+
+    /**
+     * The test made of each version's stamp by {@link #latest(Entity)}: the stamp is not canceled, and is on route.
+     * Committed stamps are resolved once, and then read from the route cache.
+     */
+    private boolean versionOnRoute(int stampNid) {
+        return (routeCode(stampNid) & StampRouteCache.ON_ROUTE) != 0 && routeTime(stampNid) > Long.MIN_VALUE;
     }
 
     /**
@@ -645,19 +789,16 @@ private void handlePart(List<EntityVersion> partsForPosition, EntityVersion part
      */
     public RelativePosition fastRelativePosition(EntityVersion v1,
                                                  EntityVersion v2) {
-        StampEntity v1Stamp = v1.stamp();
-        StampEntity v2Stamp = v2.stamp();
-        return getRelativePosition(v1Stamp, v2Stamp);
+        return fastRelativePosition(v1.stampNid(), v2.stampNid());
     }
 
     public RelativePosition getRelativePosition(StampEntity stamp1, StampEntity stamp2) {
-        final long ss1Time = stamp1.time();
-        final int ss1ModuleNid = stamp1.moduleNid();
-        final int ss1PathNid = stamp1.pathNid();
-        final long ss2Time = stamp2.time();
-        final int ss2ModuleNid = stamp2.moduleNid();
-        final int ss2PathNid = stamp2.pathNid();
+        return getRelativePosition(stamp1.time(), stamp1.moduleNid(), stamp1.pathNid(),
+                stamp2.time(), stamp2.moduleNid(), stamp2.pathNid());
+    }
 
+    private RelativePosition getRelativePosition(long ss1Time, int ss1ModuleNid, int ss1PathNid,
+                                                 long ss2Time, int ss2ModuleNid, int ss2PathNid) {
         if (ss1PathNid == ss2PathNid) {
             final Segment seg = this.pathNidSegmentMap.get(ss1PathNid);
 
@@ -781,13 +922,14 @@ public RelativePosition getRelativePosition(EntityVersion v1, EntityVersion v2)
     }
 
     public RelativePosition getRelativePosition(int stampNid, StampPosition position) {
-        StampEntity stampEntity = Entity.getStamp(stampNid);
-        if (stampEntity.pathNid() == position.getPathForPositionNid()) {
-            if (stampEntity.time() < position.time()) {
+        int stampPathNid = pathNid(stampNid);
+        if (stampPathNid == position.getPathForPositionNid()) {
+            long stampTime = time(stampNid);
+            if (stampTime < position.time()) {
                 return RelativePosition.BEFORE;
             }
 
-            if (stampEntity.time() > position.time()) {
+            if (stampTime > position.time()) {
                 return RelativePosition.AFTER;
             }
 
@@ -805,8 +947,7 @@ public RelativePosition getRelativePosition(int stampNid, StampPosition position
     }
 
     private RelativePosition traverseForks(int stampNid, StampPosition position) {
-        StampEntity stampEntity = Entity.getStamp(stampNid);
-        int stampPathNid = stampEntity.pathNid();
+        int stampPathNid = pathNid(stampNid);
         if (stampPathNid == position.getPathForPositionNid()) {
             throw new IllegalStateException("You must check for relative position on the same path before calling traverseForks: " +
                     //Get.stampService().describeStampSequence(stamp) +
@@ -934,8 +1075,7 @@ private void setupPathNidSegmentMap(StampPositionRecord destination) {
      */
     public boolean isLatestActive(int[] stampNids) {
         for (int stampNid : getLatestStampNidsAsSet(stampNids)) {
-            StampEntity stamp = Entity.getStamp(stampNid);
-            if (State.fromConceptNid(stamp.stateNid()) == State.ACTIVE) {
+            if (State.fromConceptNid(stateNid(stampNid)) == State.ACTIVE) {
                 return true;
             }
         }
@@ -1049,13 +1189,7 @@ private int[] getResults(MutableIntSet stampsForPosition) {
     }
 
     private boolean isAllowedState(int stampNid) {
-        if (stampIsAllowedState.containsKey(stampNid)) {
-            return stampIsAllowedState.get(stampNid);
-        }
-        StampEntity stamp = Entity.getStamp(stampNid);
-        boolean allowed = this.allowedStates.contains(State.fromConceptNid(stamp.stateNid()));
-        stampIsAllowedState.put(stampNid, allowed);
-        return allowed;
+        return (routeCode(stampNid) & StampRouteCache.ALLOWED_STATE) != 0;
     }
 
     /**
@@ -1073,17 +1207,30 @@ public int[] getLatestCommittedStampNidsAsSet(int[] stampNids) {
     }
 
     private <V extends EntityVersion> Latest<V> latestIfSemanticOfPattern(int nid, int patternNid) {
-
-        EntityHandle handle = EntityHandle.get(nid);
-        if (handle.isPresent() && handle.isSemantic()) {
-            var semantic = handle.expectSemantic();
-            if (semantic.patternNid() == patternNid) {
+        Entity<?> cached = EntityService.get().getEntityIfCached(nid);
+        if (cached != null) {
+            if (cached instanceof SemanticEntity semantic && semantic.patternNid() == patternNid) {
                 return latest(semantic);
             }
+            return Latest.empty();
+        }
+        EntityBytesView view = EntityBytesView.get(nid);
+        // Checked in the stored bytes, so semantics of other patterns, or without versions on route, are not decoded.
+        if (view != null && view.isSemantic() && view.patternNid() == patternNid && anyVersionOnRoute(view)) {
+            SemanticEntity semantic = view.entity();
+            return latest(semantic);
         }
         return Latest.empty();
     }
 
+    /**
+     * The same test of each version's stamp as {@link #latest(Entity)}, so an entity with no version that passes
+     * need not be decoded.
+     */
+    private boolean anyVersionOnRoute(EntityBytesView view) {
+        return view.anyStampNid(this::versionOnRoute);
+    }
+
     public static class CacheProvider implements CachingService {
         // TODO: this has implicit assumption that no one will hold on to a calculator... Should we be defensive?
         @Override
@@ -0,0 +1,152 @@
+/*
+ * Copyright © 2015 Integrated Knowledge Management (support@ikm.dev)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dev.ikm.tinkar.coordinate.stamp.calculator;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+
+/**
+ * How each stamp resolves against the route of one {@link StampCalculatorWithCache}: whether it is on the route,
+ * on which segment, whether its state is allowed, and its time, as primitive columns indexed by stamp nid.
+ * <p>
+ * With these, testing a version and comparing two versions on the same segment are reads and an integer
+ * comparison, without reading stamp fields. Only committed stamps are added, as their fields do not change, so an
+ * entry never needs to be replaced. Reads are lock free; writes are serialized, and publish an entry by writing its
+ * key last.
+ */
+final class StampRouteCache {
+    /**
+     * Set in every code, so a code of zero means absent.
+     */
+    static final int RESOLVED = 1;
+    static final int ON_ROUTE = 1 << 1;
+    static final int ALLOWED_STATE = 1 << 2;
+    private static final int SEGMENT_SHIFT = 8;
+    /**
+     * Returned as the time of a stamp that has not been added. Uncommitted stamps, with this time, are never added.
+     */
+    static final long ABSENT_TIME = Long.MAX_VALUE;
+
+    private static final VarHandle INTS = MethodHandles.arrayElementVarHandle(int[].class);
+    private static final int EMPTY_KEY = 0;
+    private static final int INITIAL_SLOTS = 1024;
+
+    private static final class Table {
+        final int[] keys;
+        final int[] codes;
+        final long[] times;
+        final int mask;
+        // Written only while holding the StampRouteCache lock.
+        int count;
+
+        Table(int slotCount) {
+            this.keys = new int[slotCount];
+            this.codes = new int[slotCount];
+            this.times = new long[slotCount];
+            this.mask = slotCount - 1;
+        }
+
+        /**
+         * @return the slot holding the nid, or the empty slot where it would be added
+         */
+        int slot(int stampNid) {
+            int slot = (stampNid * 0x9E3779B9) & mask;
+            while (true) {
+                int key = (int) INTS.getAcquire(keys, slot);
+                if (key == stampNid || key == EMPTY_KEY) {
+                    return slot;
+                }
+                slot = (slot + 1) & mask;
+            }
+        }
+    }
+
+    private volatile Table table = new Table(INITIAL_SLOTS);
+
+    static int code(boolean onRoute, int segmentSequence, boolean allowedState) {
+        int code = RESOLVED;
+        if (onRoute) {
+            code |= ON_ROUTE | (segmentSequence << SEGMENT_SHIFT);
+        }
+        if (allowedState) {
+            code |= ALLOWED_STATE;
+        }
+        return code;
+    }
+
+    static int segmentSequence(int code) {
+        return code >>> SEGMENT_SHIFT;
+    }
+
+    /**
+     * @return the code of the stamp, or zero if the stamp has not been added
+     */
+    int code(int stampNid) {
+        Table t = this.table;
+        int slot = t.slot(stampNid);
+        return t.keys[slot] == stampNid ? t.codes[slot] : 0;
+    }
+
+    /**
+     * Checks the key and reads the time from one table, so a {@link #clear()} or growth between the two cannot
+     * return the time of an empty slot.
+     *
+     * @return the time of the stamp, or {@link #ABSENT_TIME} if the stamp has not been added
+     */
+    long time(int stampNid) {
+        Table t = this.table;
+        int slot = t.slot(stampNid);
+        return t.keys[slot] == stampNid ? t.times[slot] : ABSENT_TIME;
+    }
+
+    synchronized void put(int stampNid, int code, long time) {
+        if (stampNid == EMPTY_KEY) {
+            return;
+        }
+        Table t = this.table;
+        if ((t.count + 1) * 2 > t.keys.length) {
+            t = grow(t);
+        }
+        int slot = t.slot(stampNid);
+        if (t.keys[slot] == stampNid) {
+            return;
+        }
+        t.codes[slot] = code;
+        t.times[slot] = time;
+        INTS.setRelease(t.keys, slot, stampNid);
+        t.count++;
+    }
+
+    private Table grow(Table old) {
+        Table grown = new Table(old.keys.length * 2);
+        for (int slot = 0; slot < old.keys.length; slot++) {
+            int key = old.keys[slot];
+            if (key != EMPTY_KEY) {
+                int newSlot = grown.slot(key);
+                grown.keys[newSlot] = key;
+                grown.codes[newSlot] = old.codes[slot];
+                grown.times[newSlot] = old.times[slot];
+                grown.count++;
+            }
+        }
+        this.table = grown;
+        return grown;
+    }
+
+    synchronized void clear() {
+        this.table = new Table(INITIAL_SLOTS);
+    }
+}
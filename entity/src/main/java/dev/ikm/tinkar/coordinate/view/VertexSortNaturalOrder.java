@@ -30,8 +30,8 @@
 import org.eclipse.collections.api.factory.Lists;
 import org.eclipse.collections.api.list.ImmutableList;
 import org.eclipse.collections.api.list.MutableList;
-import org.eclipse.collections.impl.factory.primitive.IntLists;
 
+import java.util.Arrays;
 import java.util.UUID;
 
 public class VertexSortNaturalOrder implements VertexSort, Encodable {
@@ -75,9 +75,18 @@ public final int[] sortVertexes(int[] vertexConceptNids, NavigationCalculator na
             return vertexConceptNids;
         }
 
-        return IntLists.immutable.of(vertexConceptNids).primitiveStream().mapToObj(vertexConceptNid ->
-                        new VertexItem(vertexConceptNid, navigationCalculator.getDescriptionTextOrNid(vertexConceptNid)))
-                .sorted().mapToInt(value -> value.nid).toArray();
+        // Resolve each description once, in bulk, then sort the pairs of nid and description.
+        String[] descriptions = navigationCalculator.getDescriptionTextsOrNids(vertexConceptNids);
+        VertexItem[] items = new VertexItem[vertexConceptNids.length];
+        for (int i = 0; i < items.length; i++) {
+            items[i] = new VertexItem(vertexConceptNids[i], descriptions[i]);
+        }
+        Arrays.sort(items, (o1, o2) -> NaturalOrder.compareStrings(o1.description(), o2.description()));
+        int[] sortedNids = new int[items.length];
+        for (int i = 0; i < items.length; i++) {
+            sortedNids[i] = items[i].nid();
+        }
+        return sortedNids;
     }
 
     @Override
@@ -117,18 +126,6 @@ public void encode(EncoderOutput out) {
         // No fieldValues...
     }
 
-    private static class VertexItem implements Comparable<VertexItem> {
-        private final int nid;
-        private final String description;
-
-        public VertexItem(int nid, String description) {
-            this.nid = nid;
-            this.description = description;
-        }
-
-        @Override
-        public int compareTo(VertexItem o) {
-            return NaturalOrder.compareStrings(this.description, o.description);
-        }
+    private record VertexItem(int nid, String description) {
     }
 }
@@ -0,0 +1,247 @@
+/*
+ * Copyright © 2015 Integrated Knowledge Management (support@ikm.dev)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dev.ikm.tinkar.entity;
+
+import dev.ikm.tinkar.common.service.PrimitiveData;
+import dev.ikm.tinkar.common.service.StampTable;
+import dev.ikm.tinkar.component.FieldDataType;
+import org.eclipse.collections.api.block.predicate.primitive.IntPredicate;
+import org.eclipse.collections.api.block.procedure.primitive.IntProcedure;
+
+/**
+ * A read-only view of the stored bytes of an entity, that reads the chronology fields and version stamps in place.
+ * <p>
+ * Creating a view does not decode the entity: {@link #nid()}, {@link #entityDataType()}, {@link #patternNid()},
+ * {@link #referencedComponentNid()} and the stamp of each version are read directly from the bytes, so checks of an
+ * entity's type, pattern, or version stamps allocate nothing beyond the view. {@link #entity()} decodes, and keeps,
+ * the full entity record when versions or fields are needed.
+ * <p>
+ * The byte layout is that written by {@link EntityRecordFactory#getBytes(Entity)}:
+ * {@code [int array count][int chronology size][byte format][byte token][int nid][long msb][long lsb]
+ * [byte additional uuid long count][long...]}, then for semantics {@code [int referenced component nid][int pattern nid]},
+ * then {@code [int version count]}, followed by each version as {@code [int size][byte token][int stamp nid]...}.
+ * The version of a stamp continues {@code [int state nid][long time][int author nid][int module nid][int path nid]}.
+ * Canceled versions are present in the bytes, and are removed when the entity is decoded.
+ */
+public final class EntityBytesView {
+    private static final int TOKEN_OFFSET = 9;
+    private static final int NID_OFFSET = 10;
+    private static final int MSB_OFFSET = 14;
+    private static final int LSB_OFFSET = 22;
+    private static final int ADDITIONAL_UUID_COUNT_OFFSET = 30;
+    /**
+     * Offsets of the state and time of a stamp version, from the start of the version.
+     */
+    private static final int STAMP_STATE_OFFSET = Integer.BYTES + 1 + Integer.BYTES;
+    private static final int STAMP_TIME_OFFSET = STAMP_STATE_OFFSET + Integer.BYTES;
+
+    private final byte[] bytes;
+    private final FieldDataType entityDataType;
+    /**
+     * Offset of the int following the additional UUIDs.
+     */
+    private final int afterUuidsOffset;
+    private Entity<? extends EntityVersion> entity;
+
+    private EntityBytesView(byte[] bytes) {
+        this.bytes = bytes;
+        this.entityDataType = FieldDataType.fromToken(bytes[TOKEN_OFFSET]);
+        this.afterUuidsOffset = ADDITIONAL_UUID_COUNT_OFFSET + 1 + bytes[ADDITIONAL_UUID_COUNT_OFFSET] * Long.BYTES;
+    }
+
+    /**
+     * @param bytes the stored bytes of an entity, as returned by {@link dev.ikm.tinkar.common.service.PrimitiveDataService#getBytes(int)}
+     * @return a view of the bytes, or null if bytes is null
+     */
+    public static EntityBytesView of(byte[] bytes) {
+        if (bytes == null) {
+            return null;
+        }
+        return new EntityBytesView(bytes);
+    }
+
+    /**
+     * @return a view of the stored bytes of the entity, or null if the nid has no stored bytes
+     */
+    public static EntityBytesView get(int nid) {
+        if (nid == Integer.MIN_VALUE || nid == Integer.MAX_VALUE || nid == 0) {
+            return null;
+        }
+        return of(PrimitiveData.get().getBytes(nid));
+    }
+
+    public int nid() {
+        return readInt(NID_OFFSET);
+    }
+
+    /**
+     * @return the length of the stored bytes
+     */
+    public int byteCount() {
+        return bytes.length;
+    }
+
+    public long mostSignificantBits() {
+        return readLong(MSB_OFFSET);
+    }
+
+    public long leastSignificantBits() {
+        return readLong(LSB_OFFSET);
+    }
+
+    public FieldDataType entityDataType() {
+        return entityDataType;
+    }
+
+    public boolean isConcept() {
+        return entityDataType == FieldDataType.CONCEPT_CHRONOLOGY;
+    }
+
+    public boolean isSemantic() {
+        return entityDataType == FieldDataType.SEMANTIC_CHRONOLOGY;
+    }
+
+    public boolean isPattern() {
+        return entityDataType == FieldDataType.PATTERN_CHRONOLOGY;
+    }
+
+    public boolean isStamp() {
+        return entityDataType == FieldDataType.STAMP;
+    }
+
+    /**
+     * @return the pattern nid of a semantic
+     * @throws IllegalStateException if the entity is not a semantic
+     */
+    public int patternNid() {
+        expectSemantic();
+        return readInt(afterUuidsOffset + Integer.BYTES);
+    }
+
+    /**
+     * @return the referenced component nid of a semantic
+     * @throws IllegalStateException if the entity is not a semantic
+     */
+    public int referencedComponentNid() {
+        expectSemantic();
+        return readInt(afterUuidsOffset);
+    }
+
+    /**
+     * @return the number of versions in the bytes, including canceled versions
+     */
+    public int versionCount() {
+        return readInt(versionCountOffset());
+    }
+
+    /**
+     * Passes the stamp nid of each version in the bytes, including canceled versions, to the procedure.
+     */
+    public void forEachStampNid(IntProcedure procedure) {
+        int versionCount = versionCount();
+        int offset = versionCountOffset() + Integer.BYTES;
+        for (int i = 0; i < versionCount; i++) {
+            procedure.value(readInt(offset + Integer.BYTES + 1));
+            offset += Integer.BYTES + readInt(offset);
+        }
+    }
+
+    /**
+     * @return true if the stamp nid of any version in the bytes satisfies the predicate
+     */
+    public boolean anyStampNid(IntPredicate predicate) {
+        int versionCount = versionCount();
+        int offset = versionCountOffset() + Integer.BYTES;
+        for (int i = 0; i < versionCount; i++) {
+            if (predicate.accept(readInt(offset + Integer.BYTES + 1))) {
+                return true;
+            }
+            offset += Integer.BYTES + readInt(offset);
+        }
+        return false;
+    }
+
+    /**
+     * Puts the fields of the last version of a stamp into the table, the version being selected as by
+     * {@link StampEntity#lastVersion()}.
+     *
+     * @throws IllegalStateException if the entity is not a stamp
+     */
+    public void putLastStampVersion(StampTable stampTable) {
+        if (!isStamp()) {
+            throw new IllegalStateException("Expecting a stamp, found: " + entityDataType + " for nid: " + nid());
+        }
+        int versionCount = versionCount();
+        if (versionCount == 0) {
+            return;
+        }
+        int offset = versionCountOffset() + Integer.BYTES;
+        int latestOffset = -1;
+        for (int i = 0; i < versionCount; i++) {
+            long time = readLong(offset + STAMP_TIME_OFFSET);
+            if (time == Long.MIN_VALUE) {
+                // if canceled (Long.MIN_VALUE), latest is canceled.
+                latestOffset = offset;
+                break;
+            }
+            if (latestOffset == -1) {
+                latestOffset = offset;
+            } else {
+                long latestTime = readLong(latestOffset + STAMP_TIME_OFFSET);
+                if (latestTime == Long.MAX_VALUE || (time != Long.MAX_VALUE && latestTime < time)) {
+                    latestOffset = offset;
+                }
+            }
+            offset += Integer.BYTES + readInt(offset);
+        }
+        stampTable.put(nid(), readInt(latestOffset + STAMP_STATE_OFFSET), readLong(latestOffset + STAMP_TIME_OFFSET),
+                readInt(latestOffset + STAMP_TIME_OFFSET + Long.BYTES),
+                readInt(latestOffset + STAMP_TIME_OFFSET + Long.BYTES + Integer.BYTES),
+                readInt(latestOffset + STAMP_TIME_OFFSET + Long.BYTES + 2 * Integer.BYTES));
+    }
+
+    /**
+     * Decodes the entity on first use. The decoded entity is kept by the view, so a view should not be retained
+     * longer than the entity would be.
+     *
+     * @return the decoded entity
+     */
+    public <T extends Entity<V>, V extends EntityVersion> T entity() {
+        if (entity == null) {
+            entity = EntityRecordFactory.make(bytes);
+        }
+        return (T) entity;
+    }
+
+    private int versionCountOffset() {
+        return isSemantic() ? afterUuidsOffset + 2 * Integer.BYTES : afterUuidsOffset;
+    }
+
+    private void expectSemantic() {
+        if (!isSemantic()) {
+            throw new IllegalStateException("Expecting a semantic, found: " + entityDataType + " for nid: " + nid());
+        }
+    }
+
+    private int readInt(int offset) {
+        return ((bytes[offset] & 0xFF) << 24) | ((bytes[offset + 1] & 0xFF) << 16)
+                | ((bytes[offset + 2] & 0xFF) << 8) | (bytes[offset + 3] & 0xFF);
+    }
+
+    private long readLong(int offset) {
+        return ((long) readInt(offset) << 32) | (readInt(offset + Integer.BYTES) & 0xFFFFFFFFL);
+    }
+}
@@ -0,0 +1,158 @@
+/*
+ * Copyright © 2015 Integrated Knowledge Management (support@ikm.dev)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dev.ikm.tinkar.entity;
+
+import dev.ikm.tinkar.component.FieldDataType;
+
+/**
+ * A change to an entity, as published to the subscribers added by
+ * {@link EntityService#addChangeSubscriberWithWeakReference(dev.ikm.tinkar.common.util.broadcast.Subscriber)}.
+ * <p>
+ * One change is published to every subscriber, so the entity type, and the pattern and referenced component of a
+ * semantic, are found once for all of them: from the entity when it was put, otherwise from its stored bytes on first
+ * use. Subscribers that would otherwise each get the changed entity to classify it should use these instead.
+ */
+public final class EntityChange {
+    private static final Classification UNKNOWN = new Classification(null, 0, 0);
+    private static final EntityChange ALL = new EntityChange(Integer.MIN_VALUE, UNKNOWN);
+
+    /**
+     * The type of the entity, null if it has no stored bytes, and for a semantic its pattern and referenced component.
+     */
+    private record Classification(FieldDataType entityDataType, int patternNid, int referencedComponentNid) {
+    }
+
+    /**
+     * Holds the view read for the referenced component, which may be null.
+     */
+    private record ReferencedComponent(EntityBytesView view) {
+    }
+
+    private final int nid;
+    // Immutable holders, set on first use. Classifying twice on a race gives the same result.
+    private Classification classification;
+    private ReferencedComponent referencedComponent;
+
+    private EntityChange(int nid, Classification classification) {
+        this.nid = nid;
+        this.classification = classification;
+    }
+
+    /**
+     * @return the change published when all entities may have changed, such as at the end of a load
+     */
+    public static EntityChange all() {
+        return ALL;
+    }
+
+    /**
+     * @return a change to the entity, classified from the entity
+     */
+    public static EntityChange of(Entity<?> entity) {
+        Classification classification = entity instanceof SemanticEntity<?> semanticEntity ?
+                new Classification(FieldDataType.SEMANTIC_CHRONOLOGY, semanticEntity.patternNid(),
+                        semanticEntity.referencedComponentNid()) :
+                new Classification(entity.entityDataType(), 0, 0);
+        return new EntityChange(entity.nid(), classification);
+    }
+
+    /**
+     * @return a change to the entity with the nid, classified from its stored bytes on first use, or
+     * {@link #all()} for {@link Integer#MIN_VALUE}
+     */
+    public static EntityChange of(int nid) {
+        return nid == Integer.MIN_VALUE ? ALL : new EntityChange(nid, null);
+    }
+
+    public int nid() {
+        return nid;
+    }
+
+    /**
+     * @return true if all entities may have changed
+     */
+    public boolean isAll() {
+        return this == ALL;
+    }
+
+    /**
+     * @return the type of the changed entity, or null if it has no stored bytes, or all entities changed
+     */
+    public FieldDataType entityDataType() {
+        return classification().entityDataType();
+    }
+
+    public boolean isConcept() {
+        return entityDataType() == FieldDataType.CONCEPT_CHRONOLOGY;
+    }
+
+    public boolean isSemantic() {
+        return entityDataType() == FieldDataType.SEMANTIC_CHRONOLOGY;
+    }
+
+    public boolean isPattern() {
+        return entityDataType() == FieldDataType.PATTERN_CHRONOLOGY;
+    }
+
+    /**
+     * @return the pattern nid of a changed semantic, otherwise 0
+     */
+    public int patternNid() {
+        return classification().patternNid();
+    }
+
+    /**
+     * @return the referenced component nid of a changed semantic, otherwise 0
+     */
+    public int referencedComponentNid() {
+        return classification().referencedComponentNid();
+    }
+
+    /**
+     * @return a view of the stored bytes of the referenced component of a changed semantic, read once for all
+     * subscribers, or null if the change is not to a semantic, or the referenced component has no stored bytes
+     */
+    public EntityBytesView referencedComponentView() {
+        ReferencedComponent referenced = this.referencedComponent;
+        if (referenced == null) {
+            referenced = new ReferencedComponent(isSemantic() ? EntityBytesView.get(referencedComponentNid()) : null);
+            this.referencedComponent = referenced;
+        }
+        return referenced.view();
+    }
+
+    private Classification classification() {
+        Classification classification = this.classification;
+        if (classification == null) {
+            EntityBytesView view = EntityBytesView.get(nid);
+            if (view == null) {
+                classification = UNKNOWN;
+            } else if (view.isSemantic()) {
+                classification = new Classification(FieldDataType.SEMANTIC_CHRONOLOGY, view.patternNid(),
+                        view.referencedComponentNid());
+            } else {
+                classification = new Classification(view.entityDataType(), 0, 0);
+            }
+            this.classification = classification;
+        }
+        return classification;
+    }
+
+    @Override
+    public String toString() {
+        return isAll() ? "EntityChange{all}" : "EntityChange{" + nid + "}";
+    }
+}
@@ -334,7 +334,9 @@ public interface EntityHandle {
      * Retrieves an entity by nid and returns a fluent handle for type-safe processing.
      * <p>
      * The returned handle allows chaining type-specific operations without manual
-     * instanceof checks or casts.
+     * instanceof checks or casts. A cached entity is returned directly. Otherwise the
+     * entity is fetched when first used; type and presence checks are answered from the
+     * stored bytes without decoding the entity.
      *
      * @param nid the native identifier
      * @return an EntityHandle representing the entity, or an empty EntityHandle if absent.
@@ -343,6 +345,17 @@ static EntityHandle get(int nid) {
         if (nid == Integer.MIN_VALUE || nid == Integer.MAX_VALUE || nid == 0) {
             return absent();
         }
+        EntityService entityService = EntityService.get();
+        // Read before the bytes, so an entity changed after they are read is not cached from them.
+        long invalidationStamp = entityService.entityInvalidationStamp(nid);
+        Entity<?> cached = entityService.getEntityIfCached(nid);
+        if (cached != null) {
+            return of(cached);
+        }
+        EntityBytesView view = EntityBytesView.of(PrimitiveData.get().getBytes(nid));
+        if (view != null) {
+            return new StoredHandle(nid, view, invalidationStamp);
+        }
         Entity entity = Entity.packagePrivateGetFast(nid);
         if (entity != null) {
             return of(entity);
@@ -1453,6 +1466,74 @@ public Optional<Entity<? extends EntityVersion>> entity() {
         }
     }
 
+    /**
+     * Implementation for an entity with stored bytes, that answers presence and type checks from a
+     * {@link EntityBytesView}, and decodes the entity from the same bytes when it is first used, offering it to the
+     * entity cache rather than reading the bytes again through the cache.
+     */
+    final class StoredHandle implements EntityHandle {
+        private final int nid;
+        private final EntityBytesView view;
+        private final long invalidationStamp;
+        private Optional<Entity<? extends EntityVersion>> entity;
+
+        StoredHandle(int nid, EntityBytesView view, long invalidationStamp) {
+            this.nid = nid;
+            this.view = view;
+            this.invalidationStamp = invalidationStamp;
+        }
+
+        @Override
+        public Optional<Entity<? extends EntityVersion>> entity() {
+            if (entity == null) {
+                entity = Optional.ofNullable(EntityService.get().cacheLoadedEntity(view, invalidationStamp));
+            }
+            return entity;
+        }
+
+        /**
+         * @return the view of the stored bytes of the entity
+         */
+        public EntityBytesView view() {
+            return view;
+        }
+
+        @Override
+        public boolean isPresent() {
+            return true;
+        }
+
+        @Override
+        public boolean isAbsent() {
+            return false;
+        }
+
+        @Override
+        public boolean isConcept() {
+            return view.isConcept();
+        }
+
+        @Override
+        public boolean isSemantic() {
+            return view.isSemantic();
+        }
+
+        @Override
+        public boolean isPattern() {
+            return view.isPattern();
+        }
+
+        @Override
+        public boolean isStamp() {
+            return view.isStamp();
+        }
+
+        @Override
+        public String toString() {
+            return "StoredHandle{" + view.entityDataType() + " " + nid + "}";
+        }
+    }
+
     /**
      * Singleton implementation for an absent entity.
      * <p>
@@ -76,131 +76,151 @@ public class EntityRecordFactory {
     public static volatile int MAX_ENTITY_SIZE = DEFAULT_ENTITY_SIZE;
     public static volatile int MAX_VERSION_SIZE = DEFAULT_VERSION_SIZE;
 
+    /**
+     * Serializes the entity as an array count, followed by the size and bytes of the chronology, and the size and
+     * bytes of each version. The chronology and versions are written in one pass into a single pooled buffer, with
+     * each size written after its bytes, and then copied once into a right-sized array. If the buffer overflows,
+     * {@link #MAX_ENTITY_SIZE} is doubled and the entity is written again.
+     */
     public static byte[] getBytes(Entity<? extends EntityVersion> entity) {
-        // TODO: write directly to a single ByteBuf, rather that the approach below.
-        boolean complete = false;
-        while (!complete) {
+        while (true) {
+            ByteBuf byteBuf = ByteBufPool.allocate(MAX_ENTITY_SIZE);
             try {
-                ByteBuf byteBuf = ByteBufPool.allocate(MAX_ENTITY_SIZE);
-                // one byte for version...
-                //byte[0]
-                byteBuf.writeByte(ENTITY_FORMAT_VERSION);
-                //byte[1]
-                byteBuf.writeByte(entity.entityDataType().token); //ensure that the chronicle byte array sorts first.
-                //byte[2-5]
-                byteBuf.writeInt(entity.nid());
-                //byte[6-13]
-                byteBuf.writeLong(entity.mostSignificantBits());
-                //byte[14-21]
-                byteBuf.writeLong(entity.leastSignificantBits());
-
-                ImmutableLongList additionalUuidLongs = entity.additionalUuidLongs();
-                if (additionalUuidLongs == null || additionalUuidLongs.isEmpty()) {
-                    //byte[22]
-                    byteBuf.writeByte((byte) 0);
-                } else {
-                    //byte[22]
-                    byteBuf.writeByte((byte) additionalUuidLongs.size());
-                    //byte[23 + (8*i) -> byte[30 + (8*i)]
-                    additionalUuidLongs.forEach(byteBuf::writeLong);
-                }
-                switch (entity) {
-                    case SemanticEntity semanticEntity:
-                        byteBuf.writeInt(semanticEntity.referencedComponentNid());
-                        byteBuf.writeInt(semanticEntity.patternNid());
-                        break;
-                    case ConceptRecord conceptEntity:
-                        // No additional fieldValues for concept records.
-                        break;
-                    case PatternEntity patternEntity:
-                        // no additional fieldValues
-                        break;
-                    case StampEntity stampEntity:
-                        // no additional fieldValues
-                        break;
-                    default:
-                        throw new IllegalStateException("Unexpected value: " + entity);
-                }
-                //finishEntityWrite(byteBuf);
-                byteBuf.writeInt(entity.versions().size());
-
-                int chronicleArrayCount = entity.versions().size() + 1;
-                int chronicleFieldIndex = 0;
-                byte[][] entityArray = new byte[chronicleArrayCount][];
-                entityArray[chronicleFieldIndex++] = byteBuf.asArray();
+                byteBuf.writeInt(entity.versions().size() + 1);
+                int sizePosition = beginSizedArray(byteBuf);
+                writeChronology(byteBuf, entity);
+                endSizedArray(byteBuf, sizePosition);
                 for (EntityVersion version : entity.versions()) {
-                    entityArray[chronicleFieldIndex++] = getBytes(version);
-                }
-                int totalSize = 0;
-                totalSize += 4; // Integer for the number of arrays
-                for (byte[] arrayBytes : entityArray) {
-                    totalSize += 4; // integer for size of array
-                    totalSize += arrayBytes.length;
+                    sizePosition = beginSizedArray(byteBuf);
+                    writeVersion(byteBuf, version);
+                    endSizedArray(byteBuf, sizePosition);
                 }
-                ByteBuf finalByteBuf = ByteBufPool.allocate(totalSize);
-                finalByteBuf.writeInt(entityArray.length);
-                for (byte[] arrayBytes : entityArray) {
-                    finalByteBuf.writeInt(arrayBytes.length);
-                    finalByteBuf.write(arrayBytes);
-                }
-                return finalByteBuf.asArray();
+                return byteBuf.asArray();
             } catch (ArrayIndexOutOfBoundsException e) {
+                byteBuf.recycle();
                 MAX_ENTITY_SIZE = MAX_ENTITY_SIZE * 2;
                 LOG.info(e.getMessage() + " will increase entity size to " + MAX_ENTITY_SIZE);
             }
         }
-        throw new IllegalStateException("Should never reach here. ");
+    }
+
+    /**
+     * Reserves an int for the size of the array about to be written.
+     *
+     * @return the position of the reserved int
+     */
+    private static int beginSizedArray(ByteBuf byteBuf) {
+        int sizePosition = byteBuf.tail();
+        byteBuf.writeInt(0);
+        return sizePosition;
+    }
+
+    /**
+     * Writes the size of the array written since {@link #beginSizedArray(ByteBuf)} into the reserved int, in the
+     * same big-endian order as {@link ByteBuf#writeInt(int)}.
+     */
+    private static void endSizedArray(ByteBuf byteBuf, int sizePosition) {
+        int size = byteBuf.tail() - sizePosition - Integer.BYTES;
+        byte[] array = byteBuf.array();
+        array[sizePosition] = (byte) (size >>> 24);
+        array[sizePosition + 1] = (byte) (size >>> 16);
+        array[sizePosition + 2] = (byte) (size >>> 8);
+        array[sizePosition + 3] = (byte) size;
+    }
+
+    private static void writeChronology(ByteBuf byteBuf, Entity<? extends EntityVersion> entity) {
+        // one byte for version...
+        //byte[0]
+        byteBuf.writeByte(ENTITY_FORMAT_VERSION);
+        //byte[1]
+        byteBuf.writeByte(entity.entityDataType().token); //ensure that the chronicle byte array sorts first.
+        //byte[2-5]
+        byteBuf.writeInt(entity.nid());
+        //byte[6-13]
+        byteBuf.writeLong(entity.mostSignificantBits());
+        //byte[14-21]
+        byteBuf.writeLong(entity.leastSignificantBits());
+
+        ImmutableLongList additionalUuidLongs = entity.additionalUuidLongs();
+        if (additionalUuidLongs == null || additionalUuidLongs.isEmpty()) {
+            //byte[22]
+            byteBuf.writeByte((byte) 0);
+        } else {
+            //byte[22]
+            byteBuf.writeByte((byte) additionalUuidLongs.size());
+            //byte[23 + (8*i) -> byte[30 + (8*i)]
+            additionalUuidLongs.forEach(byteBuf::writeLong);
+        }
+        switch (entity) {
+            case SemanticEntity semanticEntity:
+                byteBuf.writeInt(semanticEntity.referencedComponentNid());
+                byteBuf.writeInt(semanticEntity.patternNid());
+                break;
+            case ConceptRecord conceptEntity:
+                // No additional fieldValues for concept records.
+                break;
+            case PatternEntity patternEntity:
+                // no additional fieldValues
+                break;
+            case StampEntity stampEntity:
+                // no additional fieldValues
+                break;
+            default:
+                throw new IllegalStateException("Unexpected value: " + entity);
+        }
+        byteBuf.writeInt(entity.versions().size());
     }
 
     public static byte[] getBytes(EntityVersion entityVersion) {
-        // TODO: write directly to a single ByteBuf, rather that the approach below.
-        boolean complete = false;
-        while (!complete) {
+        while (true) {
+            ByteBuf byteBuf = ByteBufPool.allocate(MAX_VERSION_SIZE);
             try {
-                ByteBuf byteBuf = ByteBufPool.allocate(MAX_VERSION_SIZE);
-                if (entityVersion.versionDataType().token == 0) {
-                    throw new IllegalStateException("Version type token cannot be zero... " + entityVersion);
-                }
-                byteBuf.writeByte(entityVersion.versionDataType().token); //ensure that the chronicle byte array sorts first.
-                byteBuf.writeInt(entityVersion.stampNid());
-                switch (entityVersion) {
-                    case ConceptEntityVersion conceptEntityVersion:
-                        // no additional data
-                        break;
-                    case PatternVersionRecord patternVersionRecord:
-                        byteBuf.writeInt(patternVersionRecord.semanticPurposeNid());
-                        byteBuf.writeInt(patternVersionRecord.semanticMeaningNid());
-                        byteBuf.writeInt(patternVersionRecord.fieldDefinitions().size());
-                        for (FieldDefinitionRecord field : patternVersionRecord.fieldDefinitions()) {
-                            byteBuf.writeInt(field.dataTypeNid());
-                            byteBuf.writeInt(field.purposeNid());
-                            byteBuf.writeInt(field.meaningNid());
-                        }
-                        break;
-                    case SemanticEntityVersion semanticEntityVersion:
-                        byteBuf.writeInt(semanticEntityVersion.fieldValues().size());
-                        for (Object field : semanticEntityVersion.fieldValues()) {
-                            writeField(byteBuf, field);
-                        }
-                        break;
-                    case StampEntityVersion stampEntityVersion:
-                        byteBuf.writeInt(stampEntityVersion.stateNid());
-                        byteBuf.writeLong(stampEntityVersion.time());
-                        byteBuf.writeInt(stampEntityVersion.authorNid());
-                        byteBuf.writeInt(stampEntityVersion.moduleNid());
-                        byteBuf.writeInt(stampEntityVersion.pathNid());
-                        break;
-                    default:
-                        throw new IllegalStateException("Unexpected value: " + entityVersion);
-                }
-                //writeVersionFields(byteBuf);
+                writeVersion(byteBuf, entityVersion);
                 return byteBuf.asArray();
             } catch (ArrayIndexOutOfBoundsException e) {
+                byteBuf.recycle();
                 MAX_VERSION_SIZE = MAX_VERSION_SIZE * 2;
                 LOG.info(e.getMessage() + " will increase version size to " + MAX_VERSION_SIZE);
             }
         }
-        throw new IllegalStateException("Should never reach here. ");
+    }
+
+    private static void writeVersion(ByteBuf byteBuf, EntityVersion entityVersion) {
+        if (entityVersion.versionDataType().token == 0) {
+            throw new IllegalStateException("Version type token cannot be zero... " + entityVersion);
+        }
+        byteBuf.writeByte(entityVersion.versionDataType().token); //ensure that the chronicle byte array sorts first.
+        byteBuf.writeInt(entityVersion.stampNid());
+        switch (entityVersion) {
+            case ConceptEntityVersion conceptEntityVersion:
+                // no additional data
+                break;
+            case PatternVersionRecord patternVersionRecord:
+                byteBuf.writeInt(patternVersionRecord.semanticPurposeNid());
+                byteBuf.writeInt(patternVersionRecord.semanticMeaningNid());
+                byteBuf.writeInt(patternVersionRecord.fieldDefinitions().size());
+                for (FieldDefinitionRecord field : patternVersionRecord.fieldDefinitions()) {
+                    byteBuf.writeInt(field.dataTypeNid());
+                    byteBuf.writeInt(field.purposeNid());
+                    byteBuf.writeInt(field.meaningNid());
+                }
+                break;
+            case SemanticEntityVersion semanticEntityVersion:
+                byteBuf.writeInt(semanticEntityVersion.fieldValues().size());
+                for (Object field : semanticEntityVersion.fieldValues()) {
+                    writeField(byteBuf, field);
+                }
+                break;
+            case StampEntityVersion stampEntityVersion:
+                byteBuf.writeInt(stampEntityVersion.stateNid());
+                byteBuf.writeLong(stampEntityVersion.time());
+                byteBuf.writeInt(stampEntityVersion.authorNid());
+                byteBuf.writeInt(stampEntityVersion.moduleNid());
+                byteBuf.writeInt(stampEntityVersion.pathNid());
+                break;
+            default:
+                throw new IllegalStateException("Unexpected value: " + entityVersion);
+        }
     }
 
     /**
@@ -568,13 +588,8 @@ private static EntityVersion makeVersion(ByteBuf readBuf, byte formatVersion, En
             case ConceptRecord conceptRecord -> new ConceptVersionRecord(conceptRecord, stampNid);
             case SemanticRecord semanticRecord -> {
                 int fieldCount = readBuf.readInt();
-                RecordListBuilder<Object> fields = RecordListBuilder.make();
-                for (int i = 0; i < fieldCount; i++) {
-                    FieldDataType dataType = FieldDataType.fromToken(readBuf.readByte());
-                    fields.add(readFieldData(readBuf, dataType, formatVersion));
-                }
-                fields.build();
-                yield new SemanticVersionRecord(semanticRecord, stampNid, fields);
+                yield new SemanticVersionRecord(semanticRecord, stampNid,
+                        PackedFieldValues.read(readBuf, semanticRecord.patternNid(), fieldCount, formatVersion));
             }
             case PatternRecord patternRecord -> {
                 int semanticPurposeNid = readBuf.readInt();
@@ -23,6 +23,7 @@
 import dev.ikm.tinkar.common.service.ServiceLifecycleManager;
 import dev.ikm.tinkar.common.service.TinkExecutor;
 import dev.ikm.tinkar.common.util.broadcast.Broadcaster;
+import dev.ikm.tinkar.common.util.broadcast.Subscriber;
 import dev.ikm.tinkar.component.Chronology;
 import dev.ikm.tinkar.component.ChronologyService;
 import dev.ikm.tinkar.component.Component;
@@ -382,6 +383,56 @@ default void forEachConceptEntity(Consumer<ConceptEntity<ConceptEntityVersion>>
         });
     }
 
+    /**
+     * Gets an entity only if it is already cached, without reading storage.
+     *
+     * @param nid the nid of the entity
+     * @return the cached entity, or null if the service does not cache entities or the entity is not cached
+     */
+    default Entity<?> getEntityIfCached(int nid) {
+        return null;
+    }
+
+    /**
+     * @param nid the nid of the entity
+     * @return a stamp to pass to {@link #cacheLoadedEntity(EntityBytesView, long)}, read before the bytes of the
+     * entity are read
+     */
+    default long entityInvalidationStamp(int nid) {
+        return 0L;
+    }
+
+    /**
+     * Decodes the entity of bytes read outside the service, and caches it, unless the entity changed since the
+     * stamp was read, or is already cached.
+     *
+     * @param view              a view of the bytes of the entity
+     * @param invalidationStamp the stamp returned by {@link #entityInvalidationStamp(int)} before the bytes were read
+     * @return the cached entity, or the entity decoded from the bytes if it was not cached
+     */
+    default <T extends Entity<V>, V extends EntityVersion> T cacheLoadedEntity(EntityBytesView view,
+                                                                               long invalidationStamp) {
+        return view.entity();
+    }
+
+    /**
+     * Gets the entities of a batch of nids, reading the bytes of the batch with one call to
+     * {@link dev.ikm.tinkar.common.service.PrimitiveDataService#getBytes(int[])}.
+     *
+     * @param nids the nids to get, in any order
+     * @return the entity of each nid, at the same position as the nid, or null if the nid has no entity
+     */
+    default Entity<?>[] getEntities(int[] nids) {
+        byte[][] bytes = PrimitiveData.get().getBytes(nids);
+        Entity<?>[] entities = new Entity<?>[nids.length];
+        for (int i = 0; i < nids.length; i++) {
+            if (bytes[i] != null) {
+                entities[i] = EntityRecordFactory.make(bytes[i]);
+            }
+        }
+        return entities;
+    }
+
     default void forEachEntity(ImmutableIntList entityNids, Consumer<Entity<?>> consumer) {
         PrimitiveData.get().forEach(entityNids, (bytes, _) -> {
             Entity<EntityVersion> entity = EntityRecordFactory.make(bytes);
@@ -490,6 +541,14 @@ default int nidForComponent(Component component) {
         return nidForPublicId(component.publicId());
     }
 
+    /**
+     * Adds a subscriber to the same changes as {@link #addSubscriberWithWeakReference(Subscriber)}, each published
+     * once as an {@link EntityChange}, classified once for all such subscribers. A put semantic is one change, that
+     * carries its referenced component, rather than a change to the semantic and another to its referenced component.
+     * As with other subscribers, the subscriber is held by weak reference, and notified on the thread making the change.
+     */
+    void addChangeSubscriberWithWeakReference(Subscriber<EntityChange> subscriber);
+
     void invalidateCaches(Entity entity);
 
     void invalidateCaches(int... nids);
@@ -539,6 +598,23 @@ default void addSortedUuids(List<UUID> uuidList, int... nids) throws NoSuchEleme
 
     void beginLoadPhase();
 
+    /**
+     * Begins a load phase in which entities put with {@link #putEntityNoCache(Entity, DataActivity)} are written
+     * without per entity cache invalidation or dispatch, and the primitive data service is in
+     * {@link dev.ikm.tinkar.common.service.PrimitiveDataService#beginBulkIngest() bulk ingest}.
+     */
+    default void beginBulkIngest() {
+        beginLoadPhase();
+    }
+
+    /**
+     * Ends a load phase begun with {@link #beginBulkIngest()}, after the primitive data service has brought its
+     * indexes up to date.
+     */
+    default void endBulkIngest() {
+        endLoadPhase();
+    }
+
 
     /**
      * Retrieves the NID for an entity of a specific pattern.
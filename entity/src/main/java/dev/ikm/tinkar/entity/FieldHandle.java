@@ -150,6 +150,9 @@ static FieldHandle of(Object value) {
      * @throws IndexOutOfBoundsException if fieldIndex is out of range
      */
     static FieldHandle of(SemanticEntityVersion version, int fieldIndex) {
+        if (version.fieldValues() instanceof PackedFieldValues packed) {
+            return new PackedFieldHandle(packed, fieldIndex);
+        }
         return of(version.fieldValues().get(fieldIndex));
     }
 
@@ -183,7 +186,7 @@ static FieldHandle of(SemanticEntityVersion version, ConceptFacade meaning, Stam
             throw new IllegalArgumentException(
                     "No field with meaning '" + meaning.toXmlFragment() + "' found in pattern");
         }
-        return of(version.fieldValues().get(index));
+        return of(version, index);
     }
 
     /**
@@ -215,7 +218,7 @@ static FieldHandle ofMeaning(SemanticEntityVersion version, int meaningNid, Stam
             throw new IllegalArgumentException(
                     "No field with meaning NID '" + meaningNid + "' found in pattern");
         }
-        return of(version.fieldValues().get(index));
+        return of(version, index);
     }
 
     /**
@@ -243,7 +246,7 @@ static FieldHandle ofPurpose(SemanticEntityVersion version, ConceptFacade purpos
             throw new IllegalArgumentException(
                     "No field with purpose '" + purpose.toXmlFragment() + "' found in pattern");
         }
-        return of(version.fieldValues().get(index));
+        return of(version, index);
     }
 
     /**
@@ -270,7 +273,7 @@ static FieldHandle ofPurpose(SemanticEntityVersion version, int purposeNid, Stam
             throw new IllegalArgumentException(
                     "No field with purpose NID '" + purposeNid + "' found in pattern");
         }
-        return of(version.fieldValues().get(index));
+        return of(version, index);
     }
 
     // ========== Side Effect Methods (ifXxx) ==========
@@ -700,6 +703,49 @@ default PublicId expectPublicId() {
         );
     }
 
+    // ========== Primitive Accessors ==========
+
+    /**
+     * Returns the field value as an int, throwing if it's not an Integer. Handles for packed field values
+     * read the value without boxing.
+     */
+    default int intValue() {
+        return expectInt();
+    }
+
+    /**
+     * Returns the field value as a long, throwing if it's not a Long.
+     */
+    default long longValue() {
+        return expectLong();
+    }
+
+    /**
+     * Returns the field value as a float, throwing if it's not a Float.
+     */
+    default float floatValue() {
+        return expectFloat();
+    }
+
+    /**
+     * Returns the field value as a boolean, throwing if it's not a Boolean.
+     */
+    default boolean booleanValue() {
+        return expectBoolean();
+    }
+
+    /**
+     * Returns the nid of the component in the field, throwing if it's not an EntityFacade. Unlike
+     * {@link #expectConcept()}, the entity is not resolved.
+     */
+    default int nidValue() {
+        if (value() instanceof EntityFacade entityFacade) {
+            return entityFacade.nid();
+        }
+        throw new IllegalStateException("Expected EntityFacade but was " +
+                (value() != null ? value().getClass().getSimpleName() : "null"));
+    }
+
     // ========== Query Methods ==========
 
     /**
@@ -0,0 +1,137 @@
+/*
+ * Copyright © 2015 Integrated Knowledge Management (support@ikm.dev)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dev.ikm.tinkar.entity;
+
+import dev.ikm.tinkar.component.FieldDataType;
+import org.eclipse.collections.api.map.primitive.ImmutableIntObjectMap;
+import org.eclipse.collections.impl.factory.primitive.IntObjectMaps;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The field data types of a semantic version, and where each field is held in a {@link PackedFieldValues}.
+ * <p>
+ * Booleans, ints, floats, longs, and the nids of component fields are held in a primitive slot. All other
+ * fields are held in a reference slot. Layouts are shared: every version with the same sequence of field data
+ * types, which in practice is every version of a pattern, uses the same layout instance.
+ * <p>
+ * Semantics are decoded with {@link #of(int, byte[])}, which finds the layout by the nid of the semantic's pattern,
+ * comparing the tokens with the few layouts its pattern versions have used, rather than building a key from the
+ * tokens for each decoded version.
+ */
+final class FieldLayout {
+    private static final ConcurrentHashMap<String, FieldLayout> LAYOUTS = new ConcurrentHashMap<>();
+    /**
+     * The layouts used by the semantics of each pattern. Replaced, while holding the lock, when a pattern uses a
+     * layout for the first time, so readers need no lock.
+     */
+    private static volatile ImmutableIntObjectMap<FieldLayout[]> patternLayouts = IntObjectMaps.immutable.empty();
+    private static final Object PATTERN_LAYOUTS_LOCK = new Object();
+
+    private final byte[] tokens;
+    private final FieldDataType[] dataTypes;
+    /**
+     * Index of each field in the primitive or the reference slots, according to its data type.
+     */
+    private final int[] slots;
+    private final int primitiveCount;
+    private final int referenceCount;
+
+    private FieldLayout(byte[] tokens) {
+        this.tokens = tokens.clone();
+        this.dataTypes = new FieldDataType[tokens.length];
+        this.slots = new int[tokens.length];
+        int primitives = 0;
+        int references = 0;
+        for (int i = 0; i < tokens.length; i++) {
+            dataTypes[i] = FieldDataType.fromToken(tokens[i]);
+            slots[i] = isPrimitive(dataTypes[i]) ? primitives++ : references++;
+        }
+        this.primitiveCount = primitives;
+        this.referenceCount = references;
+    }
+
+    /**
+     * @param tokens the field data type token of each field
+     * @return the shared layout for the tokens
+     */
+    static FieldLayout of(byte[] tokens) {
+        String key = new String(tokens, StandardCharsets.ISO_8859_1);
+        FieldLayout layout = LAYOUTS.get(key);
+        if (layout == null) {
+            layout = LAYOUTS.computeIfAbsent(key, k -> new FieldLayout(tokens));
+        }
+        return layout;
+    }
+
+    /**
+     * @param patternNid the nid of the pattern of the semantic with the fields
+     * @param tokens     the field data type token of each field
+     * @return the shared layout for the tokens
+     */
+    static FieldLayout of(int patternNid, byte[] tokens) {
+        FieldLayout[] layouts = patternLayouts.get(patternNid);
+        if (layouts != null) {
+            for (FieldLayout layout : layouts) {
+                if (Arrays.equals(layout.tokens, tokens)) {
+                    return layout;
+                }
+            }
+        }
+        FieldLayout layout = of(tokens);
+        synchronized (PATTERN_LAYOUTS_LOCK) {
+            ImmutableIntObjectMap<FieldLayout[]> current = patternLayouts;
+            FieldLayout[] currentLayouts = current.get(patternNid);
+            if (currentLayouts == null) {
+                patternLayouts = current.newWithKeyValue(patternNid, new FieldLayout[]{layout});
+            } else if (!Arrays.asList(currentLayouts).contains(layout)) {
+                FieldLayout[] added = Arrays.copyOf(currentLayouts, currentLayouts.length + 1);
+                added[currentLayouts.length] = layout;
+                patternLayouts = current.newWithKeyValue(patternNid, added);
+            }
+        }
+        return layout;
+    }
+
+    static boolean isPrimitive(FieldDataType dataType) {
+        return switch (dataType) {
+            case BOOLEAN, FLOAT, INTEGER, LONG, CONCEPT, SEMANTIC, PATTERN, IDENTIFIED_THING -> true;
+            default -> false;
+        };
+    }
+
+    int fieldCount() {
+        return dataTypes.length;
+    }
+
+    FieldDataType dataType(int fieldIndex) {
+        return dataTypes[fieldIndex];
+    }
+
+    int slot(int fieldIndex) {
+        return slots[fieldIndex];
+    }
+
+    int primitiveCount() {
+        return primitiveCount;
+    }
+
+    int referenceCount() {
+        return referenceCount;
+    }
+}
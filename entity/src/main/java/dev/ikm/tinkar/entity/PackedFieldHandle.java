@@ -0,0 +1,116 @@
+/*
+ * Copyright © 2015 Integrated Knowledge Management (support@ikm.dev)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dev.ikm.tinkar.entity;
+
+import dev.ikm.tinkar.component.FieldDataType;
+
+import java.util.Optional;
+import java.util.function.Consumer;
+
+/**
+ * A {@link FieldHandle} for a field of {@link PackedFieldValues}, which reads primitive and component fields
+ * from the packed payload, rather than from a boxed value. Component fields are resolved from their nid, without
+ * creating a proxy.
+ */
+record PackedFieldHandle(PackedFieldValues values, int index) implements FieldHandle {
+
+    @Override
+    public Object value() {
+        return values.get(index);
+    }
+
+    @Override
+    public int intValue() {
+        return values.intField(index);
+    }
+
+    @Override
+    public long longValue() {
+        return values.longField(index);
+    }
+
+    @Override
+    public float floatValue() {
+        return values.floatField(index);
+    }
+
+    @Override
+    public boolean booleanValue() {
+        return values.booleanField(index);
+    }
+
+    @Override
+    public int nidValue() {
+        return values.nidField(index);
+    }
+
+    @Override
+    public boolean isInt() {
+        return values.fieldDataType(index) == FieldDataType.INTEGER;
+    }
+
+    @Override
+    public Optional<ConceptEntity> asConcept() {
+        return values.isComponentField(index) ? EntityHandle.get(values.nidField(index)).asConcept() : Optional.empty();
+    }
+
+    @Override
+    public Optional<SemanticEntity> asSemantic() {
+        return values.isComponentField(index) ? EntityHandle.get(values.nidField(index)).asSemantic() : Optional.empty();
+    }
+
+    @Override
+    public Optional<PatternEntity> asPattern() {
+        return values.isComponentField(index) ? EntityHandle.get(values.nidField(index)).asPattern() : Optional.empty();
+    }
+
+    @Override
+    public Optional<StampEntity> asStamp() {
+        return values.isComponentField(index) ? EntityHandle.get(values.nidField(index)).asStamp() : Optional.empty();
+    }
+
+    @Override
+    public FieldHandle ifConcept(Consumer<ConceptEntity> consumer) {
+        if (values.isComponentField(index)) {
+            EntityHandle.get(values.nidField(index)).ifConcept(consumer);
+        }
+        return this;
+    }
+
+    @Override
+    public FieldHandle ifSemantic(Consumer<SemanticEntity> consumer) {
+        if (values.isComponentField(index)) {
+            EntityHandle.get(values.nidField(index)).ifSemantic(consumer);
+        }
+        return this;
+    }
+
+    @Override
+    public FieldHandle ifPattern(Consumer<PatternEntity> consumer) {
+        if (values.isComponentField(index)) {
+            EntityHandle.get(values.nidField(index)).ifPattern(consumer);
+        }
+        return this;
+    }
+
+    @Override
+    public FieldHandle ifStamp(Consumer<StampEntity> consumer) {
+        if (values.isComponentField(index)) {
+            EntityHandle.get(values.nidField(index)).ifStamp(consumer);
+        }
+        return this;
+    }
+}
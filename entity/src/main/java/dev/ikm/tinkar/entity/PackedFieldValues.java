@@ -0,0 +1,199 @@
+/*
+ * Copyright © 2015 Integrated Knowledge Management (support@ikm.dev)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dev.ikm.tinkar.entity;
+
+import dev.ikm.tinkar.component.FieldDataType;
+import dev.ikm.tinkar.terms.EntityProxy;
+import io.activej.bytebuf.ByteBuf;
+import org.eclipse.collections.api.block.procedure.Procedure;
+import org.eclipse.collections.impl.list.immutable.AbstractImmutableList;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.Arrays;
+
+/**
+ * The field values of a semantic version, held as a packed primitive payload described by a shared
+ * {@link FieldLayout}, rather than as a list of boxed values.
+ * <p>
+ * Booleans, ints, floats, longs, and the nids of component fields are held unboxed in a long array, and are read
+ * without allocation by {@link #intField(int)}, {@link #longField(int)}, {@link #floatField(int)},
+ * {@link #booleanField(int)} and {@link #nidField(int)}. Other fields are held as objects. {@link #get(int)}
+ * returns the same values as the list decoded before packing, boxing primitive fields. The {@link EntityProxy} of a
+ * component field is created on the first {@link #get(int)} of a component field and returned by later calls, so
+ * values that are only read through {@link #nidField(int)} never hold proxies.
+ */
+public final class PackedFieldValues extends AbstractImmutableList<Object> {
+    private static final long[] NO_PRIMITIVES = new long[0];
+    private static final Object[] NO_REFERENCES = new Object[0];
+    private static final VarHandle PROXY_HANDLE = MethodHandles.arrayElementVarHandle(EntityProxy[].class);
+
+    private final FieldLayout layout;
+    private final long[] primitives;
+    private final Object[] references;
+    /**
+     * The proxies of component fields returned by {@link #get(int)}, by primitive slot, or null until the first.
+     * Proxies are published with release semantics, and a proxy created twice on a race is equal to the other.
+     */
+    private volatile EntityProxy[] proxies;
+
+    private PackedFieldValues(FieldLayout layout, long[] primitives, Object[] references) {
+        this.layout = layout;
+        this.primitives = primitives;
+        this.references = references;
+    }
+
+    /**
+     * Reads fields written by {@link EntityRecordFactory}, each as a data type token followed by the field data.
+     *
+     * @param patternNid the nid of the pattern of the semantic, which finds the layout
+     * @param fieldCount the number of fields to read
+     */
+    static PackedFieldValues read(ByteBuf readBuf, int patternNid, int fieldCount, byte formatVersion) {
+        byte[] tokens = new byte[fieldCount];
+        long[] primitiveValues = new long[fieldCount];
+        Object[] referenceValues = new Object[fieldCount];
+        int primitiveCount = 0;
+        int referenceCount = 0;
+        for (int i = 0; i < fieldCount; i++) {
+            tokens[i] = readBuf.readByte();
+            FieldDataType dataType = FieldDataType.fromToken(tokens[i]);
+            switch (dataType) {
+                case BOOLEAN -> primitiveValues[primitiveCount++] = readBuf.readBoolean() ? 1 : 0;
+                case FLOAT -> primitiveValues[primitiveCount++] = Float.floatToRawIntBits(readBuf.readFloat());
+                case INTEGER, CONCEPT, SEMANTIC, PATTERN, IDENTIFIED_THING ->
+                        primitiveValues[primitiveCount++] = readBuf.readInt();
+                case LONG -> primitiveValues[primitiveCount++] = readBuf.readLong();
+                default -> referenceValues[referenceCount++] =
+                        EntityRecordFactory.readFieldData(readBuf, dataType, formatVersion);
+            }
+        }
+        FieldLayout layout = FieldLayout.of(patternNid, tokens);
+        return new PackedFieldValues(layout,
+                primitiveCount == 0 ? NO_PRIMITIVES : trim(primitiveValues, primitiveCount),
+                referenceCount == 0 ? NO_REFERENCES : trim(referenceValues, referenceCount));
+    }
+
+    private static long[] trim(long[] values, int count) {
+        return count == values.length ? values : Arrays.copyOf(values, count);
+    }
+
+    private static Object[] trim(Object[] values, int count) {
+        return count == values.length ? values : Arrays.copyOf(values, count);
+    }
+
+    @Override
+    public int size() {
+        return layout.fieldCount();
+    }
+
+    @Override
+    public Object get(int index) {
+        FieldDataType dataType = layout.dataType(index);
+        int slot = layout.slot(index);
+        return switch (dataType) {
+            case BOOLEAN -> Boolean.valueOf(primitives[slot] != 0);
+            case FLOAT -> Float.valueOf(Float.intBitsToFloat((int) primitives[slot]));
+            case INTEGER -> Integer.valueOf((int) primitives[slot]);
+            case LONG -> Long.valueOf(primitives[slot]);
+            case CONCEPT, SEMANTIC, PATTERN, IDENTIFIED_THING -> proxy(dataType, slot);
+            default -> references[slot];
+        };
+    }
+
+    private EntityProxy proxy(FieldDataType dataType, int slot) {
+        EntityProxy[] cached = this.proxies;
+        if (cached == null) {
+            cached = new EntityProxy[primitives.length];
+            this.proxies = cached;
+        }
+        EntityProxy proxy = (EntityProxy) PROXY_HANDLE.getAcquire(cached, slot);
+        if (proxy == null) {
+            int nid = (int) primitives[slot];
+            proxy = switch (dataType) {
+                case CONCEPT -> EntityProxy.Concept.make(nid);
+                case SEMANTIC -> EntityProxy.Semantic.make(nid);
+                case PATTERN -> EntityProxy.Pattern.make(nid);
+                default -> EntityProxy.make(nid);
+            };
+            PROXY_HANDLE.setRelease(cached, slot, proxy);
+        }
+        return proxy;
+    }
+
+    @Override
+    public void each(Procedure<? super Object> procedure) {
+        for (int i = 0; i < size(); i++) {
+            procedure.value(get(i));
+        }
+    }
+
+    /**
+     * @return the data type of the field, read from the layout without reading the field
+     */
+    public FieldDataType fieldDataType(int index) {
+        return layout.dataType(index);
+    }
+
+    public int intField(int index) {
+        return (int) primitive(index, FieldDataType.INTEGER);
+    }
+
+    public long longField(int index) {
+        return primitive(index, FieldDataType.LONG);
+    }
+
+    public float floatField(int index) {
+        return Float.intBitsToFloat((int) primitive(index, FieldDataType.FLOAT));
+    }
+
+    public boolean booleanField(int index) {
+        return primitive(index, FieldDataType.BOOLEAN) != 0;
+    }
+
+    /**
+     * @return the nid of a concept, semantic, pattern, or other component field
+     * @throws IllegalStateException if the field is not a component
+     */
+    public int nidField(int index) {
+        if (!isComponentField(index)) {
+            throw wrongType(index, "component");
+        }
+        return (int) primitives[layout.slot(index)];
+    }
+
+    /**
+     * @return true if the field is a concept, semantic, pattern, or other component, read by {@link #nidField(int)}
+     */
+    public boolean isComponentField(int index) {
+        return switch (layout.dataType(index)) {
+            case CONCEPT, SEMANTIC, PATTERN, IDENTIFIED_THING -> true;
+            default -> false;
+        };
+    }
+
+    private long primitive(int index, FieldDataType expectedType) {
+        if (layout.dataType(index) != expectedType) {
+            throw wrongType(index, expectedType.name());
+        }
+        return primitives[layout.slot(index)];
+    }
+
+    private IllegalStateException wrongType(int index, String expected) {
+        return new IllegalStateException("Expected " + expected + " at field " + index + " but was "
+                + layout.dataType(index));
+    }
+}
@@ -24,6 +24,13 @@ default <T> T getFieldWithMeaning(ConceptFacade fieldMeaning, SemanticEntityVers
         return (T) version.fieldValues().get(indexForMeaning(fieldMeaning));
     }
 
+    /**
+     * Returns a handle for the field with the meaning, from which primitive fields can be read without boxing.
+     */
+    default FieldHandle fieldHandleWithMeaning(ConceptFacade fieldMeaning, SemanticEntityVersion version) {
+        return FieldHandle.of(version, indexForMeaning(fieldMeaning));
+    }
+
     default int indexForMeaning(ConceptFacade meaning) {
         return indexForMeaning(meaning.nid());
     }
@@ -60,6 +67,10 @@ default <T> T getFieldWithPurpose(ConceptFacade fieldPurpose, SemanticEntityVers
         return (T) version.fieldValues().get(indexForPurpose(fieldPurpose));
     }
 
+    default FieldHandle fieldHandleWithPurpose(ConceptFacade fieldPurpose, SemanticEntityVersion version) {
+        return FieldHandle.of(version, indexForPurpose(fieldPurpose));
+    }
+
     default int indexForPurpose(ConceptFacade purpose) {
         return indexForPurpose(purpose.nid());
     }
@@ -113,16 +113,105 @@ default int patternNid() {
 
     /**
      * Returns the inferred {@link FieldDataType} for the value at the given field index.
-     * This is derived from the runtime type of the value in {@link #fieldValues()}.
+     * This is derived from the runtime type of the value in {@link #fieldValues()}, or read from the field layout
+     * when the values are packed.
      *
      * @param fieldIndex zero-based index into {@link #fieldValues()}
      * @return the data type for the specified field
      * @throws IndexOutOfBoundsException if the index is out of range
      */
     default FieldDataType fieldDataType(int fieldIndex) {
+        if (fieldValues() instanceof PackedFieldValues packed) {
+            return packed.fieldDataType(fieldIndex);
+        }
         return FieldDataType.getFieldDataType(fieldValues().get(fieldIndex));
     }
 
+    /**
+     * Returns the value of an {@link FieldDataType#INTEGER} field, without boxing when the values are packed.
+     * Unlike {@link #fieldAsInt(int)}, no conversion is performed.
+     *
+     * @param index zero-based field index
+     * @return the field value
+     * @throws IllegalStateException if the field is not an integer
+     */
+    default int intField(int index) {
+        if (fieldValues() instanceof PackedFieldValues packed) {
+            return packed.intField(index);
+        }
+        return FieldHandle.of(this, index).intValue();
+    }
+
+    /**
+     * Returns the value of a {@link FieldDataType#LONG} field, without boxing when the values are packed.
+     *
+     * @param index zero-based field index
+     * @return the field value
+     * @throws IllegalStateException if the field is not a long
+     */
+    default long longField(int index) {
+        if (fieldValues() instanceof PackedFieldValues packed) {
+            return packed.longField(index);
+        }
+        return FieldHandle.of(this, index).longValue();
+    }
+
+    /**
+     * Returns the value of a {@link FieldDataType#FLOAT} field, without boxing when the values are packed.
+     *
+     * @param index zero-based field index
+     * @return the field value
+     * @throws IllegalStateException if the field is not a float
+     */
+    default float floatField(int index) {
+        if (fieldValues() instanceof PackedFieldValues packed) {
+            return packed.floatField(index);
+        }
+        return FieldHandle.of(this, index).floatValue();
+    }
+
+    /**
+     * Returns the value of a {@link FieldDataType#BOOLEAN} field, without boxing when the values are packed.
+     *
+     * @param index zero-based field index
+     * @return the field value
+     * @throws IllegalStateException if the field is not a boolean
+     */
+    default boolean booleanField(int index) {
+        if (fieldValues() instanceof PackedFieldValues packed) {
+            return packed.booleanField(index);
+        }
+        return FieldHandle.of(this, index).booleanValue();
+    }
+
+    /**
+     * Returns the nid of a component field, without creating a proxy when the values are packed.
+     *
+     * @param index zero-based field index
+     * @return the nid of the component in the field
+     * @throws IllegalStateException if the field is not a component
+     */
+    default int nidField(int index) {
+        if (fieldValues() instanceof PackedFieldValues packed) {
+            return packed.nidField(index);
+        }
+        return FieldHandle.of(this, index).nidValue();
+    }
+
+    /**
+     * Returns the nid of a component field, or zero if the field is not a component, without creating a proxy
+     * when the values are packed.
+     *
+     * @param index zero-based field index
+     * @return the nid of the component in the field, or zero
+     */
+    default int nidFieldOrZero(int index) {
+        if (fieldValues() instanceof PackedFieldValues packed) {
+            return packed.isComponentField(index) ? packed.nidField(index) : 0;
+        }
+        return fieldValues().get(index) instanceof EntityFacade entityFacade ? entityFacade.nid() : 0;
+    }
+
     /**
      * The raw field values for this semantic version, ordered according to its {@link #pattern()}.
      * Values may include primitive wrappers, numbers, strings, nids, or entity facades depending on the pattern.
@@ -156,6 +245,9 @@ default FieldDataType fieldDataType(int fieldIndex) {
      * @return the field value as an int
      */
     default int fieldAsInt(int index) {
+        if (fieldValues() instanceof PackedFieldValues packed && packed.fieldDataType(index) == FieldDataType.INTEGER) {
+            return packed.intField(index);
+        }
         return switch (fieldValues().get(index)) {
             case null -> throw new NullPointerException("Field value is null");
             case Integer i -> i;
@@ -236,6 +328,9 @@ case Double d when (d.doubleValue() != Math.rint(d)) ->
      * @return the field value as a long
      */
     default long fieldAsLong(int index) {
+        if (fieldValues() instanceof PackedFieldValues packed && packed.fieldDataType(index) == FieldDataType.LONG) {
+            return packed.longField(index);
+        }
         return switch (fieldValues().get(index)) {
             case null -> throw new NullPointerException("Field value is null");
             case Long l -> l;
@@ -570,6 +665,9 @@ default BigDecimal fieldAsBigDecimal(int index) {
      * @return the field value as a boolean
      */
     default boolean fieldAsBoolean(int index) {
+        if (fieldValues() instanceof PackedFieldValues packed && packed.fieldDataType(index) == FieldDataType.BOOLEAN) {
+            return packed.booleanField(index);
+        }
         Object v = fieldValues().get(index);
         return switch (v) {
             case null -> throw new NullPointerException("Field value is null");
@@ -143,7 +143,7 @@ private EntityCountSummary computeMultiPass(long expectedImports, Map<PublicId,
         updateProgress(0, expectedImports * 2);
 
         // Pass 1: generate identifiers for all entities
-        EntityService.get().beginLoadPhase();
+        EntityService.get().beginBulkIngest();
         CopyOnWriteArrayList<UUID> patternUuids = new CopyOnWriteArrayList<>();
 
         try (FileInputStream fileIn = new FileInputStream(importFile);
@@ -309,7 +309,7 @@ private EntityCountSummary computeMultiPass(long expectedImports, Map<PublicId,
             throw new RuntimeException(e);
         } finally {
             try {
-                EntityService.get().endLoadPhase();
+                EntityService.get().endBulkIngest();
             } catch (Exception e) {
                 LOG.error("Encountered exception {}", e.getMessage());
             }
@@ -340,7 +340,7 @@ private EntityCountSummary computeOnePass(long expectedImports, Map<PublicId, St
         updateMessage("Importing Protobuf Data (1-pass mode)...");
         LOG.debug("Expected imports: " + expectedImports);
 
-        EntityService.get().beginLoadPhase();
+        EntityService.get().beginBulkIngest();
         try (ZipInputStream zis = new ZipInputStream(new FileInputStream(importFile))) {
             // Consumer to be run for each transformed Entity
             Consumer<Entity<? extends EntityVersion>> entityConsumer = entity -> {
@@ -381,7 +381,7 @@ private EntityCountSummary computeOnePass(long expectedImports, Map<PublicId, St
             throw new RuntimeException("1-pass failed", e);
         } finally {
             try {
-                EntityService.get().endLoadPhase();
+                EntityService.get().endBulkIngest();
             } catch (Exception e) {
                 LOG.error("Encountered exception {}", e.getMessage());
             }
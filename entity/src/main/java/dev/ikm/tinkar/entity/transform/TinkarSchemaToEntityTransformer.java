@@ -376,22 +376,36 @@ protected IntIdList transformPublicIdList(dev.ikm.tinkar.schema.PublicIdList pbP
         if(pbPublicIdList.getPublicIdsCount() == 0){
             return IntIds.list.empty();
         }
-        int[] nids = new int[pbPublicIdList.getPublicIdsCount()];
-        for(int i = 0; i < pbPublicIdList.getPublicIdsCount(); i++) {
-            nids[i] = PrimitiveData.nid(transformPublicId(pbPublicIdList.getPublicIds(i)));
-        }
-        return IntIds.list.of(nids);
+        return IntIds.list.of(nidsForPublicIds(pbPublicIdList.getPublicIdsList()));
     }
     protected IntIdSet transformPublicIdSet(dev.ikm.tinkar.schema.PublicIdSet pbPublicIdSet) {
         if(pbPublicIdSet.getPublicIdsCount() == 0){
             return IntIds.set.empty();
         }
-        int[] nids = new int[pbPublicIdSet.getPublicIdsCount()];
-        for(int i = 0; i < pbPublicIdSet.getPublicIdsCount(); i++) {
-            nids[i] = PrimitiveData.nid(transformPublicId(pbPublicIdSet.getPublicIds(i)));
+        return IntIds.set.of(nidsForPublicIds(pbPublicIdSet.getPublicIdsList()));
+    }
 
+    /**
+     * Resolves the nids of the public ids as a single batch when each has one UUID, as is usual, and otherwise one
+     * public id at a time.
+     */
+    private int[] nidsForPublicIds(List<dev.ikm.tinkar.schema.PublicId> pbPublicIds) {
+        int[] nids = new int[pbPublicIds.size()];
+        long[] msbLsbPairs = new long[pbPublicIds.size() * 2];
+        for (int i = 0; i < pbPublicIds.size(); i++) {
+            dev.ikm.tinkar.schema.PublicId pbPublicId = pbPublicIds.get(i);
+            if (pbPublicId.getUuidsCount() != 1) {
+                for (int j = 0; j < pbPublicIds.size(); j++) {
+                    nids[j] = PrimitiveData.nid(transformPublicId(pbPublicIds.get(j)));
+                }
+                return nids;
+            }
+            UUID uuid = UUID.fromString(pbPublicId.getUuids(0));
+            msbLsbPairs[2 * i] = uuid.getMostSignificantBits();
+            msbLsbPairs[2 * i + 1] = uuid.getLeastSignificantBits();
         }
-        return IntIds.set.of(nids);
+        PrimitiveData.get().nidsForUuids(msbLsbPairs, nids);
+        return nids;
     }
     protected UUID transformVertexUUID(VertexUUID vertexUUID) {
         return UUID.fromString(vertexUUID.getUuid());
@@ -0,0 +1,235 @@
+/*
+ * Copyright © 2015 Integrated Knowledge Management (support@ikm.dev)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dev.ikm.tinkar.coordinate.navigation.calculator;
+
+import org.eclipse.collections.api.map.primitive.MutableIntLongMap;
+import org.eclipse.collections.impl.map.mutable.primitive.IntLongHashMap;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+public class TaxonomyAdjacencyCacheTest {
+
+    private static final long PATTERN_0 = 1L;
+    private static final long PATTERN_1 = 1L << 1;
+    private static final long PATTERN_63 = 1L << 63;
+
+    private static MutableIntLongMap patternBits(int... nidsAndPatternIndexes) {
+        MutableIntLongMap bits = new IntLongHashMap();
+        for (int i = 0; i < nidsAndPatternIndexes.length; i += 2) {
+            long patternBit = 1L << nidsAndPatternIndexes[i + 1];
+            bits.updateValue(nidsAndPatternIndexes[i], 0L, existing -> existing | patternBit);
+        }
+        return bits;
+    }
+
+    @Test
+    public void testTargetsAreSortedAndSplitIntoParentsAndChildren() {
+        TaxonomyAdjacencyCache.Row row = TaxonomyAdjacencyCache.Row.of(
+                patternBits(-5, 0, -9, 0), patternBits(-1, 1, -20, 0, -3, 0), nid -> true);
+        assertArrayEquals(new int[]{-9, -5}, row.targets(false, -1L));
+        assertArrayEquals(new int[]{-20, -3, -1}, row.targets(true, -1L));
+        assertArrayEquals(new int[]{-9, -5, -20, -3, -1}, row.allTargets());
+    }
+
+    @Test
+    public void testPatternMaskSelectsTargets() {
+        // -2 is linked by both patterns, -3 by the last pattern index only.
+        TaxonomyAdjacencyCache.Row row = TaxonomyAdjacencyCache.Row.of(
+                patternBits(-1, 0, -2, 0, -2, 1, -3, 63), patternBits(-10, 1), nid -> true);
+        assertArrayEquals(new int[]{-2, -1}, row.targets(false, PATTERN_0));
+        assertArrayEquals(new int[]{-2}, row.targets(false, PATTERN_1));
+        assertArrayEquals(new int[]{-3}, row.targets(false, PATTERN_63));
+        assertArrayEquals(new int[]{-3, -2}, row.targets(false, PATTERN_1 | PATTERN_63));
+        assertArrayEquals(new int[]{}, row.targets(true, PATTERN_0));
+        assertArrayEquals(new int[]{-10}, row.targets(true, PATTERN_1));
+
+        Map<Integer, Long> edges = new HashMap<>();
+        row.forEachEdge(false, edges::put);
+        assertEquals(Map.of(-1, PATTERN_0, -2, PATTERN_0 | PATTERN_1, -3, PATTERN_63), edges);
+    }
+
+    @Test
+    public void testDisallowedVerticesAreFilteredAcrossBitsetWords() {
+        // More than 64 targets, so the allowed bitset spans several words, and parents and children share a word.
+        MutableIntLongMap parents = new IntLongHashMap();
+        MutableIntLongMap children = new IntLongHashMap();
+        for (int i = 0; i < 100; i++) {
+            parents.put(-1000 + i, PATTERN_0);
+            children.put(-500 + i, PATTERN_1);
+        }
+        TaxonomyAdjacencyCache.Row row = TaxonomyAdjacencyCache.Row.of(parents, children, nid -> nid % 3 != 0);
+
+        int[] allowedParents = row.targets(false, -1L);
+        int[] allowedChildren = row.targets(true, -1L);
+        assertArrayEquals(IntStream.range(0, 100).map(i -> -1000 + i).filter(nid -> nid % 3 != 0)
+                .toArray(), allowedParents);
+        assertArrayEquals(IntStream.range(0, 100).map(i -> -500 + i).filter(nid -> nid % 3 != 0)
+                .toArray(), allowedChildren);
+        assertEquals(100, row.unversionedTargets(false).length);
+        assertEquals(100, row.unversionedTargets(true).length);
+        assertEquals(-1000, row.unversionedTargets(false)[0]);
+        assertEquals(-500, row.unversionedTargets(true)[0]);
+
+        List<Integer> edgeTargets = new ArrayList<>();
+        row.forEachEdge(true, (targetNid, bits) -> {
+            assertEquals(PATTERN_1, bits);
+            edgeTargets.add(targetNid);
+        });
+        assertEquals(allowedChildren.length, edgeTargets.size());
+    }
+
+    @Test
+    public void testEmptyRow() {
+        TaxonomyAdjacencyCache.Row row = TaxonomyAdjacencyCache.Row.of(new IntLongHashMap(), new IntLongHashMap(),
+                nid -> true);
+        assertEquals(0, row.targets(false, -1L).length);
+        assertEquals(0, row.targets(true, -1L).length);
+        assertEquals(0, row.allTargets().length);
+    }
+
+    /**
+     * A taxonomy of parent and child nids, from which rows are built and neighbors found.
+     */
+    private static class Taxonomy {
+        final Map<Integer, Set<Integer>> parents = new HashMap<>();
+        final Map<Integer, Set<Integer>> children = new HashMap<>();
+        final Map<Integer, AtomicInteger> builds = new HashMap<>();
+        final Set<Integer> allowed = new HashSet<>();
+        final AtomicInteger neighborLookups = new AtomicInteger();
+
+        void link(int parentNid, int childNid) {
+            children.computeIfAbsent(parentNid, nid -> new HashSet<>()).add(childNid);
+            parents.computeIfAbsent(childNid, nid -> new HashSet<>()).add(parentNid);
+            allowed.add(parentNid);
+            allowed.add(childNid);
+        }
+
+        TaxonomyAdjacencyCache.Row build(int conceptNid) {
+            builds.computeIfAbsent(conceptNid, nid -> new AtomicInteger()).incrementAndGet();
+            MutableIntLongMap parentBits = new IntLongHashMap();
+            MutableIntLongMap childBits = new IntLongHashMap();
+            parents.getOrDefault(conceptNid, Set.of()).forEach(nid -> parentBits.put(nid, PATTERN_0));
+            children.getOrDefault(conceptNid, Set.of()).forEach(nid -> childBits.put(nid, PATTERN_0));
+            return TaxonomyAdjacencyCache.Row.of(parentBits, childBits, allowed::contains);
+        }
+
+        int[] neighbors(int conceptNid) {
+            neighborLookups.incrementAndGet();
+            Set<Integer> neighbors = new HashSet<>(parents.getOrDefault(conceptNid, Set.of()));
+            neighbors.addAll(children.getOrDefault(conceptNid, Set.of()));
+            return neighbors.stream().mapToInt(Integer::intValue).toArray();
+        }
+
+        int builds(int conceptNid) {
+            AtomicInteger count = builds.get(conceptNid);
+            return count == null ? 0 : count.get();
+        }
+
+        TaxonomyAdjacencyCache cache() {
+            return new TaxonomyAdjacencyCache(this::build, this::neighbors);
+        }
+    }
+
+    @Test
+    public void testRowsAreCachedUntilInvalidated() {
+        Taxonomy taxonomy = new Taxonomy();
+        taxonomy.link(-1, -2);
+        TaxonomyAdjacencyCache cache = taxonomy.cache();
+
+        assertNull(cache.rowIfPresent(-1));
+        TaxonomyAdjacencyCache.Row row = cache.row(-1);
+        assertSame(row, cache.row(-1));
+        assertSame(row, cache.rowIfPresent(-1));
+        assertEquals(1, taxonomy.builds(-1));
+
+        taxonomy.link(-1, -3);
+        cache.invalidateRow(-1);
+        assertNull(cache.rowIfPresent(-1));
+        assertArrayEquals(new int[]{-3, -2}, cache.row(-1).targets(true, -1L));
+        assertEquals(2, taxonomy.builds(-1));
+
+        cache.row(-2);
+        cache.invalidateAll();
+        assertNull(cache.rowIfPresent(-1));
+        assertNull(cache.rowIfPresent(-2));
+    }
+
+    @Test
+    public void testRowIfPresentDoesNotBuild() {
+        Taxonomy taxonomy = new Taxonomy();
+        taxonomy.link(-1, -2);
+        TaxonomyAdjacencyCache cache = taxonomy.cache();
+        assertNull(cache.rowIfPresent(-1));
+        assertEquals(0, taxonomy.builds(-1));
+    }
+
+    @Test
+    public void testConceptChangeInvalidatesNeighborsFromCachedRow() {
+        Taxonomy taxonomy = new Taxonomy();
+        taxonomy.link(-1, -2);
+        taxonomy.link(-2, -3);
+        taxonomy.link(-2, -4);
+        TaxonomyAdjacencyCache cache = taxonomy.cache();
+        cache.row(-1);
+        cache.row(-2);
+        cache.row(-3);
+        cache.row(-4);
+        assertArrayEquals(new int[]{-2}, cache.row(-1).targets(true, -1L));
+
+        // Retiring -2 removes it from the allowed vertices of its parent and children.
+        taxonomy.allowed.remove(-2);
+        cache.invalidateNeighbors(-2);
+        assertEquals(0, taxonomy.neighborLookups.get());
+        assertNull(cache.rowIfPresent(-1));
+        assertNull(cache.rowIfPresent(-3));
+        assertNull(cache.rowIfPresent(-4));
+        assertSame(cache.rowIfPresent(-2), cache.row(-2), "The row of the changed concept itself is unchanged");
+        assertArrayEquals(new int[]{}, cache.row(-1).targets(true, -1L));
+        assertArrayEquals(new int[]{}, cache.row(-3).targets(false, -1L));
+    }
+
+    @Test
+    public void testConceptChangeInvalidatesNeighborsWhenItsRowIsNotCached() {
+        Taxonomy taxonomy = new Taxonomy();
+        taxonomy.link(-1, -2);
+        taxonomy.link(-2, -3);
+        TaxonomyAdjacencyCache cache = taxonomy.cache();
+        assertArrayEquals(new int[]{-2}, cache.row(-1).targets(true, -1L));
+        assertArrayEquals(new int[]{-2}, cache.row(-3).targets(false, -1L));
+        assertNull(cache.rowIfPresent(-2));
+
+        taxonomy.allowed.remove(-2);
+        cache.invalidateNeighbors(-2);
+        assertEquals(1, taxonomy.neighborLookups.get());
+        assertNull(cache.rowIfPresent(-2), "Finding neighbors should not build the row");
+        assertArrayEquals(new int[]{}, cache.row(-1).targets(true, -1L));
+        assertArrayEquals(new int[]{}, cache.row(-3).targets(false, -1L));
+        assertArrayEquals(new int[]{-2}, cache.row(-1).unversionedTargets(true));
+    }
+}
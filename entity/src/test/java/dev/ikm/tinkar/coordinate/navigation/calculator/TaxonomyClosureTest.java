@@ -0,0 +1,215 @@
+/*
+ * Copyright © 2015 Integrated Knowledge Management (support@ikm.dev)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dev.ikm.tinkar.coordinate.navigation.calculator;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class TaxonomyClosureTest {
+
+    /**
+     * Parent to child edges between concept nids.
+     */
+    private static class Taxonomy {
+        final Set<Integer> conceptNids = new TreeSet<>();
+        final Map<Integer, Set<Integer>> children = new HashMap<>();
+        final Map<Integer, Set<Integer>> parents = new HashMap<>();
+
+        Taxonomy concept(int conceptNid) {
+            conceptNids.add(conceptNid);
+            return this;
+        }
+
+        Taxonomy link(int parentNid, int childNid) {
+            concept(parentNid);
+            concept(childNid);
+            children.computeIfAbsent(parentNid, nid -> new TreeSet<>()).add(childNid);
+            parents.computeIfAbsent(childNid, nid -> new TreeSet<>()).add(parentNid);
+            return this;
+        }
+
+        TaxonomyClosure closure() {
+            return TaxonomyClosure.build(conceptNids.stream().mapToInt(Integer::intValue).toArray(),
+                    nid -> edges(children, nid), nid -> edges(parents, nid));
+        }
+
+        private static int[] edges(Map<Integer, Set<Integer>> edges, int nid) {
+            return edges.getOrDefault(nid, Set.of()).stream().mapToInt(Integer::intValue).toArray();
+        }
+
+        /**
+         * @return the sorted nids reachable from the concept through at least one edge
+         */
+        int[] reachable(Map<Integer, Set<Integer>> edges, int fromNid) {
+            Set<Integer> reached = new TreeSet<>();
+            Deque<Integer> pending = new ArrayDeque<>(edges.getOrDefault(fromNid, Set.of()));
+            while (!pending.isEmpty()) {
+                int nid = pending.pop();
+                if (reached.add(nid)) {
+                    pending.addAll(edges.getOrDefault(nid, Set.of()));
+                }
+            }
+            return reached.stream().mapToInt(Integer::intValue).toArray();
+        }
+
+        /**
+         * Compares every query of the closure, for every pair of concepts, to a walk of the taxonomy.
+         */
+        void assertClosure(TaxonomyClosure closure) {
+            assertEquals(conceptNids.size(), closure.size());
+            for (int conceptNid : conceptNids) {
+                assertTrue(closure.contains(conceptNid));
+                int[] descendants = reachable(children, conceptNid);
+                int[] ancestors = reachable(parents, conceptNid);
+                int[] descendantsWithoutSelf = Arrays.stream(descendants).filter(nid -> nid != conceptNid).toArray();
+                int[] ancestorsWithoutSelf = Arrays.stream(ancestors).filter(nid -> nid != conceptNid).toArray();
+                int[] kindOf = IntStream.concat(Arrays.stream(descendants), IntStream.of(conceptNid))
+                        .distinct().sorted().toArray();
+                assertArrayEquals(descendantsWithoutSelf, sorted(closure.descendantsOf(conceptNid, false)),
+                        "Descendants of " + conceptNid);
+                assertArrayEquals(kindOf, sorted(closure.descendantsOf(conceptNid, true)), "Kind of " + conceptNid);
+                assertArrayEquals(ancestorsWithoutSelf, sorted(closure.ancestorsOf(conceptNid)),
+                        "Ancestors of " + conceptNid);
+                for (int otherNid : conceptNids) {
+                    boolean expected = otherNid == conceptNid || Arrays.binarySearch(descendants, otherNid) >= 0;
+                    assertEquals(expected, closure.isKindOf(otherNid, conceptNid),
+                            otherNid + " is kind of " + conceptNid);
+                }
+            }
+        }
+    }
+
+    private static int[] sorted(int[] nids) {
+        int[] sorted = nids.clone();
+        Arrays.sort(sorted);
+        return sorted;
+    }
+
+    @Test
+    public void testTree() {
+        Taxonomy taxonomy = new Taxonomy()
+                .link(-1, -2).link(-1, -3).link(-2, -4).link(-2, -5).link(-3, -6).link(-6, -7);
+        TaxonomyClosure closure = taxonomy.closure();
+        taxonomy.assertClosure(closure);
+        assertArrayEquals(new int[]{-7, -6, -5, -4, -3, -2}, sorted(closure.descendantsOf(-1, false)));
+        assertArrayEquals(new int[]{-6, -3, -1}, sorted(closure.ancestorsOf(-7)));
+        assertTrue(closure.isKindOf(-7, -1));
+        assertFalse(closure.isKindOf(-1, -7));
+        assertFalse(closure.isKindOf(-4, -3));
+    }
+
+    @Test
+    public void testDiamond() {
+        Taxonomy taxonomy = new Taxonomy().link(-1, -2).link(-1, -3).link(-2, -4).link(-3, -4).link(-4, -5);
+        TaxonomyClosure closure = taxonomy.closure();
+        taxonomy.assertClosure(closure);
+        // The shared descendant is reported once.
+        assertArrayEquals(new int[]{-5, -4, -3, -2}, sorted(closure.descendantsOf(-1, false)));
+        assertArrayEquals(new int[]{-4, -3, -2, -1}, sorted(closure.ancestorsOf(-5)));
+        assertTrue(closure.isKindOf(-5, -3));
+        assertFalse(closure.isKindOf(-2, -3));
+        assertFalse(closure.isKindOf(-3, -2));
+    }
+
+    @Test
+    public void testMultipleParentsAndRoots() {
+        // Two roots sharing descendants, with edges that cross between their spanning subtrees.
+        Taxonomy taxonomy = new Taxonomy()
+                .link(-1, -3).link(-1, -4).link(-2, -4).link(-2, -5).link(-3, -6).link(-5, -6).link(-4, -7)
+                .link(-6, -7).link(-1, -7).concept(-8);
+        TaxonomyClosure closure = taxonomy.closure();
+        taxonomy.assertClosure(closure);
+        assertArrayEquals(new int[]{}, closure.descendantsOf(-8, false));
+        assertArrayEquals(new int[]{-8}, closure.descendantsOf(-8, true));
+        assertArrayEquals(new int[]{}, closure.ancestorsOf(-8));
+    }
+
+    @Test
+    public void testCycle() {
+        // -2, -3 and -4 are on a cycle below the root, with a descendant leaving the cycle.
+        Taxonomy taxonomy = new Taxonomy().link(-1, -2).link(-2, -3).link(-3, -4).link(-4, -2).link(-3, -5);
+        TaxonomyClosure closure = taxonomy.closure();
+        taxonomy.assertClosure(closure);
+        for (int onCycle : new int[]{-2, -3, -4}) {
+            assertTrue(closure.isKindOf(-5, onCycle));
+            assertTrue(closure.isKindOf(-2, onCycle));
+            assertTrue(closure.isKindOf(-4, onCycle));
+            assertFalse(closure.isKindOf(-1, onCycle));
+        }
+        assertArrayEquals(new int[]{-5, -4, -3}, sorted(closure.descendantsOf(-2, false)));
+        assertArrayEquals(new int[]{-4, -3, -2, -1}, sorted(closure.ancestorsOf(-5)));
+    }
+
+    @Test
+    public void testCycleWithoutRoot() {
+        // No concept of the cycle is without a parent, so it is only reached by the second pass.
+        Taxonomy taxonomy = new Taxonomy().link(-1, -2).link(-2, -1).link(-2, -3).link(-4, -5);
+        TaxonomyClosure closure = taxonomy.closure();
+        taxonomy.assertClosure(closure);
+        assertTrue(closure.isKindOf(-1, -2));
+        assertTrue(closure.isKindOf(-2, -1));
+        assertFalse(closure.isKindOf(-3, -4));
+    }
+
+    @Test
+    public void testEdgesToUnknownConceptsAreIgnored() {
+        Taxonomy taxonomy = new Taxonomy().link(-1, -2);
+        TaxonomyClosure closure = TaxonomyClosure.build(new int[]{-1, -2},
+                nid -> nid == -1 ? new int[]{-2, -99} : new int[0],
+                nid -> nid == -2 ? new int[]{-1, -98} : new int[0]);
+        taxonomy.assertClosure(closure);
+        assertFalse(closure.contains(-99));
+        assertFalse(closure.isKindOf(-99, -1));
+        assertFalse(closure.isKindOf(-1, -99));
+    }
+
+    @Test
+    public void testRandomDirectedGraphs() {
+        Random random = new Random(7);
+        for (int graph = 0; graph < 50; graph++) {
+            Taxonomy taxonomy = new Taxonomy();
+            int conceptCount = 2 + random.nextInt(60);
+            for (int i = 0; i < conceptCount; i++) {
+                taxonomy.concept(-1 - i);
+            }
+            int edgeCount = random.nextInt(conceptCount * 2);
+            boolean acyclic = graph % 2 == 0;
+            for (int i = 0; i < edgeCount; i++) {
+                int parent = random.nextInt(conceptCount);
+                int child = random.nextInt(conceptCount);
+                if (parent == child || (acyclic && child < parent)) {
+                    continue;
+                }
+                taxonomy.link(-1 - parent, -1 - child);
+            }
+            taxonomy.assertClosure(taxonomy.closure());
+        }
+    }
+}
@@ -0,0 +1,233 @@
+/*
+ * Copyright © 2015 Integrated Knowledge Management (support@ikm.dev)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dev.ikm.tinkar.coordinate.navigation.calculator;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.IntPredicate;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class TaxonomyTraversalTest {
+
+    private static final ForkJoinPool POOL = new ForkJoinPool(4);
+
+    @AfterAll
+    public static void shutdownPool() {
+        POOL.shutdown();
+    }
+
+    /**
+     * Parent to child edges between concept nids, in the order they were linked.
+     */
+    private static class Taxonomy {
+        final Map<Integer, List<Integer>> children = new HashMap<>();
+        final Map<Integer, int[]> edges = new ConcurrentHashMap<>();
+
+        Taxonomy link(int parentNid, int childNid) {
+            children.computeIfAbsent(parentNid, nid -> new ArrayList<>()).add(childNid);
+            edges.remove(parentNid);
+            return this;
+        }
+
+        int[] childrenOf(int nid) {
+            return edges.computeIfAbsent(nid, key -> children.getOrDefault(key, List.of()).stream()
+                    .mapToInt(Integer::intValue).toArray());
+        }
+
+        TaxonomyTraversal parallel() {
+            return TaxonomyTraversal.of(this::childrenOf).withPool(POOL);
+        }
+
+        TaxonomyTraversal sequential() {
+            return TaxonomyTraversal.of(this::childrenOf).sequential();
+        }
+
+        /**
+         * @return the nids reached from the start, in breadth first order, with the depth each was first reached
+         * at, not continuing through the nids the predicate rejects
+         */
+        Map<Integer, Integer> breadthFirst(int startNid, int maxDepth, IntPredicate continueThrough) {
+            Map<Integer, Integer> depths = new LinkedHashMap<>();
+            List<Integer> level = List.of(startNid);
+            for (int depth = 1; depth <= maxDepth && !level.isEmpty(); depth++) {
+                List<Integer> next = new ArrayList<>();
+                for (int nid : level) {
+                    for (int childNid : children.getOrDefault(nid, List.of())) {
+                        if (!depths.containsKey(childNid)) {
+                            depths.put(childNid, depth);
+                            if (continueThrough.test(childNid)) {
+                                next.add(childNid);
+                            }
+                        }
+                    }
+                }
+                level = next;
+            }
+            return depths;
+        }
+
+        /**
+         * Traverses from the start in parallel and sequentially, and compares the concepts visited, and the depth
+         * each was visited at, to a breadth first walk of the taxonomy. Each concept must be visited once.
+         */
+        void assertTraversal(int startNid, int maxDepth, IntPredicate continueThrough) {
+            Map<Integer, Integer> expected = breadthFirst(startNid, maxDepth, continueThrough);
+
+            Map<Integer, Integer> parallelDepths = new ConcurrentHashMap<>();
+            parallel().withMaxDepth(maxDepth).traverse(startNid, (nid, depth) -> {
+                assertNull(parallelDepths.putIfAbsent(nid, depth), "Visited twice: " + nid);
+                return continueThrough.test(nid);
+            });
+            assertEquals(expected, parallelDepths, "Parallel traversal from " + startNid);
+
+            Map<Integer, Integer> sequentialDepths = new LinkedHashMap<>();
+            sequential().withMaxDepth(maxDepth).traverse(startNid, (nid, depth) -> {
+                assertNull(sequentialDepths.putIfAbsent(nid, depth), "Visited twice: " + nid);
+                return continueThrough.test(nid);
+            });
+            assertEquals(new ArrayList<>(expected.entrySet()), new ArrayList<>(sequentialDepths.entrySet()),
+                    "Sequential traversal from " + startNid + " visits in breadth first order");
+        }
+
+        /**
+         * Also compares the concepts reachable from the start, found in parallel and sequentially.
+         */
+        void assertTraversal(int startNid, int maxDepth) {
+            assertTraversal(startNid, maxDepth, nid -> true);
+            int[] expected = breadthFirst(startNid, maxDepth, nid -> true).keySet().stream()
+                    .mapToInt(Integer::intValue).sorted().toArray();
+            assertArrayEquals(expected, parallel().withMaxDepth(maxDepth).reachable(startNid).toArray());
+            assertArrayEquals(expected, sequential().withMaxDepth(maxDepth).reachable(startNid).toArray());
+        }
+
+        void assertTraversal(int startNid) {
+            assertTraversal(startNid, Integer.MAX_VALUE);
+        }
+    }
+
+    /**
+     * A root with a wide level of children, each sharing several grandchildren, so the levels below the root are
+     * expanded in parallel and most concepts are reached along more than one path.
+     */
+    private static Taxonomy sharedDescendants(Random random, boolean cyclic) {
+        Taxonomy taxonomy = new Taxonomy();
+        int root = -1;
+        int childCount = 200;
+        int grandchildCount = 500;
+        for (int child = 0; child < childCount; child++) {
+            taxonomy.link(root, -100 - child);
+            for (int i = 0; i < 6; i++) {
+                taxonomy.link(-100 - child, -1000 - random.nextInt(grandchildCount));
+            }
+        }
+        for (int grandchild = 0; grandchild < grandchildCount; grandchild++) {
+            // Every grandchild shares the same few great grandchildren, which form a diamond below it.
+            taxonomy.link(-1000 - grandchild, -5000 - grandchild % 7);
+            taxonomy.link(-5000 - grandchild % 7, -6000);
+            if (cyclic && grandchild % 50 == 0) {
+                taxonomy.link(-1000 - grandchild, root);
+                taxonomy.link(-1000 - grandchild, -100 - random.nextInt(childCount));
+            }
+        }
+        return taxonomy;
+    }
+
+    @Test
+    public void testSharedDescendantsAreVisitedOnce() {
+        Taxonomy taxonomy = sharedDescendants(new Random(3), false);
+        taxonomy.assertTraversal(-1);
+        Map<Integer, Integer> expected = taxonomy.breadthFirst(-1, Integer.MAX_VALUE, nid -> true);
+        assertEquals(4, (int) expected.get(-6000));
+        assertNull(expected.get(-1), "The root is not on a cycle");
+    }
+
+    @Test
+    public void testCyclesAreVisitedOnce() {
+        Taxonomy taxonomy = sharedDescendants(new Random(5), true);
+        taxonomy.assertTraversal(-1);
+        // The root is reached through a cycle, so it is visited, once, at the depth of the shortest cycle.
+        assertEquals(3, (int) taxonomy.breadthFirst(-1, Integer.MAX_VALUE, nid -> true).get(-1));
+        taxonomy.assertTraversal(-1000);
+    }
+
+    @Test
+    public void testMaxDepth() {
+        Taxonomy taxonomy = sharedDescendants(new Random(7), true);
+        for (int maxDepth = 0; maxDepth <= 4; maxDepth++) {
+            taxonomy.assertTraversal(-1, maxDepth);
+        }
+        assertEquals(0, taxonomy.parallel().withMaxDepth(0).reachable(-1).size());
+        assertEquals(200, taxonomy.parallel().withMaxDepth(1).reachable(-1).size());
+        assertThrows(IllegalArgumentException.class, () -> taxonomy.parallel().withMaxDepth(-1));
+    }
+
+    @Test
+    public void testVisitorStopsTraversalThroughConcept() {
+        Taxonomy taxonomy = sharedDescendants(new Random(11), true);
+        taxonomy.assertTraversal(-1, Integer.MAX_VALUE, nid -> nid % 3 != 0);
+        taxonomy.assertTraversal(-1, Integer.MAX_VALUE, nid -> nid > -1000);
+    }
+
+    @Test
+    public void testEdgesAreNotModified() {
+        // Every child lists shared grandchildren more than once, and the traversal must not compact its edges.
+        Taxonomy taxonomy = sharedDescendants(new Random(13), false);
+        for (int child = 0; child < 200; child++) {
+            taxonomy.link(-100 - child, -1000);
+            taxonomy.link(-100 - child, -1000);
+        }
+        Map<Integer, int[]> copies = new HashMap<>();
+        for (int child = 0; child < 200; child++) {
+            copies.put(-100 - child, taxonomy.childrenOf(-100 - child).clone());
+        }
+        taxonomy.assertTraversal(-1);
+        copies.forEach((nid, copy) -> assertArrayEquals(copy, taxonomy.childrenOf(nid), "Edges of " + nid));
+    }
+
+    @Test
+    public void testRandomDirectedGraphs() {
+        Random random = new Random(17);
+        for (int graph = 0; graph < 40; graph++) {
+            Taxonomy taxonomy = new Taxonomy();
+            int conceptCount = 100 + random.nextInt(900);
+            int edgeCount = conceptCount * (1 + random.nextInt(4));
+            boolean acyclic = graph % 2 == 0;
+            for (int i = 0; i < edgeCount; i++) {
+                int parent = random.nextInt(conceptCount);
+                int child = random.nextInt(conceptCount);
+                if (parent == child || (acyclic && child < parent)) {
+                    continue;
+                }
+                taxonomy.link(-1 - parent, -1 - child);
+            }
+            taxonomy.assertTraversal(-1);
+            taxonomy.assertTraversal(-1 - random.nextInt(conceptCount));
+        }
+    }
+}
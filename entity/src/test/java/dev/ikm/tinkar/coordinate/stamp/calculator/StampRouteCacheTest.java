@@ -0,0 +1,93 @@
+/*
+ * Copyright © 2015 Integrated Knowledge Management (support@ikm.dev)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dev.ikm.tinkar.coordinate.stamp.calculator;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+public class StampRouteCacheTest {
+
+    private static int stampNid(int i) {
+        return Integer.MIN_VALUE + 1 + i;
+    }
+
+    @Test
+    public void testPutAndRead() {
+        StampRouteCache cache = new StampRouteCache();
+        int code = StampRouteCache.code(true, 3, true);
+        cache.put(stampNid(0), code, 1_000L);
+        assertEquals(code, cache.code(stampNid(0)));
+        assertEquals(3, StampRouteCache.segmentSequence(cache.code(stampNid(0))));
+        assertEquals(1_000L, cache.time(stampNid(0)));
+        assertEquals(0, cache.code(stampNid(1)));
+        assertEquals(StampRouteCache.ABSENT_TIME, cache.time(stampNid(1)));
+
+        // An entry is never replaced.
+        cache.put(stampNid(0), StampRouteCache.code(false, 0, false), 2_000L);
+        assertEquals(code, cache.code(stampNid(0)));
+        assertEquals(1_000L, cache.time(stampNid(0)));
+    }
+
+    @Test
+    public void testGrowAndClear() {
+        StampRouteCache cache = new StampRouteCache();
+        int count = 10_000;
+        for (int i = 0; i < count; i++) {
+            cache.put(stampNid(i), StampRouteCache.code(i % 2 == 0, i % 7, i % 3 == 0), i);
+        }
+        for (int i = 0; i < count; i++) {
+            assertEquals(StampRouteCache.code(i % 2 == 0, i % 7, i % 3 == 0), cache.code(stampNid(i)));
+            assertEquals(i, cache.time(stampNid(i)));
+        }
+        cache.clear();
+        assertEquals(0, cache.code(stampNid(5)));
+        assertEquals(StampRouteCache.ABSENT_TIME, cache.time(stampNid(5)));
+    }
+
+    @Test
+    public void testTimeIsConsistentAcrossConcurrentClear() throws InterruptedException {
+        StampRouteCache cache = new StampRouteCache();
+        int count = 2_000;
+        AtomicBoolean running = new AtomicBoolean(true);
+        Thread writer = new Thread(() -> {
+            while (running.get()) {
+                for (int i = 0; i < count; i++) {
+                    cache.put(stampNid(i), StampRouteCache.RESOLVED, 1_000L + i);
+                }
+                cache.clear();
+            }
+        });
+        writer.start();
+        AtomicReference<String> failure = new AtomicReference<>();
+        for (int round = 0; round < 200 && failure.get() == null; round++) {
+            for (int i = 0; i < count; i++) {
+                long time = cache.time(stampNid(i));
+                if (time != StampRouteCache.ABSENT_TIME && time != 1_000L + i) {
+                    failure.set("Stamp " + i + " read time " + time);
+                    break;
+                }
+            }
+        }
+        running.set(false);
+        writer.join();
+        assertNull(failure.get());
+    }
+}
@@ -0,0 +1,174 @@
+/*
+ * Copyright © 2015 Integrated Knowledge Management (support@ikm.dev)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dev.ikm.tinkar.entity;
+
+import dev.ikm.tinkar.component.FieldDataType;
+import dev.ikm.tinkar.terms.EntityProxy;
+import io.activej.bytebuf.ByteBuf;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class PackedFieldValuesTest {
+    private static final int PATTERN_NID = -100;
+    private static final byte FORMAT_VERSION = 1;
+
+    /**
+     * Writes fields as {@link EntityRecordFactory} does: a data type token, then the field data.
+     */
+    private static class Fields {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        final DataOutputStream out = new DataOutputStream(bytes);
+        int count;
+
+        Fields token(FieldDataType dataType) throws IOException {
+            out.writeByte(dataType.token);
+            count++;
+            return this;
+        }
+
+        Fields booleanField(boolean value) throws IOException {
+            token(FieldDataType.BOOLEAN).out.writeBoolean(value);
+            return this;
+        }
+
+        Fields floatField(float value) throws IOException {
+            token(FieldDataType.FLOAT).out.writeFloat(value);
+            return this;
+        }
+
+        Fields intField(FieldDataType dataType, int value) throws IOException {
+            token(dataType).out.writeInt(value);
+            return this;
+        }
+
+        Fields longField(long value) throws IOException {
+            token(FieldDataType.LONG).out.writeLong(value);
+            return this;
+        }
+
+        Fields stringField(String value) throws IOException {
+            byte[] utf8 = value.getBytes(StandardCharsets.UTF_8);
+            token(FieldDataType.STRING).out.writeInt(utf8.length);
+            out.write(utf8);
+            return this;
+        }
+
+        PackedFieldValues read(int patternNid) {
+            return PackedFieldValues.read(ByteBuf.wrapForReading(bytes.toByteArray()), patternNid, count,
+                    FORMAT_VERSION);
+        }
+    }
+
+    private static Fields mixedFields() throws IOException {
+        return new Fields()
+                .booleanField(true)
+                .stringField("text")
+                .floatField(1.5f)
+                .intField(FieldDataType.INTEGER, -7)
+                .longField(Long.MIN_VALUE + 3)
+                .intField(FieldDataType.CONCEPT, -11)
+                .intField(FieldDataType.SEMANTIC, -12)
+                .intField(FieldDataType.PATTERN, -13)
+                .intField(FieldDataType.IDENTIFIED_THING, -14);
+    }
+
+    @Test
+    public void testDecodeMixedFields() throws IOException {
+        PackedFieldValues values = mixedFields().read(PATTERN_NID);
+        assertEquals(9, values.size());
+
+        assertTrue(values.booleanField(0));
+        assertEquals("text", values.get(1));
+        assertEquals(1.5f, values.floatField(2));
+        assertEquals(-7, values.intField(3));
+        assertEquals(Long.MIN_VALUE + 3, values.longField(4));
+        assertEquals(-11, values.nidField(5));
+        assertEquals(-12, values.nidField(6));
+        assertEquals(-13, values.nidField(7));
+        assertEquals(-14, values.nidField(8));
+
+        assertEquals(Boolean.TRUE, values.get(0));
+        assertEquals(1.5f, values.get(2));
+        assertEquals(-7, values.get(3));
+        assertEquals(Long.MIN_VALUE + 3, values.get(4));
+        assertTrue(values.get(5) instanceof EntityProxy.Concept);
+        assertTrue(values.get(6) instanceof EntityProxy.Semantic);
+        assertTrue(values.get(7) instanceof EntityProxy.Pattern);
+        assertEquals(-14, ((EntityProxy) values.get(8)).nid());
+
+        assertEquals(FieldDataType.STRING, values.fieldDataType(1));
+        assertTrue(values.isComponentField(5));
+        assertFalse(values.isComponentField(3));
+    }
+
+    @Test
+    public void testComponentFieldProxiesAreCreatedOnce() throws IOException {
+        PackedFieldValues values = mixedFields().read(PATTERN_NID);
+        for (int index = 5; index < 9; index++) {
+            Object proxy = values.get(index);
+            assertSame(proxy, values.get(index), "Field " + index);
+            assertEquals(values.nidField(index), ((EntityProxy) proxy).nid());
+        }
+        assertNotSame(values.get(5), mixedFields().read(PATTERN_NID).get(5));
+    }
+
+    @Test
+    public void testWrongTypeFails() throws IOException {
+        PackedFieldValues values = mixedFields().read(PATTERN_NID);
+        assertThrows(IllegalStateException.class, () -> values.intField(0));
+        assertThrows(IllegalStateException.class, () -> values.longField(3));
+        assertThrows(IllegalStateException.class, () -> values.nidField(3));
+        assertThrows(IllegalStateException.class, () -> values.booleanField(1));
+    }
+
+    @Test
+    public void testLayoutsAreSharedByPatternAndTokens() {
+        byte[] tokens = {FieldDataType.STRING.token, FieldDataType.CONCEPT.token};
+        byte[] changedTokens = {FieldDataType.STRING.token, FieldDataType.CONCEPT.token, FieldDataType.LONG.token};
+        FieldLayout layout = FieldLayout.of(-200, tokens);
+        assertSame(layout, FieldLayout.of(-200, tokens.clone()));
+        // Another pattern with the same field types shares the layout.
+        assertSame(layout, FieldLayout.of(-201, tokens.clone()));
+        assertSame(layout, FieldLayout.of(tokens.clone()));
+
+        // A pattern version that changes the fields adds a layout, and its semantics of either version find theirs.
+        FieldLayout changed = FieldLayout.of(-200, changedTokens);
+        assertNotSame(layout, changed);
+        assertEquals(3, changed.fieldCount());
+        assertEquals(2, changed.primitiveCount());
+        assertEquals(1, changed.referenceCount());
+        assertSame(layout, FieldLayout.of(-200, tokens.clone()));
+        assertSame(changed, FieldLayout.of(-200, changedTokens.clone()));
+    }
+
+    @Test
+    public void testEmptyFields() {
+        PackedFieldValues values = new Fields().read(PATTERN_NID);
+        assertEquals(0, values.size());
+        assertTrue(values.isEmpty());
+    }
+}
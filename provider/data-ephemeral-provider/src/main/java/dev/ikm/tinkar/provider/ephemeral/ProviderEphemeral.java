@@ -130,12 +130,12 @@ public void forEachParallel(ObjIntConsumer<byte[]> action) {
 
     @Override
     public void forEachParallel(ImmutableIntList nids, ObjIntConsumer<byte[]> action) {
-        throw new UnsupportedOperationException();
+        nids.primitiveParallelStream().forEach(nid -> action.accept(nidComponentMap.get(nid), nid));
     }
 
     @Override
     public void forEach(ImmutableIntList nids, ObjIntConsumer<byte[]> action) {
-        throw new UnsupportedOperationException();
+        nids.forEach(nid -> action.accept(nidComponentMap.get(nid), nid));
     }
 
     @Override
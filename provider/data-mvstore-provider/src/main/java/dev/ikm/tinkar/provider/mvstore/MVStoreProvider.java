@@ -34,6 +34,7 @@
 import org.eclipse.collections.api.map.MutableMap;
 import org.eclipse.collections.api.tuple.Pair;
 import org.eclipse.collections.impl.map.mutable.ConcurrentHashMap;
+import org.h2.mvstore.Cursor;
 import org.h2.mvstore.MVMap;
 import org.h2.mvstore.MVStore;
 import org.h2.mvstore.OffHeapStore;
@@ -50,6 +51,7 @@
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.LongAdder;
 import java.util.function.ObjIntConsumer;
+import java.util.stream.IntStream;
 
 /**
  * TODO: Maybe also consider making use of: https://blogs.oracle.com/javamagazine/creating-a-java-off-heap-in-memory-database?source=:em:nw:mt:::RC_WWMK200429P00043:NSL400123121
@@ -189,12 +191,18 @@ public void forEachParallel(ObjIntConsumer<byte[]> action) {
 
     @Override
     public void forEachParallel(ImmutableIntList nids, ObjIntConsumer<byte[]> action) {
-        throw new UnsupportedOperationException();
+        int[] nidArray = nids.toArray();
+        byte[][] bytes = getBytes(nidArray);
+        IntStream.range(0, nidArray.length).parallel().forEach(i -> action.accept(bytes[i], nidArray[i]));
     }
 
     @Override
     public void forEach(ImmutableIntList nids, ObjIntConsumer<byte[]> action) {
-        throw new UnsupportedOperationException();
+        int[] nidArray = nids.toArray();
+        byte[][] bytes = getBytes(nidArray);
+        for (int i = 0; i < nidArray.length; i++) {
+            action.accept(bytes[i], nidArray[i]);
+        }
     }
 
     @Override
@@ -202,6 +210,45 @@ public byte[] getBytes(int nid) {
         return this.nidToComponentMap.get(nid);
     }
 
+    /**
+     * Reads the batch in key order. When the nids are dense within their range, one cursor walks the leaves
+     * of the range, rather than descending the tree for each nid.
+     */
+    @Override
+    public byte[][] getBytes(int[] nids) {
+        byte[][] bytes = new byte[nids.length][];
+        if (nids.length == 0) {
+            return bytes;
+        }
+        // The nid in the upper half, its position in nids in the lower half.
+        long[] nidsAndPositions = new long[nids.length];
+        for (int position = 0; position < nids.length; position++) {
+            nidsAndPositions[position] = ((long) nids[position] << 32) | position;
+        }
+        Arrays.sort(nidsAndPositions);
+        int firstNid = (int) (nidsAndPositions[0] >> 32);
+        int lastNid = (int) (nidsAndPositions[nidsAndPositions.length - 1] >> 32);
+        if ((long) lastNid - firstNid < 4L * nids.length) {
+            Cursor<Integer, byte[]> cursor = this.nidToComponentMap.cursor(firstNid);
+            int index = 0;
+            while (index < nidsAndPositions.length && cursor.hasNext()) {
+                int key = cursor.next();
+                while (index < nidsAndPositions.length && (int) (nidsAndPositions[index] >> 32) < key) {
+                    index++;
+                }
+                while (index < nidsAndPositions.length && (int) (nidsAndPositions[index] >> 32) == key) {
+                    bytes[(int) nidsAndPositions[index]] = cursor.getValue();
+                    index++;
+                }
+            }
+        } else {
+            for (long nidAndPosition : nidsAndPositions) {
+                bytes[(int) nidAndPosition] = this.nidToComponentMap.get((int) (nidAndPosition >> 32));
+            }
+        }
+        return bytes;
+    }
+
     @Override
     public byte[] merge(int nid, int patternNid, int referencedComponentNid, byte[] value, Object sourceObject, DataActivity dataActivity) {
         if (!nidToPatternNidMap.containsKey(nid)) {
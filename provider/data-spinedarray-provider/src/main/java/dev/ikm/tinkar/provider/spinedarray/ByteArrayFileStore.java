@@ -15,87 +15,652 @@
  */
 package dev.ikm.tinkar.provider.spinedarray;
 
-import dev.ikm.tinkar.collection.store.ByteArrayStore;
+import dev.ikm.tinkar.collection.SpinedIntObjectMap;
+import dev.ikm.tinkar.collection.store.PagedByteArrayStore;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.io.BufferedInputStream;
 import java.io.BufferedOutputStream;
-import java.io.DataInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.DataOutputStream;
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
 import java.util.Optional;
 import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Function;
+import java.util.function.ObjIntConsumer;
+import java.util.zip.Adler32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
 
 import static dev.ikm.tinkar.collection.SpineFileUtil.SPINE_PREFIX;
 
-public class ByteArrayFileStore extends SpinedArrayFileStore implements ByteArrayStore {
+/**
+ * Spine store that memory maps spine files, and serves elements by copying them out of the mapping, so
+ * that the operating system page cache rather than the heap holds entity bytes that are only being read.
+ * <p>
+ * The file format is unchanged: an int element count, followed by an int length and the bytes of each
+ * element, with a length of zero for absent elements. The element offsets of each uncompressed spine, an int per
+ * element, are found when the spine is written, or by a scan of its lengths when it is first mapped, and kept on
+ * the heap, so a spine mapped again after its mapping was released is not read through to find them. Offsets are
+ * ints, so spine files are limited to 2 GB, as compressed spine files already were by their block table.
+ * <p>
+ * Each mapping has its own shared arena, which is closed, unmapping the file, once the mapping is released and its
+ * readers have finished. Spines are written to a temporary file which then replaces the spine file, after the
+ * mapping of the spine is closed, since a mapped file cannot be replaced on Windows. A mapping never observes a
+ * partially written spine.
+ * <p>
+ * When compression is enabled, spines are written in blocks of {@link #ELEMENTS_PER_BLOCK} elements, each
+ * deflated with a dictionary trained from the first spine compressed in the store. A compressed spine file starts
+ * with {@link #COMPRESSED_MAGIC}, which is negative and so never a valid element count, so files in either format
+ * are read regardless of the setting. Blocks are inflated when read, and the most recently inflated block of each
+ * mapped spine is kept for sequential reads.
+ */
+public class ByteArrayFileStore extends SpinedArrayFileStore implements PagedByteArrayStore {
     private static final Logger LOG = LoggerFactory.getLogger(ByteArrayFileStore.class);
+    private static final String TEMP_PREFIX = "tmp-";
+    private static final int MAX_MAPPED_SPINES = 256;
+    private static final ValueLayout.OfInt BIG_ENDIAN_INT = ValueLayout.JAVA_INT_UNALIGNED.withOrder(ByteOrder.BIG_ENDIAN);
+    static final int COMPRESSED_MAGIC = 0xC5B1DE01;
+    static final int ELEMENTS_PER_BLOCK = 64;
+    static final String DICTIONARY_FILE = "compressionDictionary";
+    private static final int MAX_DICTIONARY_SIZE = 32 * 1024;
+
+    private volatile boolean compressSpines;
+    private volatile byte[] dictionary;
+    private final AtomicReferenceArray<Mapping> mappedSpines =
+            new AtomicReferenceArray<>(SpinedIntObjectMap.DEFAULT_MAX_SPINE_COUNT);
+    private final AtomicInteger mappedSpineCount = new AtomicInteger();
+    /**
+     * The element offsets of each uncompressed spine file, or null if not yet known. Changed with the spine file,
+     * while holding the disk semaphore.
+     */
+    private final AtomicReferenceArray<int[]> spineOffsets =
+            new AtomicReferenceArray<>(SpinedIntObjectMap.DEFAULT_MAX_SPINE_COUNT);
+    private final AtomicInteger releaseHand = new AtomicInteger();
 
     public ByteArrayFileStore(File directory) {
         super(directory);
+        this.dictionary = readDictionary(directory);
     }
 
     public ByteArrayFileStore(File directory, Semaphore diskSemaphore) {
         super(directory, diskSemaphore);
+        this.dictionary = readDictionary(directory);
+    }
+
+    /**
+     * Sets if spines are compressed when written. Spines already written keep their format until rewritten.
+     */
+    public void setCompressSpines(boolean compressSpines) {
+        this.compressSpines = compressSpines;
+    }
+
+    public boolean getCompressSpines() {
+        return compressSpines;
     }
 
     @Override
     public Optional<AtomicReferenceArray<byte[]>> get(int spineIndex) {
-        String spineKey = SPINE_PREFIX + spineIndex;
-        File spineFile = new File(directory, spineKey);
-        if (spineFile.exists()) {
-            diskSemaphore.acquireUninterruptibly();
-            try (DataInputStream dis = new DataInputStream(new BufferedInputStream(new FileInputStream(spineFile)))) {
-                int arraySize = dis.readInt();
-                byte[][] spineArray = new byte[arraySize][];
-                for (int i = 0; i < arraySize; i++) {
-                    int valueSize = dis.readInt();
-                    if (valueSize != 0) {
-                        byte[] value = new byte[valueSize];
-                        dis.readFully(value);
-                        spineArray[i] = value;
-                    } else {
-                        spineArray[i] = null;
-                    }
-                }
-                AtomicReferenceArray<byte[]> spine = new AtomicReferenceArray<>(spineArray);
-                return Optional.of(spine);
+        return Optional.ofNullable(read(spineIndex, mappedSpine -> {
+            byte[][] spineArray = new byte[mappedSpine.size()][];
+            for (int i = 0; i < spineArray.length; i++) {
+                spineArray[i] = mappedSpine.get(i);
+            }
+            return new AtomicReferenceArray<>(spineArray);
+        }));
+    }
 
-            } catch (IOException ex) {
-                LOG.error(ex.getLocalizedMessage(), ex);
-            } finally {
-                diskSemaphore.release();
+    @Override
+    public byte[] get(int spineIndex, int indexInSpine) {
+        return read(spineIndex, mappedSpine -> mappedSpine.get(indexInSpine));
+    }
+
+    @Override
+    public int forEach(int spineIndex, ObjIntConsumer<byte[]> consumer) {
+        Integer size = read(spineIndex, MappedSpine::size);
+        if (size == null) {
+            return 0;
+        }
+        int processed = 0;
+        for (int indexInSpine = 0; indexInSpine < size; indexInSpine++) {
+            // Each element is read separately, so the mapping is not held while the consumer runs, and can be closed.
+            int index = indexInSpine;
+            byte[] value = read(spineIndex, mappedSpine -> mappedSpine.get(index));
+            if (value != null) {
+                consumer.accept(value, indexInSpine);
+                processed++;
+            }
+        }
+        return processed;
+    }
+
+    /**
+     * Unmaps all spines. Reads after closing map spines again.
+     */
+    @Override
+    public void close() {
+        diskSemaphore.acquireUninterruptibly();
+        try {
+            for (int spineIndex = 0; spineIndex < mappedSpines.length(); spineIndex++) {
+                releaseMapping(spineIndex);
             }
+        } finally {
+            diskSemaphore.release();
         }
-        return Optional.empty();
     }
 
     @Override
     public void put(int spineIndex, AtomicReferenceArray<byte[]> spine) {
         String spineKey = SPINE_PREFIX + spineIndex;
         File spineFile = new File(directory, spineKey);
+        File tempFile = new File(directory, TEMP_PREFIX + spineKey);
         diskSemaphore.acquireUninterruptibly();
-        try (DataOutputStream dos = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(spineFile)))) {
-            dos.writeInt(spine.length());
-            for (int i = 0; i < spine.length(); i++) {
-                byte[] value = spine.get(i);
-                if (value == null) {
-                    dos.writeInt(0);
+        try {
+            int[] offsets = null;
+            try (DataOutputStream dos = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)))) {
+                byte[] spineDictionary = compressSpines ? dictionaryFor(spine) : null;
+                if (spineDictionary != null) {
+                    writeCompressed(dos, spine, spineDictionary);
                 } else {
-                    dos.writeInt(value.length);
-                    dos.write(value);
+                    offsets = new int[spine.length()];
+                    dos.writeInt(spine.length());
+                    writeElements(dos, spine, 0, spine.length(), offsets);
+                    // The count of bytes written stops at Integer.MAX_VALUE.
+                    if (dos.size() == Integer.MAX_VALUE) {
+                        throw new IOException("Spine larger than 2 GB: " + spineFile);
+                    }
+                }
+            }
+            // Unmapped before the file is replaced. Readers of the old mapping finish first, and later readers
+            // wait on the disk semaphore, then map the new file.
+            releaseMapping(spineIndex);
+            spineOffsets.set(spineIndex, null);
+            try {
+                Files.move(tempFile.toPath(), spineFile.toPath(),
+                        StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException ex) {
+                Files.move(tempFile.toPath(), spineFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+            spineOffsets.set(spineIndex, offsets);
+        } catch (IOException ex) {
+            // Thrown so the spine stays changed, and a save that includes it does not complete.
+            tempFile.delete();
+            LOG.error(ex.getLocalizedMessage(), ex);
+            throw new UncheckedIOException(ex);
+        } finally {
+            diskSemaphore.release();
+        }
+    }
+
+    /**
+     * @param offsets receives the offset in the file of the length prefix of each element written, or -1 for absent
+     *                elements, or null if the elements are compressed
+     */
+    private static void writeElements(DataOutputStream dos, AtomicReferenceArray<byte[]> spine,
+                                      int start, int end, int[] offsets) throws IOException {
+        for (int i = start; i < end; i++) {
+            byte[] value = spine.get(i);
+            if (offsets != null) {
+                offsets[i] = value == null ? -1 : dos.size();
+            }
+            if (value == null) {
+                dos.writeInt(0);
+            } else {
+                dos.writeInt(value.length);
+                dos.write(value);
+            }
+        }
+    }
+
+    /**
+     * Writes {@code [int magic][int dictionary adler32][int element count][int block count]}, then the
+     * {@code [int offset][int compressed length][int inflated length]} of each block, then the blocks. Offsets
+     * are from the start of the file, and each block inflates to elements in the uncompressed format.
+     */
+    private static void writeCompressed(DataOutputStream dos, AtomicReferenceArray<byte[]> spine,
+                                        byte[] dictionary) throws IOException {
+        int blockCount = (spine.length() + ELEMENTS_PER_BLOCK - 1) / ELEMENTS_PER_BLOCK;
+        byte[][] blocks = new byte[blockCount][];
+        int[] inflatedLengths = new int[blockCount];
+        ByteArrayOutputStream elementBytes = new ByteArrayOutputStream();
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        try {
+            for (int block = 0; block < blockCount; block++) {
+                elementBytes.reset();
+                writeElements(new DataOutputStream(elementBytes), spine, block * ELEMENTS_PER_BLOCK,
+                        Math.min(spine.length(), (block + 1) * ELEMENTS_PER_BLOCK), null);
+                inflatedLengths[block] = elementBytes.size();
+                deflater.reset();
+                deflater.setDictionary(dictionary);
+                deflater.setInput(elementBytes.toByteArray());
+                deflater.finish();
+                ByteArrayOutputStream compressed = new ByteArrayOutputStream(elementBytes.size() / 2 + 64);
+                byte[] buffer = new byte[8192];
+                while (!deflater.finished()) {
+                    compressed.write(buffer, 0, deflater.deflate(buffer));
+                }
+                blocks[block] = compressed.toByteArray();
+            }
+        } finally {
+            deflater.end();
+        }
+        Adler32 adler32 = new Adler32();
+        adler32.update(dictionary);
+        dos.writeInt(COMPRESSED_MAGIC);
+        dos.writeInt((int) adler32.getValue());
+        dos.writeInt(spine.length());
+        dos.writeInt(blockCount);
+        int offset = 4 * Integer.BYTES + blockCount * 3 * Integer.BYTES;
+        for (int block = 0; block < blockCount; block++) {
+            dos.writeInt(offset);
+            dos.writeInt(blocks[block].length);
+            dos.writeInt(inflatedLengths[block]);
+            offset += blocks[block].length;
+        }
+        for (byte[] block : blocks) {
+            dos.write(block);
+        }
+    }
+
+    /**
+     * Returns the dictionary of the store, training one from the spine if the store does not have one yet. The
+     * dictionary is a sample of the spine's elements, so the deflater can refer back to the UUID layouts, stamp
+     * nids, and field tokens that entities share. It is written before any spine that uses it.
+     *
+     * @return the dictionary, or null if there is none and the spine is empty
+     */
+    private byte[] dictionaryFor(AtomicReferenceArray<byte[]> spine) throws IOException {
+        byte[] currentDictionary = this.dictionary;
+        if (currentDictionary != null) {
+            return currentDictionary;
+        }
+        int totalSize = 0;
+        int valueCount = 0;
+        for (int i = 0; i < spine.length(); i++) {
+            byte[] value = spine.get(i);
+            if (value != null) {
+                totalSize += value.length;
+                valueCount++;
+            }
+        }
+        if (valueCount == 0) {
+            return null;
+        }
+        ByteArrayOutputStream sample = new ByteArrayOutputStream(MAX_DICTIONARY_SIZE);
+        int stride = Math.max(1, totalSize / MAX_DICTIONARY_SIZE);
+        int index = 0;
+        for (int i = 0; i < spine.length(); i++) {
+            byte[] value = spine.get(i);
+            if (value != null && index++ % stride == 0) {
+                sample.write(value, 0, Math.min(value.length, MAX_DICTIONARY_SIZE - sample.size()));
+                if (sample.size() == MAX_DICTIONARY_SIZE) {
+                    break;
+                }
+            }
+        }
+        currentDictionary = sample.toByteArray();
+        File dictionaryFile = new File(directory, DICTIONARY_FILE);
+        File tempFile = new File(directory, TEMP_PREFIX + DICTIONARY_FILE);
+        Files.write(tempFile.toPath(), currentDictionary);
+        try {
+            Files.move(tempFile.toPath(), dictionaryFile.toPath(),
+                    StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException ex) {
+            Files.move(tempFile.toPath(), dictionaryFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+        this.dictionary = currentDictionary;
+        return currentDictionary;
+    }
+
+    private static byte[] readDictionary(File directory) {
+        File dictionaryFile = new File(directory, DICTIONARY_FILE);
+        if (!dictionaryFile.exists()) {
+            return null;
+        }
+        try {
+            return Files.readAllBytes(dictionaryFile.toPath());
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    /**
+     * Applies the reader to the mapped spine, holding the mapping open while it reads. If the mapping is closed
+     * first, by a write of the spine or by its release, the spine is mapped again.
+     *
+     * @return the result of the reader, or null if the spine has not been written
+     */
+    private <T> T read(int spineIndex, Function<MappedSpine, T> reader) {
+        while (true) {
+            Mapping mapping = mapping(spineIndex);
+            if (mapping == null) {
+                return null;
+            }
+            if (mapping.acquire()) {
+                try {
+                    return reader.apply(mapping.spine());
+                } finally {
+                    mapping.release();
                 }
             }
+        }
+    }
+
+    /**
+     * Returns the mapping for a spine, mapping the spine file if it is not already mapped.
+     * Mappings are installed and released while holding the disk semaphore, so a mapping of a
+     * spine file that is being replaced is never cached.
+     *
+     * @return the mapping, or null if the spine has not been written
+     */
+    private Mapping mapping(int spineIndex) {
+        if (spineIndex >= mappedSpines.length()) {
+            // A spined map has no more spines than this.
+            return null;
+        }
+        Mapping mapping = mappedSpines.get(spineIndex);
+        if (mapping != null) {
+            return mapping;
+        }
+        File spineFile = new File(directory, SPINE_PREFIX + spineIndex);
+        diskSemaphore.acquireUninterruptibly();
+        try {
+            mapping = mappedSpines.get(spineIndex);
+            if (mapping != null) {
+                return mapping;
+            }
+            if (!spineFile.exists()) {
+                return null;
+            }
+            mapping = Mapping.map(spineFile, dictionary, spineOffsets.get(spineIndex));
+            if (mapping.spine() instanceof UncompressedSpine uncompressedSpine) {
+                spineOffsets.set(spineIndex, uncompressedSpine.offsets());
+            }
+            mappedSpines.set(spineIndex, mapping);
+            if (mappedSpineCount.incrementAndGet() > MAX_MAPPED_SPINES) {
+                releaseMappings(spineIndex);
+            }
+            return mapping;
         } catch (IOException ex) {
             LOG.error(ex.getLocalizedMessage(), ex);
+            return null;
         } finally {
             diskSemaphore.release();
         }
     }
 
+    /**
+     * Removes and closes the mapping of a spine. Called while holding the disk semaphore.
+     */
+    private void releaseMapping(int spineIndex) {
+        Mapping mapping = mappedSpines.getAndSet(spineIndex, null);
+        if (mapping != null) {
+            mappedSpineCount.decrementAndGet();
+            mapping.close();
+        }
+    }
+
+    private void releaseMappings(int spineIndexToKeep) {
+        while (mappedSpineCount.get() > MAX_MAPPED_SPINES) {
+            int candidate = Math.floorMod(releaseHand.getAndIncrement(), mappedSpines.length());
+            if (candidate != spineIndexToKeep) {
+                releaseMapping(candidate);
+            }
+        }
+    }
+
+    /**
+     * A mapped spine, and the shared arena of its mapping, which is closed once readers have finished.
+     */
+    private static final class Mapping {
+        private final Arena arena;
+        private final MappedSpine spine;
+        /**
+         * The number of readers, or -1 once the mapping is closed.
+         */
+        private final AtomicInteger readers = new AtomicInteger();
+
+        private Mapping(Arena arena, MappedSpine spine) {
+            this.arena = arena;
+            this.spine = spine;
+        }
+
+        static Mapping map(File spineFile, byte[] dictionary, int[] knownOffsets) throws IOException {
+            Arena arena = Arena.ofShared();
+            try {
+                return new Mapping(arena, MappedSpine.map(spineFile, dictionary, knownOffsets, arena));
+            } catch (IOException | RuntimeException ex) {
+                arena.close();
+                throw ex;
+            }
+        }
+
+        MappedSpine spine() {
+            return spine;
+        }
+
+        /**
+         * @return true if the mapping is open, and will stay open until released
+         */
+        boolean acquire() {
+            while (true) {
+                int count = readers.get();
+                if (count < 0) {
+                    return false;
+                }
+                if (readers.compareAndSet(count, count + 1)) {
+                    return true;
+                }
+            }
+        }
+
+        void release() {
+            readers.decrementAndGet();
+        }
+
+        /**
+         * Waits for current readers, which only copy from the mapping, then unmaps the file.
+         */
+        void close() {
+            while (!readers.compareAndSet(0, -1)) {
+                Thread.onSpinWait();
+            }
+            arena.close();
+        }
+    }
+
+    /**
+     * A read-only mapping of a spine file.
+     */
+    private sealed interface MappedSpine permits UncompressedSpine, CompressedSpine {
+
+        /**
+         * @param knownOffsets the element offsets of the spine file if it is uncompressed and they are known, or null
+         */
+        static MappedSpine map(File spineFile, byte[] dictionary, int[] knownOffsets, Arena arena) throws IOException {
+            try (FileChannel channel = FileChannel.open(spineFile.toPath(), StandardOpenOption.READ)) {
+                if (channel.size() > Integer.MAX_VALUE) {
+                    throw new IOException("Spine file larger than 2 GB: " + spineFile);
+                }
+                MemorySegment segment = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size(), arena);
+                if (segment.byteSize() < Integer.BYTES) {
+                    return new UncompressedSpine(segment, new int[0]);
+                }
+                int header = segment.get(BIG_ENDIAN_INT, 0);
+                if (header == COMPRESSED_MAGIC) {
+                    return CompressedSpine.of(segment, dictionary, spineFile);
+                }
+                if (knownOffsets != null && knownOffsets.length == header) {
+                    return new UncompressedSpine(segment, knownOffsets);
+                }
+                return UncompressedSpine.of(segment);
+            }
+        }
+
+        int size();
+
+        byte[] get(int indexInSpine);
+    }
+
+    /**
+     * An uncompressed spine, with the offset of each element's length prefix, or -1 for absent elements. The offsets
+     * are not changed, and are shared with later mappings of the same file.
+     */
+    private record UncompressedSpine(MemorySegment segment, int[] offsets) implements MappedSpine {
+
+        static UncompressedSpine of(MemorySegment segment) {
+            int[] offsets = new int[segment.get(BIG_ENDIAN_INT, 0)];
+            int offset = Integer.BYTES;
+            for (int i = 0; i < offsets.length; i++) {
+                int valueSize = segment.get(BIG_ENDIAN_INT, offset);
+                offsets[i] = valueSize == 0 ? -1 : offset;
+                offset += Integer.BYTES + valueSize;
+            }
+            return new UncompressedSpine(segment, offsets);
+        }
+
+        @Override
+        public int size() {
+            return offsets.length;
+        }
+
+        @Override
+        public byte[] get(int indexInSpine) {
+            if (indexInSpine >= offsets.length || offsets[indexInSpine] < 0) {
+                return null;
+            }
+            int offset = offsets[indexInSpine];
+            int valueSize = segment.get(BIG_ENDIAN_INT, offset);
+            return segment.asSlice(offset + Integer.BYTES, valueSize).toArray(ValueLayout.JAVA_BYTE);
+        }
+    }
+
+    /**
+     * A compressed spine, with the table of blocks read from its header, and the last block inflated.
+     */
+    private static final class CompressedSpine implements MappedSpine {
+        private final MemorySegment segment;
+        private final byte[] dictionary;
+        private final int size;
+        private final int[] blockTable;
+        private volatile InflatedBlock lastBlock;
+
+        private CompressedSpine(MemorySegment segment, byte[] dictionary, int size, int[] blockTable) {
+            this.segment = segment;
+            this.dictionary = dictionary;
+            this.size = size;
+            this.blockTable = blockTable;
+        }
+
+        static CompressedSpine of(MemorySegment segment, byte[] dictionary, File spineFile) throws IOException {
+            int dictionaryAdler32 = segment.get(BIG_ENDIAN_INT, Integer.BYTES);
+            if (dictionary == null) {
+                throw new IOException("Missing " + DICTIONARY_FILE + " for compressed spine: " + spineFile);
+            }
+            Adler32 adler32 = new Adler32();
+            adler32.update(dictionary);
+            if ((int) adler32.getValue() != dictionaryAdler32) {
+                throw new IOException("Compressed spine does not match " + DICTIONARY_FILE + ": " + spineFile);
+            }
+            int size = segment.get(BIG_ENDIAN_INT, 2 * Integer.BYTES);
+            int[] blockTable = new int[segment.get(BIG_ENDIAN_INT, 3 * Integer.BYTES) * 3];
+            for (int i = 0; i < blockTable.length; i++) {
+                blockTable[i] = segment.get(BIG_ENDIAN_INT, (4 + i) * (long) Integer.BYTES);
+            }
+            return new CompressedSpine(segment, dictionary, size, blockTable);
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+
+        @Override
+        public byte[] get(int indexInSpine) {
+            if (indexInSpine >= size) {
+                return null;
+            }
+            int blockIndex = indexInSpine / ELEMENTS_PER_BLOCK;
+            InflatedBlock block = lastBlock;
+            if (block == null || block.blockIndex() != blockIndex) {
+                block = inflate(blockIndex);
+                lastBlock = block;
+            }
+            return block.get(indexInSpine % ELEMENTS_PER_BLOCK);
+        }
+
+        private InflatedBlock inflate(int blockIndex) {
+            int offset = blockTable[blockIndex * 3];
+            int compressedLength = blockTable[blockIndex * 3 + 1];
+            byte[] elementBytes = new byte[blockTable[blockIndex * 3 + 2]];
+            Inflater inflater = new Inflater();
+            try {
+                // Copied, since the inflater cannot read a buffer of a shared arena, which may be closed.
+                inflater.setInput(segment.asSlice(offset, compressedLength).toArray(ValueLayout.JAVA_BYTE));
+                int inflated = 0;
+                while (inflated < elementBytes.length) {
+                    int count = inflater.inflate(elementBytes, inflated, elementBytes.length - inflated);
+                    if (count == 0) {
+                        if (inflater.needsDictionary()) {
+                            inflater.setDictionary(dictionary);
+                        } else if (inflater.finished() || inflater.needsInput()) {
+                            throw new IllegalStateException("Truncated block " + blockIndex + " in compressed spine");
+                        }
+                    }
+                    inflated += count;
+                }
+            } catch (DataFormatException ex) {
+                throw new IllegalStateException("Corrupt block " + blockIndex + " in compressed spine", ex);
+            } finally {
+                inflater.end();
+            }
+            return InflatedBlock.of(blockIndex, elementBytes);
+        }
+    }
+
+    /**
+     * The elements of an inflated block, with the offset of each element's length prefix, or -1 for absent elements.
+     */
+    private record InflatedBlock(int blockIndex, byte[] elementBytes, int[] offsets) {
+
+        static InflatedBlock of(int blockIndex, byte[] elementBytes) {
+            ByteBuffer buffer = ByteBuffer.wrap(elementBytes);
+            int[] offsets = new int[ELEMENTS_PER_BLOCK];
+            int count = 0;
+            while (buffer.hasRemaining() && count < offsets.length) {
+                int offset = buffer.position();
+                int valueSize = buffer.getInt();
+                offsets[count++] = valueSize == 0 ? -1 : offset;
+                buffer.position(buffer.position() + valueSize);
+            }
+            Arrays.fill(offsets, count, offsets.length, -1);
+            return new InflatedBlock(blockIndex, elementBytes, offsets);
+        }
+
+        byte[] get(int indexInBlock) {
+            int offset = offsets[indexInBlock];
+            if (offset < 0) {
+                return null;
+            }
+            int valueSize = ByteBuffer.wrap(elementBytes, offset, Integer.BYTES).getInt();
+            return Arrays.copyOfRange(elementBytes, offset + Integer.BYTES, offset + Integer.BYTES + valueSize);
+        }
+    }
 }
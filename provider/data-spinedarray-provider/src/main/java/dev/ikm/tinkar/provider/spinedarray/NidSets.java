@@ -0,0 +1,202 @@
+/*
+ * Copyright © 2015 Integrated Knowledge Management (support@ikm.dev)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dev.ikm.tinkar.provider.spinedarray;
+
+import dev.ikm.tinkar.common.service.PrimitiveDataService;
+import dev.ikm.tinkar.common.service.StampTable;
+import dev.ikm.tinkar.common.sets.ConcurrentNidSet;
+import org.eclipse.collections.impl.map.mutable.ConcurrentHashMap;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Membership sets for the entity types, and the semantics of each pattern, the table of stamp fields, and the
+ * canceled stamps, persisted alongside the spines.
+ * <p>
+ * The sets and table are written on save, followed by a consistency marker. The marker is removed once the sets are
+ * loaded, and before the first change after a save, so if the process ends without a save the sets are rebuilt
+ * from the entity spines on the next open.
+ */
+public class NidSets {
+    private static final Logger LOG = LoggerFactory.getLogger(NidSets.class);
+    static final String CONSISTENT_MARKER = "consistent";
+    private static final String PATTERN_ELEMENTS_PREFIX = "patternElements-";
+    private static final String STAMP_TABLE = "stampTable";
+    private static final String CANCELED_STAMP_NIDS = "canceledStampNids";
+
+    final ConcurrentNidSet patternNids;
+    final ConcurrentNidSet conceptNids;
+    final ConcurrentNidSet semanticNids;
+    final ConcurrentNidSet stampNids;
+    final ConcurrentHashMap<Integer, ConcurrentNidSet> patternElementNidsMap;
+    final StampTable stampTable;
+    private final File directory;
+    private final boolean loadedConsistent;
+    private final AtomicBoolean markerPresent = new AtomicBoolean();
+
+    private NidSets(File directory, boolean loadedConsistent,
+                    ConcurrentNidSet patternNids, ConcurrentNidSet conceptNids,
+                    ConcurrentNidSet semanticNids, ConcurrentNidSet stampNids,
+                    ConcurrentHashMap<Integer, ConcurrentNidSet> patternElementNidsMap, StampTable stampTable) {
+        this.directory = directory;
+        this.loadedConsistent = loadedConsistent;
+        this.patternNids = patternNids;
+        this.conceptNids = conceptNids;
+        this.semanticNids = semanticNids;
+        this.stampNids = stampNids;
+        this.patternElementNidsMap = patternElementNidsMap;
+        this.stampTable = stampTable;
+    }
+
+    /**
+     * Opens the sets persisted in the directory. If they were not saved consistently, empty sets are returned,
+     * and {@link #loadedConsistent()} is false.
+     */
+    public static NidSets open(File directory) throws IOException {
+        directory.mkdirs();
+        File marker = new File(directory, CONSISTENT_MARKER);
+        if (marker.exists()) {
+            try {
+                ConcurrentHashMap<Integer, ConcurrentNidSet> patternElementNidsMap = ConcurrentHashMap.newMap();
+                File[] patternElementFiles = directory.listFiles((dir, fileName) -> fileName.startsWith(PATTERN_ELEMENTS_PREFIX));
+                if (patternElementFiles != null) {
+                    for (File patternElementFile : patternElementFiles) {
+                        int patternNid = Integer.parseUnsignedInt(
+                                patternElementFile.getName().substring(PATTERN_ELEMENTS_PREFIX.length()));
+                        patternElementNidsMap.put(patternNid, read(patternElementFile));
+                    }
+                }
+                NidSets nidSets = new NidSets(directory, true,
+                        read(new File(directory, "patternNids")), read(new File(directory, "conceptNids")),
+                        read(new File(directory, "semanticNids")), read(new File(directory, "stampNids")),
+                        patternElementNidsMap, readStampTable(new File(directory, STAMP_TABLE)));
+                File canceledStampNidsFile = new File(directory, CANCELED_STAMP_NIDS);
+                // Absent for stores saved before canceled stamps were persisted, which are found by the stamp scan on startup.
+                if (canceledStampNidsFile.exists()) {
+                    read(canceledStampNidsFile).forEach(PrimitiveDataService.canceledStampNids::add);
+                }
+                // Until the next save, the sets on disk may not reflect changes.
+                Files.delete(marker.toPath());
+                return nidSets;
+            } catch (IOException | RuntimeException e) {
+                LOG.warn("Unable to load nid sets, they will be rebuilt from the entities", e);
+                Files.deleteIfExists(marker.toPath());
+            }
+        }
+        return new NidSets(directory, false, new ConcurrentNidSet(), new ConcurrentNidSet(),
+                new ConcurrentNidSet(), new ConcurrentNidSet(), ConcurrentHashMap.newMap(), new StampTable());
+    }
+
+    /**
+     * @return true if the sets were loaded from a consistent save, and do not need to be rebuilt.
+     */
+    public boolean loadedConsistent() {
+        return loadedConsistent;
+    }
+
+    /**
+     * Must be called before changing the sets, so a crash before the next save does not leave stale sets
+     * marked consistent.
+     */
+    public void beforeChange() {
+        if (markerPresent.get() && markerPresent.compareAndSet(true, false)) {
+            try {
+                Files.deleteIfExists(new File(directory, CONSISTENT_MARKER).toPath());
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    public ConcurrentNidSet patternElementNids(int patternNid) {
+        return patternElementNidsMap.getIfAbsentPut(patternNid, ConcurrentNidSet::new);
+    }
+
+    public boolean addToPatternElementSet(int patternNid, int elementNid) {
+        return patternElementNids(patternNid).add(elementNid);
+    }
+
+    /**
+     * @param patternNid the pattern of the nid if it is a semantic, otherwise Integer.MAX_VALUE.
+     */
+    public void remove(int nid, int patternNid) {
+        beforeChange();
+        conceptNids.remove(nid);
+        semanticNids.remove(nid);
+        patternNids.remove(nid);
+        stampNids.remove(nid);
+        stampTable.remove(nid);
+        if (patternNid != Integer.MAX_VALUE) {
+            ConcurrentNidSet elementNids = patternElementNidsMap.get(patternNid);
+            if (elementNids != null) {
+                elementNids.remove(nid);
+            }
+        }
+    }
+
+    /**
+     * Writes the sets, then the consistency marker. The marker is removed again by the next open.
+     */
+    public void save() throws IOException {
+        File marker = new File(directory, CONSISTENT_MARKER);
+        Files.deleteIfExists(marker.toPath());
+        write(patternNids, new File(directory, "patternNids"));
+        write(conceptNids, new File(directory, "conceptNids"));
+        write(semanticNids, new File(directory, "semanticNids"));
+        write(stampNids, new File(directory, "stampNids"));
+        for (Integer patternNid : patternElementNidsMap.keySet()) {
+            write(patternElementNidsMap.get(patternNid),
+                    new File(directory, PATTERN_ELEMENTS_PREFIX + Integer.toUnsignedString(patternNid)));
+        }
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                new FileOutputStream(new File(directory, STAMP_TABLE))))) {
+            stampTable.write(out);
+        }
+        write(PrimitiveDataService.canceledStampNids, new File(directory, CANCELED_STAMP_NIDS));
+        marker.createNewFile();
+        markerPresent.set(true);
+    }
+
+    private static ConcurrentNidSet read(File file) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            return ConcurrentNidSet.read(in);
+        }
+    }
+
+    private static StampTable readStampTable(File file) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            return StampTable.read(in);
+        }
+    }
+
+    private static void write(ConcurrentNidSet nidSet, File file) throws IOException {
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)))) {
+            nidSet.write(out);
+        }
+    }
+}
@@ -18,38 +18,40 @@
 import dev.ikm.tinkar.collection.KeyType;
 import dev.ikm.tinkar.collection.SpinedByteArrayMap;
 import dev.ikm.tinkar.collection.SpinedIntIntMap;
-import dev.ikm.tinkar.collection.SpinedIntLongArrayMap;
+import dev.ikm.tinkar.collection.LongRunSet;
+import dev.ikm.tinkar.collection.SpinedIntLongSetMap;
 import dev.ikm.tinkar.common.alert.AlertStreams;
 import dev.ikm.tinkar.common.id.EntityKey;
 import dev.ikm.tinkar.common.id.PublicId;
 import dev.ikm.tinkar.common.service.*;
-import dev.ikm.tinkar.common.sets.ConcurrentHashSet;
+import dev.ikm.tinkar.common.sets.ConcurrentNidSet;
 import dev.ikm.tinkar.common.util.ints2long.IntsInLong;
 import dev.ikm.tinkar.common.util.io.FileUtil;
 import dev.ikm.tinkar.common.util.time.Stopwatch;
 import dev.ikm.tinkar.common.util.uuid.UuidUtil;
+import dev.ikm.tinkar.component.FieldDataType;
 import dev.ikm.tinkar.entity.*;
 import dev.ikm.tinkar.entity.transaction.Transaction;
 import dev.ikm.tinkar.provider.search.SearchService;
 import dev.ikm.tinkar.terms.State;
 import io.activej.bytebuf.ByteBuf;
 import io.activej.bytebuf.ByteBufPool;
+import org.eclipse.collections.api.IntIterable;
 import org.eclipse.collections.api.block.procedure.primitive.IntProcedure;
 import org.eclipse.collections.api.factory.Lists;
 import org.eclipse.collections.api.factory.Sets;
-import org.eclipse.collections.api.factory.primitive.LongSets;
 import org.eclipse.collections.api.list.ImmutableList;
 import org.eclipse.collections.api.list.MutableList;
 import org.eclipse.collections.api.list.primitive.ImmutableIntList;
-import org.eclipse.collections.api.list.primitive.MutableIntList;
-import org.eclipse.collections.api.list.primitive.MutableLongList;
+import org.eclipse.collections.api.map.primitive.MutableIntObjectMap;
 import org.eclipse.collections.api.set.MutableSet;
 import org.eclipse.collections.api.set.primitive.IntSet;
+import org.eclipse.collections.api.set.primitive.MutableIntSet;
 import org.eclipse.collections.api.set.primitive.MutableLongSet;
 import org.eclipse.collections.impl.factory.primitive.IntLists;
+import org.eclipse.collections.impl.factory.primitive.IntObjectMaps;
 import org.eclipse.collections.impl.factory.primitive.IntSets;
-import org.eclipse.collections.impl.factory.primitive.LongLists;
-import org.eclipse.collections.impl.map.mutable.ConcurrentHashMap;
+import org.eclipse.collections.impl.factory.primitive.LongSets;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -57,6 +59,7 @@
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.Arrays;
 import java.util.Optional;
 import java.util.OptionalInt;
 import java.util.ServiceLoader;
@@ -65,9 +68,12 @@
 import java.util.concurrent.CompletionException;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicReference;
 import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BinaryOperator;
 import java.util.function.ObjIntConsumer;
 
 /**
@@ -107,22 +113,46 @@ public static SpinedArrayProvider get() {
     }
 
     protected static LongAdder writeSequence = new LongAdder();
-    protected final CountDownLatch uuidsLoadedLatch = new CountDownLatch(1);
+    protected final CountDownLatch nidSetsLoadedLatch = new CountDownLatch(1);
     final AtomicInteger nextNid = new AtomicInteger(PrimitiveDataService.FIRST_NID);
 
-    final ConcurrentHashMap<UUID, Integer> uuidToNidMap = ConcurrentHashMap.newMap();
-    final ConcurrentHashSet<Integer> patternNids = new ConcurrentHashSet();
-    final ConcurrentHashSet<Integer> conceptNids = new ConcurrentHashSet();
-    final ConcurrentHashSet<Integer> semanticNids = new ConcurrentHashSet();
-    final ConcurrentHashSet<Integer> stampNids = new ConcurrentHashSet();
-    final ConcurrentHashMap<Integer, ConcurrentHashSet<Integer>> patternElementNidsMap = ConcurrentHashMap.newMap();
+    final UuidNidIndex uuidNidIndex;
+    final NidSets nidSets;
+    /**
+     * Null if the write ahead log is disabled, in which case changes are durable only after {@link #save()}.
+     */
+    final WriteAheadLog writeAheadLog;
+    final ScheduledFuture<?> checkpointFuture;
+    /**
+     * The nids merged since {@link #beginBulkIngest()}, whose citations, pattern membership and search
+     * documents are added when the ingest ends. Null outside a bulk ingest.
+     */
+    private volatile ConcurrentNidSet bulkIngestNids;
+    /**
+     * Present while the citations and pattern membership of a bulk ingest are incomplete, because the pass that
+     * adds them at the end of the ingest failed. The next open rebuilds them from the entities.
+     */
+    static final String CITATIONS_INCOMPLETE_MARKER = "citationsIncomplete";
+    final File citationsIncompleteFile;
+    /**
+     * True while the citations and pattern membership are known to be incomplete, so save does not mark the nid
+     * sets consistent, or remove the {@link #CITATIONS_INCOMPLETE_MARKER}.
+     */
+    private volatile boolean citationsIncomplete;
 
     final SpinedByteArrayMap entityToBytesMap;
     final SpinedIntIntMap nidToPatternNidMap;
     /**
      * Using "citing" instead of "referencing" to make the field names more distinct.
+     * Each citation long holds the pattern nid in the high int, and the citing nid in the low int, so the
+     * citations of a component for one pattern are a contiguous range.
      */
-    final SpinedIntLongArrayMap nidToCitingComponentsNidMap;
+    final SpinedIntLongSetMap nidToCitingComponentsNidMap;
+    /**
+     * Present when the citation longs have the pattern nid in the high int. Older data stores have the citing
+     * nid in the high int, and are migrated when opened.
+     */
+    static final String PATTERN_FIRST_CITATIONS_MARKER = "patternFirstCitations";
 
     final File nidToPatternNidMapDirectory;
     final File nidToByteArrayMapDirectory;
@@ -147,46 +177,76 @@ private SpinedArrayProvider() throws IOException, ExecutionException, Interrupte
         this.nidToCitingComponentNidMapDirectory = new File(configuredRoot, "nidToCitingComponentNidMap");
         this.nidToCitingComponentNidMapDirectory.mkdirs();
         this.nextNidKeyFile = new File(configuredRoot, "nextNidKeyFile");
+        this.citationsIncompleteFile = new File(configuredRoot, CITATIONS_INCOMPLETE_MARKER);
+        this.citationsIncomplete = this.citationsIncompleteFile.exists();
 
-        this.entityToBytesMap = new SpinedByteArrayMap(new ByteArrayFileStore(nidToByteArrayMapDirectory));
+        ByteArrayFileStore entityStore = new ByteArrayFileStore(nidToByteArrayMapDirectory);
+        entityStore.setCompressSpines(ServiceProperties.get(ServiceKeys.COMPRESS_SPINES, Boolean.FALSE));
+        this.entityToBytesMap = new SpinedByteArrayMap(entityStore);
         this.nidToPatternNidMap = new SpinedIntIntMap(KeyType.NID_KEY);
         this.nidToPatternNidMap.read(this.nidToPatternNidMapDirectory);
-        this.nidToCitingComponentsNidMap = new SpinedIntLongArrayMap(new IntLongArrayFileStore(nidToCitingComponentNidMapDirectory));
+        migrateToPatternFirstCitations(nidToCitingComponentNidMapDirectory);
+        this.nidToCitingComponentsNidMap = new SpinedIntLongSetMap(new IntLongArrayFileStore(nidToCitingComponentNidMapDirectory));
+        int maxResidentSpines = ServiceProperties.get(ServiceKeys.MAX_RESIDENT_SPINES, Integer.MAX_VALUE);
+        this.entityToBytesMap.setMaxResidentSpines(maxResidentSpines);
+        this.nidToCitingComponentsNidMap.setMaxResidentSpines(maxResidentSpines);
 
         if (nextNidKeyFile.exists()) {
             String nextNidString = Files.readString(this.nextNidKeyFile.toPath());
             nextNid.set(Integer.valueOf(nextNidString));
         }
-        LOG.info("Submitting UUID loading task to thread pool...");
+        this.uuidNidIndex = UuidNidIndex.open(configuredRoot);
+        if (this.citationsIncomplete) {
+            LOG.warn("Citations and pattern membership of a bulk ingest are incomplete. Will rebuild from the entities.");
+            Files.deleteIfExists(new File(new File(configuredRoot, "nidSets"), NidSets.CONSISTENT_MARKER).toPath());
+        }
+        LOG.info("UUID to nid index with {} entries loaded consistent: {}", uuidNidIndex.size(),
+                uuidNidIndex.loadedConsistent());
+        this.nidSets = NidSets.open(new File(configuredRoot, "nidSets"));
+        LOG.info("Nid sets with {} concepts, {} semantics, {} patterns, {} stamps loaded consistent: {}",
+                nidSets.conceptNids.size(), nidSets.semanticNids.size(), nidSets.patternNids.size(),
+                nidSets.stampNids.size(), nidSets.loadedConsistent());
+        if (ServiceProperties.get(ServiceKeys.WRITE_AHEAD_LOG, Boolean.TRUE)) {
+            this.writeAheadLog = WriteAheadLog.open(new File(configuredRoot, "writeAheadLog"), this::replay);
+        } else {
+            this.writeAheadLog = null;
+        }
+        if (nidSets.loadedConsistent()) {
+            this.nidSetsLoadedLatch.countDown();
+        }
+        LOG.info("Submitting nid set loading task to thread pool...");
         try {
             TinkExecutor.threadPool().submit(() -> {
-                Stopwatch uuidNidMapFromEntitiesStopwatch = new Stopwatch();
-                LOG.info("Starting UUID strategy 2 on thread: {}", Thread.currentThread().getName());
-                UuidNidCollector uuidNidCollector = new UuidNidCollector(uuidToNidMap,
-                        patternNids, conceptNids, semanticNids, stampNids, patternElementNidsMap);
-                try {
-                    LOG.info("Executing entityToBytesMap.forEachParallel...");
-                    this.entityToBytesMap.forEachParallel(uuidNidCollector);
-                    LOG.info("Completed entityToBytesMap.forEachParallel, counting down latch");
-                    this.uuidsLoadedLatch.countDown();
-                } catch (ExecutionException | InterruptedException e) {
-                    LOG.error("Error during UUID loading: " + e.getLocalizedMessage(), e);
-                } finally {
-                    uuidNidMapFromEntitiesStopwatch.stop();
-                    LOG.info("Finished UUID strategy 2 in: " + uuidNidMapFromEntitiesStopwatch.durationString());
-                    LOG.info(uuidNidCollector.report());
+                if (!nidSets.loadedConsistent() || !uuidNidIndex.loadedConsistent()) {
+                    Stopwatch uuidNidMapFromEntitiesStopwatch = new Stopwatch();
+                    LOG.info("Starting nid set loading on thread: {}", Thread.currentThread().getName());
+                    UuidNidCollector uuidNidCollector = new UuidNidCollector(
+                            uuidNidIndex.loadedConsistent() ? null : uuidNidIndex,
+                            nidSets.loadedConsistent() ? null : nidSets,
+                            citationsIncomplete ? nidToCitingComponentsNidMap : null);
+                    try {
+                        LOG.info("Executing entityToBytesMap.forEachParallel...");
+                        this.entityToBytesMap.forEachParallel(uuidNidCollector);
+                        LOG.info("Completed entityToBytesMap.forEachParallel, counting down latch");
+                        this.citationsIncomplete = false;
+                        this.nidSetsLoadedLatch.countDown();
+                    } catch (ExecutionException | InterruptedException e) {
+                        LOG.error("Error during nid set loading: " + e.getLocalizedMessage(), e);
+                    } finally {
+                        uuidNidMapFromEntitiesStopwatch.stop();
+                        LOG.info("Finished nid set loading in: " + uuidNidMapFromEntitiesStopwatch.durationString());
+                        LOG.info(uuidNidCollector.report());
+                    }
                 }
                 LOG.info("Starting virtual thread for listAndCancelUncommittedStamps");
                 Thread.ofVirtual().start(() -> {
-                    EntityService.get().listAndCancelUncommittedStamps(
-                        stampNids.stream().sorted().mapToInt(value -> (int) value).toArray()
-                    );
+                    EntityService.get().listAndCancelUncommittedStamps(nidSets.stampNids.toArray());
                 });
-                LOG.info("UUID loading task completed");
+                LOG.info("Nid set loading task completed");
             }).get();
-            LOG.info("UUID loading task .get() returned successfully");
+            LOG.info("Nid set loading task .get() returned successfully");
         } catch (Exception e) {
-            LOG.error("Failed to complete UUID loading task", e);
+            LOG.error("Failed to complete nid set loading task", e);
             throw e;
         }
 
@@ -202,6 +262,14 @@ private SpinedArrayProvider() throws IOException, ExecutionException, Interrupte
         }
 
         // Index recreation is now handled by SearchProvider in INDEXING phase
+        int checkpointIntervalSeconds = ServiceProperties.get(ServiceKeys.CHECKPOINT_INTERVAL_SECONDS, 300);
+        if (this.writeAheadLog != null && checkpointIntervalSeconds > 0) {
+            this.checkpointFuture = TinkExecutor.scheduled().scheduleWithFixedDelay(this::checkpoint,
+                    checkpointIntervalSeconds, checkpointIntervalSeconds, TimeUnit.SECONDS);
+        } else {
+            this.checkpointFuture = null;
+        }
+
         stopwatch.stop();
         LOG.info("Opened SpinedArrayProvider in: " + stopwatch.durationString());
         lifecycle.set(Lifecycle.RUNNING);
@@ -210,12 +278,7 @@ private SpinedArrayProvider() throws IOException, ExecutionException, Interrupte
 
     @Override
     public boolean hasUuid(UUID uuid) {
-        try {
-            this.uuidsLoadedLatch.await();
-        } catch (InterruptedException e) {
-            throw new RuntimeException(e);
-        }
-        return uuidToNidMap.containsKey(uuid);
+        return uuidNidIndex.contains(uuid);
     }
 
 
@@ -232,19 +295,24 @@ public void close() {
             LOG.info("Closing SpinedArrayProvider");
             try {
                 this.changeSetWriterServices.forEach(ChangeSetWriterService::shutdown);
+                if (this.checkpointFuture != null) {
+                    this.checkpointFuture.cancel(false);
+                }
                 save();
 
                 // Check for uncommitted stamps using EntityProvider while EntityService is still available
                 // This must happen before data provider shutdown since EntityProvider needs access to entities
                 try {
-                    EntityService.get().listAndCancelUncommittedStamps(
-                        stampNids.stream().sorted().mapToInt(value -> (int) value).toArray()
-                    );
+                    EntityService.get().listAndCancelUncommittedStamps(nidSets.stampNids.toArray());
                 } catch (java.util.NoSuchElementException e) {
                     LOG.warn("EntityService not available during shutdown, skipping uncommitted stamp check");
                 }
 
                 entityToBytesMap.close();
+                uuidNidIndex.close();
+                if (this.writeAheadLog != null) {
+                    this.writeAheadLog.close();
+                }
             } catch (Exception e) {
                 LOG.error("Error closing SpinedArrayProvider", e);
             } finally {
@@ -257,14 +325,45 @@ public void close() {
         }
     }
 
-    public void save() {
+    /**
+     * Scheduled save. Skipped during a bulk ingest, since the citation and pattern membership indexes are not
+     * current until the ingest ends, which saves.
+     */
+    private void checkpoint() {
+        if (this.bulkIngestNids != null) {
+            LOG.info("Bulk ingest in progress, deferring checkpoint");
+            return;
+        }
+        save();
+    }
+
+    /**
+     * Writes the changed spines and sets. With the write ahead log enabled, this is a checkpoint: changes made
+     * while saving are logged to a new segment, and the segments before it are deleted once the save completes.
+     * If any write fails, the segments are kept, so the changes are replayed when the provider is next opened.
+     */
+    public synchronized void save() {
         Stopwatch stopwatch = new Stopwatch();
         LOG.info("Saving SpinedArrayProvider");
         try {
+            long checkpointSegment = this.writeAheadLog != null ? this.writeAheadLog.startCheckpoint() : 0;
             Files.writeString(this.nextNidKeyFile.toPath(), Integer.toString(nextNid.get()));
             nidToPatternNidMap.write(this.nidToPatternNidMapDirectory);
             this.entityToBytesMap.write();
             this.nidToCitingComponentsNidMap.write();
+            this.uuidNidIndex.save();
+            if (this.citationsIncomplete) {
+                // The nid sets were marked changed when the citations were found incomplete, so they are rebuilt
+                // on the next open, along with the citations.
+                LOG.warn("Citations and pattern membership are incomplete, not marking the nid sets consistent");
+            } else {
+                this.nidSets.save();
+                Files.deleteIfExists(this.citationsIncompleteFile.toPath());
+            }
+            if (this.writeAheadLog != null) {
+                this.writeAheadLog.checkpointed(checkpointSegment);
+            }
+            LOG.info("Entity spines {}", this.entityToBytesMap.residencyStats());
         } catch (Exception e) {
             LOG.error("Error saving SpinedArrayProvider", e);
         } finally {
@@ -275,37 +374,56 @@ public void save() {
 
     @Override
     public int nidForUuids(UUID... uuids) {
-        try {
-            this.uuidsLoadedLatch.await();
-            if (uuids.length == 1) {
-                return uuidToNidMap.computeIfAbsent(uuids[0], uuidKey -> newNid());
-            }
+        if (uuids.length == 1) {
+            return uuidNidIndex.getIfAbsentPut(uuids[0], this::newNid);
+        }
 
-            OptionalInt optionalNid = optionalNid(uuids);
+        OptionalInt optionalNid = optionalNid(uuids);
 
-            int nid = optionalNid.isPresent() ? optionalNid.getAsInt(): Integer.MAX_VALUE;
+        int nid = optionalNid.isPresent() ? optionalNid.getAsInt(): Integer.MAX_VALUE;
 
-            for (UUID uuid : uuids) {
-                if (nid == Integer.MAX_VALUE) {
-                    nid = uuidToNidMap.computeIfAbsent(uuids[0], uuidKey -> newNid());
-                } else {
-                    uuidToNidMap.put(uuid, nid);
-                }
+        for (UUID uuid : uuids) {
+            if (nid == Integer.MAX_VALUE) {
+                nid = uuidNidIndex.getIfAbsentPut(uuids[0], this::newNid);
+            } else {
+                uuidNidIndex.put(uuid, nid);
             }
-            if (nid == Integer.MIN_VALUE) {
-                throw new IllegalStateException("nid cannot be Integer.MIN_VALUE");
+        }
+        if (nid == Integer.MIN_VALUE) {
+            throw new IllegalStateException("nid cannot be Integer.MIN_VALUE");
+        }
+        return nid;
+    }
+
+    /**
+     * Looks up the batch in the UUID index, then adds the UUIDs not found with nids from a single block reserved
+     * for the batch, rather than an atomic increment for each UUID. Nids of the block left unused, because another
+     * thread added the same UUID first, are never assigned.
+     */
+    @Override
+    public void nidsForUuids(long[] msbLsbPairs, int[] outNids) {
+        int count = msbLsbPairs.length / 2;
+        if (outNids.length < count) {
+            throw new IllegalArgumentException("outNids length " + outNids.length + " is less than UUID count " + count);
+        }
+        int notFound = uuidNidIndex.getAll(msbLsbPairs, outNids);
+        if (notFound == 0) {
+            return;
+        }
+        int[] nextInBlock = {nextNid.getAndAdd(notFound)};
+        for (int i = 0; i < count; i++) {
+            if (outNids[i] == UuidNidIndex.NOT_FOUND) {
+                outNids[i] = uuidNidIndex.getIfAbsentPut(msbLsbPairs[2 * i], msbLsbPairs[2 * i + 1],
+                        () -> nextInBlock[0]++);
             }
-            return nid;
-        } catch (InterruptedException e) {
-            LOG.error(e.getLocalizedMessage(), e);
-            throw new RuntimeException(e);
         }
     }
 
     private OptionalInt optionalNid(UUID... uuids) {
         for (UUID uuid : uuids) {
-            if (uuidToNidMap.containsKey(uuid)) {
-                return OptionalInt.of(uuidToNidMap.get(uuid));
+            int nid = uuidNidIndex.get(uuid);
+            if (nid != UuidNidIndex.NOT_FOUND) {
+                return OptionalInt.of(nid);
             }
         }
         return OptionalInt.empty();
@@ -318,41 +436,30 @@ public int newNid() {
 
     @Override
     public int nidForUuids(ImmutableList<UUID> uuidList) {
-        try {
-            this.uuidsLoadedLatch.await();
-            if (uuidList.size() == 1) {
-                return uuidToNidMap.computeIfAbsent(uuidList.get(0), uuidKey -> newNid());
-            }
+        if (uuidList.size() == 1) {
+            return uuidNidIndex.getIfAbsentPut(uuidList.get(0), this::newNid);
+        }
 
-            OptionalInt optionalNid = optionalNid(uuidList.toArray(new UUID[uuidList.size()]));
+        OptionalInt optionalNid = optionalNid(uuidList.toArray(new UUID[uuidList.size()]));
 
-            int nid = optionalNid.isPresent() ? optionalNid.getAsInt(): Integer.MAX_VALUE;
+        int nid = optionalNid.isPresent() ? optionalNid.getAsInt(): Integer.MAX_VALUE;
 
-            for (UUID uuid : uuidList) {
-                if (nid == Integer.MAX_VALUE) {
-                    nid = uuidToNidMap.computeIfAbsent(uuid, uuidKey -> newNid());
-                } else {
-                    uuidToNidMap.put(uuid, nid);
-                }
-            }
-            if (nid == Integer.MIN_VALUE) {
-                throw new IllegalStateException("nid cannot be Integer.MIN_VALUE");
+        for (UUID uuid : uuidList) {
+            if (nid == Integer.MAX_VALUE) {
+                nid = uuidNidIndex.getIfAbsentPut(uuid, this::newNid);
+            } else {
+                uuidNidIndex.put(uuid, nid);
             }
-            return nid;
-        } catch (InterruptedException e) {
-            LOG.error(e.getLocalizedMessage(), e);
-            throw new RuntimeException(e);
         }
+        if (nid == Integer.MIN_VALUE) {
+            throw new IllegalStateException("nid cannot be Integer.MIN_VALUE");
+        }
+        return nid;
     }
 
     @Override
     public boolean hasPublicId(PublicId publicId) {
-        try {
-            this.uuidsLoadedLatch.await();
-        } catch (InterruptedException e) {
-            throw new RuntimeException(e);
-        }
-        return publicId.asUuidList().stream().anyMatch(uuidToNidMap::containsKey);
+        return publicId.asUuidList().stream().anyMatch(uuidNidIndex::contains);
     }
 
     @Override
@@ -393,31 +500,40 @@ public byte[] getBytes(int nid) {
         return this.entityToBytesMap.get(nid);
     }
 
+    @Override
+    public byte[][] getBytes(int[] nids) {
+        byte[][] bytes = new byte[nids.length][];
+        this.entityToBytesMap.getAll(nids, (entityBytes, position) -> bytes[position] = entityBytes);
+        return bytes;
+    }
+
+    @Override
+    public StampTable stampTable() {
+        return this.nidSets.stampTable;
+    }
+
     @Override
     public byte[] merge(int nid, int patternNid, int referencedComponentNid, byte[] value, Object sourceObject, DataActivity activity) {
         if (nid == Integer.MIN_VALUE) {
             LOG.error("NID should not be Integer.MIN_VALUE");
             throw new IllegalStateException("NID should not be Integer.MIN_VALUE");
         }
-        if (!this.entityToBytesMap.containsKey(nid)) {
-            this.nidToPatternNidMap.put(nid, patternNid);
-            if (patternNid != Integer.MAX_VALUE) {
-                long citationLong = IntsInLong.ints2Long(nid, patternNid);
-                this.nidToCitingComponentsNidMap.accumulateAndGet(referencedComponentNid, new long[]{citationLong},
-                        PrimitiveDataService::mergeCitations);
-                addToPatternElementSet(patternNid, nid);
-            }
-            if (sourceObject instanceof ConceptEntity concept) {
-                this.conceptNids.add(concept.nid());
-            } else if (sourceObject instanceof SemanticEntity semanticEntity) {
-                this.semanticNids.add(semanticEntity.nid());
-            } else if (sourceObject instanceof PatternEntity patternEntity) {
-                this.patternNids.add(patternEntity.nid());
-            } else if (sourceObject instanceof StampEntity stampEntity) {
-                this.stampNids.add(stampEntity.nid());
+        ConcurrentNidSet bulkNids = this.bulkIngestNids;
+        if (bulkNids != null) {
+            byte[] mergedBytes = applyMerge(nid, patternNid, referencedComponentNid, value, PrimitiveDataService::merge, false);
+            bulkNids.add(nid);
+            this.writeSequence.increment();
+            this.changeSetWriterServices.forEach(writerService -> writerService.writeToChangeSet((Entity) sourceObject, activity));
+            return mergedBytes;
+        }
+        byte[] mergedBytes = applyMerge(nid, patternNid, referencedComponentNid, value, PrimitiveDataService::merge, true);
+        if (this.writeAheadLog != null) {
+            long sequence = this.writeAheadLog.append(WriteAheadLog.MERGE, nid, patternNid, referencedComponentNid, value);
+            if (sourceObject instanceof StampEntity) {
+                // Stamps are written when a transaction commits, and make the versions before them durable.
+                this.writeAheadLog.sync(sequence);
             }
         }
-        byte[] mergedBytes = this.entityToBytesMap.accumulateAndGet(nid, value, PrimitiveDataService::merge);
         this.writeSequence.increment();
         this.changeSetWriterServices.forEach(writerService -> writerService.writeToChangeSet((Entity) sourceObject, activity));
 
@@ -432,6 +548,137 @@ public byte[] merge(int nid, int patternNid, int referencedComponentNid, byte[]
         return mergedBytes;
     }
 
+    /**
+     * @param indexCitations false to leave the citation and pattern membership of a new semantic to
+     *                       {@link #endBulkIngest()}
+     */
+    private byte[] applyMerge(int nid, int patternNid, int referencedComponentNid, byte[] value,
+                              BinaryOperator<byte[]> bytesMerger, boolean indexCitations) {
+        if (!this.entityToBytesMap.containsKey(nid)) {
+            this.nidSets.beforeChange();
+            this.nidToPatternNidMap.put(nid, patternNid);
+            if (patternNid != Integer.MAX_VALUE && indexCitations) {
+                long citationLong = IntsInLong.ints2Long(patternNid, nid);
+                this.nidToCitingComponentsNidMap.add(referencedComponentNid, citationLong);
+                addToPatternElementSet(patternNid, nid);
+            }
+            switch (FieldDataType.fromToken(value[9])) {
+                case CONCEPT_CHRONOLOGY -> this.nidSets.conceptNids.add(nid);
+                case SEMANTIC_CHRONOLOGY -> this.nidSets.semanticNids.add(nid);
+                case PATTERN_CHRONOLOGY -> this.nidSets.patternNids.add(nid);
+                case STAMP -> this.nidSets.stampNids.add(nid);
+                default -> {
+                }
+            }
+        }
+        byte[] mergedBytes = this.entityToBytesMap.accumulateAndGet(nid, value, bytesMerger);
+        if (mergedBytes[9] == FieldDataType.STAMP.token) {
+            this.nidSets.beforeChange();
+            EntityBytesView.of(mergedBytes).putLastStampVersion(this.nidSets.stampTable);
+        }
+        return mergedBytes;
+    }
+
+    /**
+     * Begins a bulk ingest, in which merges store the merged bytes and type of new entities, and are neither
+     * logged, indexed for citations and pattern membership, nor indexed for search until {@link #endBulkIngest()}.
+     * Scheduled checkpoints are deferred until the ingest ends.
+     */
+    @Override
+    public void beginBulkIngest() {
+        LOG.info("Beginning bulk ingest");
+        this.bulkIngestNids = new ConcurrentNidSet();
+    }
+
+    /**
+     * Adds the citations, pattern membership and search documents of the semantics merged during the bulk ingest
+     * in one parallel pass over their spines, then saves. Called after the merges of the ingest have completed.
+     * <p>
+     * If the pass fails, the merged entities are still saved, but the nid sets are not marked consistent, and the
+     * citations are marked incomplete, so the next open rebuilds them from the entities. The failure is then
+     * thrown to the caller.
+     */
+    @Override
+    public void endBulkIngest() {
+        ConcurrentNidSet bulkNids = this.bulkIngestNids;
+        if (bulkNids == null) {
+            return;
+        }
+        Stopwatch stopwatch = new Stopwatch();
+        SearchService bulkSearchService = null;
+        try {
+            bulkSearchService = getSearchService();
+        } catch (Exception e) {
+            LOG.debug("SearchService not available for indexing", e);
+        }
+        final SearchService indexer = bulkSearchService;
+        LongAdder semanticCount = new LongAdder();
+        // The pass runs on pool threads, which do not report failures to this thread.
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        this.nidSets.beforeChange();
+        try {
+            this.entityToBytesMap.forEachParallel(IntLists.immutable.of(bulkNids.toArray()), (bytes, nid) -> {
+                try {
+                    if (bytes != null && bytes[9] == FieldDataType.SEMANTIC_CHRONOLOGY.token) {
+                        EntityBytesView view = EntityBytesView.of(bytes);
+                        int patternNid = view.patternNid();
+                        this.nidToCitingComponentsNidMap.add(view.referencedComponentNid(), IntsInLong.ints2Long(patternNid, nid));
+                        addToPatternElementSet(patternNid, nid);
+                        if (indexer != null) {
+                            indexer.index(view.entity());
+                        }
+                        semanticCount.increment();
+                    }
+                } catch (Throwable t) {
+                    failure.compareAndSet(null, t);
+                }
+            });
+            if (failure.get() == null && indexer != null) {
+                indexer.commit();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            failure.compareAndSet(null, e);
+        } catch (ExecutionException | IOException | RuntimeException e) {
+            failure.compareAndSet(null, e);
+        } finally {
+            this.bulkIngestNids = null;
+        }
+        stopwatch.stop();
+        if (failure.get() != null) {
+            LOG.error("Indexing {} bulk ingested entities failed after {}. Citations and pattern membership will be " +
+                    "rebuilt on the next open", bulkNids.size(), stopwatch.durationString(), failure.get());
+            this.citationsIncomplete = true;
+            try {
+                this.citationsIncompleteFile.createNewFile();
+            } catch (IOException e) {
+                failure.get().addSuppressed(e);
+            }
+            save();
+            throw new IllegalStateException("Indexing of bulk ingested entities failed", failure.get());
+        }
+        LOG.info("Indexed {} semantics of {} bulk ingested entities in {}", semanticCount.sum(), bulkNids.size(),
+                stopwatch.durationString());
+        save();
+    }
+
+    /**
+     * Applies a record of the write ahead log. Canceled versions are retained, since the stamps may not be
+     * readable until the replay completes.
+     */
+    private void replay(byte type, int nid, int patternNid, int referencedComponentNid, byte[] bytes) {
+        switch (type) {
+            case WriteAheadLog.MERGE -> applyMerge(nid, patternNid, referencedComponentNid, bytes,
+                    PrimitiveDataService::mergeRetainingCanceled, true);
+            case WriteAheadLog.PUT -> this.entityToBytesMap.put(nid, bytes);
+            case WriteAheadLog.ERASE -> eraseNids(IntLists.immutable.of(nid));
+            default -> throw new IllegalStateException("Unknown write ahead log record type: " + type);
+        }
+        if (nid >= nextNid.get()) {
+            nextNid.set(nid + 1);
+        }
+    }
+
     private SearchService getSearchService() {
         return searchService.orElseSet(() ->
             ServiceLifecycleManager.get()
@@ -441,9 +688,7 @@ private SearchService getSearchService() {
     }
 
     public boolean addToPatternElementSet(int patternNid, int elementNid) {
-
-        return patternElementNidsMap.getIfAbsentPut(patternNid, integer -> new ConcurrentHashSet())
-                .add(elementNid);
+        return nidSets.addToPatternElementSet(patternNid, elementNid);
     }
 
     @Override
@@ -458,36 +703,23 @@ public CompletableFuture<Void> recreateLuceneIndex() {
 
     @Override
     public int[] semanticNidsOfPattern(int patternNid) {
-        IntSet elementNids = getElementNidsForPatternNid(patternNid);
-        if (elementNids.notEmpty()) {
-            MutableIntList elementNidList = IntLists.mutable.withInitialCapacity(elementNids.size());
-            elementNids.forEach(integer -> elementNidList.add(integer));
-            return elementNidList.toArray();
+        ConcurrentNidSet elementNids = nidSets.patternElementNidsMap.get(patternNid);
+        if (elementNids != null) {
+            return elementNids.toArray();
         }
         return new int[0];
     }
 
     public IntSet getElementNidsForPatternNid(int patternNid) {
-        if (patternElementNidsMap.containsKey(patternNid)) {
-            return IntSets.immutable.ofAll(patternElementNidsMap.get(patternNid).stream().mapToInt(value -> (int) value));
-        }
-        return IntSets.immutable.empty();
+        return IntSets.immutable.of(semanticNidsOfPattern(patternNid));
     }
 
     @Override
     public void forEachSemanticNidOfPattern(int patternNid, IntProcedure procedure) {
         EntityHandle.get(patternNid).expectPattern("Trying to iterate elements for entity that is not a pattern: ");
 
-        IntSet elementNids;
-        if (LOG.isTraceEnabled()) {
-            Stopwatch sw = new Stopwatch();
-            elementNids = getElementNidsForPatternNid(patternNid);
-            LOG.atTrace().log("getElementNidsForPatternNid " + PrimitiveData.text(patternNid) +
-                    " time: " + sw.durationString());
-        } else {
-            elementNids = getElementNidsForPatternNid(patternNid);
-        }
-        if (elementNids.notEmpty()) {
+        ConcurrentNidSet elementNids = nidSets.patternElementNidsMap.get(patternNid);
+        if (elementNids != null) {
             elementNids.forEach(procedure);
         }
     }
@@ -495,8 +727,8 @@ public void forEachSemanticNidOfPattern(int patternNid, IntProcedure procedure)
     @Override
     public void forEachPatternNid(IntProcedure procedure) {
         try {
-            this.uuidsLoadedLatch.await();
-            this.patternNids.forEach(patternNid -> procedure.accept(patternNid));
+            this.nidSetsLoadedLatch.await();
+            this.nidSets.patternNids.forEach(procedure);
         } catch (InterruptedException e) {
             LOG.error(e.getLocalizedMessage(), e);
             throw new RuntimeException(e);
@@ -506,8 +738,8 @@ public void forEachPatternNid(IntProcedure procedure) {
     @Override
     public void forEachConceptNid(IntProcedure procedure) {
         try {
-            this.uuidsLoadedLatch.await();
-            this.conceptNids.forEach(conceptNid -> procedure.accept(conceptNid));
+            this.nidSetsLoadedLatch.await();
+            this.nidSets.conceptNids.forEach(procedure);
         } catch (InterruptedException e) {
             LOG.error(e.getLocalizedMessage(), e);
             throw new RuntimeException(e);
@@ -517,8 +749,8 @@ public void forEachConceptNid(IntProcedure procedure) {
     @Override
     public void forEachStampNid(IntProcedure procedure) {
         try {
-            this.uuidsLoadedLatch.await();
-            this.stampNids.forEach(stampNid -> procedure.accept(stampNid));
+            this.nidSetsLoadedLatch.await();
+            this.nidSets.stampNids.forEach(procedure);
         } catch (InterruptedException e) {
             LOG.error(e.getLocalizedMessage(), e);
             throw new RuntimeException(e);
@@ -528,8 +760,8 @@ public void forEachStampNid(IntProcedure procedure) {
     @Override
     public void forEachSemanticNid(IntProcedure procedure) {
         try {
-            this.uuidsLoadedLatch.await();
-            this.semanticNids.forEach(semanticNid -> procedure.accept(semanticNid));
+            this.nidSetsLoadedLatch.await();
+            this.nidSets.semanticNids.forEach(procedure);
         } catch (InterruptedException e) {
             LOG.error(e.getLocalizedMessage(), e);
             throw new RuntimeException(e);
@@ -538,26 +770,18 @@ public void forEachSemanticNid(IntProcedure procedure) {
 
     @Override
     public void forEachSemanticNidForComponent(int componentNid, IntProcedure procedure) {
-        long[] citationLongs = this.nidToCitingComponentsNidMap.get(componentNid);
+        LongRunSet citationLongs = this.nidToCitingComponentsNidMap.get(componentNid);
         if (citationLongs != null) {
-            for (long citationLong : citationLongs) {
-                int citingComponentNid = (int) (citationLong >> 32);
-                procedure.accept(citingComponentNid);
-            }
+            citationLongs.forEach(citationLong -> procedure.accept(IntsInLong.int2FromLong(citationLong)));
         }
     }
 
     @Override
     public void forEachSemanticNidForComponentOfPattern(int componentNid, int patternNid, IntProcedure procedure) {
-        long[] citationLongs = this.nidToCitingComponentsNidMap.get(componentNid);
+        LongRunSet citationLongs = this.nidToCitingComponentsNidMap.get(componentNid);
         if (citationLongs != null) {
-            for (long citationLong : citationLongs) {
-                int citingComponentNid = (int) (citationLong >> 32);
-                int citingComponentPatternNid = (int) citationLong;
-                if (patternNid == citingComponentPatternNid) {
-                    procedure.accept(citingComponentNid);
-                }
-            }
+            citationLongs.forEachInRange(IntsInLong.ints2Long(patternNid, 0), IntsInLong.ints2Long(patternNid, -1),
+                    citationLong -> procedure.accept(IntsInLong.int2FromLong(citationLong)));
         }
     }
 
@@ -566,31 +790,118 @@ public String name() {
         return name;
     }
 
+    /**
+     * Rewrites citation longs stored as (citing nid, pattern nid) to (pattern nid, citing nid), and re-sorts them.
+     * Progress is recorded after each spine, so an interrupted migration resumes without swapping a spine twice.
+     */
+    private static void migrateToPatternFirstCitations(File citationDirectory) throws IOException {
+        File marker = new File(citationDirectory, PATTERN_FIRST_CITATIONS_MARKER);
+        if (marker.exists()) {
+            return;
+        }
+        Stopwatch stopwatch = new Stopwatch();
+        File progress = new File(citationDirectory, PATTERN_FIRST_CITATIONS_MARKER + "-progress");
+        int firstSpineIndex = progress.exists() ? Integer.parseInt(Files.readString(progress.toPath()).trim()) : 0;
+        IntLongArrayFileStore citationStore = new IntLongArrayFileStore(citationDirectory);
+        int spineCount = citationStore.getSpineCount();
+        for (int spineIndex = firstSpineIndex; spineIndex < spineCount; spineIndex++) {
+            final int spineToMigrate = spineIndex;
+            citationStore.get(spineIndex).ifPresent(spine -> {
+                for (int i = 0; i < spine.length(); i++) {
+                    long[] citations = spine.get(i);
+                    if (citations != null) {
+                        for (int j = 0; j < citations.length; j++) {
+                            citations[j] = IntsInLong.ints2Long(IntsInLong.int2FromLong(citations[j]),
+                                    IntsInLong.int1FromLong(citations[j]));
+                        }
+                        Arrays.sort(citations);
+                    }
+                }
+                citationStore.put(spineToMigrate, spine);
+            });
+            Files.writeString(progress.toPath(), Integer.toString(spineIndex + 1));
+        }
+        marker.createNewFile();
+        Files.deleteIfExists(progress.toPath());
+        stopwatch.stop();
+        if (spineCount > 0) {
+            LOG.info("Migrated " + spineCount + " citation spines to pattern first order in: " + stopwatch.durationString());
+        }
+    }
+
     @Override
     public void erase(int nid) {
-        this.entityToBytesMap.put(nid, null);
-        this.nidToPatternNidMap.put(nid, Integer.MAX_VALUE);
-        this.nidToCitingComponentsNidMap.put(nid, null);
-        this.conceptNids.remove(nid);
-        this.semanticNids.remove(nid);
-        this.patternNids.remove(nid);
-        this.stampNids.remove(nid);
-        this.nidToCitingComponentsNidMap.forEach((nidPatternsCitingComponent, referencedComponentNid) -> {
-            MutableLongList nidPatternInLongToRemove = LongLists.mutable.withInitialCapacity(2);
-            for (long nidPatternInLong : nidPatternsCitingComponent) {
-                // The longs contain int nid, int patternNid in each long
-                int nidCitingComponent = IntsInLong.int1FromLong(nidPatternInLong);
-                if (nidCitingComponent == nid) {
-                    nidPatternInLongToRemove.add(nidPatternInLong);
+        eraseAll(IntLists.immutable.of(nid));
+    }
+
+    /**
+     * Erases each nid, removing its citations from the components the erased semantics reference. The referenced
+     * component of a semantic is read from its bytes, so only the affected citation sets are changed. A full scan
+     * of the citations is made, once for the whole batch, only for semantics whose bytes are no longer present.
+     */
+    @Override
+    public void eraseAll(IntIterable nidsToErase) {
+        if (this.writeAheadLog != null) {
+            long[] sequence = {0};
+            nidsToErase.forEach(nid -> sequence[0] = this.writeAheadLog.append(WriteAheadLog.ERASE, nid,
+                    Integer.MAX_VALUE, Integer.MAX_VALUE, null));
+            this.writeAheadLog.sync(sequence[0]);
+        }
+        eraseNids(nidsToErase);
+    }
+
+    private void eraseNids(IntIterable nidsToErase) {
+        MutableIntObjectMap<MutableLongSet> citationsToRemove = IntObjectMaps.mutable.empty();
+        MutableIntSet nidsToScanFor = IntSets.mutable.empty();
+        nidsToErase.forEach(nid -> {
+            int patternNid = this.nidToPatternNidMap.get(nid);
+            if (patternNid != Integer.MAX_VALUE) {
+                int referencedComponentNid = referencedComponentNid(this.entityToBytesMap.get(nid));
+                if (referencedComponentNid == Integer.MAX_VALUE) {
+                    nidsToScanFor.add(nid);
+                } else {
+                    citationsToRemove.getIfAbsentPut(referencedComponentNid, LongSets.mutable::empty)
+                            .add(IntsInLong.ints2Long(patternNid, nid));
                 }
             }
-            if (nidPatternInLongToRemove.notEmpty()) {
-                MutableLongSet longSet = LongSets.mutable.of(nidPatternsCitingComponent);
-                longSet.removeAll(nidPatternInLongToRemove);
-                this.nidToCitingComponentsNidMap.put(referencedComponentNid, longSet.toArray());
+            this.entityToBytesMap.put(nid, null);
+            this.nidToPatternNidMap.put(nid, Integer.MAX_VALUE);
+            this.nidToCitingComponentsNidMap.put(nid, null);
+            this.nidSets.remove(nid, patternNid);
+        });
+        citationsToRemove.forEachKeyValue((referencedComponentNid, citationLongs) -> {
+            LongRunSet citingComponents = this.nidToCitingComponentsNidMap.get(referencedComponentNid);
+            if (citingComponents != null && citingComponents.removeIf(citationLongs::contains)) {
+                // put marks the spine as changed.
+                this.nidToCitingComponentsNidMap.put(referencedComponentNid, citingComponents);
             }
         });
+        if (nidsToScanFor.notEmpty()) {
+            this.nidToCitingComponentsNidMap.forEach((nidPatternsCitingComponent, referencedComponentNid) -> {
+                // The longs contain int patternNid, int nid in each long
+                if (nidPatternsCitingComponent.removeIf(patternNidInLong -> nidsToScanFor.contains(IntsInLong.int2FromLong(patternNidInLong)))) {
+                    // put marks the spine as changed.
+                    this.nidToCitingComponentsNidMap.put(referencedComponentNid, nidPatternsCitingComponent);
+                }
+            });
+        }
+    }
 
+    /**
+     * @return the referenced component nid of semantic chronology bytes, or Integer.MAX_VALUE if the bytes are
+     * absent or not a semantic.
+     */
+    private static int referencedComponentNid(byte[] bytes) {
+        if (bytes == null || FieldDataType.fromToken(bytes[9]) != FieldDataType.SEMANTIC_CHRONOLOGY) {
+            return Integer.MAX_VALUE;
+        }
+        // Skip number of arrays, size of first array, entity format version, type token, nid, and first UUID,
+        // then the additional UUID longs.
+        ByteBuf buf = ByteBuf.wrapForReading(bytes);
+        buf.moveHead(30);
+        int additionalUuidLongCount = buf.readByte();
+        buf.moveHead(additionalUuidLongCount * 8);
+        return buf.readInt();
     }
 
     @Override
@@ -702,6 +1013,10 @@ ImmutableList<UUID> getUuidsFromBytes(ByteBuf readBuf) {
     @Override
     public void put(int nid, byte[] bytesToOverwrite) {
         this.entityToBytesMap.put(nid, bytesToOverwrite);
+        if (this.writeAheadLog != null) {
+            this.writeAheadLog.sync(this.writeAheadLog.append(WriteAheadLog.PUT, nid,
+                    Integer.MAX_VALUE, Integer.MAX_VALUE, bytesToOverwrite));
+        }
     }
 
 
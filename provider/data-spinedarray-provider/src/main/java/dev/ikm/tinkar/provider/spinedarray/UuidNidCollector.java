@@ -15,27 +15,32 @@
  */
 package dev.ikm.tinkar.provider.spinedarray;
 
-import dev.ikm.tinkar.common.sets.ConcurrentHashSet;
+import dev.ikm.tinkar.collection.SpinedIntLongSetMap;
+import dev.ikm.tinkar.common.util.ints2long.IntsInLong;
 import dev.ikm.tinkar.common.util.time.Stopwatch;
 import dev.ikm.tinkar.component.FieldDataType;
-import dev.ikm.tinkar.entity.EntityRecordFactory;
-import org.eclipse.collections.impl.map.mutable.ConcurrentHashMap;
+import dev.ikm.tinkar.entity.EntityBytesView;
+import io.activej.bytebuf.ByteBuf;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.util.UUID;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.ObjIntConsumer;
 
 public class UuidNidCollector implements ObjIntConsumer<byte[]> {
     private static final Logger LOG = LoggerFactory.getLogger(UuidNidCollector.class);
-    final ConcurrentHashMap<UUID, Integer> uuidToNidMap;
-    final ConcurrentHashSet<Integer> patternNids;
-    final ConcurrentHashSet<Integer> conceptNids;
-    final ConcurrentHashSet<Integer> semanticNids;
-    final ConcurrentHashSet<Integer> stampNids;
-    final ConcurrentHashMap<Integer, ConcurrentHashSet<Integer>> patternElementNidsMap;
-
+    /**
+     * Null if the persisted index was loaded in a consistent state, and UUIDs do not need to be collected.
+     */
+    final UuidNidIndex uuidNidIndex;
+    /**
+     * Null if the persisted nid sets were loaded in a consistent state, and nids do not need to be collected.
+     */
+    final NidSets nidSets;
+    /**
+     * Null unless the citations of semantics are incomplete, and must be added.
+     */
+    final SpinedIntLongSetMap nidToCitingComponentsNidMap;
 
     AtomicInteger totalCount = new AtomicInteger();
     AtomicInteger conceptCount = new AtomicInteger();
@@ -45,18 +50,10 @@ public class UuidNidCollector implements ObjIntConsumer<byte[]> {
     AtomicInteger other = new AtomicInteger();
     Stopwatch stopwatch = new Stopwatch();
 
-    public UuidNidCollector(ConcurrentHashMap<UUID, Integer> uuidToNidMap,
-                            ConcurrentHashSet<Integer> patternNids,
-                            ConcurrentHashSet<Integer> conceptNids,
-                            ConcurrentHashSet<Integer> semanticNids,
-                            ConcurrentHashSet<Integer> stampNids,
-                            ConcurrentHashMap<Integer, ConcurrentHashSet<Integer>> patternElementNidsMap) {
-        this.uuidToNidMap = uuidToNidMap;
-        this.patternNids = patternNids;
-        this.conceptNids = conceptNids;
-        this.semanticNids = semanticNids;
-        this.stampNids = stampNids;
-        this.patternElementNidsMap = patternElementNidsMap;
+    public UuidNidCollector(UuidNidIndex uuidNidIndex, NidSets nidSets, SpinedIntLongSetMap nidToCitingComponentsNidMap) {
+        this.uuidNidIndex = uuidNidIndex;
+        this.nidSets = nidSets;
+        this.nidToCitingComponentsNidMap = nidToCitingComponentsNidMap;
     }
 
     @Override
@@ -72,43 +69,69 @@ public void accept(byte[] bytes, int nid) {
                 patternCount.incrementAndGet();
                 totalCount.incrementAndGet();
                 typeToProcess = true;
-                this.patternNids.add(nid);
+                if (nidSets != null) {
+                    nidSets.patternNids.add(nid);
+                }
                 break;
             case CONCEPT_CHRONOLOGY:
                 conceptCount.incrementAndGet();
                 totalCount.incrementAndGet();
-                this.conceptNids.add(nid);
+                if (nidSets != null) {
+                    nidSets.conceptNids.add(nid);
+                }
                 typeToProcess = true;
                 break;
             case SEMANTIC_CHRONOLOGY:
                 semanticCount.incrementAndGet();
                 totalCount.incrementAndGet();
                 typeToProcess = true;
-                semanticNids.add(nid);
+                if (nidSets != null) {
+                    nidSets.semanticNids.add(nid);
+                }
                 break;
             case STAMP:
                 stampCount.incrementAndGet();
                 totalCount.incrementAndGet();
                 typeToProcess = true;
-                stampNids.add(nid);
+                if (nidSets != null) {
+                    nidSets.stampNids.add(nid);
+                    EntityBytesView.of(bytes).putLastStampVersion(nidSets.stampTable);
+                }
                 break;
             default:
                 other.incrementAndGet();
                 totalCount.incrementAndGet();
         }
         if (typeToProcess == true) {
-            EntityRecordFactory.collectUuids(bytes, patternElementNidsMap, uuidToNidMap);
-            /*
-            Entity<?> entity = EntityRecordFactory.make(bytes);
-            if (entity instanceof SemanticEntity semanticEntity) {
-                patternElementNidsMap.getIfAbsentPut(semanticEntity.patternNid(), integer -> new ConcurrentHashSet())
-                        .add(semanticEntity.nid());
+            collectUuidsAndPatternElements(bytes, componentType);
+        }
+    }
+
+    private void collectUuidsAndPatternElements(byte[] bytes, FieldDataType componentType) {
+        // Skip number of arrays, size of first array, entity format version, and type token
+        ByteBuf buf = ByteBuf.wrapForReading(bytes);
+        buf.moveHead(10);
+        int nid = buf.readInt();
+        long mostSignificantBits = buf.readLong();
+        long leastSignificantBits = buf.readLong();
+        int additionalUuidLongCount = buf.readByte();
+        if (uuidNidIndex != null) {
+            uuidNidIndex.put(mostSignificantBits, leastSignificantBits, nid);
+            for (int i = 0; i < additionalUuidLongCount; i += 2) {
+                uuidNidIndex.put(buf.readLong(), buf.readLong(), nid);
             }
-            for (UUID uuid : entity.asUuidArray()) {
-                uuidToNidMap.put(uuid, entity.nid());
+        } else {
+            buf.moveHead(additionalUuidLongCount * 8);
+        }
+        if (componentType == FieldDataType.SEMANTIC_CHRONOLOGY) {
+            int referencedComponentNid = buf.readInt();
+            int patternNid = buf.readInt();
+            if (nidSets != null) {
+                nidSets.addToPatternElementSet(patternNid, nid);
+            }
+            if (nidToCitingComponentsNidMap != null) {
+                nidToCitingComponentsNidMap.add(referencedComponentNid, IntsInLong.ints2Long(patternNid, nid));
             }
-
-             */
         }
     }
 
@@ -122,7 +145,9 @@ public String report() {
         sb.append("Finished: ").append(this.getClass().getSimpleName());
         sb.append("\nDuration: ").append(stopwatch.durationString());
         sb.append("\nAverage realization time: ").append(stopwatch.averageDurationForElementString(totalCount.get()));
-        sb.append("\nUUIDs: ").append(uuidToNidMap.size());
+        if (uuidNidIndex != null) {
+            sb.append("\nUUIDs: ").append(uuidNidIndex.size());
+        }
         if (conceptCount.get() > 0) {
             sb.append("\nConcepts: ").append(conceptCount);
         }
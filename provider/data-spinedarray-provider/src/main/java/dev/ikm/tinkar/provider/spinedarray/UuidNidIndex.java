@@ -0,0 +1,467 @@
+/*
+ * Copyright © 2015 Integrated Knowledge Management (support@ikm.dev)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dev.ikm.tinkar.provider.spinedarray;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.lang.invoke.VarHandle;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.IntSupplier;
+
+/**
+ * Persistent, memory-mapped, open-addressing map from a UUID (as two longs) to a nid.
+ * <p>
+ * Each slot holds the most and least significant bits of the UUID, and the nid. A slot with a nid of
+ * {@link #EMPTY_SLOT} is free. Writers claim a free slot by compare-and-set of the nid from {@link #EMPTY_SLOT} to
+ * {@link #RESERVED_SLOT}, write the UUID bits, then publish the nid with release semantics. Readers that encounter a
+ * reserved slot spin until the nid is published. Nids are never zero or {@code Integer.MIN_VALUE} since they start
+ * at {@code PrimitiveDataService.FIRST_NID} and are allocated sequentially.
+ * <p>
+ * {@link #get(long, long)} takes no lock: it probes under an optimistic read of the resize lock, and only reads again
+ * under the lock if a resize was concurrent. A resize fills the new mapping before installing it. The replaced
+ * mapping may still be probed by such a reader, so it is only unmapped on close; as capacity doubles, the replaced
+ * mappings together are smaller than the current one.
+ * <p>
+ * The header records if the file was closed in a consistent state. The flag is cleared (and forced to disk)
+ * before the first mutation after a save, so a crash leaves the index marked inconsistent and it will be rebuilt
+ * from the entity spines on the next open.
+ */
+public class UuidNidIndex implements AutoCloseable {
+    private static final Logger LOG = LoggerFactory.getLogger(UuidNidIndex.class);
+
+    public static final String INDEX_FILE_NAME = "uuidNidIndex";
+    public static final int NOT_FOUND = Integer.MIN_VALUE;
+
+    private static final long MAGIC = 0x54494E4B55554944L; // "TINKUUID"
+    private static final int FORMAT_VERSION = 1;
+
+    private static final long MAGIC_OFFSET = 0;
+    private static final long FORMAT_VERSION_OFFSET = 8;
+    private static final long CONSISTENT_OFFSET = 12;
+    private static final long CAPACITY_OFFSET = 16;
+    private static final long SIZE_OFFSET = 24;
+    private static final long HEADER_SIZE = 64;
+
+    private static final long SLOT_SIZE = 24;
+    private static final long MSB_OFFSET_IN_SLOT = 0;
+    private static final long LSB_OFFSET_IN_SLOT = 8;
+    private static final long NID_OFFSET_IN_SLOT = 16;
+
+    private static final int EMPTY_SLOT = 0;
+    private static final int RESERVED_SLOT = Integer.MIN_VALUE;
+
+    private static final long DEFAULT_INITIAL_CAPACITY = 1L << 20;
+    private static final double MAX_LOAD_FACTOR = 0.7;
+
+    private static final VarHandle NID_HANDLE = ValueLayout.JAVA_INT.varHandle();
+
+    private final File indexFile;
+    private final StampedLock resizeLock = new StampedLock();
+    private final AtomicLong size = new AtomicLong();
+    private final AtomicBoolean markedConsistent = new AtomicBoolean(false);
+    private final boolean loadedConsistent;
+    /**
+     * Arenas of mappings replaced by a resize, unmapped on close.
+     */
+    private final List<Arena> replacedArenas = new ArrayList<>();
+
+    private Arena arena;
+    private MemorySegment segment;
+    private long capacity;
+    private long mask;
+    private long resizeThreshold;
+
+    private UuidNidIndex(File indexFile, boolean loadedConsistent) {
+        this.indexFile = indexFile;
+        this.loadedConsistent = loadedConsistent;
+    }
+
+    /**
+     * Opens the index in the provided directory, creating a new empty index if no consistent index exists.
+     * Use {@link #loadedConsistent()} to determine if the index must be rebuilt from entity data.
+     *
+     * @param directory the data store root directory
+     * @return the opened index
+     */
+    public static UuidNidIndex open(File directory) {
+        return open(directory, DEFAULT_INITIAL_CAPACITY);
+    }
+
+    /**
+     * @param initialCapacity the number of slots of a new index, a power of two
+     */
+    static UuidNidIndex open(File directory, long initialCapacity) {
+        File indexFile = new File(directory, INDEX_FILE_NAME);
+        try {
+            if (indexFile.exists() && indexFile.length() >= HEADER_SIZE) {
+                UuidNidIndex existing = new UuidNidIndex(indexFile, true);
+                if (existing.mapExisting()) {
+                    return existing;
+                }
+                LOG.warn("UUID to nid index not consistent. Will rebuild: {}", indexFile.getAbsolutePath());
+            }
+            UuidNidIndex newIndex = new UuidNidIndex(indexFile, false);
+            Arena newArena = Arena.ofShared();
+            newIndex.install(newArena, mapNew(indexFile, initialCapacity, newArena), initialCapacity);
+            return newIndex;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * @return true if the index was read from a file that was saved in a consistent state, false if the
+     * index was newly created and must be populated from the entity data.
+     */
+    public boolean loadedConsistent() {
+        return loadedConsistent;
+    }
+
+    private boolean mapExisting() throws IOException {
+        Arena newArena = Arena.ofShared();
+        MemorySegment newSegment;
+        try (FileChannel channel = FileChannel.open(indexFile.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            newSegment = channel.map(FileChannel.MapMode.READ_WRITE, 0, channel.size(), newArena);
+        }
+        long fileCapacity = newSegment.get(ValueLayout.JAVA_LONG, CAPACITY_OFFSET);
+        if (newSegment.get(ValueLayout.JAVA_LONG, MAGIC_OFFSET) != MAGIC ||
+                newSegment.get(ValueLayout.JAVA_INT, FORMAT_VERSION_OFFSET) != FORMAT_VERSION ||
+                newSegment.get(ValueLayout.JAVA_INT, CONSISTENT_OFFSET) != 1 ||
+                Long.bitCount(fileCapacity) != 1 ||
+                newSegment.byteSize() != HEADER_SIZE + fileCapacity * SLOT_SIZE) {
+            newArena.close();
+            return false;
+        }
+        install(newArena, newSegment, fileCapacity);
+        this.size.set(newSegment.get(ValueLayout.JAVA_LONG, SIZE_OFFSET));
+        this.markedConsistent.set(true);
+        return true;
+    }
+
+    private static MemorySegment mapNew(File file, long newCapacity, Arena newArena) throws IOException {
+        Files.deleteIfExists(file.toPath());
+        MemorySegment newSegment;
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE_NEW,
+                StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            newSegment = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE + newCapacity * SLOT_SIZE, newArena);
+        }
+        writeHeader(newSegment, newCapacity, 0, false);
+        return newSegment;
+    }
+
+    private void install(Arena newArena, MemorySegment newSegment, long newCapacity) {
+        this.arena = newArena;
+        this.segment = newSegment;
+        this.capacity = newCapacity;
+        this.mask = newCapacity - 1;
+        this.resizeThreshold = (long) (newCapacity * MAX_LOAD_FACTOR);
+    }
+
+    private static void writeHeader(MemorySegment segment, long capacity, long size, boolean consistent) {
+        segment.set(ValueLayout.JAVA_LONG, MAGIC_OFFSET, MAGIC);
+        segment.set(ValueLayout.JAVA_INT, FORMAT_VERSION_OFFSET, FORMAT_VERSION);
+        segment.set(ValueLayout.JAVA_INT, CONSISTENT_OFFSET, consistent ? 1 : 0);
+        segment.set(ValueLayout.JAVA_LONG, CAPACITY_OFFSET, capacity);
+        segment.set(ValueLayout.JAVA_LONG, SIZE_OFFSET, size);
+    }
+
+    static long hash(long msb, long lsb) {
+        long h = msb * 0x9E3779B97F4A7C15L ^ lsb;
+        h ^= h >>> 33;
+        h *= 0xFF51AFD7ED558CCDL;
+        h ^= h >>> 33;
+        h *= 0xC4CEB9FE1A85EC53L;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    private static long slotOffset(long slot) {
+        return HEADER_SIZE + slot * SLOT_SIZE;
+    }
+
+    private static int awaitPublishedNid(MemorySegment segment, long slotOffset) {
+        int nid = (int) NID_HANDLE.getAcquire(segment, slotOffset + NID_OFFSET_IN_SLOT);
+        while (nid == RESERVED_SLOT) {
+            Thread.onSpinWait();
+            nid = (int) NID_HANDLE.getAcquire(segment, slotOffset + NID_OFFSET_IN_SLOT);
+        }
+        return nid;
+    }
+
+    private static boolean slotMatches(MemorySegment segment, long slotOffset, long msb, long lsb) {
+        return segment.get(ValueLayout.JAVA_LONG, slotOffset + MSB_OFFSET_IN_SLOT) == msb &&
+                segment.get(ValueLayout.JAVA_LONG, slotOffset + LSB_OFFSET_IN_SLOT) == lsb;
+    }
+
+    public boolean contains(UUID uuid) {
+        return get(uuid) != NOT_FOUND;
+    }
+
+    public int get(UUID uuid) {
+        return get(uuid.getMostSignificantBits(), uuid.getLeastSignificantBits());
+    }
+
+    /**
+     * @return the nid for the UUID, or {@link #NOT_FOUND} if the UUID is not in the index.
+     */
+    public int get(long msb, long lsb) {
+        long stamp = resizeLock.tryOptimisticRead();
+        if (stamp != 0L) {
+            try {
+                int nid = find(segment, mask, msb, lsb);
+                if (resizeLock.validate(stamp)) {
+                    return nid;
+                }
+            } catch (IndexOutOfBoundsException e) {
+                // Read the mapping and mask on either side of a concurrent resize.
+            }
+        }
+        stamp = resizeLock.readLock();
+        try {
+            return find(segment, mask, msb, lsb);
+        } finally {
+            resizeLock.unlockRead(stamp);
+        }
+    }
+
+    private static int find(MemorySegment segment, long mask, long msb, long lsb) {
+        long slot = hash(msb, lsb) & mask;
+        while (true) {
+            long slotOffset = slotOffset(slot);
+            int nid = awaitPublishedNid(segment, slotOffset);
+            if (nid == EMPTY_SLOT) {
+                return NOT_FOUND;
+            }
+            if (slotMatches(segment, slotOffset, msb, lsb)) {
+                return nid;
+            }
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    /**
+     * Looks up a batch of UUIDs under a single acquisition of the resize lock.
+     *
+     * @param msbLsbPairs the most and then least significant bits of each UUID
+     * @param nids receives the nid of each UUID, or {@link #NOT_FOUND}, at the index of its pair
+     * @return the number of UUIDs not found
+     */
+    public int getAll(long[] msbLsbPairs, int[] nids) {
+        int count = msbLsbPairs.length / 2;
+        int notFound = 0;
+        long stamp = resizeLock.readLock();
+        try {
+            for (int i = 0; i < count; i++) {
+                nids[i] = find(segment, mask, msbLsbPairs[2 * i], msbLsbPairs[2 * i + 1]);
+                if (nids[i] == NOT_FOUND) {
+                    notFound++;
+                }
+            }
+        } finally {
+            resizeLock.unlockRead(stamp);
+        }
+        return notFound;
+    }
+
+    public int getIfAbsentPut(UUID uuid, IntSupplier nidSupplier) {
+        return getIfAbsentPut(uuid.getMostSignificantBits(), uuid.getLeastSignificantBits(), nidSupplier);
+    }
+
+    /**
+     * Returns the nid associated with the UUID, associating the UUID with a nid from the supplier if absent.
+     * The supplier is called at most once, and only if the UUID is absent.
+     */
+    public int getIfAbsentPut(long msb, long lsb, IntSupplier nidSupplier) {
+        return upsert(msb, lsb, nidSupplier, false);
+    }
+
+    public void put(UUID uuid, int nid) {
+        put(uuid.getMostSignificantBits(), uuid.getLeastSignificantBits(), nid);
+    }
+
+    /**
+     * Associates the UUID with the nid, replacing any existing association.
+     */
+    public void put(long msb, long lsb, int nid) {
+        upsert(msb, lsb, () -> nid, true);
+    }
+
+    private int upsert(long msb, long lsb, IntSupplier nidSupplier, boolean replace) {
+        int result;
+        boolean inserted;
+        // Held until the slot and size are written, so a save cannot mark the index consistent between the
+        // flag being cleared and the mutation.
+        long stamp = resizeLock.readLock();
+        try {
+            markInconsistent();
+            long slot = hash(msb, lsb) & mask;
+            while (true) {
+                long slotOffset = slotOffset(slot);
+                long nidOffset = slotOffset + NID_OFFSET_IN_SLOT;
+                int nid = awaitPublishedNid(segment, slotOffset);
+                if (nid == EMPTY_SLOT) {
+                    if (NID_HANDLE.compareAndSet(segment, nidOffset, EMPTY_SLOT, RESERVED_SLOT)) {
+                        segment.set(ValueLayout.JAVA_LONG, slotOffset + MSB_OFFSET_IN_SLOT, msb);
+                        segment.set(ValueLayout.JAVA_LONG, slotOffset + LSB_OFFSET_IN_SLOT, lsb);
+                        int newNid = nidSupplier.getAsInt();
+                        NID_HANDLE.setRelease(segment, nidOffset, newNid);
+                        result = newNid;
+                        inserted = true;
+                        break;
+                    }
+                    // Lost the race for this slot, examine it again.
+                    continue;
+                }
+                if (slotMatches(segment, slotOffset, msb, lsb)) {
+                    if (replace) {
+                        int newNid = nidSupplier.getAsInt();
+                        NID_HANDLE.setRelease(segment, nidOffset, newNid);
+                        result = newNid;
+                    } else {
+                        result = nid;
+                    }
+                    inserted = false;
+                    break;
+                }
+                slot = (slot + 1) & mask;
+            }
+            if (inserted) {
+                size.incrementAndGet();
+            }
+        } finally {
+            resizeLock.unlockRead(stamp);
+        }
+        if (inserted && size.get() > resizeThreshold) {
+            resize();
+        }
+        return result;
+    }
+
+    /**
+     * Clears the consistent flag before the first mutation after a save. Called holding the read lock, which
+     * excludes a save until the mutation is complete.
+     */
+    private void markInconsistent() {
+        if (markedConsistent.get()) {
+            synchronized (markedConsistent) {
+                if (markedConsistent.get()) {
+                    // The cleared flag must reach the disk before any slot page can.
+                    segment.set(ValueLayout.JAVA_INT, CONSISTENT_OFFSET, 0);
+                    segment.asSlice(0, HEADER_SIZE).force();
+                    markedConsistent.set(false);
+                }
+            }
+        }
+    }
+
+    private void resize() {
+        long stamp = resizeLock.writeLock();
+        try {
+            if (size.get() <= resizeThreshold) {
+                return;
+            }
+            long newCapacity = capacity << 1;
+            LOG.info("Resizing UUID to nid index from {} to {} slots", capacity, newCapacity);
+            File resizeFile = new File(indexFile.getParentFile(), INDEX_FILE_NAME + ".resize");
+            Arena oldArena = this.arena;
+            MemorySegment oldSegment = this.segment;
+            long oldCapacity = this.capacity;
+            // Filled before it is installed, so an optimistic reader never probes a partly copied mapping.
+            Arena newArena = Arena.ofShared();
+            MemorySegment newSegment = mapNew(resizeFile, newCapacity, newArena);
+            long newMask = newCapacity - 1;
+            for (long oldSlot = 0; oldSlot < oldCapacity; oldSlot++) {
+                long oldSlotOffset = slotOffset(oldSlot);
+                int nid = oldSegment.get(ValueLayout.JAVA_INT, oldSlotOffset + NID_OFFSET_IN_SLOT);
+                if (nid != EMPTY_SLOT) {
+                    long msb = oldSegment.get(ValueLayout.JAVA_LONG, oldSlotOffset + MSB_OFFSET_IN_SLOT);
+                    long lsb = oldSegment.get(ValueLayout.JAVA_LONG, oldSlotOffset + LSB_OFFSET_IN_SLOT);
+                    long slot = hash(msb, lsb) & newMask;
+                    while (newSegment.get(ValueLayout.JAVA_INT, slotOffset(slot) + NID_OFFSET_IN_SLOT) != EMPTY_SLOT) {
+                        slot = (slot + 1) & newMask;
+                    }
+                    long slotOffset = slotOffset(slot);
+                    newSegment.set(ValueLayout.JAVA_LONG, slotOffset + MSB_OFFSET_IN_SLOT, msb);
+                    newSegment.set(ValueLayout.JAVA_LONG, slotOffset + LSB_OFFSET_IN_SLOT, lsb);
+                    newSegment.set(ValueLayout.JAVA_INT, slotOffset + NID_OFFSET_IN_SLOT, nid);
+                }
+            }
+            install(newArena, newSegment, newCapacity);
+            replacedArenas.add(oldArena);
+            Files.move(resizeFile.toPath(), indexFile.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            resizeLock.unlockWrite(stamp);
+        }
+    }
+
+    public long size() {
+        return size.get();
+    }
+
+    /**
+     * Forces all index pages to disk, then marks the index as consistent. The write lock waits for upserts in
+     * progress, so the flag is written after every mutation it covers.
+     */
+    public void save() {
+        long stamp = resizeLock.writeLock();
+        try {
+            if (arena == null) {
+                return;
+            }
+            segment.set(ValueLayout.JAVA_LONG, SIZE_OFFSET, size.get());
+            segment.force();
+            segment.set(ValueLayout.JAVA_INT, CONSISTENT_OFFSET, 1);
+            segment.asSlice(0, HEADER_SIZE).force();
+            markedConsistent.set(true);
+        } finally {
+            resizeLock.unlockWrite(stamp);
+        }
+    }
+
+    @Override
+    public void close() {
+        long stamp = resizeLock.writeLock();
+        try {
+            if (arena != null) {
+                arena.close();
+                arena = null;
+                replacedArenas.forEach(Arena::close);
+                replacedArenas.clear();
+            }
+        } finally {
+            resizeLock.unlockWrite(stamp);
+        }
+    }
+}
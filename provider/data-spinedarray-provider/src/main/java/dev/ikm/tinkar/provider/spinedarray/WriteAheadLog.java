@@ -0,0 +1,287 @@
+/*
+ * Copyright © 2015 Integrated Knowledge Management (support@ikm.dev)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dev.ikm.tinkar.provider.spinedarray;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.CRC32C;
+
+/**
+ * Append-only log of the changes made to a {@link SpinedArrayProvider} since its last checkpoint.
+ * <p>
+ * The log is a sequence of numbered segment files. A checkpoint starts a new segment, writes the changed spines,
+ * then atomically replaces the manifest with the number of the new segment, and deletes the older segments. On
+ * open, the segments from the manifest onward are replayed. Records are applied by merging, so replaying a
+ * change already present in the spines has no effect.
+ * <p>
+ * Each record is {@code [byte type][int nid][int patternNid][int referencedComponentNid][int length][bytes][int crc]}.
+ * Replay stops at the first incomplete or corrupt record, which can only be the tail of the last segment written
+ * before a crash.
+ * <p>
+ * Appends are written to the operating system immediately, and forced to disk by {@link #sync(long)}. Concurrent
+ * callers of sync share a single force of the channel.
+ */
+public class WriteAheadLog implements AutoCloseable {
+    private static final Logger LOG = LoggerFactory.getLogger(WriteAheadLog.class);
+    static final String MANIFEST = "manifest";
+    private static final String SEGMENT_PREFIX = "segment-";
+    private static final int HEADER_BYTES = 17;
+
+    public static final byte MERGE = 1;
+    public static final byte PUT = 2;
+    public static final byte ERASE = 3;
+
+    @FunctionalInterface
+    public interface RecordConsumer {
+        void accept(byte type, int nid, int patternNid, int referencedComponentNid, byte[] bytes);
+    }
+
+    private final File directory;
+    private final ReentrantLock appendLock = new ReentrantLock();
+    private final ReentrantLock syncLock = new ReentrantLock();
+    private volatile FileChannel channel;
+    private long segment;
+    private volatile long appendSequence;
+    private volatile long syncedSequence;
+
+    private WriteAheadLog(File directory, long segment) throws IOException {
+        this.directory = directory;
+        this.segment = segment;
+        this.channel = openSegment(segment);
+    }
+
+    /**
+     * Replays the segments after the last checkpoint to the consumer, in the order they were appended, then opens
+     * a new segment for appends.
+     */
+    public static WriteAheadLog open(File directory, RecordConsumer consumer) throws IOException {
+        directory.mkdirs();
+        long firstSegment = readManifest(directory);
+        long[] segments = segmentNumbers(directory);
+        long nextSegment = firstSegment;
+        int replayedRecords = 0;
+        for (long segmentNumber : segments) {
+            if (segmentNumber < firstSegment) {
+                Files.deleteIfExists(segmentFile(directory, segmentNumber).toPath());
+            } else {
+                replayedRecords += replay(segmentFile(directory, segmentNumber), consumer);
+                nextSegment = segmentNumber + 1;
+            }
+        }
+        if (replayedRecords > 0) {
+            LOG.info("Replayed {} write ahead log records from {}", replayedRecords, directory);
+        }
+        return new WriteAheadLog(directory, nextSegment);
+    }
+
+    /**
+     * Appends a record. The record is not durable until {@link #sync(long)} returns for the returned sequence.
+     *
+     * @return the sequence of the record.
+     */
+    public long append(byte type, int nid, int patternNid, int referencedComponentNid, byte[] bytes) {
+        int length = bytes == null ? 0 : bytes.length;
+        ByteBuffer record = ByteBuffer.allocate(HEADER_BYTES + length + Integer.BYTES);
+        record.put(type).putInt(nid).putInt(patternNid).putInt(referencedComponentNid).putInt(length);
+        if (bytes != null) {
+            record.put(bytes);
+        }
+        CRC32C crc = new CRC32C();
+        crc.update(record.array(), 0, record.position());
+        record.putInt((int) crc.getValue());
+        record.flip();
+        appendLock.lock();
+        try {
+            while (record.hasRemaining()) {
+                channel.write(record);
+            }
+            return ++appendSequence;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            appendLock.unlock();
+        }
+    }
+
+    /**
+     * Forces the records up to and including the sequence to disk. If another thread is forcing the channel, waits
+     * for it, and returns without forcing again if that covered the sequence.
+     */
+    public void sync(long sequence) {
+        if (syncedSequence >= sequence) {
+            return;
+        }
+        syncLock.lock();
+        try {
+            if (syncedSequence >= sequence) {
+                return;
+            }
+            long target = appendSequence;
+            channel.force(false);
+            syncedSequence = target;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            syncLock.unlock();
+        }
+    }
+
+    /**
+     * Starts a new segment for the changes that follow. Once the changes before this call are persisted,
+     * pass the returned segment to {@link #checkpointed(long)}.
+     *
+     * @return the number of the new segment.
+     */
+    public long startCheckpoint() throws IOException {
+        appendLock.lock();
+        try {
+            syncLock.lock();
+            try {
+                FileChannel newChannel = openSegment(segment + 1);
+                channel.force(false);
+                channel.close();
+                channel = newChannel;
+                segment++;
+                syncedSequence = appendSequence;
+                return segment;
+            } finally {
+                syncLock.unlock();
+            }
+        } finally {
+            appendLock.unlock();
+        }
+    }
+
+    /**
+     * Records that the changes before the segment are persisted, and deletes the segments before it.
+     */
+    public void checkpointed(long firstSegment) throws IOException {
+        Path manifestPath = new File(directory, MANIFEST).toPath();
+        Path tempPath = new File(directory, MANIFEST + ".tmp").toPath();
+        try (FileChannel manifestChannel = FileChannel.open(tempPath, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            manifestChannel.write(ByteBuffer.wrap(Long.toString(firstSegment).getBytes()));
+            manifestChannel.force(true);
+        }
+        try {
+            Files.move(tempPath, manifestPath, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(tempPath, manifestPath, StandardCopyOption.REPLACE_EXISTING);
+        }
+        for (long segmentNumber : segmentNumbers(directory)) {
+            if (segmentNumber < firstSegment) {
+                Files.deleteIfExists(segmentFile(directory, segmentNumber).toPath());
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        appendLock.lock();
+        try {
+            channel.force(false);
+            channel.close();
+        } finally {
+            appendLock.unlock();
+        }
+    }
+
+    private FileChannel openSegment(long segmentNumber) throws IOException {
+        return FileChannel.open(segmentFile(directory, segmentNumber).toPath(),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+    }
+
+    private static File segmentFile(File directory, long segmentNumber) {
+        return new File(directory, SEGMENT_PREFIX + String.format("%016d", segmentNumber));
+    }
+
+    private static long[] segmentNumbers(File directory) {
+        String[] names = directory.list((dir, name) -> name.startsWith(SEGMENT_PREFIX));
+        if (names == null) {
+            return new long[0];
+        }
+        long[] segmentNumbers = new long[names.length];
+        for (int i = 0; i < names.length; i++) {
+            segmentNumbers[i] = Long.parseLong(names[i].substring(SEGMENT_PREFIX.length()));
+        }
+        Arrays.sort(segmentNumbers);
+        return segmentNumbers;
+    }
+
+    private static long readManifest(File directory) throws IOException {
+        File manifest = new File(directory, MANIFEST);
+        if (!manifest.exists()) {
+            return 0;
+        }
+        return Long.parseLong(Files.readString(manifest.toPath()).trim());
+    }
+
+    private static int replay(File segmentFile, RecordConsumer consumer) throws IOException {
+        int recordCount = 0;
+        long validLength = 0;
+        long fileLength = segmentFile.length();
+        ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+        CRC32C crc = new CRC32C();
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(segmentFile)))) {
+            while (fileLength - validLength >= HEADER_BYTES + Integer.BYTES) {
+                header.clear();
+                in.readFully(header.array());
+                byte type = header.get();
+                int nid = header.getInt();
+                int patternNid = header.getInt();
+                int referencedComponentNid = header.getInt();
+                int length = header.getInt();
+                if (length < 0 || fileLength - validLength - HEADER_BYTES - Integer.BYTES < length) {
+                    break;
+                }
+                byte[] bytes = new byte[length];
+                in.readFully(bytes);
+                crc.reset();
+                crc.update(header.array());
+                crc.update(bytes);
+                if ((int) crc.getValue() != in.readInt()) {
+                    break;
+                }
+                consumer.accept(type, nid, patternNid, referencedComponentNid, length == 0 ? null : bytes);
+                validLength += HEADER_BYTES + length + Integer.BYTES;
+                recordCount++;
+            }
+        }
+        if (validLength < fileLength) {
+            LOG.warn("Truncating {} bytes of incomplete records from {}", fileLength - validLength, segmentFile);
+            try (FileChannel segmentChannel = FileChannel.open(segmentFile.toPath(), StandardOpenOption.WRITE)) {
+                segmentChannel.truncate(validLength);
+            }
+        }
+        return recordCount;
+    }
+}
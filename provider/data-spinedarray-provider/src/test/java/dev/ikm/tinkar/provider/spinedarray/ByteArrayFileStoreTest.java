@@ -0,0 +1,183 @@
+/*
+ * Copyright © 2015 Integrated Knowledge Management (support@ikm.dev)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dev.ikm.tinkar.provider.spinedarray;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ByteArrayFileStoreTest {
+    private static final int SPINE_SIZE = 200;
+
+    @TempDir
+    File directory;
+
+    /**
+     * Elements of varied length, shaped like entity bytes, with every fifth element absent.
+     */
+    private static AtomicReferenceArray<byte[]> spine(int spineIndex, int version) {
+        AtomicReferenceArray<byte[]> spine = new AtomicReferenceArray<>(SPINE_SIZE);
+        for (int i = 0; i < SPINE_SIZE; i++) {
+            if (i % 5 != 4) {
+                spine.set(i, element(spineIndex, version, i));
+            }
+        }
+        return spine;
+    }
+
+    private static byte[] element(int spineIndex, int version, int indexInSpine) {
+        byte[] element = new byte[1 + (indexInSpine * 7 + version) % 300];
+        for (int i = 0; i < element.length; i++) {
+            element[i] = (byte) (i < 12 ? i : spineIndex * 31 + version * 17 + indexInSpine + i);
+        }
+        return element;
+    }
+
+    private static void assertSpine(ByteArrayFileStore store, int spineIndex, int version) {
+        AtomicReferenceArray<byte[]> expected = spine(spineIndex, version);
+        Optional<AtomicReferenceArray<byte[]>> read = store.get(spineIndex);
+        assertTrue(read.isPresent());
+        assertEquals(SPINE_SIZE, read.get().length());
+        for (int i = 0; i < SPINE_SIZE; i++) {
+            assertArrayEquals(expected.get(i), read.get().get(i), "Element " + i + " of spine " + spineIndex);
+            assertArrayEquals(expected.get(i), store.get(spineIndex, i), "Element " + i + " of spine " + spineIndex);
+        }
+    }
+
+    @Test
+    void pagedReadsOfWrittenSpine() {
+        ByteArrayFileStore store = new ByteArrayFileStore(directory);
+        assertFalse(store.get(0).isPresent());
+        assertNull(store.get(0, 0));
+        assertEquals(0, store.forEach(0, (bytes, index) -> {}));
+
+        store.put(0, spine(0, 0));
+        store.put(2, spine(2, 0));
+        assertSpine(store, 0, 0);
+        assertSpine(store, 2, 0);
+        assertFalse(store.get(1).isPresent());
+        assertNull(store.get(0, 4), "Absent element");
+        assertNull(store.get(0, SPINE_SIZE), "Beyond the end of the spine");
+
+        List<Integer> indexes = new ArrayList<>();
+        int processed = store.forEach(2, (bytes, index) -> {
+            assertArrayEquals(element(2, 0, index), bytes);
+            indexes.add(index);
+        });
+        assertEquals(SPINE_SIZE - SPINE_SIZE / 5, processed);
+        assertEquals(processed, indexes.size());
+        assertFalse(indexes.contains(4));
+    }
+
+    @Test
+    void compressedSpinesRoundTrip() {
+        ByteArrayFileStore store = new ByteArrayFileStore(directory);
+        store.setCompressSpines(true);
+        for (int spineIndex = 0; spineIndex < 3; spineIndex++) {
+            store.put(spineIndex, spine(spineIndex, 0));
+        }
+        assertTrue(new File(directory, ByteArrayFileStore.DICTIONARY_FILE).exists());
+        assertSpine(store, 1, 0);
+        // Reads across blocks, out of order, inflate each block again.
+        for (int i = SPINE_SIZE - 1; i >= 0; i -= ByteArrayFileStore.ELEMENTS_PER_BLOCK / 2) {
+            assertArrayEquals(spine(2, 0).get(i), store.get(2, i));
+        }
+        store.close();
+
+        // Compressed spines are read regardless of the setting, and can be rewritten uncompressed.
+        ByteArrayFileStore reopened = new ByteArrayFileStore(directory);
+        assertSpine(reopened, 0, 0);
+        assertSpine(reopened, 2, 0);
+        reopened.put(1, spine(1, 1));
+        assertSpine(reopened, 1, 1);
+        reopened.setCompressSpines(true);
+        reopened.put(0, spine(0, 1));
+        assertSpine(reopened, 0, 1);
+    }
+
+    @Test
+    void replacingMappedSpineServesNewElements() throws InterruptedException {
+        ByteArrayFileStore store = new ByteArrayFileStore(directory);
+        store.put(0, spine(0, 0));
+        assertSpine(store, 0, 0);
+        store.put(0, spine(0, 1));
+        assertSpine(store, 0, 1);
+
+        // Readers of the mapping being replaced see each element of either version, never a mix of them.
+        AtomicBoolean writing = new AtomicBoolean(true);
+        AtomicReference<String> failure = new AtomicReference<>();
+        Thread reader = new Thread(() -> {
+            while (writing.get() && failure.get() == null) {
+                for (int i = 0; i < SPINE_SIZE; i += 3) {
+                    byte[] read = store.get(0, i);
+                    boolean matches = false;
+                    for (int version = 1; version <= 20 && !matches; version++) {
+                        matches = Arrays.equals(spine(0, version).get(i), read);
+                    }
+                    if (!matches) {
+                        failure.compareAndSet(null, "Element " + i);
+                    }
+                }
+            }
+        });
+        reader.start();
+        for (int version = 2; version <= 20; version++) {
+            store.put(0, spine(0, version));
+        }
+        writing.set(false);
+        reader.join();
+        assertNull(failure.get());
+        assertSpine(store, 0, 20);
+    }
+
+    @Test
+    void spinesMappedAgainAfterRelease() {
+        ByteArrayFileStore store = new ByteArrayFileStore(directory);
+        // More spines than are kept mapped, so the first spines are released and mapped again.
+        int spineCount = 300;
+        for (int spineIndex = 0; spineIndex < spineCount; spineIndex++) {
+            store.put(spineIndex, spine(spineIndex, spineIndex % 3));
+        }
+        for (int spineIndex = 0; spineIndex < spineCount; spineIndex++) {
+            assertArrayEquals(element(spineIndex, spineIndex % 3, 7), store.get(spineIndex, 7));
+        }
+        for (int spineIndex = 0; spineIndex < spineCount; spineIndex += 37) {
+            assertSpine(store, spineIndex, spineIndex % 3);
+        }
+        store.close();
+        assertSpine(store, 5, 2);
+
+        // A new store finds the offsets by scanning each spine when it is first mapped.
+        ByteArrayFileStore reopened = new ByteArrayFileStore(directory);
+        for (int spineIndex = 0; spineIndex < spineCount; spineIndex += 37) {
+            assertSpine(reopened, spineIndex, spineIndex % 3);
+        }
+    }
+}
@@ -0,0 +1,207 @@
+/*
+ * Copyright © 2015 Integrated Knowledge Management (support@ikm.dev)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dev.ikm.tinkar.provider.spinedarray;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class UuidNidIndexTest {
+    private static final long SMALL_CAPACITY = 16;
+
+    @TempDir
+    File directory;
+
+    private static int nid(int i) {
+        return Integer.MIN_VALUE + 1 + i;
+    }
+
+    private static UUID uuid(int i) {
+        return new UUID(0x1234_0000_0000_0000L + i, ~(long) i);
+    }
+
+    @Test
+    void putAndGet() {
+        try (UuidNidIndex index = UuidNidIndex.open(directory, SMALL_CAPACITY)) {
+            assertFalse(index.loadedConsistent());
+            assertEquals(UuidNidIndex.NOT_FOUND, index.get(uuid(1)));
+
+            AtomicInteger supplied = new AtomicInteger();
+            assertEquals(nid(1), index.getIfAbsentPut(uuid(1), () -> nid(supplied.getAndIncrement() + 1)));
+            assertEquals(nid(1), index.getIfAbsentPut(uuid(1), () -> nid(supplied.getAndIncrement() + 1)));
+            assertEquals(1, supplied.get(), "The supplier is only called for an absent UUID");
+            assertEquals(nid(1), index.get(uuid(1)));
+            assertTrue(index.contains(uuid(1)));
+
+            index.put(uuid(2), nid(2));
+            index.put(uuid(2), nid(3));
+            assertEquals(nid(3), index.get(uuid(2)));
+            assertEquals(2, index.size());
+
+            int[] nids = new int[3];
+            UUID absent = uuid(99);
+            long[] pairs = {uuid(1).getMostSignificantBits(), uuid(1).getLeastSignificantBits(),
+                    absent.getMostSignificantBits(), absent.getLeastSignificantBits(),
+                    uuid(2).getMostSignificantBits(), uuid(2).getLeastSignificantBits()};
+            assertEquals(1, index.getAll(pairs, nids));
+            assertArrayEquals(new int[]{nid(1), UuidNidIndex.NOT_FOUND, nid(3)}, nids);
+        }
+    }
+
+    @Test
+    void collidingUuidsProbeToTheirOwnSlots() {
+        // UUIDs with the same home slot, including the last slot, so probing wraps to the start of the table.
+        List<UUID> colliding = new ArrayList<>();
+        long mask = SMALL_CAPACITY - 1;
+        for (long i = 0; colliding.size() < 5; i++) {
+            if ((UuidNidIndex.hash(i, -i) & mask) == mask) {
+                colliding.add(new UUID(i, -i));
+            }
+        }
+        try (UuidNidIndex index = UuidNidIndex.open(directory, SMALL_CAPACITY)) {
+            for (int i = 0; i < colliding.size(); i++) {
+                index.put(colliding.get(i), nid(i));
+            }
+            for (int i = 0; i < colliding.size(); i++) {
+                assertEquals(nid(i), index.get(colliding.get(i)));
+            }
+            index.put(colliding.get(2), nid(20));
+            assertEquals(nid(20), index.get(colliding.get(2)));
+            assertEquals(nid(3), index.get(colliding.get(3)));
+            assertEquals(colliding.size(), index.size());
+            // An absent UUID with the same home slot probes past all of them.
+            for (long i = Long.MAX_VALUE; ; i--) {
+                if ((UuidNidIndex.hash(i, -i) & mask) == mask) {
+                    assertEquals(UuidNidIndex.NOT_FOUND, index.get(new UUID(i, -i)));
+                    break;
+                }
+            }
+        }
+    }
+
+    @Test
+    void growthRemapsEveryUuid() {
+        int count = 10_000;
+        try (UuidNidIndex index = UuidNidIndex.open(directory, SMALL_CAPACITY)) {
+            for (int i = 0; i < count; i++) {
+                int nid = nid(i);
+                assertEquals(nid, index.getIfAbsentPut(uuid(i), () -> nid));
+            }
+            assertEquals(count, index.size());
+            for (int i = 0; i < count; i++) {
+                assertEquals(nid(i), index.get(uuid(i)));
+                assertEquals(nid(i), index.getIfAbsentPut(uuid(i), () -> { throw new AssertionError(); }));
+            }
+            assertEquals(UuidNidIndex.NOT_FOUND, index.get(uuid(count)));
+            // The grown mapping replaced the index file, with capacity for the entries below the load factor.
+            long slots = (new File(directory, UuidNidIndex.INDEX_FILE_NAME).length() - 64) / 24;
+            assertEquals(1, Long.bitCount(slots));
+            assertTrue(slots * 0.7 >= count);
+            assertFalse(new File(directory, UuidNidIndex.INDEX_FILE_NAME + ".resize").exists());
+        }
+    }
+
+    @Test
+    void getsDuringGrowthFindEveryUuid() throws InterruptedException {
+        int count = 50_000;
+        try (UuidNidIndex index = UuidNidIndex.open(directory, SMALL_CAPACITY)) {
+            AtomicInteger written = new AtomicInteger();
+            AtomicBoolean writing = new AtomicBoolean(true);
+            AtomicReference<String> failure = new AtomicReference<>();
+            Thread[] readers = new Thread[3];
+            for (int t = 0; t < readers.length; t++) {
+                readers[t] = new Thread(() -> {
+                    while (writing.get() && failure.get() == null) {
+                        int bound = written.get();
+                        for (int i = Math.max(0, bound - 1_000); i < bound; i++) {
+                            if (index.get(uuid(i)) != nid(i)) {
+                                failure.compareAndSet(null, "Lost " + uuid(i));
+                            }
+                        }
+                    }
+                });
+                readers[t].start();
+            }
+            for (int i = 0; i < count; i++) {
+                index.put(uuid(i), nid(i));
+                written.set(i + 1);
+            }
+            writing.set(false);
+            for (Thread reader : readers) {
+                reader.join();
+            }
+            assertNull(failure.get());
+            assertEquals(count, index.size());
+            for (int i = 0; i < count; i++) {
+                assertEquals(nid(i), index.get(uuid(i)));
+            }
+        }
+    }
+
+    @Test
+    void reopenAfterSaveIsConsistent() {
+        int count = 1_000;
+        try (UuidNidIndex index = UuidNidIndex.open(directory, SMALL_CAPACITY)) {
+            for (int i = 0; i < count; i++) {
+                index.put(uuid(i), nid(i));
+            }
+            index.save();
+        }
+        try (UuidNidIndex reopened = UuidNidIndex.open(directory, SMALL_CAPACITY)) {
+            assertTrue(reopened.loadedConsistent());
+            assertEquals(count, reopened.size());
+            for (int i = 0; i < count; i++) {
+                assertEquals(nid(i), reopened.get(uuid(i)));
+            }
+            assertEquals(UuidNidIndex.NOT_FOUND, reopened.get(uuid(count)));
+            reopened.put(uuid(count), nid(count));
+            reopened.save();
+        }
+        try (UuidNidIndex reopened = UuidNidIndex.open(directory, SMALL_CAPACITY)) {
+            assertTrue(reopened.loadedConsistent());
+            assertEquals(count + 1, reopened.size());
+            assertEquals(nid(count), reopened.get(uuid(count)));
+        }
+    }
+
+    @Test
+    void reopenAfterUnsavedChangeIsRebuilt() {
+        try (UuidNidIndex index = UuidNidIndex.open(directory, SMALL_CAPACITY)) {
+            index.put(uuid(1), nid(1));
+            index.save();
+            // Clears the consistent flag, and is not saved.
+            index.put(uuid(2), nid(2));
+        }
+        try (UuidNidIndex reopened = UuidNidIndex.open(directory, SMALL_CAPACITY)) {
+            assertFalse(reopened.loadedConsistent());
+            assertEquals(0, reopened.size());
+            assertEquals(UuidNidIndex.NOT_FOUND, reopened.get(uuid(1)));
+        }
+    }
+}
@@ -0,0 +1,197 @@
+/*
+ * Copyright © 2015 Integrated Knowledge Management (support@ikm.dev)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dev.ikm.tinkar.provider.spinedarray;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class WriteAheadLogTest {
+    /**
+     * The bytes of a record apart from its payload: the header and the crc.
+     */
+    private static final int RECORD_OVERHEAD = 17 + Integer.BYTES;
+
+    @TempDir
+    File directory;
+
+    private record Replayed(byte type, int nid, int patternNid, int referencedComponentNid, byte[] bytes) {
+    }
+
+    @Test
+    void replaysAppendedRecordsInOrder() throws IOException {
+        try (WriteAheadLog log = WriteAheadLog.open(directory, (type, nid, patternNid, rcNid, bytes) -> {})) {
+            log.sync(log.append(WriteAheadLog.MERGE, -10, -20, -30, new byte[]{1, 2, 3}));
+            log.append(WriteAheadLog.PUT, -11, -21, -31, new byte[]{4});
+            log.append(WriteAheadLog.ERASE, -12, 0, 0, null);
+        }
+
+        List<Replayed> replayed = reopen();
+        assertEquals(3, replayed.size());
+        assertRecord(replayed.get(0), WriteAheadLog.MERGE, -10, -20, -30, new byte[]{1, 2, 3});
+        assertRecord(replayed.get(1), WriteAheadLog.PUT, -11, -21, -31, new byte[]{4});
+        assertEquals(WriteAheadLog.ERASE, replayed.get(2).type());
+        assertEquals(-12, replayed.get(2).nid());
+        assertNull(replayed.get(2).bytes());
+    }
+
+    @Test
+    void truncatedTailReplaysIntactPrefix() throws IOException {
+        try (WriteAheadLog log = WriteAheadLog.open(directory, (type, nid, patternNid, rcNid, bytes) -> {})) {
+            log.append(WriteAheadLog.MERGE, -10, -20, -30, new byte[]{1, 2, 3});
+            log.append(WriteAheadLog.MERGE, -11, -21, -31, new byte[]{4, 5, 6, 7});
+        }
+        File segment = lastSegment();
+        long intactLength = RECORD_OVERHEAD + 3;
+        try (RandomAccessFile file = new RandomAccessFile(segment, "rw")) {
+            file.setLength(file.length() - 2);
+        }
+
+        List<Replayed> replayed = reopen();
+        assertEquals(1, replayed.size());
+        assertRecord(replayed.get(0), WriteAheadLog.MERGE, -10, -20, -30, new byte[]{1, 2, 3});
+        assertEquals(intactLength, segment.length(), "The incomplete record should be truncated");
+
+        // A second replay sees only the intact record, and no longer needs to truncate.
+        assertEquals(1, reopen().size());
+        assertEquals(intactLength, segment.length());
+    }
+
+    @Test
+    void truncatedHeaderReplaysIntactPrefix() throws IOException {
+        try (WriteAheadLog log = WriteAheadLog.open(directory, (type, nid, patternNid, rcNid, bytes) -> {})) {
+            log.append(WriteAheadLog.MERGE, -10, -20, -30, new byte[]{1, 2, 3});
+            log.append(WriteAheadLog.MERGE, -11, -21, -31, new byte[]{4, 5, 6, 7});
+        }
+        File segment = lastSegment();
+        try (RandomAccessFile file = new RandomAccessFile(segment, "rw")) {
+            file.setLength(RECORD_OVERHEAD + 3 + 5);
+        }
+
+        List<Replayed> replayed = reopen();
+        assertEquals(1, replayed.size());
+        assertEquals(-10, replayed.get(0).nid());
+        assertEquals(RECORD_OVERHEAD + 3, segment.length());
+    }
+
+    @Test
+    void corruptTailReplaysIntactPrefix() throws IOException {
+        try (WriteAheadLog log = WriteAheadLog.open(directory, (type, nid, patternNid, rcNid, bytes) -> {})) {
+            log.append(WriteAheadLog.MERGE, -10, -20, -30, new byte[]{1, 2, 3});
+            log.append(WriteAheadLog.PUT, -11, -21, -31, new byte[]{4, 5, 6, 7});
+            log.append(WriteAheadLog.PUT, -12, -22, -32, new byte[]{8});
+        }
+        File segment = lastSegment();
+        // Flip a payload byte of the second record, so its crc no longer matches.
+        long corruptOffset = RECORD_OVERHEAD + 3 + 17 + 1;
+        try (RandomAccessFile file = new RandomAccessFile(segment, "rw")) {
+            file.seek(corruptOffset);
+            int value = file.read();
+            file.seek(corruptOffset);
+            file.write(value ^ 0xFF);
+        }
+
+        List<Replayed> replayed = reopen();
+        assertEquals(1, replayed.size(), "Replay should stop at the corrupt record");
+        assertRecord(replayed.get(0), WriteAheadLog.MERGE, -10, -20, -30, new byte[]{1, 2, 3});
+        assertEquals(RECORD_OVERHEAD + 3, segment.length());
+    }
+
+    @Test
+    void corruptCrcReplaysIntactPrefix() throws IOException {
+        try (WriteAheadLog log = WriteAheadLog.open(directory, (type, nid, patternNid, rcNid, bytes) -> {})) {
+            log.append(WriteAheadLog.MERGE, -10, -20, -30, new byte[]{1, 2, 3});
+            log.append(WriteAheadLog.PUT, -11, -21, -31, new byte[]{4, 5, 6, 7});
+        }
+        File segment = lastSegment();
+        try (RandomAccessFile file = new RandomAccessFile(segment, "rw")) {
+            long crcOffset = file.length() - 1;
+            file.seek(crcOffset);
+            int value = file.read();
+            file.seek(crcOffset);
+            file.write(value ^ 0x01);
+        }
+
+        List<Replayed> replayed = reopen();
+        assertEquals(1, replayed.size());
+        assertEquals(-10, replayed.get(0).nid());
+    }
+
+    @Test
+    void checkpointDiscardsEarlierSegments() throws IOException {
+        try (WriteAheadLog log = WriteAheadLog.open(directory, (type, nid, patternNid, rcNid, bytes) -> {})) {
+            log.append(WriteAheadLog.MERGE, -10, -20, -30, new byte[]{1});
+            File checkpointedSegment = lastSegment();
+            long segment = log.startCheckpoint();
+            log.append(WriteAheadLog.MERGE, -11, -21, -31, new byte[]{2});
+            log.checkpointed(segment);
+            assertFalse(checkpointedSegment.exists(), "Segments before the checkpoint should be deleted");
+        }
+
+        List<Replayed> replayed = reopen();
+        assertEquals(1, replayed.size());
+        assertRecord(replayed.get(0), WriteAheadLog.MERGE, -11, -21, -31, new byte[]{2});
+    }
+
+    @Test
+    void unfinishedCheckpointReplaysAllSegments() throws IOException {
+        try (WriteAheadLog log = WriteAheadLog.open(directory, (type, nid, patternNid, rcNid, bytes) -> {})) {
+            log.append(WriteAheadLog.MERGE, -10, -20, -30, new byte[]{1});
+            log.startCheckpoint();
+            log.append(WriteAheadLog.MERGE, -11, -21, -31, new byte[]{2});
+            // Closed before the spines were persisted, so checkpointed is never called.
+        }
+
+        List<Replayed> replayed = reopen();
+        assertEquals(2, replayed.size());
+        assertEquals(-10, replayed.get(0).nid());
+        assertEquals(-11, replayed.get(1).nid());
+    }
+
+    private List<Replayed> reopen() throws IOException {
+        List<Replayed> replayed = new ArrayList<>();
+        try (WriteAheadLog log = WriteAheadLog.open(directory, (type, nid, patternNid, rcNid, bytes) ->
+                replayed.add(new Replayed(type, nid, patternNid, rcNid, bytes)))) {
+            return replayed;
+        }
+    }
+
+    private File lastSegment() {
+        File[] segments = directory.listFiles((dir, name) -> name.startsWith("segment-"));
+        Arrays.sort(segments);
+        return segments[segments.length - 1];
+    }
+
+    private static void assertRecord(Replayed record, byte type, int nid, int patternNid, int referencedComponentNid,
+                                     byte[] bytes) {
+        assertEquals(type, record.type());
+        assertEquals(nid, record.nid());
+        assertEquals(patternNid, record.patternNid());
+        assertEquals(referencedComponentNid, record.referencedComponentNid());
+        assertArrayEquals(bytes, record.bytes());
+    }
+}
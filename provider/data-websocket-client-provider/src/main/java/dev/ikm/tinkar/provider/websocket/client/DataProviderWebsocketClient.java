@@ -32,6 +32,7 @@
 import io.activej.inject.annotation.Provides;
 import io.activej.inject.module.Module;
 import io.activej.launcher.Launcher;
+import io.activej.promise.Promise;
 import io.activej.service.ServiceGraphModule;
 import org.eclipse.collections.api.block.procedure.primitive.IntProcedure;
 import org.eclipse.collections.api.factory.Lists;
@@ -177,12 +178,67 @@ public void forEachParallel(ObjIntConsumer<byte[]> action) {
 
     @Override
     public void forEachParallel(ImmutableIntList nids, ObjIntConsumer<byte[]> action) {
-        throw new UnsupportedOperationException();
+        forEach(nids, action);
     }
 
     @Override
     public void forEach(ImmutableIntList nids, ObjIntConsumer<byte[]> action) {
-        throw new UnsupportedOperationException();
+        int[] nidArray = nids.toArray();
+        byte[][] bytes = getBytes(nidArray);
+        for (int i = 0; i < nidArray.length; i++) {
+            action.accept(bytes[i], nidArray[i]);
+        }
+    }
+
+    /**
+     * Pipelines the batch: every request is written before the responses, which arrive in request order, are
+     * read, so the batch costs one round trip rather than one for each nid.
+     */
+    @Override
+    public byte[][] getBytes(int[] nids) {
+        byte[][] bytes = new byte[nids.length][];
+        if (nids.length == 0) {
+            return bytes;
+        }
+        final WebSocket ws = webSocket();
+        CompletableFuture<Void> completed = new CompletableFuture<>();
+        eventloop.execute(() -> {
+            Promise<Void> promise = Promise.complete();
+            for (int nid : nids) {
+                ByteBuf buf = ByteBufPool.allocate(32);
+                buf.writeByte(RemoteOperations.GET_BYTES.token);
+                buf.writeInt(nid);
+                promise = promise.then(() -> ws.writeMessage(Message.binary(buf)));
+            }
+            for (int i = 0; i < nids.length; i++) {
+                final int position = i;
+                promise = promise.then(ws::readMessage)
+                        .whenResult(message -> {
+                            ByteBuf readBuf = message.getBuf();
+                            int length = readBuf.readInt();
+                            if (length >= 0) {
+                                byte[] readData = new byte[length];
+                                readBuf.read(readData);
+                                bytes[position] = readData;
+                            }
+                        })
+                        .toVoid();
+            }
+            promise.whenComplete((result, exception) -> {
+                if (exception != null) {
+                    completed.completeExceptionally(exception);
+                } else {
+                    completed.complete(null);
+                }
+            });
+        });
+
+        try {
+            completed.get();
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+        return bytes;
     }
 
     @Override
@@ -200,10 +256,13 @@ public byte[] getBytes(int nid) {
                     .whenResult(message -> {
                         ByteBuf readBuf = message.getBuf();
                         int length = readBuf.readInt();
-                        byte[] readData = new byte[length];
-                        readBuf.read(readData);
-                        readDataReference.set(readData);
-                        LOG.info("Received: " + EntityService.get().unmarshalChronology(readData));
+                        // A negative length is sent for a nid without data, which is returned as null.
+                        if (length >= 0) {
+                            byte[] readData = new byte[length];
+                            readBuf.read(readData);
+                            readDataReference.set(readData);
+                            LOG.info("Received: " + EntityService.get().unmarshalChronology(readData));
+                        }
 
                     });
         });
@@ -21,14 +21,15 @@
 import io.activej.bytebuf.ByteBufPool;
 import io.activej.http.AsyncServlet;
 import io.activej.http.RoutingServlet;
+import io.activej.http.WebSocket;
 import io.activej.http.WebSocket.Message;
 import io.activej.inject.annotation.Provides;
 import io.activej.launchers.http.MultithreadedHttpServerLauncher;
+import io.activej.promise.Promise;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.ServiceLoader;
-import java.util.concurrent.atomic.AtomicInteger;
 
 public class DataProviderWebsocketServer extends MultithreadedHttpServerLauncher {
     private static final Logger LOG = LoggerFactory.getLogger(DataProviderWebsocketServer.class);
@@ -47,22 +48,36 @@ public static void main(String[] args) throws Exception {
 
     @Provides
     AsyncServlet servlet() {
-        AtomicInteger nid = new AtomicInteger();
         return RoutingServlet.create()
-                .mapWebSocket("/", webSocket -> webSocket.readMessage()
-                        .whenResult(message -> {
-                            ByteBuf buf = message.getBuf();
-                            PrimitiveDataService.RemoteOperations operation = PrimitiveDataService.RemoteOperations.fromToken(buf.readByte());
-                            nid.set(buf.readInt());
-                            LOG.info("Received: " + operation + " for: " + nid);
-                        })
-                        .then(() -> {
+                .mapWebSocket("/", webSocket -> serve(webSocket));
+    }
 
-                            byte[] data = dataService.getBytes(nid.get());
-                            ByteBuf buf = ByteBufPool.allocate(data.length);
-                            buf.writeInt(data.length);
-                            buf.write(data);
-                            return webSocket.writeMessage(Message.binary(buf));
-                        }));
+    /**
+     * Answers each message on the socket in the order received, until the socket is closed, so a client may
+     * pipeline requests. Bytes of a nid that has none are sent as a length of -1.
+     */
+    private Promise<Void> serve(WebSocket webSocket) {
+        return webSocket.readMessage()
+                .then(message -> {
+                    if (message == null) {
+                        return Promise.complete();
+                    }
+                    ByteBuf buf = message.getBuf();
+                    PrimitiveDataService.RemoteOperations operation = PrimitiveDataService.RemoteOperations.fromToken(buf.readByte());
+                    int nid = buf.readInt();
+                    LOG.debug("Received: " + operation + " for: " + nid);
+                    byte[] data = dataService.getBytes(nid);
+                    ByteBuf response;
+                    if (data == null) {
+                        response = ByteBufPool.allocate(Integer.BYTES);
+                        response.writeInt(-1);
+                    } else {
+                        response = ByteBufPool.allocate(Integer.BYTES + data.length);
+                        response.writeInt(data.length);
+                        response.write(data);
+                    }
+                    return webSocket.writeMessage(Message.binary(response))
+                            .then(() -> serve(webSocket));
+                });
     }
 }
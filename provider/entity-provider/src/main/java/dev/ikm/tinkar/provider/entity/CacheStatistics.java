@@ -0,0 +1,52 @@
+/*
+ * Copyright © 2015 Integrated Knowledge Management (support@ikm.dev)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dev.ikm.tinkar.provider.entity;
+
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+
+/**
+ * A snapshot of the statistics of one of the {@link EntityProvider} caches. See {@link EntityProvider#cacheStatistics()}.
+ *
+ * @param name               the name of the cache
+ * @param hitCount           lookups answered from the cache, including the fast path
+ * @param fastPathHitCount   lookups answered by the nid indexed fast path, without entering the cache
+ * @param missCount          lookups not answered from the cache
+ * @param evictionCount      entries evicted to keep the cache within its bound
+ * @param evictionWeight     total weight of the evicted entries; bytes for the entity cache, otherwise a count
+ * @param loadCount          loads performed on a miss, including loads of absent entries
+ * @param totalLoadTimeNanos time spent loading on misses
+ * @param size               approximate number of entries
+ * @param weightedSize       approximate weight of the entries; bytes for the entity cache, otherwise a count
+ */
+public record CacheStatistics(String name, long hitCount, long fastPathHitCount, long missCount,
+                              long evictionCount, long evictionWeight, long loadCount, long totalLoadTimeNanos,
+                              long size, long weightedSize) {
+
+    static CacheStatistics of(String name, CacheStats stats, long fastPathHitCount, long size, long weightedSize) {
+        return new CacheStatistics(name, stats.hitCount() + fastPathHitCount, fastPathHitCount, stats.missCount(),
+                stats.evictionCount(), stats.evictionWeight(), stats.loadCount(), stats.totalLoadTime(),
+                size, weightedSize);
+    }
+
+    public double hitRate() {
+        long requestCount = hitCount + missCount;
+        return requestCount == 0 ? 1.0 : (double) hitCount / requestCount;
+    }
+
+    public double averageLoadPenaltyNanos() {
+        return loadCount == 0 ? 0.0 : (double) totalLoadTimeNanos / loadCount;
+    }
+}
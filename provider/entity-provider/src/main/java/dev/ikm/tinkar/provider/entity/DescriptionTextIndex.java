@@ -0,0 +1,209 @@
+/*
+ * Copyright © 2015 Integrated Knowledge Management (support@ikm.dev)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dev.ikm.tinkar.provider.entity;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.IntFunction;
+import java.util.stream.IntStream;
+
+/**
+ * A precomputed index from component nid to its description text.
+ * <p>
+ * The texts are held as UTF-8 in a single byte array, addressed from an open addressing table of nids, so an
+ * index of every concept costs a few bytes of overhead per concept rather than a {@link String} and a map entry
+ * each. The index is built in parallel from a snapshot of the data, and is not updated in place: invalidating a
+ * nid removes its entry, and lookups of removed or absent nids return null, so the caller can fall back to
+ * computing the text.
+ */
+final class DescriptionTextIndex {
+    private static final Logger LOG = LoggerFactory.getLogger(DescriptionTextIndex.class);
+    private static final long REMOVED = -1L;
+
+    private record Snapshot(int[] keys, AtomicLongArray entries, byte[] arena, int mask) {
+        String get(int nid) {
+            int slot = slot(nid);
+            if (slot < 0) {
+                return null;
+            }
+            long entry = entries.get(slot);
+            if (entry == REMOVED) {
+                return null;
+            }
+            return new String(arena, (int) (entry >>> 32), (int) entry, StandardCharsets.UTF_8);
+        }
+
+        void remove(int nid) {
+            int slot = slot(nid);
+            if (slot >= 0) {
+                entries.set(slot, REMOVED);
+            }
+        }
+
+        int size() {
+            int size = 0;
+            for (int i = 0; i < keys.length; i++) {
+                if (keys[i] != 0 && entries.get(i) != REMOVED) {
+                    size++;
+                }
+            }
+            return size;
+        }
+
+        private int slot(int nid) {
+            int slot = hash(nid) & mask;
+            while (keys[slot] != 0) {
+                if (keys[slot] == nid) {
+                    return slot;
+                }
+                slot = (slot + 1) & mask;
+            }
+            return -1;
+        }
+    }
+
+    private volatile Snapshot snapshot;
+    /**
+     * Nids invalidated while a build is in progress, removed from the built snapshot when it is published.
+     * Null when no build is in progress.
+     */
+    private volatile Set<Integer> invalidatedDuringBuild;
+    /**
+     * Incremented by {@link #clear()}, so a build started before the clear is abandoned.
+     */
+    private final AtomicInteger generation = new AtomicInteger();
+
+    /**
+     * @return the indexed text for the nid, or null if the nid is not indexed
+     */
+    String get(int nid) {
+        Snapshot current = snapshot;
+        return current == null ? null : current.get(nid);
+    }
+
+    void invalidate(int nid) {
+        Set<Integer> pending = invalidatedDuringBuild;
+        if (pending != null) {
+            pending.add(nid);
+        }
+        Snapshot current = snapshot;
+        if (current != null) {
+            current.remove(nid);
+        }
+    }
+
+    void clear() {
+        generation.incrementAndGet();
+        snapshot = null;
+    }
+
+    int size() {
+        Snapshot current = snapshot;
+        return current == null ? 0 : current.size();
+    }
+
+    /**
+     * Replaces the index with the texts of the nids, computed in parallel. Nids for which textForNid returns null
+     * are not indexed. Only one build runs at a time; a build requested while another is running is skipped.
+     *
+     * @return true if the build completed and was published
+     */
+    boolean build(int[] nids, IntFunction<String> textForNid) {
+        int buildGeneration = generation.get();
+        synchronized (this) {
+            if (invalidatedDuringBuild != null) {
+                LOG.info("Description text index build already in progress");
+                return false;
+            }
+            invalidatedDuringBuild = ConcurrentHashMap.newKeySet();
+        }
+        try {
+            byte[][] texts = new byte[nids.length][];
+            IntStream.range(0, nids.length).parallel().forEach(i -> {
+                if (generation.get() == buildGeneration) {
+                    String text = textForNid.apply(nids[i]);
+                    if (text != null) {
+                        texts[i] = text.getBytes(StandardCharsets.UTF_8);
+                    }
+                }
+            });
+            if (generation.get() != buildGeneration) {
+                return false;
+            }
+            Snapshot built = pack(nids, texts);
+            synchronized (this) {
+                if (generation.get() != buildGeneration) {
+                    return false;
+                }
+                snapshot = built;
+                invalidatedDuringBuild.forEach(built::remove);
+                return true;
+            }
+        } finally {
+            synchronized (this) {
+                invalidatedDuringBuild = null;
+            }
+        }
+    }
+
+    private static Snapshot pack(int[] nids, byte[][] texts) {
+        long arenaSize = 0;
+        int count = 0;
+        for (byte[] text : texts) {
+            if (text != null) {
+                if (arenaSize + text.length > Integer.MAX_VALUE - 8) {
+                    LOG.warn("Description text index is full, indexing the first {} of {} texts", count, texts.length);
+                    break;
+                }
+                arenaSize += text.length;
+                count++;
+            }
+        }
+        int capacity = Integer.highestOneBit(Math.max(2, count * 2 - 1)) << 1;
+        int mask = capacity - 1;
+        int[] keys = new int[capacity];
+        AtomicLongArray entries = new AtomicLongArray(capacity);
+        byte[] arena = new byte[(int) arenaSize];
+        int offset = 0;
+        for (int i = 0, added = 0; i < nids.length && added < count; i++) {
+            byte[] text = texts[i];
+            if (text == null) {
+                continue;
+            }
+            int slot = hash(nids[i]) & mask;
+            while (keys[slot] != 0 && keys[slot] != nids[i]) {
+                slot = (slot + 1) & mask;
+            }
+            System.arraycopy(text, 0, arena, offset, text.length);
+            keys[slot] = nids[i];
+            entries.set(slot, ((long) offset << 32) | text.length);
+            offset += text.length;
+            added++;
+        }
+        return new Snapshot(keys, entries, arena, mask);
+    }
+
+    private static int hash(int nid) {
+        int h = nid * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+}
@@ -0,0 +1,268 @@
+/*
+ * Copyright © 2015 Integrated Knowledge Management (support@ikm.dev)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dev.ikm.tinkar.provider.entity;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.RemovalCause;
+import dev.ikm.tinkar.common.service.PrimitiveData;
+import dev.ikm.tinkar.common.service.ServiceKeys;
+import dev.ikm.tinkar.common.service.ServiceProperties;
+import dev.ikm.tinkar.entity.Entity;
+import dev.ikm.tinkar.entity.EntityRecordFactory;
+import dev.ikm.tinkar.entity.StampEntity;
+import org.eclipse.collections.api.factory.Lists;
+import org.eclipse.collections.api.list.ImmutableList;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.IntFunction;
+
+/**
+ * The entity, stamp, and text caches of the {@link EntityProvider}.
+ * <p>
+ * The entity cache is bounded by the total serialized size of the cached entities, rather than by their count,
+ * since a chronology may be a few hundred bytes or many megabytes. In front of it is a direct mapped array of
+ * recently used entities indexed by the low bits of the nid, so repeated lookups of the same nid neither box the
+ * nid nor enter the cache. A slot only holds an entity that is in the cache: it is cleared when the entity is
+ * evicted, replaced or invalidated, so the slots do not keep entities beyond the weight bound. Sizes are read from {@link ServiceProperties} when the caches are created.
+ * <p>
+ * The text cache is backed by a {@link DescriptionTextIndex} of the text of every concept and pattern, built once
+ * per set of caches, so that only texts changed since the build are computed on demand. The index and the cache
+ * are given the same function to compute a text, so a text is the same whether or not it is indexed.
+ */
+final class EntityCaches {
+    static final long DEFAULT_ENTITY_CACHE_MAX_BYTES = 64L * 1024 * 1024;
+    static final int DEFAULT_STAMP_CACHE_MAX_SIZE = 1024;
+    static final int DEFAULT_TEXT_CACHE_MAX_SIZE = 1024;
+    /**
+     * Number of slots in the direct mapped front of the entity cache. Must be a power of two.
+     */
+    private static final int FAST_SLOT_COUNT = 1 << 13;
+    private static final int FAST_SLOT_MASK = FAST_SLOT_COUNT - 1;
+
+    private record WeighedEntity(Entity entity, int weight) {
+    }
+
+    final Cache<Integer, String> textCache;
+    final Cache<Integer, StampEntity> stampCache;
+    final DescriptionTextIndex textIndex = new DescriptionTextIndex();
+    /**
+     * Set when a build of the text index has been started for these caches.
+     */
+    final AtomicBoolean textIndexStarted = new AtomicBoolean();
+    private final Cache<Integer, WeighedEntity> entityCache;
+    private final AtomicReferenceArray<Entity> fastSlots = new AtomicReferenceArray<>(FAST_SLOT_COUNT);
+    private final LongAdder fastSlotHits = new LongAdder();
+    /**
+     * Incremented, by the same low bits of the nid as the fast slots, after an entity is replaced or invalidated,
+     * so an entity decoded from bytes read before the change is not cached.
+     */
+    private final AtomicLongArray invalidationStamps = new AtomicLongArray(FAST_SLOT_COUNT);
+
+    EntityCaches() {
+        long entityCacheMaxBytes = ServiceProperties.get(ServiceKeys.ENTITY_CACHE_MAX_BYTES, DEFAULT_ENTITY_CACHE_MAX_BYTES);
+        int stampCacheMaxSize = ServiceProperties.get(ServiceKeys.STAMP_CACHE_MAX_SIZE, DEFAULT_STAMP_CACHE_MAX_SIZE);
+        int textCacheMaxSize = ServiceProperties.get(ServiceKeys.TEXT_CACHE_MAX_SIZE, DEFAULT_TEXT_CACHE_MAX_SIZE);
+        this.entityCache = Caffeine.newBuilder()
+                .maximumWeight(entityCacheMaxBytes)
+                .weigher((Integer nid, WeighedEntity weighedEntity) -> weighedEntity.weight())
+                // Called as the entry is evicted, so an evicted entity is not kept reachable by its fast slot.
+                .evictionListener((Integer nid, WeighedEntity weighedEntity, RemovalCause cause) -> {
+                    if (nid != null && weighedEntity != null) {
+                        fastSlots.compareAndSet(nid & FAST_SLOT_MASK, weighedEntity.entity(), null);
+                    }
+                })
+                .recordStats()
+                .build();
+        this.stampCache = Caffeine.newBuilder().maximumSize(stampCacheMaxSize).recordStats().build();
+        this.textCache = Caffeine.newBuilder().maximumSize(textCacheMaxSize).recordStats().build();
+    }
+
+    /**
+     * @return the entity for the nid, loading it from the primitive data service if it is not cached, or null if
+     * the nid has no stored bytes
+     */
+    Entity getEntity(int nid) {
+        int slot = nid & FAST_SLOT_MASK;
+        Entity entity = fastSlots.get(slot);
+        if (entity != null && entity.nid() == nid) {
+            fastSlotHits.increment();
+            return entity;
+        }
+        WeighedEntity weighedEntity = entityCache.get(nid, entityNid -> {
+            byte[] bytes = PrimitiveData.get().getBytes(entityNid);
+            if (bytes == null) {
+                return null;
+            }
+            return new WeighedEntity(EntityRecordFactory.make(bytes), bytes.length);
+        });
+        if (weighedEntity == null) {
+            return null;
+        }
+        fastSlots.set(slot, weighedEntity.entity());
+        // Invalidation removes the entry from the cache before clearing its slot. If the entry was
+        // replaced or removed while this thread was filling the slot, clear the slot so a stale entity is not served.
+        if (entityCache.asMap().get(nid) != weighedEntity) {
+            fastSlots.compareAndSet(slot, weighedEntity.entity(), null);
+        }
+        return weighedEntity.entity();
+    }
+
+    /**
+     * @return the cached entity for the nid, or null if it is not cached
+     */
+    Entity getEntityIfPresent(int nid) {
+        Entity entity = fastSlots.get(nid & FAST_SLOT_MASK);
+        if (entity != null && entity.nid() == nid) {
+            fastSlotHits.increment();
+            return entity;
+        }
+        WeighedEntity weighedEntity = entityCache.getIfPresent(nid);
+        return weighedEntity == null ? null : weighedEntity.entity();
+    }
+
+    /**
+     * Caches the entity decoded from bytes, replacing any cached entity with the same nid.
+     *
+     * @return the decoded entity
+     */
+    Entity putEntity(int nid, byte[] bytes) {
+        Entity entity = EntityRecordFactory.make(bytes);
+        entityCache.put(nid, new WeighedEntity(entity, bytes.length));
+        clearFastSlot(nid);
+        invalidationStamps.incrementAndGet(nid & FAST_SLOT_MASK);
+        return entity;
+    }
+
+    /**
+     * @return a stamp to pass to {@link #putLoadedEntity(int, byte[], long)}, read before the bytes are read
+     */
+    long invalidationStamp(int nid) {
+        return invalidationStamps.get(nid & FAST_SLOT_MASK);
+    }
+
+    /**
+     * Caches the entity decoded from bytes read outside the cache, unless the entity was replaced or invalidated
+     * since the stamp was read, or another entity for the nid is already cached.
+     *
+     * @return the cached entity for the nid, or the decoded entity if it was not cached
+     */
+    Entity putLoadedEntity(int nid, byte[] bytes, long invalidationStamp) {
+        return putLoadedEntity(nid, EntityRecordFactory.make(bytes), bytes.length, invalidationStamp);
+    }
+
+    /**
+     * Caches an entity already decoded from bytes read outside the cache, as {@link #putLoadedEntity(int, byte[], long)}.
+     *
+     * @param byteCount the length of the bytes the entity was decoded from, its weight in the cache
+     */
+    Entity putLoadedEntity(int nid, Entity entity, int byteCount, long invalidationStamp) {
+        int slot = nid & FAST_SLOT_MASK;
+        if (invalidationStamps.get(slot) != invalidationStamp) {
+            return entity;
+        }
+        WeighedEntity weighedEntity = new WeighedEntity(entity, byteCount);
+        WeighedEntity cached = entityCache.asMap().putIfAbsent(nid, weighedEntity);
+        if (cached != null) {
+            return cached.entity();
+        }
+        // An invalidation between the check and the put may have missed the entry, so remove it.
+        if (invalidationStamps.get(slot) != invalidationStamp) {
+            entityCache.asMap().remove(nid, weighedEntity);
+        }
+        return entity;
+    }
+
+    /**
+     * @return the text for the nid from the text index, or if it is not indexed, from the text cache, computed by
+     * textForNid on a miss
+     */
+    String text(int nid, IntFunction<String> textForNid) {
+        String indexedText = textIndex.get(nid);
+        if (indexedText != null) {
+            return indexedText;
+        }
+        return textCache.get(nid, textForNid::apply);
+    }
+
+    /**
+     * Replaces the text index with the texts of the nids computed by textForNid, which must be the function given
+     * to {@link #text(int, IntFunction)}.
+     *
+     * @return true if the build completed and was published
+     */
+    boolean buildTextIndex(int[] nids, IntFunction<String> textForNid) {
+        return textIndex.build(nids, textForNid);
+    }
+
+    void invalidate(int nid) {
+        invalidateText(nid);
+        invalidateEntity(nid);
+    }
+
+    /**
+     * Invalidates the cached entity and stamp for the nid, leaving its text.
+     */
+    void invalidateEntity(int nid) {
+        entityCache.invalidate(nid);
+        stampCache.invalidate(nid);
+        clearFastSlot(nid);
+        invalidationStamps.incrementAndGet(nid & FAST_SLOT_MASK);
+    }
+
+    void invalidateText(int nid) {
+        textCache.invalidate(nid);
+        textIndex.invalidate(nid);
+    }
+
+    void invalidateAll() {
+        textCache.invalidateAll();
+        textIndex.clear();
+        entityCache.invalidateAll();
+        stampCache.invalidateAll();
+        for (int i = 0; i < FAST_SLOT_COUNT; i++) {
+            fastSlots.set(i, null);
+            invalidationStamps.incrementAndGet(i);
+        }
+    }
+
+    ImmutableList<CacheStatistics> statistics() {
+        return Lists.immutable.of(
+                CacheStatistics.of("Entity", entityCache.stats(), fastSlotHits.sum(),
+                        entityCache.estimatedSize(), weightedSize(entityCache)),
+                CacheStatistics.of("Stamp", stampCache.stats(), 0,
+                        stampCache.estimatedSize(), stampCache.estimatedSize()),
+                CacheStatistics.of("Text", textCache.stats(), 0,
+                        textCache.estimatedSize(), textCache.estimatedSize()));
+    }
+
+    private void clearFastSlot(int nid) {
+        int slot = nid & FAST_SLOT_MASK;
+        Entity entity = fastSlots.get(slot);
+        if (entity != null && entity.nid() == nid) {
+            fastSlots.compareAndSet(slot, entity, null);
+        }
+    }
+
+    private static long weightedSize(Cache<?, ?> cache) {
+        return cache.policy().eviction()
+                .map(eviction -> eviction.weightedSize().orElse(cache.estimatedSize()))
+                .orElse(cache.estimatedSize());
+    }
+}
@@ -15,8 +15,6 @@
  */
 package dev.ikm.tinkar.provider.entity;
 
-import com.github.benmanes.caffeine.cache.Cache;
-import com.github.benmanes.caffeine.cache.Caffeine;
 import dev.ikm.tinkar.common.alert.AlertObject;
 import dev.ikm.tinkar.common.alert.AlertStreams;
 import dev.ikm.tinkar.common.id.PublicId;
@@ -34,6 +32,7 @@
 import dev.ikm.tinkar.common.util.broadcast.Broadcaster;
 import dev.ikm.tinkar.common.util.broadcast.SimpleBroadcaster;
 import dev.ikm.tinkar.common.util.broadcast.Subscriber;
+import dev.ikm.tinkar.common.util.time.Stopwatch;
 import dev.ikm.tinkar.common.util.uuid.UuidUtil;
 import dev.ikm.tinkar.component.Chronology;
 import dev.ikm.tinkar.component.Version;
@@ -44,9 +43,11 @@
 import dev.ikm.tinkar.terms.TinkarTerm;
 import org.eclipse.collections.api.factory.Lists;
 import org.eclipse.collections.api.factory.Sets;
+import org.eclipse.collections.api.factory.primitive.IntLists;
 import org.eclipse.collections.api.factory.primitive.IntSets;
 import org.eclipse.collections.api.list.ImmutableList;
 import org.eclipse.collections.api.list.primitive.ImmutableLongList;
+import org.eclipse.collections.api.list.primitive.MutableIntList;
 import org.eclipse.collections.api.set.MutableSet;
 import org.eclipse.collections.api.set.primitive.ImmutableIntSet;
 import org.slf4j.Logger;
@@ -65,16 +66,26 @@
 public class EntityProvider implements EntityService, PublicIdService, DefaultDescriptionForNidService, EntityDataRepair {
 
     private static final Logger LOG = LoggerFactory.getLogger(EntityProvider.class);
-    private static final Cache<Integer, String> STRING_CACHE = Caffeine.newBuilder().maximumSize(1024).build();
-    private static final Cache<Integer, Entity> ENTITY_CACHE = Caffeine.newBuilder().maximumSize(10240).build();
-    private static final Cache<Integer, StampEntity> STAMP_CACHE = Caffeine.newBuilder().maximumSize(1024).build();
+    /**
+     * Created on first use after each cache reset, so changes to the cache sizes in
+     * {@link dev.ikm.tinkar.common.service.ServiceProperties} take effect at the next reset.
+     */
+    private static volatile EntityCaches caches;
 
 
     //Multi<Entity<? extends EntityVersion>> chronologyBroadcaster = BroadcastProcessor.create().toHotStream();
     //  <T extends Entity<? extends EntityVersion>>
     final Broadcaster<Integer> processor;
+    /**
+     * Publishes each change to the subscribers of classified changes, once for all of them.
+     */
+    final Broadcaster<EntityChange> changeProcessor;
 
     private boolean loadPhase = false;
+    /**
+     * True between {@link #beginBulkIngest()} and {@link #endBulkIngest()}.
+     */
+    private volatile boolean bulkIngest = false;
 
     /**
      * TODO elegant shutdown of entityStream and others
@@ -82,69 +93,157 @@ public class EntityProvider implements EntityService, PublicIdService, DefaultDe
     public EntityProvider() {
         LOG.info("Constructing EntityProvider");
         this.processor = new SimpleBroadcaster<>();
+        this.changeProcessor = new SimpleBroadcaster<>();
+    }
+
+    private static EntityCaches caches() {
+        EntityCaches entityCaches = caches;
+        if (entityCaches == null) {
+            synchronized (EntityProvider.class) {
+                entityCaches = caches;
+                if (entityCaches == null) {
+                    entityCaches = new EntityCaches();
+                    caches = entityCaches;
+                }
+            }
+        }
+        return entityCaches;
+    }
+
+    /**
+     * @return a snapshot of the hit, miss, eviction, and load statistics of the entity, stamp, and text caches
+     */
+    public static ImmutableList<CacheStatistics> cacheStatistics() {
+        return caches().statistics();
     }
 
     public void addSubscriberWithWeakReference(Subscriber<Integer> subscriber) {
         this.processor.addSubscriberWithWeakReference(subscriber);
     }
 
+    @Override
+    public void addChangeSubscriberWithWeakReference(Subscriber<EntityChange> subscriber) {
+        this.changeProcessor.addSubscriberWithWeakReference(subscriber);
+    }
+
+    /**
+     * Publishes a change known only by nid. The change is classified from the stored bytes, if a subscriber asks.
+     */
+    private void dispatchChange(int nid) {
+        processor.dispatch(nid);
+        changeProcessor.dispatch(EntityChange.of(nid));
+    }
+
+    /**
+     * Answers from the description text index when the nid is indexed. Otherwise, the text is computed from the
+     * description semantics of the component and held in the text cache. Both compute the text with
+     * {@link #textForNid(int, boolean)}. The first call after the caches are created, outside a load phase,
+     * starts a background build of the index.
+     */
     @Override
     public String textFast(int nid) {
+        EntityCaches entityCaches = caches();
+        if (!loadPhase && !entityCaches.textIndexStarted.get()
+                && entityCaches.textIndexStarted.compareAndSet(false, true)) {
+            buildTextIndexInBackground(entityCaches);
+        }
+        return entityCaches.text(nid, componentNid -> textForNid(componentNid, true));
+    }
 
+    /**
+     * @param reportProblems true to report description semantics or patterns that are not as expected, false to
+     *                       return null for a component with such descriptions
+     * @return the text of the regular name description of the component, else of its fully qualified name, else
+     * of any of its descriptions, or null if it has none
+     */
+    private String textForNid(int nid, boolean reportProblems) {
         // TODO use a default language coordinate instead of this hardcode routine.
-        return STRING_CACHE.get(nid, integer -> {
-            int[] semanticNids = PrimitiveData.get().semanticNidsForComponentOfPattern(nid, DESCRIPTION_PATTERN.nid());
-            String anyString = null;
-            String fqnString = null;
-            for (int semanticNid : semanticNids) {
-                EntityHandle descriptionSemanticHandle = EntityHandle.get(semanticNid);
-                if (descriptionSemanticHandle.isSemantic() && descriptionSemanticHandle.expectEntity() instanceof SemanticEntity<?> descriptionSemantic) {
-                    EntityHandle patternHandle = EntityHandle.get(descriptionSemantic.patternNid());
-                    if (patternHandle.isPattern() && patternHandle.expectEntity() instanceof PatternEntity<?> pattern) {
-                        // TODO: use version computer to get version
-                        PatternEntityVersion patternEntityVersion = pattern.versions().get(0);
-                        SemanticEntityVersion version = (SemanticEntityVersion) descriptionSemantic.versions().get(0);
-                        int indexForMeaning = patternEntityVersion.indexForMeaning(TinkarTerm.DESCRIPTION_TYPE);
-                        int indexForText = patternEntityVersion.indexForMeaning(TinkarTerm.TEXT_FOR_DESCRIPTION);
-                        if (indexForMeaning == -1 || indexForText == -1) {
-                            throw new IllegalStateException("Expecting a pattern entity with description and text fields. Found: " + patternEntityVersion);
-                        }
-                        if (version.fieldValues().get(indexForMeaning).equals(TinkarTerm.REGULAR_NAME_DESCRIPTION_TYPE)) {
-                            return (String) version.fieldValues().get(indexForText);
-                        }
-                        if (version.fieldValues().get(indexForMeaning).equals(TinkarTerm.FULLY_QUALIFIED_NAME_DESCRIPTION_TYPE)) {
-                            fqnString = (String) version.fieldValues().get(indexForText);
-                        }
-                        anyString = (String) version.fieldValues().get(indexForText);
-                    } else {
-                        Entity<?> entity = patternHandle.expectEntity();
-                        anyString = " <" + entity.nid() + ">" + entity.asUuidList().toString();
-                        // Added in case entity.toString() itself throws an exception, at least get a UUID for the problem.
-                        AlertStreams.getRoot().dispatch(AlertObject.makeError(new IllegalStateException("Expecting a pattern entity. Found entity with id:  " + anyString)));
-                        AlertStreams.getRoot().dispatch(AlertObject.makeError(new IllegalStateException("Expecting a pattern entity. Found: " + entity)));
+        int[] semanticNids = PrimitiveData.get().semanticNidsForComponentOfPattern(nid, DESCRIPTION_PATTERN.nid());
+        String anyString = null;
+        String fqnString = null;
+        for (int semanticNid : semanticNids) {
+            EntityHandle descriptionSemanticHandle = EntityHandle.get(semanticNid);
+            if (descriptionSemanticHandle.isSemantic() && descriptionSemanticHandle.expectEntity() instanceof SemanticEntity<?> descriptionSemantic) {
+                EntityHandle patternHandle = EntityHandle.get(descriptionSemantic.patternNid());
+                if (patternHandle.isPattern() && patternHandle.expectEntity() instanceof PatternEntity<?> pattern) {
+                    // TODO: use version computer to get version
+                    PatternEntityVersion patternEntityVersion = pattern.versions().get(0);
+                    SemanticEntityVersion version = (SemanticEntityVersion) descriptionSemantic.versions().get(0);
+                    int indexForMeaning = patternEntityVersion.indexForMeaning(TinkarTerm.DESCRIPTION_TYPE);
+                    int indexForText = patternEntityVersion.indexForMeaning(TinkarTerm.TEXT_FOR_DESCRIPTION);
+                    if (indexForMeaning == -1 || indexForText == -1) {
+                        throw new IllegalStateException("Expecting a pattern entity with description and text fields. Found: " + patternEntityVersion);
+                    }
+                    if (version.fieldValues().get(indexForMeaning).equals(TinkarTerm.REGULAR_NAME_DESCRIPTION_TYPE)) {
+                        return (String) version.fieldValues().get(indexForText);
+                    }
+                    if (version.fieldValues().get(indexForMeaning).equals(TinkarTerm.FULLY_QUALIFIED_NAME_DESCRIPTION_TYPE)) {
+                        fqnString = (String) version.fieldValues().get(indexForText);
                     }
+                    anyString = (String) version.fieldValues().get(indexForText);
                 } else {
-                    Entity<?> entity = descriptionSemanticHandle.expectEntity();
-                    anyString = " <" + entity.nid() + "> " + entity.asUuidList().toString();
-                    LOG.error("ERROR getting string for nid: " + anyString);
-                    LOG.error("ERROR Nid - 2: <" + (nid - 2) + "> " + getChronology(nid - 2));
-                    LOG.error("ERROR Nid - 1: <" + (nid - 1) + "> " + getChronology(nid - 1));
-                    LOG.error("ERROR Nid: <" + nid + "> " + getChronology(nid - 1));
-                    LOG.error("ERROR Nid + 1: <" + (nid + 1) + "> " + getChronology(nid + 1));
-                    LOG.error("ERROR Nid + 2: <" + (nid + 2) + "> " + getChronology(nid + 2));
-
+                    if (!reportProblems) {
+                        return null;
+                    }
+                    Entity<?> entity = patternHandle.expectEntity();
+                    anyString = " <" + entity.nid() + ">" + entity.asUuidList().toString();
                     // Added in case entity.toString() itself throws an exception, at least get a UUID for the problem.
-                    AlertStreams.getRoot().dispatch(AlertObject.makeError(new IllegalStateException("Expecting a description semantic entity from list: " +
-                            Arrays.toString(semanticNids) + "\n Found entity with id:  " + anyString)));
-                    AlertStreams.getRoot().dispatch(AlertObject.makeError(new IllegalStateException("Expecting a description semantic. Found: " + entity)));
+                    AlertStreams.getRoot().dispatch(AlertObject.makeError(new IllegalStateException("Expecting a pattern entity. Found entity with id:  " + anyString)));
+                    AlertStreams.getRoot().dispatch(AlertObject.makeError(new IllegalStateException("Expecting a pattern entity. Found: " + entity)));
+                }
+            } else {
+                if (!reportProblems) {
+                    return null;
                 }
+                Entity<?> entity = descriptionSemanticHandle.expectEntity();
+                anyString = " <" + entity.nid() + "> " + entity.asUuidList().toString();
+                LOG.error("ERROR getting string for nid: " + anyString);
+                LOG.error("ERROR Nid - 2: <" + (nid - 2) + "> " + getChronology(nid - 2));
+                LOG.error("ERROR Nid - 1: <" + (nid - 1) + "> " + getChronology(nid - 1));
+                LOG.error("ERROR Nid: <" + nid + "> " + getChronology(nid - 1));
+                LOG.error("ERROR Nid + 1: <" + (nid + 1) + "> " + getChronology(nid + 1));
+                LOG.error("ERROR Nid + 2: <" + (nid + 2) + "> " + getChronology(nid + 2));
+
+                // Added in case entity.toString() itself throws an exception, at least get a UUID for the problem.
+                AlertStreams.getRoot().dispatch(AlertObject.makeError(new IllegalStateException("Expecting a description semantic entity from list: " +
+                        Arrays.toString(semanticNids) + "\n Found entity with id:  " + anyString)));
+                AlertStreams.getRoot().dispatch(AlertObject.makeError(new IllegalStateException("Expecting a description semantic. Found: " + entity)));
             }
-            if (fqnString != null) {
-                return fqnString;
+        }
+        if (fqnString != null) {
+            return fqnString;
+        }
+        return anyString;
+    }
+
+    /**
+     * Builds the description text index of the caches on a background thread, from the text of each concept and
+     * pattern, computed as {@link #textFast(int)} computes it. A component with descriptions that are not as
+     * expected is left out of the index, so textFast reports the problem when it computes the text on demand.
+     */
+    private void buildTextIndexInBackground(EntityCaches entityCaches) {
+        TinkExecutor.threadPool().execute(() -> {
+            try {
+                Stopwatch stopwatch = new Stopwatch();
+                MutableIntList nids = IntLists.mutable.empty();
+                PrimitiveData.get().forEachConceptNid(nids::add);
+                PrimitiveData.get().forEachPatternNid(nids::add);
+                if (entityCaches.buildTextIndex(nids.toArray(), this::indexedTextForNid)) {
+                    stopwatch.end();
+                    LOG.info("Indexed {} description texts in {}", entityCaches.textIndex.size(), stopwatch.durationString());
+                }
+            } catch (Throwable t) {
+                LOG.warn("Description text index not built", t);
             }
-            return anyString;
         });
+    }
 
+    private String indexedTextForNid(int nid) {
+        try {
+            return textForNid(nid, false);
+        } catch (RuntimeException e) {
+            return null;
+        }
     }
 
     @Override
@@ -202,13 +301,58 @@ public int nidForPublicId(PublicId publicId) {
      */
     @Deprecated(since = "Current", forRemoval = true)
     public <T extends Entity<V>, V extends EntityVersion> T getEntityFast(int nid) {
-        return (T) ENTITY_CACHE.get(nid, entityNid -> {
-            byte[] bytes = PrimitiveData.get().getBytes(nid);
-            if (bytes == null) {
-                return null;
+        return (T) caches().getEntity(nid);
+    }
+
+    @Override
+    public Entity<?> getEntityIfCached(int nid) {
+        return caches().getEntityIfPresent(nid);
+    }
+
+    @Override
+    public long entityInvalidationStamp(int nid) {
+        return caches().invalidationStamp(nid);
+    }
+
+    @Override
+    public <T extends Entity<V>, V extends EntityVersion> T cacheLoadedEntity(EntityBytesView view,
+                                                                              long invalidationStamp) {
+        return (T) caches().putLoadedEntity(view.nid(), view.entity(), view.byteCount(), invalidationStamp);
+    }
+
+    /**
+     * Answers what it can from the entity cache, then reads the rest of the batch with one call to
+     * {@link PrimitiveData#get()}{@code .getBytes(int[])}, and caches the entities read, unless they were changed
+     * while being read.
+     */
+    @Override
+    public Entity<?>[] getEntities(int[] nids) {
+        EntityCaches entityCaches = caches();
+        Entity<?>[] entities = new Entity<?>[nids.length];
+        MutableIntList missingPositions = IntLists.mutable.empty();
+        for (int i = 0; i < nids.length; i++) {
+            entities[i] = entityCaches.getEntityIfPresent(nids[i]);
+            if (entities[i] == null) {
+                missingPositions.add(i);
             }
-            return EntityRecordFactory.make(bytes);
-        });
+        }
+        if (missingPositions.isEmpty()) {
+            return entities;
+        }
+        int[] missingNids = new int[missingPositions.size()];
+        long[] invalidationStamps = new long[missingNids.length];
+        for (int i = 0; i < missingNids.length; i++) {
+            missingNids[i] = nids[missingPositions.get(i)];
+            invalidationStamps[i] = entityCaches.invalidationStamp(missingNids[i]);
+        }
+        byte[][] bytes = PrimitiveData.get().getBytes(missingNids);
+        for (int i = 0; i < missingNids.length; i++) {
+            if (bytes[i] != null) {
+                entities[missingPositions.get(i)] = entityCaches.putLoadedEntity(missingNids[i], bytes[i],
+                        invalidationStamps[i]);
+            }
+        }
+        return entities;
     }
 
     @Override
@@ -218,7 +362,7 @@ public int nidForUuids(ImmutableList<UUID> uuidList) {
 
     @Override
     public StampEntity getStampFast(int nid) {
-        return STAMP_CACHE.get(nid, stampNid -> {
+        return caches().stampCache.get(nid, stampNid -> {
                     byte[] bytes = PrimitiveData.get().getBytes(nid);
                     if (bytes == null) {
                         return null;
@@ -247,20 +391,31 @@ private void putEntityNoCache(Entity entity, DataActivity activity, boolean disp
     }
 
     private void putEntity(Entity entity, DataActivity activity, boolean dispatch, boolean addToCache) {
-        invalidateCaches(entity);
+        // During a bulk ingest, uncached puts leave the caches and subscribers alone. The caches are
+        // invalidated, and subscribers notified, once when the ingest ends.
+        boolean bulk = bulkIngest && !addToCache;
+        if (!bulk) {
+            invalidateCaches(entity);
+        }
         byte[] mergedEntityBytes = switch (entity) {
             case ConceptEntity conceptEntity -> {
-                STRING_CACHE.put(conceptEntity.nid(), conceptEntity.asUuidList().toString());
+                if (!bulk) {
+                    caches().textCache.put(conceptEntity.nid(), conceptEntity.asUuidList().toString());
+                }
                 yield PrimitiveData.get().merge(entity.nid(), Integer.MAX_VALUE, Integer.MAX_VALUE,
                         entity.getBytes(), entity, activity);
             }
             case PatternEntity patternEntity -> {
-                STRING_CACHE.put(patternEntity.nid(), patternEntity.asUuidList().toString());
+                if (!bulk) {
+                    caches().textCache.put(patternEntity.nid(), patternEntity.asUuidList().toString());
+                }
                 yield PrimitiveData.get().merge(entity.nid(), Integer.MAX_VALUE, Integer.MAX_VALUE,
                         entity.getBytes(), entity, activity);
             }
             case SemanticEntity semanticEntity -> {
-                STRING_CACHE.put(semanticEntity.nid(), semanticEntity.asUuidList().toString());
+                if (!bulk) {
+                    caches().textCache.put(semanticEntity.nid(), semanticEntity.asUuidList().toString());
+                }
                 yield PrimitiveData.get().merge(entity.nid(),
                         semanticEntity.patternNid(),
                         semanticEntity.referencedComponentNid(),
@@ -277,13 +432,18 @@ private void putEntity(Entity entity, DataActivity activity, boolean dispatch, b
         };
 
         if (addToCache) {
-            ENTITY_CACHE.put(entity.nid(),  EntityRecordFactory.make(mergedEntityBytes));
+            caches().putEntity(entity.nid(), mergedEntityBytes);
+        } else if (!bulk) {
+            // The entity may have been loaded from the bytes before the merge since it was invalidated above.
+            caches().invalidateEntity(entity.nid());
         }
-        if (dispatch) {
+        if (dispatch && !bulk) {
             processor.dispatch(entity.nid());
             if (entity instanceof SemanticEntity semanticEntity) {
                 processor.dispatch(semanticEntity.referencedComponentNid());
             }
+            // Classified from the entity in hand, rather than by each subscriber.
+            changeProcessor.dispatch(EntityChange.of(entity));
         }
     }
 
@@ -302,17 +462,17 @@ public void invalidateCaches(Entity entity) {
                 switch (parent) {
                     case ConceptEntity conceptEntity -> {
                         parent = null;
-                        STRING_CACHE.invalidate(conceptEntity.nid());
+                        caches().invalidateText(conceptEntity.nid());
                     }
                     case PatternEntity patternEntity -> {
                         parent = null;
-                        STRING_CACHE.invalidate(patternEntity.nid());
+                        caches().invalidateText(patternEntity.nid());
                     }
                     case SemanticEntity semantic -> {
                         // If semantic is a dialect, might invalidate preferred description,
                         // so need to go up to concept or pattern to invalidate strings in cache.
                         parent = getEntityFast(semantic.referencedComponentNid());
-                        STRING_CACHE.invalidate(semantic.nid());
+                        caches().invalidateText(semantic.nid());
                     }
                     default -> throw new IllegalStateException("Unexpected value: " + parent);
                 }
@@ -322,10 +482,9 @@ public void invalidateCaches(Entity entity) {
 
     @Override
     public void invalidateCaches(int... nids) {
+        EntityCaches entityCaches = caches();
         for (int nid : nids) {
-            STRING_CACHE.invalidate(nid);
-            ENTITY_CACHE.invalidate(nid);
-            STAMP_CACHE.invalidate(nid);
+            entityCaches.invalidate(nid);
         }
     }
 
@@ -368,7 +527,7 @@ public int[] semanticNidsForComponentOfPattern(int componentNid, int patternNid)
     public void notifyRefreshRequired(Transaction transaction) {
         transaction.forEachComponentInTransaction(nid -> {
             EntityHandle.get(nid).ifPresent(entity -> invalidateCaches(entity));
-            this.processor.dispatch(nid);
+            dispatchChange(nid);
         });
     }
 
@@ -396,15 +555,18 @@ public static class CacheProvider implements CachingService {
         @Override
         public void reset() {
             LOG.info("Resetting Entity Caches");
-            STRING_CACHE.invalidateAll();
-            ENTITY_CACHE.invalidateAll();
-            STAMP_CACHE.invalidateAll();
+            EntityCaches entityCaches = caches;
+            if (entityCaches != null) {
+                entityCaches.statistics().forEach(statistics -> LOG.info(statistics.toString()));
+                entityCaches.invalidateAll();
+            }
+            caches = null;
         }
     }
 
     @Override
     public void dispatch(Integer item) {
-        this.processor.dispatch(item);
+        dispatchChange(item);
     }
 
     @Override
@@ -547,10 +709,31 @@ public void beginLoadPhase() {
         loadPhase = true;
     }
 
+    @Override
+    public void beginBulkIngest() {
+        beginLoadPhase();
+        bulkIngest = true;
+        PrimitiveData.get().beginBulkIngest();
+    }
+
+    @Override
+    public void endBulkIngest() {
+        try {
+            PrimitiveData.get().endBulkIngest();
+        } finally {
+            bulkIngest = false;
+            caches().invalidateAll();
+            endLoadPhase();
+        }
+    }
+
     @Override
     public void endLoadPhase() {
         loadPhase = false;
-        processor.dispatch(Integer.MIN_VALUE);
+        EntityCaches entityCaches = caches();
+        entityCaches.textIndexStarted.set(true);
+        buildTextIndexInBackground(entityCaches);
+        dispatchChange(Integer.MIN_VALUE);
     }
 
     /**
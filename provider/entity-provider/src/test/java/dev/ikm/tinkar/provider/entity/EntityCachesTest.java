@@ -0,0 +1,138 @@
+/*
+ * Copyright © 2015 Integrated Knowledge Management (support@ikm.dev)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dev.ikm.tinkar.provider.entity;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntFunction;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class EntityCachesTest {
+
+    private static final int[] NIDS = IntStream.range(0, 2_000).map(i -> Integer.MIN_VALUE + 1 + i * 3).toArray();
+
+    /**
+     * Texts of components, counting how often a text is computed.
+     */
+    private static class Texts implements IntFunction<String> {
+        final Map<Integer, String> texts = new ConcurrentHashMap<>();
+        final AtomicInteger computed = new AtomicInteger();
+
+        Texts() {
+            for (int i = 0; i < NIDS.length; i++) {
+                // Some components have no description, and some texts are empty or not ASCII.
+                switch (i % 5) {
+                    case 0 -> {
+                    }
+                    case 1 -> texts.put(NIDS[i], "");
+                    case 2 -> texts.put(NIDS[i], "Größe " + i + " 病気 😀");
+                    default -> texts.put(NIDS[i], "Concept " + i);
+                }
+            }
+        }
+
+        @Override
+        public String apply(int nid) {
+            computed.incrementAndGet();
+            return texts.get(nid);
+        }
+    }
+
+    private static void assertSameTexts(EntityCaches indexed, EntityCaches unindexed, Texts texts) {
+        for (int nid : NIDS) {
+            assertEquals(unindexed.text(nid, texts), indexed.text(nid, texts), "Text of " + nid);
+        }
+    }
+
+    @Test
+    public void testIndexedTextIsTheTextComputedOnDemand() {
+        Texts texts = new Texts();
+        EntityCaches indexed = new EntityCaches();
+        EntityCaches unindexed = new EntityCaches();
+        assertTrue(indexed.buildTextIndex(NIDS, texts));
+        assertEquals(texts.texts.size(), indexed.textIndex.size());
+
+        texts.computed.set(0);
+        for (int nid : NIDS) {
+            assertEquals(texts.texts.get(nid), unindexed.text(nid, texts), "Unindexed text of " + nid);
+        }
+        assertEquals(NIDS.length, texts.computed.get());
+
+        texts.computed.set(0);
+        assertSameTexts(indexed, new EntityCaches(), texts);
+        // Only the texts of the unindexed caches, and of components without a description, are computed.
+        assertEquals(NIDS.length + NIDS.length / 5, texts.computed.get());
+    }
+
+    @Test
+    public void testChangedTextIsTheSameWhetherIndexedOrNot() {
+        Texts texts = new Texts();
+        EntityCaches indexed = new EntityCaches();
+        assertTrue(indexed.buildTextIndex(NIDS, texts));
+
+        int changedNid = NIDS[3];
+        int describedNid = NIDS[5];
+        texts.texts.put(changedNid, "Changed");
+        texts.texts.put(describedNid, "Described");
+        indexed.invalidateText(changedNid);
+        indexed.invalidateText(describedNid);
+        assertSameTexts(indexed, new EntityCaches(), texts);
+        assertEquals("Changed", indexed.text(changedNid, texts));
+        assertEquals("Described", indexed.text(describedNid, texts));
+
+        // A rebuilt index holds the changed texts.
+        assertTrue(indexed.buildTextIndex(NIDS, texts));
+        assertEquals("Changed", indexed.textIndex.get(changedNid));
+        assertSameTexts(indexed, new EntityCaches(), texts);
+    }
+
+    @Test
+    public void testTextInvalidatedDuringBuildIsNotIndexed() {
+        Texts texts = new Texts();
+        EntityCaches indexed = new EntityCaches();
+        int changedNid = NIDS[4];
+        assertTrue(indexed.buildTextIndex(NIDS, nid -> {
+            if (nid == changedNid) {
+                // The component changes after its text was computed for the index.
+                texts.texts.put(changedNid, "Changed during build");
+                indexed.invalidateText(changedNid);
+                return "Before change";
+            }
+            return texts.apply(nid);
+        }));
+        assertNull(indexed.textIndex.get(changedNid));
+        assertEquals("Changed during build", indexed.text(changedNid, texts));
+        assertSameTexts(indexed, new EntityCaches(), texts);
+    }
+
+    @Test
+    public void testInvalidateAllDiscardsIndex() {
+        Texts texts = new Texts();
+        EntityCaches indexed = new EntityCaches();
+        assertTrue(indexed.buildTextIndex(NIDS, texts));
+        texts.texts.replaceAll((nid, text) -> text + " changed");
+        indexed.invalidateAll();
+        assertEquals(0, indexed.textIndex.size());
+        assertSameTexts(indexed, new EntityCaches(), texts);
+    }
+}
@@ -234,8 +234,10 @@ public static List<PublicId> descendantsOf(PublicId ancestorConceptId) {
     public static List<PublicId> descendantsOf(NavigationCalculator navCalc, PublicId ancestorConceptId) {
         List<PublicId> descendantIds = new ArrayList<>();
         int[] descendantNidList = navCalc.descendentsOf(EntityService.get().nidForPublicId(ancestorConceptId)).toArray();
-        for (int descendantNid : descendantNidList) {
-            EntityHandle.get(descendantNid).ifPresent((entity) -> descendantIds.add(entity.publicId()));
+        for (Entity<?> descendant : EntityService.get().getEntities(descendantNidList)) {
+            if (descendant != null) {
+                descendantIds.add(descendant.publicId());
+            }
         }
         return descendantIds;
     }